@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.parser.json.jackson;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IJsonLikeParser;
+import ca.uhn.fhir.parser.json.JsonLikeStructure;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+/**
+ * A {@link JsonLikeStructure} backed by <a href="https://github.com/FasterXML/smile-format-specification">Smile</a>,
+ * a binary encoding of the JSON data model. Content loaded through this structure can be passed directly to
+ * {@link IJsonLikeParser#parseResource(Class, JsonLikeStructure)}, which avoids the cost of tokenizing
+ * JSON text.
+ * <p>
+ * Smile is lossless with respect to JSON (including the scale of decimal numbers), so content can be freely
+ * transcoded between the two forms using {@link #fromJson(String)} and {@link #toJson(byte[])}.
+ * </p>
+ * <p>
+ * Note that this class requires the optional <code>com.fasterxml.jackson.dataformat:jackson-dataformat-smile</code>
+ * dependency to be present on the classpath.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class JacksonSmileStructure extends JacksonStructure {
+
+	private static final StreamReadConstraints STREAM_READ_CONSTRAINTS =
+			StreamReadConstraints.builder().maxStringLength(Integer.MAX_VALUE).build();
+	private static final JsonFactory JSON_FACTORY = createJsonFactory();
+	private static final ObjectMapper SMILE_MAPPER = createSmileMapper();
+
+	@Override
+	public JsonLikeStructure getInstance() {
+		return new JacksonSmileStructure();
+	}
+
+	/**
+	 * Loads Smile encoded content
+	 */
+	public void load(byte[] theBytes) throws DataFormatException {
+		load(new ByteArrayInputStream(theBytes));
+	}
+
+	/**
+	 * Loads Smile encoded content
+	 */
+	public void load(InputStream theInputStream) throws DataFormatException {
+		JsonNode root;
+		try {
+			root = SMILE_MAPPER.readTree(theInputStream);
+		} catch (IOException e) {
+			throw new DataFormatException(
+					Msg.code(2775) + "Failed to parse Smile encoded FHIR content: " + e.getMessage(), e);
+		}
+		if (!(root instanceof ObjectNode)) {
+			throw new DataFormatException(Msg.code(2776) + "Smile encoded content must contain a JSON Object");
+		}
+		setNativeObject((ObjectNode) root);
+	}
+
+	/**
+	 * Transcodes JSON text into its Smile binary equivalent without building an intermediate tree
+	 */
+	public static byte[] fromJson(String theJson) throws DataFormatException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(theJson.length() / 2);
+		try (JsonParser parser = JSON_FACTORY.createParser(theJson);
+				JsonGenerator generator = SMILE_MAPPER.getFactory().createGenerator(outputStream)) {
+			while (parser.nextToken() != null) {
+				generator.copyCurrentEventExact(parser);
+			}
+		} catch (IOException e) {
+			throw new DataFormatException(
+					Msg.code(2777) + "Failed to transcode JSON content to Smile: " + e.getMessage(), e);
+		}
+		return outputStream.toByteArray();
+	}
+
+	/**
+	 * Transcodes Smile binary content back into (non pretty-printed) JSON text
+	 */
+	public static String toJson(byte[] theSmile) throws DataFormatException {
+		StringWriter writer = new StringWriter(theSmile.length * 2);
+		try (JsonParser parser = SMILE_MAPPER.getFactory().createParser(theSmile);
+				JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			while (parser.nextToken() != null) {
+				generator.copyCurrentEventExact(parser);
+			}
+		} catch (IOException e) {
+			throw new DataFormatException(
+					Msg.code(2778) + "Failed to transcode Smile content to JSON: " + e.getMessage(), e);
+		}
+		return writer.toString();
+	}
+
+	private static JsonFactory createJsonFactory() {
+		JsonFactory retVal = new JsonFactory();
+		retVal.setStreamReadConstraints(STREAM_READ_CONSTRAINTS);
+		return retVal;
+	}
+
+	private static ObjectMapper createSmileMapper() {
+		SmileFactory factory = SmileFactory.builder()
+				// Repeated string values (e.g. code systems) are written as back-references
+				.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+				.streamReadConstraints(STREAM_READ_CONSTRAINTS)
+				.build();
+		ObjectMapper retVal = new SmileMapper(factory);
+		retVal = retVal.setNodeFactory(new JsonNodeFactory(true));
+		retVal = retVal.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+		retVal = retVal.enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+		return retVal;
+	}
+}
@@ -264,6 +264,7 @@ public class Constants {
 	public static final String POWERED_BY_HEADER = "X-Powered-By";
 	public static final Charset CHARSET_US_ASCII;
 	public static final String PARAM_PAGEID = "_pageId";
+	public static final String PARAM_PAGE_TOKEN = "_pageToken";
 	public static final String JAVA_VALIDATOR_DETAILS_SYSTEM = "http://hl7.org/fhir/java-core-messageId";
 	public static final String PARAM_SEARCH_TOTAL_MODE = "_total";
 	public static final String CAPABILITYSTATEMENT_WEBSOCKET_URL =
@@ -306,6 +307,17 @@ public class Constants {
 	 */
 	public static final String RESOURCE_PARTITION_ID = Constants.class.getName() + "_RESOURCE_PARTITION_ID";
 
+	/**
+	 * {@link org.hl7.fhir.instance.model.api.IBaseResource#getUserData(String) User metadata key} used
+	 * to store the stored JSON body of a resource which was loaded from a repository and has not been
+	 * modified since. The body must be compact JSON which starts with the <code>resourceType</code>
+	 * property and does not contain the resource ID or <code>Resource.meta</code>. Value for this key
+	 * will be of type {@link String}.
+	 *
+	 * @since 8.4.0
+	 */
+	public static final String RESOURCE_PRE_ENCODED_JSON = Constants.class.getName() + "_RESOURCE_PRE_ENCODED_JSON";
+
 	public static final String PARTITION_IDS = "partitionIds";
 	public static final String CT_APPLICATION_GZIP = "application/gzip";
 	public static final String[] EMPTY_STRING_ARRAY = new String[0];
@@ -221,6 +221,17 @@ public class HapiExtensions {
 	 */
 	public static final String EXTENSION_TRANSACTION_ENTRY_PARTITION_IDS =
 			"http://hapifhir.io/fhir/ns/StructureDefinition/request-partition-ids";
+
+	/**
+	 * This extension is added to <code>Bundle.total</code> in a search result when the total is
+	 * an estimate (e.g. because the client requested <code>_total=estimated</code>) rather than
+	 * an exact count. The value is a boolean.
+	 *
+	 * @since 8.4.0
+	 */
+	public static final String EXT_SEARCH_TOTAL_ESTIMATED =
+			"http://hapifhir.io/fhir/StructureDefinition/search-total-estimated";
+
 	/**
 	 * Non instantiable
 	 */
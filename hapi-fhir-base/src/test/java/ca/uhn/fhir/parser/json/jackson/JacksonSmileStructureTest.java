@@ -0,0 +1,45 @@
+package ca.uhn.fhir.parser.json.jackson;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.json.BaseJsonLikeObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JacksonSmileStructureTest {
+
+	private static final String JSON = "{\"resourceType\":\"Observation\",\"id\":\"123\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"29463-7\"}]},\"valueQuantity\":{\"value\":72.50,\"unit\":\"kg\"},\"component\":[{\"valueInteger\":3},{\"valueBoolean\":true}]}";
+
+	@Test
+	public void testTranscodeRoundTrip() {
+		byte[] smile = JacksonSmileStructure.fromJson(JSON);
+
+		assertThat(smile.length).isLessThan(JSON.getBytes(StandardCharsets.UTF_8).length);
+		assertEquals(JSON, JacksonSmileStructure.toJson(smile));
+	}
+
+	@Test
+	public void testLoad() {
+		JacksonSmileStructure structure = new JacksonSmileStructure();
+		structure.load(JacksonSmileStructure.fromJson(JSON));
+
+		BaseJsonLikeObject root = structure.getRootObject();
+		assertEquals("Observation", root.get("resourceType").getAsString());
+		assertEquals("72.50", root.get("valueQuantity").getAsObject().get("value").getAsString());
+		assertEquals(2, root.get("component").getAsArray().size());
+	}
+
+	@Test
+	public void testLoadInvalidContent() {
+		JacksonSmileStructure structure = new JacksonSmileStructure();
+		byte[] notSmile = JSON.getBytes(StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> structure.load(notSmile))
+			.isInstanceOf(DataFormatException.class)
+			.hasMessageContaining("HAPI-2775");
+	}
+}
@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.Validate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written using <code>-rf json</code>, typically one
+ * from a baseline build (e.g. the last release) and one from the current build,
+ * and reports any benchmark whose score has become worse by more than a threshold.
+ * <p>
+ * Usage:
+ * <code>java -cp benchmarks.jar ca.uhn.fhir.benchmark.BenchmarkComparison baseline.json current.json [thresholdPercent]</code>
+ * </p>
+ * <p>
+ * The process exits with status <code>1</code> if any regressions were found, so
+ * it can be used to fail a CI job.
+ * </p>
+ */
+public class BenchmarkComparison {
+
+	static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+	private final double myThresholdPercent;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theThresholdPercent The percentage by which a score may become worse before it is reported as a regression
+	 */
+	public BenchmarkComparison(double theThresholdPercent) {
+		Validate.isTrue(theThresholdPercent >= 0, "theThresholdPercent must not be negative");
+		myThresholdPercent = theThresholdPercent;
+	}
+
+	/**
+	 * Compares the results, and returns one entry per benchmark found in both files
+	 */
+	public List<Result> compare(JsonNode theBaseline, JsonNode theCurrent) {
+		Map<String, JsonNode> baseline = indexResults(theBaseline);
+		Map<String, JsonNode> current = indexResults(theCurrent);
+
+		List<Result> retVal = new ArrayList<>();
+		for (Map.Entry<String, JsonNode> next : current.entrySet()) {
+			JsonNode baselineResult = baseline.get(next.getKey());
+			if (baselineResult == null) {
+				continue;
+			}
+			String mode = next.getValue().path("mode").asText();
+			double baselineScore =
+					baselineResult.path("primaryMetric").path("score").asDouble();
+			double currentScore =
+					next.getValue().path("primaryMetric").path("score").asDouble();
+			String unit =
+					next.getValue().path("primaryMetric").path("scoreUnit").asText();
+			retVal.add(new Result(next.getKey(), mode, unit, baselineScore, currentScore, myThresholdPercent));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Writes a human readable report, and returns <code>true</code> if any regressions were found
+	 */
+	public static boolean report(List<Result> theResults, PrintStream theOutput) {
+		boolean regressed = false;
+		for (Result next : theResults) {
+			theOutput.println(String.format(
+					Locale.ROOT,
+					"%-10s %+8.2f%%  %14.3f -> %14.3f %-8s %s",
+					next.isRegression() ? "REGRESSION" : "ok",
+					next.getChangePercent(),
+					next.getBaselineScore(),
+					next.getCurrentScore(),
+					next.getUnit(),
+					next.getKey()));
+			regressed |= next.isRegression();
+		}
+		return regressed;
+	}
+
+	/**
+	 * JMH writes one result per benchmark method and parameter combination, so
+	 * these are combined to identify each result
+	 */
+	private static Map<String, JsonNode> indexResults(JsonNode theResults) {
+		Validate.isTrue(theResults.isArray(), "JMH results must be a JSON array");
+		Map<String, JsonNode> retVal = new TreeMap<>();
+		for (JsonNode next : theResults) {
+			StringBuilder key = new StringBuilder(next.path("benchmark").asText());
+			key.append(" [").append(next.path("mode").asText());
+			JsonNode params = next.path("params");
+			for (Iterator<Map.Entry<String, JsonNode>> iter = params.fields(); iter.hasNext(); ) {
+				Map.Entry<String, JsonNode> param = iter.next();
+				key.append(", ")
+						.append(param.getKey())
+						.append('=')
+						.append(param.getValue().asText());
+			}
+			key.append(']');
+			retVal.put(key.toString(), next);
+		}
+		return retVal;
+	}
+
+	public static void main(String[] theArgs) throws IOException {
+		if (theArgs.length < 2 || theArgs.length > 3) {
+			System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [thresholdPercent]");
+			System.exit(2);
+		}
+
+		double threshold = theArgs.length == 3 ? Double.parseDouble(theArgs[2]) : DEFAULT_THRESHOLD_PERCENT;
+		ObjectMapper mapper = new ObjectMapper();
+		JsonNode baseline = mapper.readTree(new File(theArgs[0]));
+		JsonNode current = mapper.readTree(new File(theArgs[1]));
+
+		List<Result> results = new BenchmarkComparison(threshold).compare(baseline, current);
+		boolean regressed = report(results, System.out);
+		System.exit(regressed ? 1 : 0);
+	}
+
+	/**
+	 * The comparison of a single benchmark
+	 */
+	public static class Result {
+		private final String myKey;
+		private final String myMode;
+		private final String myUnit;
+		private final double myBaselineScore;
+		private final double myCurrentScore;
+		private final double myThresholdPercent;
+
+		Result(
+				String theKey,
+				String theMode,
+				String theUnit,
+				double theBaselineScore,
+				double theCurrentScore,
+				double theThresholdPercent) {
+			myKey = theKey;
+			myMode = theMode;
+			myUnit = theUnit;
+			myBaselineScore = theBaselineScore;
+			myCurrentScore = theCurrentScore;
+			myThresholdPercent = theThresholdPercent;
+		}
+
+		public String getKey() {
+			return myKey;
+		}
+
+		public String getUnit() {
+			return myUnit;
+		}
+
+		public double getBaselineScore() {
+			return myBaselineScore;
+		}
+
+		public double getCurrentScore() {
+			return myCurrentScore;
+		}
+
+		/**
+		 * Returns the relative change in score, where a positive value is always an
+		 * improvement and a negative value is always a regression
+		 */
+		public double getChangePercent() {
+			if (myBaselineScore == 0) {
+				return 0;
+			}
+			double change = (myCurrentScore - myBaselineScore) / myBaselineScore * 100.0;
+			return isHigherBetter() ? change : -change;
+		}
+
+		public boolean isRegression() {
+			return getChangePercent() < -myThresholdPercent;
+		}
+
+		/**
+		 * Throughput is measured in operations per unit of time, whereas every other
+		 * JMH mode measures time per operation
+		 */
+		private boolean isHigherBetter() {
+			return "thrpt".equals(myMode);
+		}
+	}
+}
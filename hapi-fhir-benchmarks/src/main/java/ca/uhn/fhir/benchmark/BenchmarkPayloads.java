@@ -0,0 +1,300 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Questionnaire;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.StringType;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates the R4 payloads used by the benchmarks. Payloads are built in code
+ * rather than loaded from files so that the benchmarks have no external data
+ * dependencies, and a fixed seed is used so that every run (and every HAPI FHIR
+ * version being compared) sees exactly the same content.
+ */
+public class BenchmarkPayloads {
+
+	/**
+	 * The payloads which can be selected using a benchmark <code>@Param</code>
+	 */
+	public enum PayloadType {
+		/**
+		 * A transaction bundle shaped like a Synthea patient record, with a patient
+		 * and several years of encounters, observations, conditions and medications
+		 */
+		SYNTHEA_BUNDLE,
+		/**
+		 * A single Observation with a large number of components, like a lab panel
+		 * or device reading
+		 */
+		LARGE_OBSERVATION,
+		/**
+		 * A Questionnaire with deeply nested groups of items
+		 */
+		NESTED_QUESTIONNAIRE
+	}
+
+	private static final long SEED = 20250101L;
+	private static final int SYNTHEA_ENCOUNTERS = 60;
+	private static final int SYNTHEA_OBSERVATIONS_PER_ENCOUNTER = 8;
+	private static final int LARGE_OBSERVATION_COMPONENTS = 500;
+	private static final int QUESTIONNAIRE_DEPTH = 6;
+	private static final int QUESTIONNAIRE_BREADTH = 4;
+
+	private static final String[][] LOINC_CODES = {
+		{"8867-4", "Heart rate", "/min"},
+		{"9279-1", "Respiratory rate", "/min"},
+		{"8310-5", "Body temperature", "Cel"},
+		{"29463-7", "Body weight", "kg"},
+		{"8302-2", "Body height", "cm"},
+		{"39156-5", "Body mass index", "kg/m2"},
+		{"2339-0", "Glucose", "mg/dL"},
+		{"2093-3", "Cholesterol", "mg/dL"},
+		{"4548-4", "Hemoglobin A1c", "%"},
+		{"718-7", "Hemoglobin", "g/dL"}
+	};
+
+	private static final String[][] SNOMED_CONDITIONS = {
+		{"44054006", "Diabetes"},
+		{"38341003", "Hypertension"},
+		{"195662009", "Acute viral pharyngitis"},
+		{"10509002", "Acute bronchitis"},
+		{"162864005", "Body mass index 30+ - obesity"}
+	};
+
+	private BenchmarkPayloads() {
+		// nothing
+	}
+
+	public static IBaseResource newPayload(PayloadType thePayloadType) {
+		switch (thePayloadType) {
+			case SYNTHEA_BUNDLE:
+				return newSyntheaBundle();
+			case LARGE_OBSERVATION:
+				return newLargeObservation();
+			case NESTED_QUESTIONNAIRE:
+			default:
+				return newNestedQuestionnaire();
+		}
+	}
+
+	public static Bundle newSyntheaBundle() {
+		Random random = new Random(SEED);
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+
+		Patient patient = newPatient(random);
+		addEntry(bundle, patient);
+
+		long time = 1262304000000L; // 2010-01-01
+		for (int i = 0; i < SYNTHEA_ENCOUNTERS; i++) {
+			time += (long) random.nextInt(60) * 24 * 60 * 60 * 1000;
+			Date start = new Date(time);
+			Date end = new Date(time + 30 * 60 * 1000);
+
+			Encounter encounter = new Encounter();
+			encounter.setId(newUuid(random));
+			encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+			encounter.setClass_(new Coding("http://terminology.hl7.org/CodeSystem/v3-ActCode", "AMB", "ambulatory"));
+			encounter.addType().addCoding(new Coding("http://snomed.info/sct", "185349003", "Encounter for check up"));
+			encounter.setSubject(new Reference(patient.getIdElement().getValue()));
+			encounter.setPeriod(new Period().setStart(start).setEnd(end));
+			addEntry(bundle, encounter);
+
+			for (int j = 0; j < SYNTHEA_OBSERVATIONS_PER_ENCOUNTER; j++) {
+				String[] code = LOINC_CODES[random.nextInt(LOINC_CODES.length)];
+				Observation observation = new Observation();
+				observation.setId(newUuid(random));
+				observation.setStatus(Observation.ObservationStatus.FINAL);
+				observation
+						.addCategory()
+						.addCoding(new Coding(
+								"http://terminology.hl7.org/CodeSystem/observation-category",
+								"vital-signs",
+								"vital-signs"));
+				observation.setCode(newCodeableConcept("http://loinc.org", code[0], code[1]));
+				observation.setSubject(new Reference(patient.getIdElement().getValue()));
+				observation.setEncounter(new Reference(encounter.getIdElement().getValue()));
+				observation.setEffective(new DateTimeType(start));
+				observation.setIssued(start);
+				observation.setValue(newQuantity(random.nextDouble() * 200, code[2]));
+				addEntry(bundle, observation);
+			}
+
+			if (random.nextInt(4) == 0) {
+				String[] code = SNOMED_CONDITIONS[random.nextInt(SNOMED_CONDITIONS.length)];
+				Condition condition = new Condition();
+				condition.setId(newUuid(random));
+				condition.setClinicalStatus(newCodeableConcept(
+						"http://terminology.hl7.org/CodeSystem/condition-clinical", "active", "Active"));
+				condition.setCode(newCodeableConcept("http://snomed.info/sct", code[0], code[1]));
+				condition.setSubject(new Reference(patient.getIdElement().getValue()));
+				condition.setEncounter(new Reference(encounter.getIdElement().getValue()));
+				condition.setOnset(new DateTimeType(start));
+				addEntry(bundle, condition);
+
+				MedicationRequest medicationRequest = new MedicationRequest();
+				medicationRequest.setId(newUuid(random));
+				medicationRequest.setStatus(MedicationRequest.MedicationRequestStatus.ACTIVE);
+				medicationRequest.setIntent(MedicationRequest.MedicationRequestIntent.ORDER);
+				medicationRequest.setMedication(
+						newCodeableConcept("http://www.nlm.nih.gov/research/umls/rxnorm", "860975", "Metformin"));
+				medicationRequest.setSubject(
+						new Reference(patient.getIdElement().getValue()));
+				medicationRequest.setEncounter(
+						new Reference(encounter.getIdElement().getValue()));
+				medicationRequest.setAuthoredOn(start);
+				medicationRequest.addReasonReference(
+						new Reference(condition.getIdElement().getValue()));
+				addEntry(bundle, medicationRequest);
+			}
+		}
+
+		return bundle;
+	}
+
+	public static Observation newLargeObservation() {
+		Random random = new Random(SEED);
+		Observation observation = new Observation();
+		observation.setId("Observation/large");
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+		observation.setCode(newCodeableConcept("http://loinc.org", "24323-8", "Comprehensive metabolic panel"));
+		observation.setSubject(new Reference("Patient/123"));
+		observation.setEffective(new DateTimeType("2024-01-01T12:00:00Z"));
+		for (int i = 0; i < LARGE_OBSERVATION_COMPONENTS; i++) {
+			String[] code = LOINC_CODES[i % LOINC_CODES.length];
+			Observation.ObservationComponentComponent component = observation.addComponent();
+			component.setCode(newCodeableConcept("http://loinc.org", code[0], code[1]));
+			component.setValue(newQuantity(random.nextDouble() * 200, code[2]));
+			component
+					.addInterpretation()
+					.addCoding(new Coding(
+							"http://terminology.hl7.org/CodeSystem/v3-ObservationInterpretation", "N", "Normal"));
+		}
+		return observation;
+	}
+
+	public static Questionnaire newNestedQuestionnaire() {
+		Questionnaire questionnaire = new Questionnaire();
+		questionnaire.setId("Questionnaire/nested");
+		questionnaire.setUrl("http://example.com/Questionnaire/nested");
+		questionnaire.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		questionnaire.setTitle("Nested questionnaire");
+		addQuestionnaireItems(questionnaire.getItem(), "", 1);
+		return questionnaire;
+	}
+
+	private static void addQuestionnaireItems(
+			List<Questionnaire.QuestionnaireItemComponent> theItems, String theParentLinkId, int theDepth) {
+		for (int i = 0; i < QUESTIONNAIRE_BREADTH; i++) {
+			String linkId = theParentLinkId + (theParentLinkId.isEmpty() ? "" : ".") + i;
+			Questionnaire.QuestionnaireItemComponent item = new Questionnaire.QuestionnaireItemComponent();
+			item.setLinkId(linkId);
+			item.setText("Item " + linkId);
+			theItems.add(item);
+			if (theDepth < QUESTIONNAIRE_DEPTH) {
+				item.setType(Questionnaire.QuestionnaireItemType.GROUP);
+				addQuestionnaireItems(item.getItem(), linkId, theDepth + 1);
+			} else {
+				item.setType(Questionnaire.QuestionnaireItemType.CHOICE);
+				item.addCode(new Coding("http://loinc.org", LOINC_CODES[i % LOINC_CODES.length][0], null));
+				item.addAnswerOption().setValue(new Coding("http://example.com/answers", "Y", "Yes"));
+				item.addAnswerOption().setValue(new Coding("http://example.com/answers", "N", "No"));
+				item.addEnableWhen()
+						.setQuestion(linkId)
+						.setOperator(Questionnaire.QuestionnaireItemOperator.EXISTS)
+						.setAnswer(new BooleanType(true));
+			}
+		}
+	}
+
+	private static Patient newPatient(Random theRandom) {
+		Patient patient = new Patient();
+		patient.setId(newUuid(theRandom));
+		patient.addIdentifier()
+				.setSystem("https://github.com/synthetichealth/synthea")
+				.setValue(newUuid(theRandom));
+		patient.addIdentifier().setSystem("http://hl7.org/fhir/sid/us-ssn").setValue("999-12-3456");
+		patient.addName().setFamily("Schimmel").addGiven("Aurelio").addPrefix("Mr.");
+		patient.setGender(Enumerations.AdministrativeGender.MALE);
+		patient.setBirthDateElement(new DateType("1965-04-12"));
+		patient.addAddress()
+				.addLine("123 Main Street")
+				.setCity("Boston")
+				.setState("MA")
+				.setPostalCode("02101")
+				.setCountry("US");
+		patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("555-123-4567");
+		patient.addExtension()
+				.setUrl("http://hl7.org/fhir/us/core/StructureDefinition/us-core-birthsex")
+				.setValue(new StringType("M"));
+		return patient;
+	}
+
+	private static CodeableConcept newCodeableConcept(String theSystem, String theCode, String theDisplay) {
+		return new CodeableConcept()
+				.addCoding(new Coding(theSystem, theCode, theDisplay))
+				.setText(theDisplay);
+	}
+
+	private static Quantity newQuantity(double theValue, String theUnit) {
+		return new Quantity()
+				.setValue(Math.round(theValue * 100) / 100.0)
+				.setUnit(theUnit)
+				.setSystem("http://unitsofmeasure.org")
+				.setCode(theUnit);
+	}
+
+	private static void addEntry(Bundle theBundle, Resource theResource) {
+		theBundle
+				.addEntry()
+				.setFullUrl(theResource.getIdElement().getValue())
+				.setResource(theResource)
+				.getRequest()
+				.setMethod(Bundle.HTTPVerb.POST)
+				.setUrl(theResource.fhirType());
+	}
+
+	private static String newUuid(Random theRandom) {
+		return "urn:uuid:" + new UUID(theRandom.nextLong(), theRandom.nextLong());
+	}
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.ComboSearchParamType;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.interceptor.executor.InterceptorService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorR4;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
+import ca.uhn.fhir.jpa.searchparam.matcher.IndexedSearchParamExtractor;
+import ca.uhn.fhir.rest.server.util.FhirContextSearchParamRegistry;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import jakarta.annotation.Nonnull;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal Spring configuration for the search parameter extraction and
+ * in-memory matching services, using the built-in R4 search parameters and no
+ * database
+ */
+@Configuration
+public class BenchmarkSearchParamConfig {
+
+	@Bean
+	public FhirContext fhirContext() {
+		return FhirContext.forR4Cached();
+	}
+
+	@Bean
+	public StorageSettings storageSettings() {
+		return new StorageSettings();
+	}
+
+	@Bean
+	public PartitionSettings partitionSettings() {
+		return new PartitionSettings();
+	}
+
+	@Bean
+	public ISearchParamRegistry searchParamRegistry(FhirContext theFhirContext) {
+		return new BenchmarkSearchParamRegistry(theFhirContext);
+	}
+
+	@Bean
+	public IInterceptorBroadcaster interceptorBroadcaster() {
+		return new InterceptorService();
+	}
+
+	@Bean
+	public ISearchParamExtractor searchParamExtractor() {
+		return new SearchParamExtractorR4();
+	}
+
+	@Bean
+	public SearchParamExtractorService searchParamExtractorService() {
+		return new SearchParamExtractorService();
+	}
+
+	@Bean
+	public IndexedSearchParamExtractor indexedSearchParamExtractor() {
+		return new IndexedSearchParamExtractor();
+	}
+
+	@Bean
+	public MatchUrlService matchUrlService() {
+		return new MatchUrlService();
+	}
+
+	@Bean
+	public InMemoryResourceMatcher inMemoryResourceMatcher() {
+		return new InMemoryResourceMatcher();
+	}
+
+	/**
+	 * The built-in search parameters don't include any combo search parameters, but
+	 * the {@link FhirContextSearchParamRegistry} doesn't support looking them up
+	 */
+	private static class BenchmarkSearchParamRegistry extends FhirContextSearchParamRegistry {
+
+		private BenchmarkSearchParamRegistry(FhirContext theFhirContext) {
+			super(theFhirContext);
+		}
+
+		@Override
+		public List<RuntimeSearchParam> getActiveComboSearchParams(
+				@Nonnull String theResourceName, @Nonnull SearchParamLookupContextEnum theContext) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<RuntimeSearchParam> getActiveComboSearchParams(
+				@Nonnull String theResourceName,
+				@Nonnull ComboSearchParamType theParamType,
+				@Nonnull SearchParamLookupContextEnum theContext) {
+			return Collections.emptyList();
+		}
+	}
+}
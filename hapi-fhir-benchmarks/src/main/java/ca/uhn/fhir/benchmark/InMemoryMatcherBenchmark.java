@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
+import ca.uhn.fhir.jpa.searchparam.matcher.IndexedSearchParamExtractor;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link InMemoryResourceMatcher}, which is used by subscriptions
+ * and conditional operations to test a resource against search criteria
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryMatcherBenchmark {
+
+	@Param({
+		"Observation?code=http://loinc.org|8867-4",
+		"Observation?subject=Patient/123&status=final",
+		"Observation?code=http://loinc.org|8867-4&date=ge2020-01-01&status=final,amended"
+	})
+	public String myCriteria;
+
+	private AnnotationConfigApplicationContext myAppCtx;
+	private InMemoryResourceMatcher myMatcher;
+	private Observation myObservation;
+	private ResourceIndexedSearchParams myIndexedSearchParams;
+
+	@Setup
+	public void setup() {
+		myAppCtx = new AnnotationConfigApplicationContext(BenchmarkSearchParamConfig.class);
+		myMatcher = myAppCtx.getBean(InMemoryResourceMatcher.class);
+
+		myObservation = new Observation();
+		myObservation.setId("Observation/1");
+		myObservation.setStatus(Observation.ObservationStatus.FINAL);
+		myObservation.setCode(new CodeableConcept().addCoding(new Coding("http://loinc.org", "8867-4", "Heart rate")));
+		myObservation.setSubject(new Reference("Patient/123"));
+		myObservation.setEffective(new DateTimeType("2021-06-01T10:00:00Z"));
+		myObservation.setValue(new Quantity()
+				.setValue(72)
+				.setSystem("http://unitsofmeasure.org")
+				.setCode("/min"));
+
+		myIndexedSearchParams =
+				myAppCtx.getBean(IndexedSearchParamExtractor.class).extractIndexedSearchParams(myObservation, null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		myAppCtx.close();
+	}
+
+	@Benchmark
+	public InMemoryMatchResult match() {
+		return myMatcher.match(myCriteria, myObservation, null, null);
+	}
+
+	@Benchmark
+	public InMemoryMatchResult matchPreExtracted() {
+		return myMatcher.match(myCriteria, myObservation, myIndexedSearchParams, null);
+	}
+}
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing and encoding with the {@link ca.uhn.fhir.parser.JsonParser}
+ * and {@link ca.uhn.fhir.parser.XmlParser}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param
+	public BenchmarkPayloads.PayloadType myPayloadType;
+
+	private FhirContext myFhirContext;
+	private IBaseResource myResource;
+	private String myJson;
+	private String myXml;
+
+	@Setup
+	public void setup() {
+		myFhirContext = FhirContext.forR4Cached();
+		myResource = BenchmarkPayloads.newPayload(myPayloadType);
+		myJson = myFhirContext.newJsonParser().encodeResourceToString(myResource);
+		myXml = myFhirContext.newXmlParser().encodeResourceToString(myResource);
+	}
+
+	@Benchmark
+	public IBaseResource parseJson() {
+		return newJsonParser().parseResource(myJson);
+	}
+
+	@Benchmark
+	public IBaseResource parseXml() {
+		return newXmlParser().parseResource(myXml);
+	}
+
+	@Benchmark
+	public String encodeJson() {
+		return newJsonParser().encodeResourceToString(myResource);
+	}
+
+	@Benchmark
+	public String encodeXml() {
+		return newXmlParser().encodeResourceToString(myResource);
+	}
+
+	private IParser newJsonParser() {
+		return myFhirContext.newJsonParser();
+	}
+
+	private IParser newXmlParser() {
+		return myFhirContext.newXmlParser();
+	}
+}
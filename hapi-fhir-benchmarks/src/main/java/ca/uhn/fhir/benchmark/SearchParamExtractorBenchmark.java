@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.jpa.searchparam.extractor.ISearchParamExtractor;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.searchparam.matcher.IndexedSearchParamExtractor;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks search parameter extraction by the
+ * {@link ca.uhn.fhir.jpa.searchparam.extractor.BaseSearchParamExtractor}, both for
+ * individual parameter types and for everything indexed when a resource is stored
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchParamExtractorBenchmark {
+
+	@Param
+	public BenchmarkPayloads.PayloadType myPayloadType;
+
+	private AnnotationConfigApplicationContext myAppCtx;
+	private ISearchParamExtractor mySearchParamExtractor;
+	private IndexedSearchParamExtractor myIndexedSearchParamExtractor;
+	private List<IBaseResource> myResources;
+
+	@Setup
+	public void setup() {
+		myAppCtx = new AnnotationConfigApplicationContext(BenchmarkSearchParamConfig.class);
+		mySearchParamExtractor = myAppCtx.getBean(ISearchParamExtractor.class);
+		myIndexedSearchParamExtractor = myAppCtx.getBean(IndexedSearchParamExtractor.class);
+
+		// Resources are indexed individually when a transaction bundle is processed
+		IBaseResource payload = BenchmarkPayloads.newPayload(myPayloadType);
+		if (payload instanceof Bundle) {
+			myResources = ((Bundle) payload)
+					.getEntry().stream()
+							.map(Bundle.BundleEntryComponent::getResource)
+							.collect(Collectors.toList());
+		} else {
+			myResources = List.of(payload);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		myAppCtx.close();
+	}
+
+	@Benchmark
+	public int extractTokens() {
+		int retVal = 0;
+		for (IBaseResource next : myResources) {
+			retVal += mySearchParamExtractor.extractSearchParamTokens(next).size();
+		}
+		return retVal;
+	}
+
+	@Benchmark
+	public int extractStrings() {
+		int retVal = 0;
+		for (IBaseResource next : myResources) {
+			retVal += mySearchParamExtractor.extractSearchParamStrings(next).size();
+		}
+		return retVal;
+	}
+
+	@Benchmark
+	public int extractDates() {
+		int retVal = 0;
+		for (IBaseResource next : myResources) {
+			retVal += mySearchParamExtractor.extractSearchParamDates(next).size();
+		}
+		return retVal;
+	}
+
+	@Benchmark
+	public int extractAll() {
+		int retVal = 0;
+		for (IBaseResource next : myResources) {
+			ResourceIndexedSearchParams params = myIndexedSearchParamExtractor.extractIndexedSearchParams(next, null);
+			retVal += params.myTokenParams.size() + params.myStringParams.size() + params.myDateParams.size();
+		}
+		return retVal;
+	}
+}
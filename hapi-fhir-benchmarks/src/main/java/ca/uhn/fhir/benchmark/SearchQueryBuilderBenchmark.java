@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.model.dialect.HapiFhirH2Dialect;
+import ca.uhn.fhir.jpa.model.dialect.HapiFhirOracleDialect;
+import ca.uhn.fhir.jpa.model.dialect.HapiFhirPostgresDialect;
+import ca.uhn.fhir.jpa.model.dialect.HapiFhirSQLServerDialect;
+import ca.uhn.fhir.jpa.model.entity.StorageSettings;
+import ca.uhn.fhir.jpa.search.builder.predicate.ResourceTablePredicateBuilder;
+import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
+import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryBuilder;
+import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
+import org.hibernate.dialect.Dialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks building and rendering the SQL for a search with the
+ * {@link SearchQueryBuilder}, for each of the commonly used database dialects
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchQueryBuilderBenchmark {
+
+	public enum DialectType {
+		H2(HapiFhirH2Dialect::new),
+		POSTGRES(HapiFhirPostgresDialect::new),
+		SQLSERVER(HapiFhirSQLServerDialect::new),
+		ORACLE(HapiFhirOracleDialect::new);
+
+		private final Supplier<Dialect> myDialectSupplier;
+
+		DialectType(Supplier<Dialect> theDialectSupplier) {
+			myDialectSupplier = theDialectSupplier;
+		}
+	}
+
+	@Param
+	public DialectType myDialectType;
+
+	@Param({"10", "500"})
+	public int myPidCount;
+
+	private AnnotationConfigApplicationContext myAppCtx;
+	private FhirContext myFhirContext;
+	private StorageSettings myStorageSettings;
+	private PartitionSettings myPartitionSettings;
+	private SqlObjectFactory mySqlObjectFactory;
+	private HibernatePropertiesProvider myDialectProvider;
+	private List<JpaPid> myPids;
+
+	@Setup
+	public void setup() {
+		myAppCtx = new AnnotationConfigApplicationContext(MyConfig.class);
+		mySqlObjectFactory = myAppCtx.getBean(SqlObjectFactory.class);
+		myFhirContext = FhirContext.forR4Cached();
+		myStorageSettings = new StorageSettings();
+		myPartitionSettings = new PartitionSettings();
+		myDialectProvider = new HibernatePropertiesProvider();
+		myDialectProvider.setDialectForUnitTest(myDialectType.myDialectSupplier.get());
+
+		myPids = new ArrayList<>(myPidCount);
+		for (long i = 0; i < myPidCount; i++) {
+			myPids.add(JpaPid.fromId(1000L + i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		myAppCtx.close();
+	}
+
+	@Benchmark
+	public GeneratedSql generateResourceIdSearch() {
+		SearchQueryBuilder builder = newBuilder();
+		builder.addResourceIdsPredicate(myPids);
+		return builder.generate(null, null);
+	}
+
+	@Benchmark
+	public GeneratedSql generateSortedPage() {
+		SearchQueryBuilder builder = newBuilder();
+		builder.addResourceIdsPredicate(myPids);
+		builder.addSortDate(builder.getOrCreateResourceTablePredicateBuilder().getColumnLastUpdated(), false);
+		return builder.generate(20, 10);
+	}
+
+	private SearchQueryBuilder newBuilder() {
+		return new SearchQueryBuilder(
+				myFhirContext,
+				myStorageSettings,
+				myPartitionSettings,
+				RequestPartitionId.allPartitions(),
+				"Patient",
+				mySqlObjectFactory,
+				myDialectProvider,
+				false);
+	}
+
+	@Configuration
+	public static class MyConfig {
+
+		@Bean
+		@Scope("prototype")
+		public ResourceTablePredicateBuilder resourceTablePredicateBuilder(SearchQueryBuilder theSearchQueryBuilder) {
+			return new ResourceTablePredicateBuilder(theSearchQueryBuilder);
+		}
+
+		@Bean
+		public SqlObjectFactory sqlObjectFactory() {
+			return new SqlObjectFactory();
+		}
+	}
+}
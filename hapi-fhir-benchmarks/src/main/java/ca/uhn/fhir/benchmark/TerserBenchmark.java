@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * HAPI FHIR - JMH Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Questionnaire;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link FhirTerser#getValues(IBase, String)} and
+ * {@link FhirTerser#getAllPopulatedChildElementsOfType(org.hl7.fhir.instance.model.api.IBaseResource, Class)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TerserBenchmark {
+
+	private FhirTerser myTerser;
+	private Bundle myBundle;
+	private Observation myObservation;
+	private Questionnaire myQuestionnaire;
+
+	@Setup
+	public void setup() {
+		myTerser = FhirContext.forR4Cached().newTerser();
+		myBundle = BenchmarkPayloads.newSyntheaBundle();
+		myObservation = BenchmarkPayloads.newLargeObservation();
+		myQuestionnaire = BenchmarkPayloads.newNestedQuestionnaire();
+	}
+
+	@Benchmark
+	public List<IBase> getValuesBundleEntryResource() {
+		return myTerser.getValues(myBundle, "Bundle.entry.resource");
+	}
+
+	@Benchmark
+	public List<IBase> getValuesObservationComponentCoding() {
+		return myTerser.getValues(myObservation, "Observation.component.code.coding.code");
+	}
+
+	@Benchmark
+	public List<IBase> getValuesQuestionnaireNestedItems() {
+		return myTerser.getValues(myQuestionnaire, "Questionnaire.item.item.item.item.item.item.linkId");
+	}
+
+	@Benchmark
+	public int getAllReferencesInBundle() {
+		int retVal = 0;
+		for (Bundle.BundleEntryComponent next : myBundle.getEntry()) {
+			retVal += myTerser.getAllPopulatedChildElementsOfType(next.getResource(), Reference.class)
+					.size();
+		}
+		return retVal;
+	}
+}
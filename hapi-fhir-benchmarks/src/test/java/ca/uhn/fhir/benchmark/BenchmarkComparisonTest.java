@@ -0,0 +1,82 @@
+package ca.uhn.fhir.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BenchmarkComparisonTest {
+
+	private final ObjectMapper myObjectMapper = new ObjectMapper();
+
+	@Test
+	public void testCompare_AverageTime() throws Exception {
+		JsonNode baseline = results("avgt", 100.0, 100.0);
+		JsonNode current = results("avgt", 105.0, 130.0);
+
+		List<BenchmarkComparison.Result> results = new BenchmarkComparison(10).compare(baseline, current);
+
+		assertThat(results).hasSize(2);
+		assertEquals("ca.uhn.fhir.benchmark.ParserBenchmark.parseJson [avgt, myPayloadType=LARGE_OBSERVATION]", results.get(0).getKey());
+		assertEquals(-5.0, results.get(0).getChangePercent(), 0.001);
+		assertFalse(results.get(0).isRegression());
+		assertEquals(-30.0, results.get(1).getChangePercent(), 0.001);
+		assertTrue(results.get(1).isRegression());
+	}
+
+	@Test
+	public void testCompare_Throughput() throws Exception {
+		JsonNode baseline = results("thrpt", 100.0, 100.0);
+		JsonNode current = results("thrpt", 130.0, 80.0);
+
+		List<BenchmarkComparison.Result> results = new BenchmarkComparison(10).compare(baseline, current);
+
+		assertEquals(30.0, results.get(0).getChangePercent(), 0.001);
+		assertFalse(results.get(0).isRegression());
+		assertEquals(-20.0, results.get(1).getChangePercent(), 0.001);
+		assertTrue(results.get(1).isRegression());
+	}
+
+	@Test
+	public void testCompare_BenchmarkOnlyInOneFile() throws Exception {
+		JsonNode baseline = results("avgt", 100.0, 100.0);
+		JsonNode current = myObjectMapper.readTree("[]");
+
+		assertThat(new BenchmarkComparison(10).compare(baseline, current)).isEmpty();
+	}
+
+	@Test
+	public void testReport() throws Exception {
+		List<BenchmarkComparison.Result> results =
+				new BenchmarkComparison(10).compare(results("avgt", 100.0, 100.0), results("avgt", 100.0, 200.0));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		boolean regressed = BenchmarkComparison.report(results, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+		assertTrue(regressed);
+		String report = bytes.toString(StandardCharsets.UTF_8);
+		assertThat(report).contains("REGRESSION");
+		assertThat(report).contains("myPayloadType=SYNTHEA_BUNDLE");
+	}
+
+	private JsonNode results(String theMode, double theLargeObservationScore, double theSyntheaBundleScore)
+			throws Exception {
+		return myObjectMapper.readTree("[" + result(theMode, "LARGE_OBSERVATION", theLargeObservationScore) + ","
+				+ result(theMode, "SYNTHEA_BUNDLE", theSyntheaBundleScore) + "]");
+	}
+
+	private static String result(String theMode, String thePayloadType, double theScore) {
+		return "{\"benchmark\":\"ca.uhn.fhir.benchmark.ParserBenchmark.parseJson\"," + "\"mode\":\"" + theMode
+				+ "\"," + "\"params\":{\"myPayloadType\":\"" + thePayloadType + "\"},"
+				+ "\"primaryMetric\":{\"score\":" + theScore + ",\"scoreUnit\":\"us/op\"}}";
+	}
+}
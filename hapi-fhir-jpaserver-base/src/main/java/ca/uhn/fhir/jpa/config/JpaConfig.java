@@ -20,6 +20,7 @@
 package ca.uhn.fhir.jpa.config;
 
 import ca.uhn.fhir.batch2.api.IJobCoordinator;
+import ca.uhn.fhir.batch2.api.IJobPartitionProvider;
 import ca.uhn.fhir.batch2.api.IJobPersistence;
 import ca.uhn.fhir.batch2.jobs.export.BulkDataExportProvider;
 import ca.uhn.fhir.batch2.jobs.expunge.DeleteExpungeJobSubmitterImpl;
@@ -43,6 +44,7 @@ import ca.uhn.fhir.jpa.bulk.export.svc.BulkDataExportJobSchedulingHelperImpl;
 import ca.uhn.fhir.jpa.bulk.export.svc.BulkExportHelperService;
 import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
 import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkDataImportSvcImpl;
+import ca.uhn.fhir.jpa.cache.IResourceChangeListenerRegistry;
 import ca.uhn.fhir.jpa.cache.IResourceVersionSvc;
 import ca.uhn.fhir.jpa.cache.ISearchParamIdentityCacheSvc;
 import ca.uhn.fhir.jpa.cache.ResourceVersionSvcDaoImpl;
@@ -55,13 +57,18 @@ import ca.uhn.fhir.jpa.dao.IJpaStorageResourceParser;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.dao.JpaStorageResourceParser;
 import ca.uhn.fhir.jpa.dao.MatchResourceUrlService;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCache;
 import ca.uhn.fhir.jpa.dao.ResourceHistoryCalculator;
 import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
 import ca.uhn.fhir.jpa.dao.TransactionProcessor;
+import ca.uhn.fhir.jpa.dao.ZstdResourceCompressionSvc;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamIdentityDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceLinkDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceModifiedDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceSearchUrlDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.dao.data.ITagDefinitionDao;
 import ca.uhn.fhir.jpa.dao.expunge.ExpungeEverythingService;
 import ca.uhn.fhir.jpa.dao.expunge.ExpungeOperation;
@@ -73,6 +80,7 @@ import ca.uhn.fhir.jpa.dao.expunge.ResourceTableFKProvider;
 import ca.uhn.fhir.jpa.dao.index.DaoResourceLinkResolver;
 import ca.uhn.fhir.jpa.dao.index.DaoSearchParamSynchronizer;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.dao.index.ResourceIdExistenceFilterSvc;
 import ca.uhn.fhir.jpa.dao.index.SearchParamWithInlineReferencesExtractor;
 import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.dao.validation.SearchParameterDaoValidator;
@@ -117,6 +125,7 @@ import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProviderFactory;
 import ca.uhn.fhir.jpa.search.PersistedJpaSearchFirstPageBundleProvider;
 import ca.uhn.fhir.jpa.search.ResourceSearchUrlSvc;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc;
 import ca.uhn.fhir.jpa.search.SearchStrategyFactory;
 import ca.uhn.fhir.jpa.search.SearchUrlJobMaintenanceSvcImpl;
 import ca.uhn.fhir.jpa.search.SynchronousSearchSvcImpl;
@@ -141,23 +150,27 @@ import ca.uhn.fhir.jpa.search.builder.predicate.UriPredicateBuilder;
 import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryBuilder;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryExecutor;
+import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryShapeCache;
 import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
 import ca.uhn.fhir.jpa.search.builder.tasks.SearchTask;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchResultCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
+import ca.uhn.fhir.jpa.search.cache.OffHeapSearchResultCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.elastic.IndexNamePrefixLayoutStrategy;
 import ca.uhn.fhir.jpa.search.reindex.IInstanceReindexService;
 import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
 import ca.uhn.fhir.jpa.search.reindex.InstanceReindexServiceImpl;
 import ca.uhn.fhir.jpa.search.reindex.ResourceReindexer;
 import ca.uhn.fhir.jpa.search.reindex.ResourceReindexingSvcImpl;
+import ca.uhn.fhir.jpa.search.reindex.UpliftedRefchainReindexSvc;
 import ca.uhn.fhir.jpa.search.warm.CacheWarmingSvcImpl;
 import ca.uhn.fhir.jpa.search.warm.ICacheWarmingSvc;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.config.SearchParamConfig;
 import ca.uhn.fhir.jpa.searchparam.extractor.IResourceLinkResolver;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamProvider;
 import ca.uhn.fhir.jpa.sp.ISearchParamPresenceSvc;
 import ca.uhn.fhir.jpa.sp.SearchParamIdentityCacheSvcImpl;
@@ -342,6 +355,16 @@ public class JpaConfig {
 		return new JpaStorageResourceParser();
 	}
 
+	@Bean
+	public ParsedResourceCache parsedResourceCache(JpaStorageSettings theStorageSettings) {
+		return new ParsedResourceCache(theStorageSettings);
+	}
+
+	@Bean
+	public SearchPagePrefetchSvc searchPagePrefetchSvc(JpaStorageSettings theStorageSettings) {
+		return new SearchPagePrefetchSvc(theStorageSettings);
+	}
+
 	@Bean
 	public TransactionProcessor transactionProcessor() {
 		return new TransactionProcessor();
@@ -396,7 +419,10 @@ public class JpaConfig {
 	}
 
 	@Bean
-	public ISearchResultCacheSvc searchResultCacheSvc() {
+	public ISearchResultCacheSvc searchResultCacheSvc(JpaStorageSettings theStorageSettings) {
+		if (theStorageSettings.getSearchResultOffHeapCacheMaxBytes() > 0) {
+			return new OffHeapSearchResultCacheSvcImpl(theStorageSettings);
+		}
 		return new DatabaseSearchResultCacheSvcImpl();
 	}
 
@@ -570,6 +596,14 @@ public class JpaConfig {
 		return new SqlObjectFactory();
 	}
 
+	@Bean
+	public SearchQueryShapeCache searchQueryShapeCache(
+			JpaStorageSettings theStorageSettings,
+			PartitionSettings thePartitionSettings,
+			ISearchParamRegistry theSearchParamRegistry) {
+		return new SearchQueryShapeCache(theStorageSettings, thePartitionSettings, theSearchParamRegistry);
+	}
+
 	@Bean
 	public HibernatePropertiesProvider HibernatePropertiesProvider() {
 		return new HibernatePropertiesProvider();
@@ -763,6 +797,30 @@ public class JpaConfig {
 		return new IdHelperService();
 	}
 
+	@Bean
+	public ResourceIdExistenceFilterSvc resourceIdExistenceFilterSvc(
+			@Autowired IResourceTableDao theResourceTableDao, @Autowired PlatformTransactionManager theTxManager) {
+		return new ResourceIdExistenceFilterSvc(myStorageSettings, theResourceTableDao, theTxManager);
+	}
+
+	@Bean
+	public UpliftedRefchainReindexSvc upliftedRefchainReindexSvc(
+			FhirContext theFhirContext,
+			ISearchParamRegistry theSearchParamRegistry,
+			SearchParamExtractorService theSearchParamExtractorService,
+			IJobCoordinator theJobCoordinator,
+			IJobPartitionProvider theJobPartitionProvider,
+			IResourceChangeListenerRegistry theResourceChangeListenerRegistry) {
+		return new UpliftedRefchainReindexSvc(
+				myStorageSettings,
+				theFhirContext,
+				theSearchParamRegistry,
+				theSearchParamExtractorService,
+				theJobCoordinator,
+				theJobPartitionProvider,
+				theResourceChangeListenerRegistry);
+	}
+
 	@Bean
 	public SearchStrategyFactory searchStrategyFactory(@Autowired(required = false) IFulltextSearchSvc theFulltextSvc) {
 		return new SearchStrategyFactory(myStorageSettings, theFulltextSvc);
@@ -934,10 +992,21 @@ public class JpaConfig {
 		return new MetaTagSorterAlphabetical();
 	}
 
+	@Bean
+	public ZstdResourceCompressionSvc zstdResourceCompressionSvc(
+			IResourceCompressionDictDao theResourceCompressionDictDao,
+			IResourceHistoryTableDao theResourceHistoryTableDao,
+			PlatformTransactionManager theTxManager) {
+		return new ZstdResourceCompressionSvc(theResourceCompressionDictDao, theResourceHistoryTableDao, theTxManager);
+	}
+
 	@Bean
 	public ResourceHistoryCalculator resourceHistoryCalculator(
-			FhirContext theFhirContext, HibernatePropertiesProvider theHibernatePropertiesProvider) {
-		return new ResourceHistoryCalculator(theFhirContext, theHibernatePropertiesProvider.isOracleDialect());
+			FhirContext theFhirContext,
+			HibernatePropertiesProvider theHibernatePropertiesProvider,
+			ZstdResourceCompressionSvc theZstdResourceCompressionSvc) {
+		return new ResourceHistoryCalculator(
+				theFhirContext, theHibernatePropertiesProvider.isOracleDialect(), theZstdResourceCompressionSvc);
 	}
 
 	@Bean
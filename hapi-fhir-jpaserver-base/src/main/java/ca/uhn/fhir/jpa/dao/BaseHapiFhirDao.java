@@ -67,6 +67,7 @@ import ca.uhn.fhir.jpa.model.search.ExtendedHSearchIndexData;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.jpa.partition.IPartitionLookupSvc;
+import ca.uhn.fhir.jpa.search.reindex.UpliftedRefchainReindexSvc;
 import ca.uhn.fhir.jpa.searchparam.extractor.LogicalReferenceHelper;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
@@ -82,6 +83,7 @@ import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.base.composite.BaseCodingDt;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.json.jackson.JacksonSmileStructure;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.InterceptorInvocationTimingEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
@@ -221,6 +223,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 	@Autowired
 	private DaoSearchParamSynchronizer myDaoSearchParamSynchronizer;
 
+	@Autowired
+	private UpliftedRefchainReindexSvc myUpliftedRefchainReindexSvc;
+
+	@Autowired
+	private ParsedResourceCache myParsedResourceCache;
+
 	private FhirContext myContext;
 	private ApplicationContext myApplicationContext;
 
@@ -1116,7 +1124,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 				// Synchronize search param indexes
 				AddRemoveCount searchParamAddRemoveCount =
 						myDaoSearchParamSynchronizer.synchronizeSearchParamsToDatabase(
-								newParams, entity, existingParams);
+								newParams, entity, existingParams, theTransactionDetails);
 
 				newParams.populateResourceTableParamCollections(entity);
 
@@ -1258,6 +1266,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			encodedResource = populateResourceIntoEntity(theTransactionDetails, theRequest, theResource, entity, true);
 			// For some reason the current version entity is not attached until after using updateEntity
 			historyEntity = ((ResourceTable) readEntity(theResourceId, theRequest)).getCurrentVersionEntity();
+			myParsedResourceCache.invalidate(historyEntity);
 
 			// Update version/lastUpdated so that interceptors see the correct version
 			myJpaStorageResourceParser.updateResourceMetadata(savedEntity, theResource);
@@ -1266,6 +1275,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 			if (!savedEntity.isUnchangedInCurrentOperation()) {
 				notifyInterceptors(theRequest, theResource, oldResource, theTransactionDetails, false);
+				myUpliftedRefchainReindexSvc.resourceUpdated(
+						theRequest, oldResource, theResource, theTransactionDetails);
 			}
 		} else {
 			historyEntity = (ResourceHistoryTable) theHistoryEntity;
@@ -1280,6 +1291,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			}
 
 			historyEntity.setDeleted(null);
+			myParsedResourceCache.invalidate(historyEntity);
 
 			// Check if resource is the same
 			ResourceEncodingEnum encoding = myStorageSettings.getResourceEncoding();
@@ -1287,7 +1299,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			getExcludedElements(historyEntity.getResourceType(), excludeElements, theResource.getMeta());
 			String encodedResourceString =
 					myResourceHistoryCalculator.encodeResource(theResource, encoding, excludeElements);
-			byte[] resourceBinary = ResourceHistoryCalculator.getResourceBinary(encoding, encodedResourceString);
+			byte[] resourceBinary = myResourceHistoryCalculator.getResourceBinary(
+					historyEntity.getResourceType(), encoding, encodedResourceString);
 			final boolean changed = myResourceHistoryCalculator.isResourceHistoryChanged(
 					historyEntity, resourceBinary, encodedResourceString);
 
@@ -1484,6 +1497,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		// Notify interceptors
 		if (!savedEntity.isUnchangedInCurrentOperation()) {
 			notifyInterceptors(theRequestDetails, theResource, theOldResource, theTransactionDetails, false);
+			myUpliftedRefchainReindexSvc.resourceUpdated(
+					theRequestDetails, theOldResource, theResource, theTransactionDetails);
 		}
 
 		Collection<? extends BaseTag> tagList = Collections.emptyList();
@@ -1748,6 +1763,13 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			case JSONC:
 				resourceText = GZipUtil.decompress(theResourceBytes);
 				break;
+			case SMILE:
+				resourceText = JacksonSmileStructure.toJson(theResourceBytes);
+				break;
+			case ZSTD:
+				// Decompression requires the dictionaries, which are not available statically
+				throw new DataFormatException(Msg.code(2788) + "Resource bodies using encoding " + theResourceEncoding
+						+ " must be decoded using " + ZstdResourceCompressionSvc.class.getSimpleName());
 			case DEL:
 			case ESR:
 				break;
@@ -57,7 +57,6 @@ import ca.uhn.fhir.jpa.model.entity.EntityIndexStatusEnum;
 import ca.uhn.fhir.jpa.model.entity.IBaseResourceEntity;
 import ca.uhn.fhir.jpa.model.entity.IdAndPartitionId;
 import ca.uhn.fhir.jpa.model.entity.PartitionablePartitionId;
-import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryProvenanceEntity;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
@@ -134,6 +133,8 @@ import jakarta.persistence.TypedQuery;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.function.TriFunction;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
@@ -156,8 +157,10 @@ import org.springframework.transaction.support.TransactionTemplate;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -1608,8 +1611,14 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		BaseHasResource<?> entity = readEntity(theId, true, theRequest, theRequestPartitionId);
 		validateResourceType(entity);
 
-		T retVal = myJpaStorageResourceParser.toResource(
-				myResourceType, (IBaseResourceEntity<JpaPid>) entity, null, false);
+		T retVal;
+		if (isPreEncodedReadResponseCandidate(theRequest)) {
+			retVal = myJpaStorageResourceParser.toResourceWithStoredJson(
+					myResourceType, (IBaseResourceEntity<JpaPid>) entity);
+		} else {
+			retVal = myJpaStorageResourceParser.toResource(
+					myResourceType, (IBaseResourceEntity<JpaPid>) entity, null, false);
+		}
 
 		if (!theDeletedOk) {
 			if (isDeleted(entity)) {
@@ -1626,6 +1635,25 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return retVal;
 	}
 
+	/**
+	 * Returns <code>true</code> if the stored JSON body should be attached to the resource returned
+	 * by a FHIR read or vread operation, so that the REST server can write it directly instead of
+	 * encoding the resource again. This is skipped if any interceptor may modify the resource.
+	 *
+	 * @see JpaStorageSettings#setPreEncodedReadResponsesEnabled(boolean)
+	 */
+	private boolean isPreEncodedReadResponseCandidate(RequestDetails theRequest) {
+		if (!myStorageSettings.isPreEncodedReadResponsesEnabled()
+				|| theRequest == null
+				|| (theRequest.getRestOperationType() != RestOperationTypeEnum.READ
+						&& theRequest.getRestOperationType() != RestOperationTypeEnum.VREAD)) {
+			return false;
+		}
+		IInterceptorBroadcaster compositeBroadcaster =
+				CompositeInterceptorBroadcaster.newCompositeBroadcaster(myInterceptorBroadcaster, theRequest);
+		return !compositeBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES);
+	}
+
 	@Nullable
 	private T invokeStoragePreShowResources(RequestDetails theRequest, T retVal) {
 		retVal = invokeStoragePreShowResources(myInterceptorBroadcaster, theRequest, retVal);
@@ -1772,14 +1800,8 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 	 * in order to avoid growing the number of resources in memory to be too big
 	 */
 	private void reindexOptimizeStorageHistoryEntity(ResourceTable entity, ResourceHistoryTable historyEntity) {
-		if (historyEntity.getEncoding() == ResourceEncodingEnum.JSONC
-				|| historyEntity.getEncoding() == ResourceEncodingEnum.JSON) {
-			byte[] resourceBytes = historyEntity.getResource();
-			if (resourceBytes != null) {
-				String resourceText = decodeResource(resourceBytes, historyEntity.getEncoding());
-				myResourceHistoryCalculator.conditionallyAlterHistoryEntity(entity, historyEntity, resourceText);
-			}
-		}
+		myResourceHistoryCalculator.conditionallyReencodeHistoryEntity(
+				entity, historyEntity, myStorageSettings.getResourceEncoding());
 		if (myStorageSettings.isAccessMetaSourceInformationFromProvenanceTable()) {
 			if (isBlank(historyEntity.getSourceUri()) && isBlank(historyEntity.getRequestId())) {
 				IdAndPartitionId id = historyEntity.getId().asIdAndPartitionId();
@@ -2109,6 +2131,10 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 				theParams.setLoadSynchronous(true);
 				if (offset != null) {
 					Validate.inclusiveBetween(0, Integer.MAX_VALUE, offset, "Offset must be a positive integer");
+					String[] pageToken = theRequest.getParameters().get(Constants.PARAM_PAGE_TOKEN);
+					if (pageToken != null && pageToken.length > 0 && isNotBlank(pageToken[0])) {
+						theParams.setPageToken(pageToken[0]);
+					}
 				}
 				theParams.setOffset(offset);
 			}
@@ -2204,6 +2230,38 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return searchForTransformedIds(theParams, theRequest, this::pidsToResource);
 	}
 
+	/**
+	 * Streams the matching resources. PIDs are read from the open search cursor and the
+	 * corresponding resources are loaded and parsed one chunk at a time, so the full result set
+	 * is never held in memory. If the surrounding transaction is read-only, the entities loaded
+	 * for each chunk are also detached from the persistence context once the chunk has been
+	 * parsed, so that they (and their raw resource bodies) can be garbage collected while the
+	 * Stream is being consumed. Entities which were already managed when the Stream was created
+	 * are left attached, since the caller may still be using them.
+	 */
+	@Override
+	public Stream<T> searchForResourceStream(SearchParameterMap theParams, RequestDetails theRequest) {
+
+		// the Stream is useless outside the bound connection time, so require our caller to have a session.
+		HapiTransactionService.requireTransaction();
+
+		RequestPartitionId requestPartitionId =
+				myRequestPartitionHelperService.determineReadPartitionForRequestForSearchType(
+						theRequest, myResourceName, theParams);
+
+		ISearchBuilder<JpaPid> builder = mySearchBuilderFactory.newSearchBuilder(getResourceName(), getResourceType());
+
+		String uuid = UUID.randomUUID().toString();
+
+		SearchRuntimeDetails searchRuntimeDetails = new SearchRuntimeDetails(theRequest, uuid);
+		return myTransactionService.withRequest(theRequest).search(() -> {
+			Stream<JpaPid> pidStream =
+					builder.createQueryStream(theParams, searchRuntimeDetails, theRequest, requestPartitionId);
+			boolean detachBetweenChunks = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+			return pidsToResource(theRequest, pidStream, requestPartitionId, detachBetweenChunks);
+		});
+	}
+
 	@Override
 	public List<IIdType> searchForResourceIds(SearchParameterMap theParams, RequestDetails theRequest) {
 		return searchForTransformedIds(theParams, theRequest, this::pidsToIds);
@@ -2241,12 +2299,41 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 	@Nonnull
 	private Stream<T> pidsToResource(
 			RequestDetails theRequest, Stream<JpaPid> thePidStream, RequestPartitionId theRequestPartitionId) {
+		return pidsToResource(theRequest, thePidStream, theRequestPartitionId, false);
+	}
+
+	/**
+	 * Fetch the resources in chunks and apply PreAccess/PreShow interceptors.
+	 *
+	 * @param theDetachLoadedEntitiesBetweenChunks If true, the entities loaded for each chunk are detached
+	 *                                             once the chunk has been loaded, unless they were already
+	 *                                             managed when the Stream was created. This must only be
+	 *                                             used when the current transaction can not have pending
+	 *                                             changes.
+	 */
+	@Nonnull
+	private Stream<T> pidsToResource(
+			RequestDetails theRequest,
+			Stream<JpaPid> thePidStream,
+			RequestPartitionId theRequestPartitionId,
+			boolean theDetachLoadedEntitiesBetweenChunks) {
 		ISearchBuilder<JpaPid> searchBuilder =
 				mySearchBuilderFactory.newSearchBuilder(getResourceName(), getResourceType());
+		Set<Object> initiallyManagedEntities =
+				theDetachLoadedEntitiesBetweenChunks ? getManagedEntities() : Collections.emptySet();
 		@SuppressWarnings("unchecked")
 		Stream<T> resourceStream = (Stream<T>) new QueryChunker<>()
 				.chunk(thePidStream, SearchBuilder.getMaximumPageSize())
-				.flatMap(pidChunk -> searchBuilder.loadResourcesByPid(pidChunk, theRequest).stream());
+				.flatMap(pidChunk -> {
+					if (!theDetachLoadedEntitiesBetweenChunks) {
+						return searchBuilder.loadResourcesByPid(pidChunk, theRequest).stream();
+					}
+					List<Object> loadedEntities = new ArrayList<>();
+					List<IBaseResource> resources =
+							searchBuilder.loadResourcesByPid(pidChunk, theRequest, loadedEntities::add);
+					detachEntitiesExcept(loadedEntities, initiallyManagedEntities);
+					return resources.stream();
+				});
 		// apply interceptors
 		return resourceStream
 				.flatMap(resource -> resource == null
@@ -2255,6 +2342,24 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 				.flatMap(resource -> Optional.ofNullable(invokeStoragePreShowResources(theRequest, resource)).stream());
 	}
 
+	private Set<Object> getManagedEntities() {
+		SessionImplementor session = myEntityManager.unwrap(SessionImplementor.class);
+		Set<Object> retVal = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Map.Entry<Object, EntityEntry> next :
+				session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+			retVal.add(next.getKey());
+		}
+		return retVal;
+	}
+
+	private void detachEntitiesExcept(List<Object> theEntities, Set<Object> theEntitiesToKeep) {
+		for (Object next : theEntities) {
+			if (!theEntitiesToKeep.contains(next) && myEntityManager.contains(next)) {
+				myEntityManager.detach(next);
+			}
+		}
+	}
+
 	/**
 	 * get the Ids from the ResourceTable entities in chunks.
 	 */
@@ -22,10 +22,13 @@ package ca.uhn.fhir.jpa.dao;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.entity.BaseTag;
 import ca.uhn.fhir.jpa.model.entity.IBaseResourceEntity;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import jakarta.annotation.Nullable;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface IJpaStorageResourceParser extends IStorageResourceParser<JpaPid> {
 
@@ -39,6 +42,23 @@ public interface IJpaStorageResourceParser extends IStorageResourceParser<JpaPid
 			Collection<BaseTag> theTagList,
 			boolean theForHistoryOperation);
 
+	/**
+	 * Convert a list of stored resource versions into FHIR resource model instances, as
+	 * {@link #toResource(Class, IBaseResourceEntity, Collection, boolean)} does for each one. The resource
+	 * bodies may be parsed concurrently (see
+	 * {@link ca.uhn.fhir.jpa.api.config.JpaStorageSettings#setSearchResultParseThreadCount(int)}), but any
+	 * database access happens on the calling thread.
+	 *
+	 * @param theTagMap The tags for each resource, keyed by resource PID
+	 * @return A list containing the resource for each entity, in the same order as the entities. An element
+	 * 		is <code>null</code> if the corresponding entity could not be converted.
+	 * @since 8.4.0
+	 */
+	List<IBaseResource> toResources(
+			List<ResourceHistoryTable> theEntities,
+			Map<JpaPid, Collection<BaseTag>> theTagMap,
+			boolean theForHistoryOperation);
+
 	/**
 	 * Populate the metadata (Resource.meta.*) from a storage entity and other related
 	 * objects pulled from the database
@@ -58,4 +78,16 @@ public interface IJpaStorageResourceParser extends IStorageResourceParser<JpaPid
 	 * @param theResourceTarget The target
 	 */
 	void updateResourceMetadata(IBaseResourceEntity<?> theEntitySource, IBaseResource theResourceTarget);
+
+	/**
+	 * Converts a storage entity into a resource model object in the same way as
+	 * {@link #toResource(Class, IBaseResourceEntity, Collection, boolean)}. If the resource
+	 * body is stored as JSON text, the text is also attached to the returned resource using
+	 * the {@link ca.uhn.fhir.rest.api.Constants#RESOURCE_PRE_ENCODED_JSON} user data key.
+	 * The body is only decoded once. The stored text does not contain the resource ID or any
+	 * metadata which is stored separately.
+	 *
+	 * @since 8.4.0
+	 */
+	<R extends IBaseResource> R toResourceWithStoredJson(Class<R> theResourceType, IBaseResourceEntity<?> theEntity);
 }
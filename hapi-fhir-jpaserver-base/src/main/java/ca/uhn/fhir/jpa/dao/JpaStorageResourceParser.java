@@ -53,12 +53,14 @@ import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.model.valueset.BundleEntryTransactionMethodEnum;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.parser.LenientErrorHandler;
+import ca.uhn.fhir.parser.json.jackson.JacksonSmileStructure;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.util.IMetaTagSorter;
 import ca.uhn.fhir.util.MetaUtil;
+import ca.uhn.fhir.util.ThreadPoolUtil;
 import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IAnyResource;
@@ -69,12 +71,19 @@ import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static ca.uhn.fhir.jpa.dao.BaseHapiFhirDao.decodeResource;
 import static java.util.Objects.nonNull;
@@ -85,6 +94,11 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 	public static final LenientErrorHandler LENIENT_ERROR_HANDLER = new LenientErrorHandler(false).disableAllErrors();
 	private static final Logger ourLog = LoggerFactory.getLogger(JpaStorageResourceParser.class);
 
+	/**
+	 * Below this many resources, handing bodies off to other threads costs more than it saves
+	 */
+	private static final int MIN_RESOURCES_TO_PARSE_CONCURRENTLY = 10;
+
 	@Autowired
 	private FhirContext myFhirContext;
 
@@ -109,6 +123,15 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 	@Autowired
 	IMetaTagSorter myMetaTagSorter;
 
+	@Autowired
+	private ZstdResourceCompressionSvc myZstdResourceCompressionSvc;
+
+	@Autowired
+	private ParsedResourceCache myParsedResourceCache;
+
+	private volatile ThreadPoolTaskExecutor myParseExecutor;
+	private volatile int myParseExecutorThreadCount;
+
 	@Override
 	public IBaseResource toResource(IBasePersistedResource theEntity, boolean theForHistoryOperation) {
 		RuntimeResourceDefinition type = myFhirContext.getResourceDefinition(theEntity.getResourceType());
@@ -122,6 +145,124 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 			IBaseResourceEntity<?> theEntity,
 			Collection<BaseTag> theTagList,
 			boolean theForHistoryOperation) {
+		return toResource(theResourceType, theEntity, theTagList, theForHistoryOperation, null);
+	}
+
+	@Override
+	public List<IBaseResource> toResources(
+			List<ResourceHistoryTable> theEntities,
+			Map<JpaPid, Collection<BaseTag>> theTagMap,
+			boolean theForHistoryOperation) {
+		List<IBaseResource> retVal = new ArrayList<>(theEntities.size());
+
+		Executor executor = getParseExecutor(theEntities.size());
+		if (executor == null) {
+			for (ResourceHistoryTable next : theEntities) {
+				Class<? extends IBaseResource> resourceType = getResourceType(next);
+				retVal.add(toResource(
+						resourceType, next, theTagMap.get(next.getResourceId()), theForHistoryOperation, null));
+			}
+			return retVal;
+		}
+
+		/*
+		 * Decode and parse the bodies on the executor. Only the body and a few simple fields
+		 * are handed to the other threads, since the entities belong to the persistence
+		 * context of this thread. Everything else (including any further database access,
+		 * such as loading compression dictionaries) happens on this thread.
+		 */
+		List<CompletableFuture<IBaseResource>> parsedBodies = new ArrayList<>(theEntities.size());
+		for (ResourceHistoryTable next : theEntities) {
+			ResourceEncodingEnum encoding = next.getEncoding();
+			if (next.getDeleted() != null
+					|| encoding == ResourceEncodingEnum.ESR
+					|| encoding == ResourceEncodingEnum.DEL
+					|| myParsedResourceCache.isEnabled(next.getResourceType())) {
+				parsedBodies.add(null);
+				continue;
+			}
+
+			Class<? extends IBaseResource> resourceType =
+					determineTypeToParse(getResourceType(next), theTagMap.get(next.getResourceId()));
+			FhirContext context = getContext(next.getFhirVersion());
+			JpaPid resourceId = next.getResourceId();
+			byte[] bytes = next.getResource();
+			String text = next.getResourceTextVc();
+			if (encoding == ResourceEncodingEnum.ZSTD && text == null && bytes != null) {
+				myZstdResourceCompressionSvc.prepareForDecompression(bytes);
+			}
+			parsedBodies.add(CompletableFuture.supplyAsync(
+					() -> parseBody(context, resourceId, encoding, text, bytes, resourceType), executor));
+		}
+
+		for (int i = 0; i < theEntities.size(); i++) {
+			ResourceHistoryTable next = theEntities.get(i);
+			Class<? extends IBaseResource> resourceType = getResourceType(next);
+			retVal.add(toResource(
+					resourceType,
+					next,
+					theTagMap.get(next.getResourceId()),
+					theForHistoryOperation,
+					parsedBodies.get(i)));
+		}
+		return retVal;
+	}
+
+	private Class<? extends IBaseResource> getResourceType(ResourceHistoryTable theEntity) {
+		return myFhirContext.getResourceDefinition(theEntity.getResourceType()).getImplementingClass();
+	}
+
+	/**
+	 * Returns the executor to use for parsing the given number of resources concurrently, or
+	 * <code>null</code> if they should be parsed by the calling thread
+	 */
+	@Nullable
+	private Executor getParseExecutor(int theResourceCount) {
+		int threadCount = myStorageSettings.getSearchResultParseThreadCount();
+		if (threadCount <= 1 || theResourceCount < MIN_RESOURCES_TO_PARSE_CONCURRENTLY) {
+			return null;
+		}
+
+		ThreadPoolTaskExecutor retVal = myParseExecutor;
+		if (retVal == null || myParseExecutorThreadCount != threadCount) {
+			synchronized (this) {
+				retVal = myParseExecutor;
+				if (retVal == null || myParseExecutorThreadCount != threadCount) {
+					if (retVal != null) {
+						retVal.shutdown();
+					}
+					// When the queue is full the calling thread parses the resource itself
+					retVal = ThreadPoolUtil.newThreadPool(
+							threadCount,
+							threadCount,
+							"resource-parse-",
+							threadCount * 10,
+							new ThreadPoolExecutor.CallerRunsPolicy());
+					myParseExecutor = retVal;
+					myParseExecutorThreadCount = threadCount;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	@PreDestroy
+	public synchronized void preDestroy() {
+		if (myParseExecutor != null) {
+			myParseExecutor.shutdown();
+			myParseExecutor = null;
+		}
+	}
+
+	/**
+	 * @param theParsedBody If not <code>null</code>, the already parsed (but otherwise unpopulated) resource body
+	 */
+	private <R extends IBaseResource> R toResource(
+			Class<R> theResourceType,
+			IBaseResourceEntity<?> theEntity,
+			Collection<BaseTag> theTagList,
+			boolean theForHistoryOperation,
+			@Nullable CompletableFuture<IBaseResource> theParsedBody) {
 
 		// 1. get resource, it's encoding and the tags if any
 		byte[] resourceBytes;
@@ -131,9 +272,11 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 		long version;
 		String provenanceSourceUri = null;
 		String provenanceRequestId = null;
+		ResourceHistoryTable storedVersion;
 
 		if (theEntity instanceof ResourceHistoryTable) {
 			ResourceHistoryTable history = (ResourceHistoryTable) theEntity;
+			storedVersion = history;
 			resourceBytes = history.getResource();
 			resourceText = history.getResourceTextVc();
 			resourceEncoding = history.getEncoding();
@@ -196,6 +339,7 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 				}
 			}
 
+			storedVersion = history;
 			resourceBytes = history.getResource();
 			resourceEncoding = history.getEncoding();
 			resourceText = history.getResourceTextVc();
@@ -232,30 +376,103 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 			return null;
 		}
 
-		// 2. get The text
-		String decodedResourceText = decodedResourceText(resourceBytes, resourceText, resourceEncoding);
-
-		// 3. Use the appropriate custom type if one is specified in the context
+		// 2. Use the appropriate custom type if one is specified in the context
 		Class<R> resourceType = determineTypeToParse(theResourceType, tagList);
 
-		// 4. parse the text to FHIR
-		R retVal = parseResource(theEntity, resourceEncoding, decodedResourceText, resourceType);
+		// 3. decode and parse the text to FHIR, or copy it from the cache
+		R retVal;
+		IBaseResource parsedBody = getParsedBody(theParsedBody);
+		if (resourceType.isInstance(parsedBody)) {
+			retVal = resourceType.cast(parsedBody);
+		} else if (storedVersion != null
+				&& resourceEncoding != ResourceEncodingEnum.ESR
+				&& resourceEncoding != ResourceEncodingEnum.DEL
+				&& myParsedResourceCache.isEnabled(theEntity.getResourceType())) {
+			final byte[] bytes = resourceBytes;
+			final String text = resourceText;
+			final ResourceEncodingEnum encoding = resourceEncoding;
+			retVal = myParsedResourceCache.get(
+					storedVersion,
+					resourceType,
+					() -> decodeAndParseResource(theEntity, encoding, text, bytes, resourceType));
+		} else {
+			retVal = decodeAndParseResource(theEntity, resourceEncoding, resourceText, resourceBytes, resourceType);
+		}
 
-		// 5. fill MetaData
+		// 4. fill MetaData
 		retVal = populateResourceMetadata(theEntity, theForHistoryOperation, tagList, version, retVal);
 
-		// 6. Handle source (provenance)
+		// 5. Handle source (provenance)
 		MetaUtil.populateResourceSource(myFhirContext, provenanceSourceUri, provenanceRequestId, retVal);
 
-		// 7. Add partition information
+		// 6. Add partition information
 		populateResourcePartitionInformation(theEntity, retVal);
 
-		// 8. sort tags, security labels and profiles
+		// 7. sort tags, security labels and profiles
 		myMetaTagSorter.sort(retVal.getMeta());
 
 		return retVal;
 	}
 
+	/**
+	 * Returns the result of parsing a resource body on another thread, or <code>null</code> if
+	 * parsing it failed, in which case it is parsed again by the caller so that any failure is
+	 * reported in the usual way.
+	 */
+	@Nullable
+	private static IBaseResource getParsedBody(@Nullable CompletableFuture<IBaseResource> theParsedBody) {
+		if (theParsedBody == null) {
+			return null;
+		}
+		try {
+			return theParsedBody.join();
+		} catch (CompletionException | CancellationException e) {
+			ourLog.debug("Failed to parse resource body concurrently: {}", e.toString());
+			return null;
+		}
+	}
+
+	private <R extends IBaseResource> R parseBody(
+			FhirContext theContext,
+			JpaPid theResourceId,
+			ResourceEncodingEnum theResourceEncoding,
+			@Nullable String theResourceText,
+			@Nullable byte[] theResourceBytes,
+			Class<R> theResourceType) {
+		TolerantJsonParser parser = new TolerantJsonParser(theContext, LENIENT_ERROR_HANDLER, theResourceId);
+		String decodedResourceText = decodeResourceTextOrNull(theResourceBytes, theResourceText, theResourceEncoding);
+		return parseDecodedBody(parser, theResourceEncoding, decodedResourceText, theResourceBytes, theResourceType);
+	}
+
+	/**
+	 * Returns the decoded text of a resource body, or <code>null</code> if the body uses a
+	 * binary encoding which is parsed directly
+	 */
+	@Nullable
+	private String decodeResourceTextOrNull(
+			@Nullable byte[] theResourceBytes,
+			@Nullable String theResourceText,
+			ResourceEncodingEnum theResourceEncoding) {
+		if (theResourceEncoding == ResourceEncodingEnum.SMILE && theResourceText == null) {
+			return null;
+		}
+		return decodedResourceText(theResourceBytes, theResourceText, theResourceEncoding);
+	}
+
+	private static <R extends IBaseResource> R parseDecodedBody(
+			TolerantJsonParser theParser,
+			ResourceEncodingEnum theResourceEncoding,
+			@Nullable String theDecodedResourceText,
+			@Nullable byte[] theResourceBytes,
+			Class<R> theResourceType) {
+		if (theDecodedResourceText == null && theResourceEncoding == ResourceEncodingEnum.SMILE) {
+			JacksonSmileStructure smileStructure = new JacksonSmileStructure();
+			smileStructure.load(theResourceBytes);
+			return theParser.parseResource(theResourceType, smileStructure);
+		}
+		return theParser.parseResource(theResourceType, theDecodedResourceText);
+	}
+
 	private <R extends IBaseResource> void populateResourcePartitionInformation(
 			IBaseResourceEntity theEntity, R retVal) {
 		if (myPartitionSettings.isPartitioningEnabled()) {
@@ -270,11 +487,22 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 		}
 	}
 
+	private <R extends IBaseResource> R decodeAndParseResource(
+			IBaseResourceEntity<?> theEntity,
+			ResourceEncodingEnum theResourceEncoding,
+			@Nullable String theResourceText,
+			@Nullable byte[] theResourceBytes,
+			Class<R> theResourceType) {
+		String decodedResourceText = decodeResourceTextOrNull(theResourceBytes, theResourceText, theResourceEncoding);
+		return parseResource(theEntity, theResourceEncoding, decodedResourceText, theResourceBytes, theResourceType);
+	}
+
 	@SuppressWarnings("unchecked")
 	private <R extends IBaseResource> R parseResource(
 			IBaseResourceEntity<?> theEntity,
 			ResourceEncodingEnum theResourceEncoding,
-			String theDecodedResourceText,
+			@Nullable String theDecodedResourceText,
+			@Nullable byte[] theResourceBytes,
 			Class<R> theResourceType) {
 		R retVal;
 		if (theResourceEncoding == ResourceEncodingEnum.ESR) {
@@ -291,11 +519,12 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 
 		} else if (theResourceEncoding != ResourceEncodingEnum.DEL) {
 
-			IParser parser = new TolerantJsonParser(
+			TolerantJsonParser parser = new TolerantJsonParser(
 					getContext(theEntity.getFhirVersion()), LENIENT_ERROR_HANDLER, theEntity.getResourceId());
 
 			try {
-				retVal = parser.parseResource(theResourceType, theDecodedResourceText);
+				retVal = parseDecodedBody(
+						parser, theResourceEncoding, theDecodedResourceText, theResourceBytes, theResourceType);
 			} catch (Exception e) {
 				StringBuilder b = new StringBuilder();
 				b.append("Failed to parse database resource[");
@@ -565,11 +794,78 @@ public class JpaStorageResourceParser implements IJpaStorageResourceParser {
 		return FhirContext.forCached(theVersion);
 	}
 
-	private static String decodedResourceText(
+	@Override
+	public <R extends IBaseResource> R toResourceWithStoredJson(
+			Class<R> theResourceType, IBaseResourceEntity<?> theEntity) {
+		String storedJson = getStoredJsonText(theEntity);
+		if (storedJson == null) {
+			return toResource(theResourceType, theEntity, null, false);
+		}
+
+		IBaseResource parsedBody =
+				parseResource(theEntity, ResourceEncodingEnum.JSON, storedJson, null, theResourceType);
+		R retVal = toResource(theResourceType, theEntity, null, false, CompletableFuture.completedFuture(parsedBody));
+		if (retVal != null) {
+			retVal.setUserData(Constants.RESOURCE_PRE_ENCODED_JSON, storedJson);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the stored JSON text for the version of the resource represented by the given
+	 * entity, or <code>null</code> if it is not stored as JSON (e.g. because it is deleted,
+	 * stored externally, or stored using a binary encoding).
+	 */
+	@Nullable
+	private String getStoredJsonText(IBaseResourceEntity<?> theEntity) {
+		if (theEntity.getFhirVersion() != myFhirContext.getVersion().getVersion()) {
+			return null;
+		}
+
+		ResourceHistoryTable history;
+		if (theEntity instanceof ResourceHistoryTable) {
+			history = (ResourceHistoryTable) theEntity;
+		} else if (theEntity instanceof ResourceTable) {
+			ResourceTable resource = (ResourceTable) theEntity;
+			history = resource.getCurrentVersionEntity();
+			if (history == null) {
+				history = myResourceHistoryTableDao.findForIdAndVersion(
+						resource.getResourceId().toFk(), resource.getVersion());
+				resource.setCurrentVersionEntity(history);
+			}
+			if (history == null || history.getVersion() != theEntity.getVersion()) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+
+		ResourceEncodingEnum encoding = history.getEncoding();
+		if (encoding == null) {
+			return null;
+		}
+		switch (encoding) {
+			case ESR:
+			case DEL:
+				return null;
+			case SMILE:
+				if (history.getResourceTextVc() == null) {
+					return null;
+				}
+				break;
+			default:
+				break;
+		}
+		return decodedResourceText(history.getResource(), history.getResourceTextVc(), encoding);
+	}
+
+	private String decodedResourceText(
 			byte[] resourceBytes, String resourceText, ResourceEncodingEnum resourceEncoding) {
 		String decodedResourceText;
 		if (resourceText != null) {
 			decodedResourceText = resourceText;
+		} else if (resourceEncoding == ResourceEncodingEnum.ZSTD) {
+			decodedResourceText = myZstdResourceCompressionSvc.decompress(resourceBytes);
 		} else {
 			decodedResourceText = decodeResource(resourceBytes, resourceEncoding);
 		}
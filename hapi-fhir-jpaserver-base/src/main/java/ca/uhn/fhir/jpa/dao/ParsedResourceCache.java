@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import ca.uhn.fhir.util.TerserUtil;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches parsed resource bodies, keyed by resource PID and version, so that frequently read
+ * resources do not need to be decoded and parsed each time they are loaded. The cache is
+ * enabled using {@link JpaStorageSettings#setParsedResourceCacheSize(int)}.
+ * <p>
+ * The cached resources are never handed out directly. Callers always receive a copy, which they
+ * are free to modify. Only the resource body is cached; metadata which is stored outside of the
+ * resource body (tags, source, partition, etc.) is populated on the copy by the caller.
+ * </p>
+ * <p>
+ * The {@link JpaStorageSettings#isUpdateWithHistoryRewriteEnabled() history rewrite} feature can
+ * replace the body of an existing version, so the DAO calls {@link #invalidate(ResourceHistoryTable)}
+ * when it does. The key also includes the last updated time of the version, which a rewrite of a
+ * version other than the current one changes, so other servers in a cluster don't keep serving the
+ * old body of such versions.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class ParsedResourceCache {
+
+	private final JpaStorageSettings myStorageSettings;
+	private final AtomicLong myHitCount = new AtomicLong();
+	private final AtomicLong myMissCount = new AtomicLong();
+	private volatile Cache<CacheKey, IBaseResource> myCache;
+	private volatile int myCacheSize;
+
+	/**
+	 * Constructor
+	 */
+	public ParsedResourceCache(JpaStorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+	}
+
+	/**
+	 * Returns <code>true</code> if resources of the given type should be cached
+	 */
+	public boolean isEnabled(String theResourceType) {
+		if (myStorageSettings.getParsedResourceCacheSize() <= 0) {
+			return false;
+		}
+		Set<String> resourceTypes = myStorageSettings.getParsedResourceCacheResourceTypes();
+		return resourceTypes.isEmpty() || resourceTypes.contains(theResourceType);
+	}
+
+	/**
+	 * Returns a copy of the cached resource body for the given version, using the
+	 * supplier to parse it if it is not already cached.
+	 *
+	 * @param theVersion      The stored version
+	 * @param theResourceType The type to parse the resource as
+	 * @param theParser       Parses the resource body, may return <code>null</code> in which case nothing is cached
+	 */
+	@Nullable
+	public <R extends IBaseResource> R get(
+			ResourceHistoryTable theVersion, Class<R> theResourceType, Supplier<R> theParser) {
+		Cache<CacheKey, IBaseResource> cache = getCache();
+		CacheKey key = new CacheKey(theVersion);
+
+		IBaseResource cached = cache.getIfPresent(key);
+		if (theResourceType.isInstance(cached)) {
+			myHitCount.incrementAndGet();
+			return copy(theResourceType.cast(cached));
+		}
+
+		myMissCount.incrementAndGet();
+		R parsed = theParser.get();
+		if (parsed == null) {
+			return null;
+		}
+		cache.put(key, parsed);
+		return copy(parsed);
+	}
+
+	private <R extends IBaseResource> R copy(R theResource) {
+		return TerserUtil.clone(FhirContext.forCached(theResource.getStructureFhirVersionEnum()), theResource);
+	}
+
+	@Nonnull
+	private Cache<CacheKey, IBaseResource> getCache() {
+		int size = myStorageSettings.getParsedResourceCacheSize();
+		Cache<CacheKey, IBaseResource> retVal = myCache;
+		if (retVal == null || myCacheSize != size) {
+			synchronized (this) {
+				retVal = myCache;
+				if (retVal == null || myCacheSize != size) {
+					retVal = CacheFactory.buildEternal(Math.min(size, 1000), size);
+					myCache = retVal;
+					myCacheSize = size;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Removes the cached resource body for the given version, if any. If a transaction is active,
+	 * the entry is removed again once it commits, since a concurrent read may cache the old body
+	 * in the meantime.
+	 */
+	public void invalidate(ResourceHistoryTable theVersion) {
+		Cache<CacheKey, IBaseResource> cache = myCache;
+		if (cache == null) {
+			return;
+		}
+		CacheKey key = new CacheKey(theVersion);
+		cache.invalidate(key);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					cache.invalidate(key);
+				}
+			});
+		}
+	}
+
+	public void invalidateAll() {
+		Cache<CacheKey, IBaseResource> cache = myCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Returns the number of times a resource was served from the cache
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	/**
+	 * Returns the number of times a resource needed to be parsed because it was not in the cache
+	 */
+	public long getMissCount() {
+		return myMissCount.get();
+	}
+
+	/**
+	 * Returns the approximate number of resources currently in the cache
+	 */
+	public long getEstimatedSize() {
+		Cache<CacheKey, IBaseResource> cache = myCache;
+		return cache != null ? cache.estimatedSize() : 0;
+	}
+
+	private static class CacheKey {
+
+		private final long myResourceId;
+		private final long myVersion;
+		private final long myUpdated;
+		private final int myHashCode;
+
+		private CacheKey(ResourceHistoryTable theVersion) {
+			myResourceId = theVersion.getResourceId().getId();
+			myVersion = theVersion.getVersion();
+			Date updated = theVersion.getUpdatedDate();
+			myUpdated = updated != null ? updated.getTime() : 0L;
+			myHashCode = Objects.hash(myResourceId, myVersion, myUpdated);
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey that = (CacheKey) theO;
+			return myResourceId == that.myResourceId && myVersion == that.myVersion && myUpdated == that.myUpdated;
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+}
@@ -24,12 +24,14 @@ import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.json.jackson.JacksonSmileStructure;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import java.nio.charset.StandardCharsets;
@@ -48,9 +50,23 @@ public class ResourceHistoryCalculator {
 	private final FhirContext myFhirContext;
 	private final boolean myIsOracleDialect;
 
+	@Nullable
+	private final ZstdResourceCompressionSvc myZstdResourceCompressionSvc;
+
 	public ResourceHistoryCalculator(FhirContext theFhirContext, boolean theIsOracleDialect) {
+		this(theFhirContext, theIsOracleDialect, null);
+	}
+
+	/**
+	 * @param theZstdResourceCompressionSvc Required in order to use {@link ResourceEncodingEnum#ZSTD}
+	 */
+	public ResourceHistoryCalculator(
+			FhirContext theFhirContext,
+			boolean theIsOracleDialect,
+			@Nullable ZstdResourceCompressionSvc theZstdResourceCompressionSvc) {
 		myFhirContext = theFhirContext;
 		myIsOracleDialect = theIsOracleDialect;
+		myZstdResourceCompressionSvc = theZstdResourceCompressionSvc;
 	}
 
 	ResourceHistoryState calculateResourceHistoryState(
@@ -61,9 +77,18 @@ public class ResourceHistoryCalculator {
 		final ResourceEncodingEnum encoding;
 		final HashCode hashCode;
 
-		if (myIsOracleDialect) {
+		if (theEncoding == ResourceEncodingEnum.ZSTD) {
+			// The compressed form depends on the current dictionary, so the hash is calculated
+			// from the uncompressed text in order to remain stable when a new dictionary is trained
 			resourceText = null;
-			resourceBinary = getResourceBinary(theEncoding, encodedResource);
+			resourceBinary =
+					getResourceBinary(myFhirContext.getResourceType(theResource), theEncoding, encodedResource);
+			encoding = theEncoding;
+			hashCode = SHA_256.hashUnencodedChars(encodedResource);
+		} else if (myIsOracleDialect || theEncoding.isAlwaysBinary()) {
+			resourceText = null;
+			resourceBinary =
+					getResourceBinary(myFhirContext.getResourceType(theResource), theEncoding, encodedResource);
 			encoding = theEncoding;
 			hashCode = SHA_256.hashBytes(resourceBinary);
 		} else {
@@ -92,11 +117,99 @@ public class ResourceHistoryCalculator {
 		return false;
 	}
 
+	/**
+	 * Optimizes the storage of a history entity during a reindex. A body which is already stored using the
+	 * configured binary encoding is left as is (or compressed again for {@link ResourceEncodingEnum#ZSTD}),
+	 * and any other stored body is moved to inline text.
+	 *
+	 * @return Returns <code>true</code> if the body was replaced
+	 */
+	boolean conditionallyReencodeHistoryEntity(
+			ResourceTable theEntity,
+			ResourceHistoryTable theHistoryEntity,
+			ResourceEncodingEnum theConfiguredEncoding) {
+		byte[] resourceBinary = theHistoryEntity.getResource();
+		if (resourceBinary == null) {
+			return false;
+		}
+
+		ResourceEncodingEnum encoding = theHistoryEntity.getEncoding();
+		if (encoding == theConfiguredEncoding && encoding.isAlwaysBinary()) {
+			if (encoding == ResourceEncodingEnum.ZSTD) {
+				return conditionallyRecompressHistoryEntity(theEntity, theHistoryEntity);
+			}
+			return false;
+		}
+
+		String resourceText = decodeResource(resourceBinary, encoding);
+		if (resourceText == null) {
+			return false;
+		}
+		return conditionallyAlterHistoryEntity(theEntity, theHistoryEntity, resourceText);
+	}
+
+	/**
+	 * Returns the JSON text of a stored resource body, or <code>null</code> for encodings which
+	 * don't store a body
+	 */
+	@Nullable
+	String decodeResource(byte[] theResourceBinary, ResourceEncodingEnum theEncoding) {
+		return switch (theEncoding) {
+			case JSON -> new String(theResourceBinary, StandardCharsets.UTF_8);
+			case JSONC -> GZipUtil.decompress(theResourceBinary);
+			case SMILE -> JacksonSmileStructure.toJson(theResourceBinary);
+			case ZSTD -> getZstdResourceCompressionSvc().decompress(theResourceBinary);
+			case DEL, ESR -> null;
+		};
+	}
+
+	/**
+	 * Compresses a resource body which is stored using {@link ResourceEncodingEnum#ZSTD} again using the
+	 * newest dictionary for its resource type, e.g. because it was stored before a dictionary had been
+	 * trained. The body is only replaced if this makes it smaller.
+	 *
+	 * @return Returns <code>true</code> if the body was replaced
+	 */
+	boolean conditionallyRecompressHistoryEntity(ResourceTable theEntity, ResourceHistoryTable theHistoryEntity) {
+		ZstdResourceCompressionSvc compressionSvc = getZstdResourceCompressionSvc();
+		byte[] current = theHistoryEntity.getResource();
+		byte[] recompressed = compressionSvc.compress(theEntity.getResourceType(), compressionSvc.decompress(current));
+		if (recompressed.length < current.length) {
+			ourLog.debug(
+					"Recompressed resource {} version {} from {} to {} bytes",
+					theEntity.getResourceId(),
+					theHistoryEntity.getVersion(),
+					current.length,
+					recompressed.length);
+			theHistoryEntity.setResource(recompressed);
+			return true;
+		}
+		return false;
+	}
+
 	boolean isResourceHistoryChanged(
 			ResourceHistoryTable theCurrentHistoryVersion,
 			@Nullable byte[] theResourceBinary,
 			@Nullable String resourceText) {
-		if (myIsOracleDialect) {
+		ResourceEncodingEnum currentEncoding = theCurrentHistoryVersion.getEncoding();
+		if (currentEncoding == ResourceEncodingEnum.ZSTD) {
+			byte[] currentBinary = theCurrentHistoryVersion.getResource();
+			if (currentBinary == null) {
+				return true;
+			}
+			if (Arrays.equals(currentBinary, theResourceBinary)) {
+				return false;
+			}
+			// The two versions may have been compressed using different dictionaries, so compare the text
+			ZstdResourceCompressionSvc compressionSvc = getZstdResourceCompressionSvc();
+			String currentText = compressionSvc.decompress(currentBinary);
+			if (resourceText != null) {
+				return !currentText.equals(resourceText);
+			}
+			return theResourceBinary == null || !currentText.equals(compressionSvc.decompress(theResourceBinary));
+		}
+
+		if (myIsOracleDialect || currentEncoding == ResourceEncodingEnum.SMILE) {
 			return !Arrays.equals(theCurrentHistoryVersion.getResource(), theResourceBinary);
 		}
 
@@ -112,21 +225,32 @@ public class ResourceHistoryCalculator {
 
 	/**
 	 * helper for returning the encoded byte array of the input resource string based on the theEncoding.
+	 * {@link ResourceEncodingEnum#DEL} and {@link ResourceEncodingEnum#ESR} mark versions without a stored body,
+	 * so they produce an empty array.
 	 *
+	 * @param theResourceType    the resource type, used to select the dictionary for {@link ResourceEncodingEnum#ZSTD}
 	 * @param theEncoding        the theEncoding to used
 	 * @param theEncodedResource the resource to encode
 	 * @return byte array of the resource
 	 */
 	@Nonnull
-	static byte[] getResourceBinary(ResourceEncodingEnum theEncoding, String theEncodedResource) {
-		switch (theEncoding) {
-			case JSON:
-				return theEncodedResource.getBytes(StandardCharsets.UTF_8);
-			case JSONC:
-				return GZipUtil.compress(theEncodedResource);
-			default:
-				return new byte[0];
-		}
+	byte[] getResourceBinary(String theResourceType, ResourceEncodingEnum theEncoding, String theEncodedResource) {
+		return switch (theEncoding) {
+			case JSON -> theEncodedResource.getBytes(StandardCharsets.UTF_8);
+			case JSONC -> GZipUtil.compress(theEncodedResource);
+			case SMILE -> JacksonSmileStructure.fromJson(theEncodedResource);
+			case ZSTD -> getZstdResourceCompressionSvc().compress(theResourceType, theEncodedResource);
+			case DEL, ESR -> new byte[0];
+		};
+	}
+
+	@Nonnull
+	private ZstdResourceCompressionSvc getZstdResourceCompressionSvc() {
+		Validate.notNull(
+				myZstdResourceCompressionSvc,
+				"No ZstdResourceCompressionSvc is available, can not use encoding: %s",
+				ResourceEncodingEnum.ZSTD);
+		return myZstdResourceCompressionSvc;
 	}
 
 	void populateEncodedResource(
@@ -134,7 +258,7 @@ public class ResourceHistoryCalculator {
 			String theEncodedResourceString,
 			@Nullable byte[] theResourceBinary,
 			ResourceEncodingEnum theEncoding) {
-		if (myIsOracleDialect) {
+		if (myIsOracleDialect || theEncoding.isAlwaysBinary()) {
 			populateEncodedResourceInner(theEncodedResource, null, theResourceBinary, theEncoding);
 		} else {
 			populateEncodedResourceInner(theEncodedResource, theEncodedResourceString, null, ResourceEncodingEnum.JSON);
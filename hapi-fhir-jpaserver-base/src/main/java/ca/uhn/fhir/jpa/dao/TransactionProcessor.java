@@ -28,6 +28,7 @@ import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
 import ca.uhn.fhir.jpa.api.svc.IIdHelperService;
 import ca.uhn.fhir.jpa.api.svc.ResolveIdentityMode;
 import ca.uhn.fhir.jpa.config.HapiFhirHibernateJpaDialect;
+import ca.uhn.fhir.jpa.dao.index.ResourceIndexBulkWriter;
 import ca.uhn.fhir.jpa.model.cross.IResourceLookup;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
@@ -37,6 +38,8 @@ import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.search.ResourceSearchUrlSvc;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService.PreparedSearchParams;
 import ca.uhn.fhir.jpa.util.MemoryCacheService;
 import ca.uhn.fhir.jpa.util.QueryChunker;
 import ca.uhn.fhir.model.api.IQueryParameterType;
@@ -51,6 +54,7 @@ import ca.uhn.fhir.util.TaskChunker;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import jakarta.annotation.Nonnull;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.FlushModeType;
@@ -73,6 +77,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -84,6 +90,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -134,6 +142,9 @@ public class TransactionProcessor extends BaseTransactionProcessor {
 	@Autowired
 	private IRequestPartitionHelperSvc myRequestPartitionHelperSvc;
 
+	@Autowired(required = false)
+	private SearchParamExtractorService mySearchParamExtractorService;
+
 	public void setEntityManagerForUnitTest(EntityManager theEntityManager) {
 		myEntityManager = theEntityManager;
 	}
@@ -145,6 +156,34 @@ public class TransactionProcessor extends BaseTransactionProcessor {
 		Validate.notNull(myEntityManager, "EntityManager must not be null");
 	}
 
+	/**
+	 * Rows can still be queued after {@link #flushSession(TransactionDetails, Map)} has
+	 * run, e.g. by interceptors which store resources while handling the deferred
+	 * broadcasts. Those rows are written just before the database transaction
+	 * commits, and the writer is removed once it completes so that any later
+	 * writes using the same {@link TransactionDetails} are persisted normally.
+	 */
+	private void registerBulkIndexWriterSynchronization(
+			TransactionDetails theTransactionDetails, ResourceIndexBulkWriter theBulkWriter) {
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void beforeCommit(boolean theReadOnly) {
+				if (theBulkWriter.size() > 0) {
+					myEntityManager.flush();
+					int indexRowCount = theBulkWriter.flush(myEntityManager);
+					ourLog.debug("Bulk index write wrote {} index rows before commit", indexRowCount);
+				}
+			}
+
+			@Override
+			public void afterCompletion(int theStatus) {
+				if (ResourceIndexBulkWriter.getFromTransactionDetails(theTransactionDetails) == theBulkWriter) {
+					theTransactionDetails.clearUserData(ResourceIndexBulkWriter.XACT_USERDATA_KEY);
+				}
+			}
+		});
+	}
+
 	@VisibleForTesting
 	public void setFhirContextForUnitTest(FhirContext theFhirContext) {
 		myFhirContext = theFhirContext;
@@ -192,6 +231,19 @@ public class TransactionProcessor extends BaseTransactionProcessor {
 		try {
 			myEntityManager.setFlushMode(FlushModeType.COMMIT);
 
+			/*
+			 * If enabled, new index rows are collected for the whole bundle and
+			 * written in bulk when the session is flushed. A new writer is
+			 * created for each attempt, since the transaction may be retried.
+			 */
+			if (myStorageSettings.isBulkIndexWritesEnabled()
+					&& TransactionSynchronizationManager.isSynchronizationActive()) {
+				ResourceIndexBulkWriter bulkWriter =
+						new ResourceIndexBulkWriter(myStorageSettings.getBulkIndexWriteBatchSize());
+				theTransactionDetails.putUserData(ResourceIndexBulkWriter.XACT_USERDATA_KEY, bulkWriter);
+				registerBulkIndexWriterSynchronization(theTransactionDetails, bulkWriter);
+			}
+
 			ITransactionProcessorVersionAdapter<?, ?> versionAdapter = getVersionAdapter();
 			RequestPartitionId requestPartitionId =
 					super.determineRequestPartitionIdForWriteEntries(theRequest, theEntries);
@@ -841,8 +893,66 @@ public class TransactionProcessor extends BaseTransactionProcessor {
 		return hashToSearch;
 	}
 
+	/**
+	 * Extracts the non-reference search parameter indexes for the given resources across
+	 * the bundle batch thread pool. The extracted indexes are stored in the transaction details
+	 * and picked up by {@link SearchParamExtractorService} when each resource is saved.
+	 */
+	@Override
+	protected void prepareResourcesForIndexing(
+			RequestDetails theRequest, TransactionDetails theTransactionDetails, List<IBaseResource> theResources) {
+		int threadCount = Math.min(myStorageSettings.getTransactionPreparationThreadCount(), theResources.size());
+		if (mySearchParamExtractorService == null || threadCount < 2) {
+			return;
+		}
+
+		for (IBaseResource next : theResources) {
+			mySearchParamExtractorService.prepareResourceForExtraction(next);
+		}
+
+		StopWatch sw = new StopWatch();
+		int chunkSize = (theResources.size() + threadCount - 1) / threadCount;
+		List<CompletableFuture<List<PreparedSearchParams>>> futures = new ArrayList<>();
+		for (List<IBaseResource> chunk : Lists.partition(theResources, chunkSize)) {
+			futures.add(CompletableFuture.supplyAsync(
+					() -> {
+						List<PreparedSearchParams> retVal = new ArrayList<>(chunk.size());
+						for (IBaseResource next : chunk) {
+							retVal.add(mySearchParamExtractorService.extractNonReferenceSearchParams(theRequest, next));
+						}
+						return retVal;
+					},
+					getTaskExecutor()));
+		}
+
+		Map<IBaseResource, PreparedSearchParams> preparedParams = new IdentityHashMap<>();
+		int index = 0;
+		for (CompletableFuture<List<PreparedSearchParams>> next : futures) {
+			List<PreparedSearchParams> chunkParams;
+			try {
+				chunkParams = next.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+			for (PreparedSearchParams params : chunkParams) {
+				preparedParams.put(theResources.get(index++), params);
+			}
+		}
+
+		SearchParamExtractorService.putPreparedSearchParams(theTransactionDetails, preparedParams);
+		ourLog.debug(
+				"Prepared indexes for {} resources on {} threads in {}ms",
+				theResources.size(),
+				futures.size(),
+				sw.getMillis());
+	}
+
 	@Override
-	protected void flushSession(Map<IIdType, DaoMethodOutcome> theIdToPersistedOutcome) {
+	protected void flushSession(
+			TransactionDetails theTransactionDetails, Map<IIdType, DaoMethodOutcome> theIdToPersistedOutcome) {
 		try {
 			int insertionCount;
 			int updateCount;
@@ -862,6 +972,18 @@ public class TransactionProcessor extends BaseTransactionProcessor {
 					sw.getMillis(),
 					insertionCount,
 					updateCount);
+
+			/*
+			 * Index rows are written after the flush, since they reference the
+			 * resource rows that have just been inserted
+			 */
+			ResourceIndexBulkWriter bulkWriter =
+					ResourceIndexBulkWriter.getFromTransactionDetails(theTransactionDetails);
+			if (bulkWriter != null) {
+				sw.restart();
+				int indexRowCount = bulkWriter.flush(myEntityManager);
+				ourLog.debug("Bulk index write took {}ms for {} index rows", sw.getMillis(), indexRowCount);
+			}
 		} catch (PersistenceException e) {
 			if (myHapiFhirHibernateJpaDialect != null) {
 				String transactionTypes = createDescriptionOfResourceTypesInBundle(theIdToPersistedOutcome);
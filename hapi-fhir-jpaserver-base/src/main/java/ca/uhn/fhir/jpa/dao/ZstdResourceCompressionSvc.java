@@ -0,0 +1,406 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceCompressionDictEntity;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.model.sched.HapiJob;
+import ca.uhn.fhir.jpa.model.sched.IHasScheduledJobs;
+import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
+import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.time.DateUtils;
+import org.quartz.JobExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compresses and decompresses resource bodies which are stored using {@link ResourceEncodingEnum#ZSTD}.
+ * <p>
+ * Individual FHIR resources are usually too small to compress well on their own, but resources of the
+ * same type are very repetitive. A compression dictionary can therefore be trained for each resource
+ * type using {@link #trainDictionary(String)}. Trained dictionaries are stored in the
+ * {@link ResourceCompressionDictEntity} table and are never modified or replaced afterwards. Every compressed frame
+ * records the ID of the dictionary used to create it, so resource bodies remain readable after a newer
+ * dictionary has been trained for the same resource type. Until a dictionary has been trained for a
+ * resource type, its resource bodies are compressed without one.
+ * </p>
+ * <p>
+ * Dictionaries are trained automatically by a scheduled job on each server, for every resource
+ * type which that server has compressed and which either has no dictionary yet, or whose newest
+ * dictionary is older than the {@link #setDictionaryMaxAgeMillis(long) maximum age}.
+ * </p>
+ * <p>
+ * Native compression and decompression contexts are expensive to create, so they are reused
+ * by each thread.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class ZstdResourceCompressionSvc implements IHasScheduledJobs {
+	public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+	public static final long DEFAULT_DICTIONARY_MAX_AGE_MILLIS = 7 * DateUtils.MILLIS_PER_DAY;
+	public static final int DEFAULT_DICTIONARY_SIZE = 64 * 1024;
+	public static final int DEFAULT_TRAINING_SAMPLE_COUNT = 1000;
+	private static final Logger ourLog = LoggerFactory.getLogger(ZstdResourceCompressionSvc.class);
+	private static final int MIN_TRAINING_SAMPLE_COUNT = 10;
+	private static final int MAX_TRAINING_SAMPLE_BYTES = 32 * 1024 * 1024;
+	private static final List<ResourceEncodingEnum> TRAINING_SAMPLE_ENCODINGS = List.of(
+			ResourceEncodingEnum.JSON,
+			ResourceEncodingEnum.JSONC,
+			ResourceEncodingEnum.SMILE,
+			ResourceEncodingEnum.ZSTD);
+
+	private final IResourceCompressionDictDao myResourceCompressionDictDao;
+	private final IResourceHistoryTableDao myResourceHistoryTableDao;
+	private final TransactionTemplate myTxTemplate;
+	private final ThreadLocal<ZstdCompressCtx> myCompressCtx = ThreadLocal.withInitial(ZstdCompressCtx::new);
+	private final ThreadLocal<ZstdDecompressCtx> myDecompressCtx = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+	private final Set<String> myCompressedResourceTypes = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Dictionaries may be trained by any node in a cluster, so the newest dictionary for
+	 * each resource type is periodically reloaded
+	 */
+	private final Cache<String, Optional<ZstdDictCompress>> myCompressionDictionaries =
+			CacheFactory.build(DateUtils.MILLIS_PER_MINUTE);
+
+	/**
+	 * Dictionaries are immutable, so these never need to be reloaded
+	 */
+	private final Cache<Long, ZstdDictDecompress> myDecompressionDictionaries = CacheFactory.buildEternal(10, 1000);
+
+	private int myCompressionLevel = DEFAULT_COMPRESSION_LEVEL;
+	private int myDictionarySize = DEFAULT_DICTIONARY_SIZE;
+	private int myTrainingSampleCount = DEFAULT_TRAINING_SAMPLE_COUNT;
+	private long myDictionaryMaxAgeMillis = DEFAULT_DICTIONARY_MAX_AGE_MILLIS;
+
+	/**
+	 * Constructor
+	 */
+	public ZstdResourceCompressionSvc(
+			IResourceCompressionDictDao theResourceCompressionDictDao,
+			IResourceHistoryTableDao theResourceHistoryTableDao,
+			PlatformTransactionManager theTxManager) {
+		myResourceCompressionDictDao = theResourceCompressionDictDao;
+		myResourceHistoryTableDao = theResourceHistoryTableDao;
+		myTxTemplate = new TransactionTemplate(theTxManager);
+	}
+
+	/**
+	 * Compresses a resource body using the newest dictionary available for the given resource type
+	 */
+	@Nonnull
+	public byte[] compress(String theResourceType, String theEncodedResource) {
+		myCompressedResourceTypes.add(theResourceType);
+		ZstdCompressCtx ctx = myCompressCtx.get();
+		ctx.reset();
+		ctx.setLevel(myCompressionLevel);
+		getCompressionDictionary(theResourceType).ifPresent(ctx::loadDict);
+		return ctx.compress(theEncodedResource.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decompresses a resource body which was previously compressed using {@link #compress(String, String)}
+	 */
+	@Nonnull
+	public String decompress(byte[] theCompressed) {
+		long contentSize = Zstd.getFrameContentSize(theCompressed);
+		if (contentSize < 0 || contentSize > Integer.MAX_VALUE) {
+			throw new DataFormatException(Msg.code(2779) + "Failed to decompress contents, invalid frame header");
+		}
+
+		ZstdDecompressCtx ctx = myDecompressCtx.get();
+		ctx.reset();
+		long dictionaryId = Zstd.getDictIdFromFrame(theCompressed);
+		if (dictionaryId != 0) {
+			ctx.loadDict(getDecompressionDictionary(dictionaryId));
+		}
+
+		try {
+			byte[] decompressed = ctx.decompress(theCompressed, (int) contentSize);
+			return new String(decompressed, StandardCharsets.UTF_8);
+		} catch (ZstdException e) {
+			throw new DataFormatException(Msg.code(2780) + "Failed to decompress contents", e);
+		}
+	}
+
+	/**
+	 * Loads the dictionary needed to decompress the given body into the cache if it is not already
+	 * there, so that {@link #decompress(byte[])} will not need to access the database. This should be
+	 * called on the thread which owns the database transaction before decompressing on other threads.
+	 */
+	public void prepareForDecompression(byte[] theCompressed) {
+		long dictionaryId = Zstd.getDictIdFromFrame(theCompressed);
+		if (dictionaryId != 0) {
+			getDecompressionDictionary(dictionaryId);
+		}
+	}
+
+	/**
+	 * Trains a new compression dictionary for the given resource type using the most recently
+	 * stored versions of resources of that type, and stores it in the database. Resource bodies
+	 * written by this server after this method returns will be compressed using the new dictionary
+	 * (other servers in a cluster will begin using it within a minute).
+	 *
+	 * @param theResourceType The resource type, e.g. "Observation"
+	 * @return The ID of the new dictionary, or {@literal null} if not enough resources of the given type
+	 * 	exist in order to train a dictionary
+	 */
+	@Nullable
+	public Long trainDictionary(String theResourceType) {
+		Validate.notBlank(theResourceType, "theResourceType must not be blank");
+
+		List<byte[]> samples = Objects.requireNonNull(myTxTemplate.execute(t -> loadTrainingSamples(theResourceType)));
+		if (samples.size() < MIN_TRAINING_SAMPLE_COUNT) {
+			ourLog.info(
+					"Not training a compression dictionary for resource type {}, only {} samples are available",
+					theResourceType,
+					samples.size());
+			return null;
+		}
+
+		int totalSize = samples.stream().mapToInt(t -> t.length).sum();
+		ZstdDictTrainer trainer = new ZstdDictTrainer(totalSize, myDictionarySize);
+		samples.forEach(trainer::addSample);
+
+		byte[] dictionary;
+		try {
+			dictionary = trainer.trainSamples();
+		} catch (ZstdException e) {
+			ourLog.warn(
+					"Failed to train a compression dictionary for resource type {}: {}",
+					theResourceType,
+					e.getMessage());
+			return null;
+		}
+
+		ResourceCompressionDictEntity entity = new ResourceCompressionDictEntity();
+		entity.setDictionaryId(Zstd.getDictIdFromDict(dictionary));
+		entity.setResourceType(theResourceType);
+		entity.setCreated(new Date());
+		entity.setDictionary(dictionary);
+
+		// Dictionary IDs are assigned randomly by the trainer, so a collision with an existing
+		// dictionary is very unlikely but must never replace it, since existing resource bodies
+		// can only be decompressed using the dictionary they were compressed with. If another
+		// server inserts the same ID concurrently, the unique constraint causes this to fail.
+		boolean saved = Boolean.TRUE.equals(myTxTemplate.execute(t -> {
+			if (myResourceCompressionDictDao
+					.findByDictionaryId(entity.getDictionaryId())
+					.isPresent()) {
+				return false;
+			}
+			myResourceCompressionDictDao.save(entity);
+			return true;
+		}));
+		if (!saved) {
+			ourLog.warn(
+					"Discarding compression dictionary trained for resource type {}, dictionary ID {} is already in use",
+					theResourceType,
+					entity.getDictionaryId());
+			return null;
+		}
+
+		myCompressionDictionaries.invalidate(theResourceType);
+
+		ourLog.info(
+				"Trained compression dictionary {} for resource type {} using {} samples ({} bytes)",
+				entity.getDictionaryId(),
+				theResourceType,
+				samples.size(),
+				totalSize);
+		return entity.getDictionaryId();
+	}
+
+	/**
+	 * Trains a new dictionary for each resource type which has been compressed by this server since
+	 * it started, and which either has no dictionary yet or whose newest dictionary is older than the
+	 * {@link #setDictionaryMaxAgeMillis(long) maximum age}. This is invoked periodically by a scheduled
+	 * job.
+	 */
+	public void trainDictionariesIfNeeded() {
+		Date cutoff = new Date(System.currentTimeMillis() - myDictionaryMaxAgeMillis);
+		for (String nextResourceType : myCompressedResourceTypes) {
+			try {
+				// Load the newest dictionary directly, since another server may have just trained one
+				Optional<ResourceCompressionDictEntity> newest = loadNewestDictionary(nextResourceType);
+				if (newest.isEmpty()
+						|| (myDictionaryMaxAgeMillis > 0
+								&& newest.get().getCreated().before(cutoff))) {
+					trainDictionary(nextResourceType);
+				}
+			} catch (Exception e) {
+				ourLog.error("Failed to train a compression dictionary for resource type {}", nextResourceType, e);
+			}
+		}
+	}
+
+	@Override
+	public void scheduleJobs(ISchedulerService theSchedulerService) {
+		ScheduledJobDefinition jobDetail = new ScheduledJobDefinition();
+		jobDetail.setId(getClass().getName());
+		jobDetail.setJobClass(Job.class);
+		theSchedulerService.scheduleLocalJob(DateUtils.MILLIS_PER_HOUR, jobDetail);
+	}
+
+	private Optional<ResourceCompressionDictEntity> loadNewestDictionary(String theResourceType) {
+		List<ResourceCompressionDictEntity> newest = Objects.requireNonNull(myTxTemplate.execute(
+				tx -> myResourceCompressionDictDao.findNewestForResourceType(PageRequest.of(0, 1), theResourceType)));
+		return newest.stream().findFirst();
+	}
+
+	private List<byte[]> loadTrainingSamples(String theResourceType) {
+		List<ResourceHistoryTable> versions = myResourceHistoryTableDao
+				.findNewestForResourceTypeAndEncodings(
+						PageRequest.of(0, myTrainingSampleCount), theResourceType, TRAINING_SAMPLE_ENCODINGS)
+				.getContent();
+
+		List<byte[]> retVal = new ArrayList<>(versions.size());
+		int totalSize = 0;
+		for (ResourceHistoryTable next : versions) {
+			String text = next.getResourceTextVc();
+			if (text == null && next.getResource() != null) {
+				if (next.getEncoding() == ResourceEncodingEnum.ZSTD) {
+					text = decompress(next.getResource());
+				} else {
+					text = BaseHapiFhirDao.decodeResource(next.getResource(), next.getEncoding());
+				}
+			}
+			if (text == null) {
+				continue;
+			}
+
+			byte[] sample = text.getBytes(StandardCharsets.UTF_8);
+			totalSize += sample.length;
+			if (totalSize > MAX_TRAINING_SAMPLE_BYTES) {
+				break;
+			}
+			retVal.add(sample);
+		}
+		return retVal;
+	}
+
+	private Optional<ZstdDictCompress> getCompressionDictionary(String theResourceType) {
+		return myCompressionDictionaries.get(
+				theResourceType, t -> loadNewestDictionary(t).map(d -> {
+					myDecompressionDictionaries.get(
+							d.getDictionaryId(), id -> new ZstdDictDecompress(d.getDictionary()));
+					return new ZstdDictCompress(d.getDictionary(), myCompressionLevel);
+				}));
+	}
+
+	private ZstdDictDecompress getDecompressionDictionary(long theDictionaryId) {
+		return myDecompressionDictionaries.get(theDictionaryId, id -> {
+			ResourceCompressionDictEntity entity = myTxTemplate.execute(
+					tx -> myResourceCompressionDictDao.findByDictionaryId(id).orElse(null));
+			if (entity == null) {
+				throw new DataFormatException(
+						Msg.code(2781) + "Failed to decompress contents, unknown compression dictionary: " + id);
+			}
+			return new ZstdDictDecompress(entity.getDictionary());
+		});
+	}
+
+	@VisibleForTesting
+	public void invalidateCaches() {
+		myCompressionDictionaries.invalidateAll();
+		myDecompressionDictionaries.invalidateAll();
+	}
+
+	/**
+	 * Sets the zstd compression level (1-22) used to compress resource bodies. Higher levels produce
+	 * smaller output at the expense of slower writes, while decompression speed is largely unaffected.
+	 * Default is {@link #DEFAULT_COMPRESSION_LEVEL}.
+	 */
+	public void setCompressionLevel(int theCompressionLevel) {
+		Validate.inclusiveBetween(1, Zstd.maxCompressionLevel(), theCompressionLevel);
+		myCompressionLevel = theCompressionLevel;
+		myCompressionDictionaries.invalidateAll();
+	}
+
+	/**
+	 * Sets the maximum size in bytes of newly trained dictionaries. Default is {@link #DEFAULT_DICTIONARY_SIZE}.
+	 */
+	public void setDictionarySize(int theDictionarySize) {
+		Validate.isTrue(theDictionarySize >= 1024, "theDictionarySize must be at least 1024");
+		myDictionarySize = theDictionarySize;
+	}
+
+	/**
+	 * Sets the maximum number of recently stored resource versions which are used to train a
+	 * new dictionary. Default is {@link #DEFAULT_TRAINING_SAMPLE_COUNT}.
+	 */
+	public void setTrainingSampleCount(int theTrainingSampleCount) {
+		Validate.isTrue(theTrainingSampleCount >= MIN_TRAINING_SAMPLE_COUNT, "theTrainingSampleCount is too small");
+		myTrainingSampleCount = theTrainingSampleCount;
+	}
+
+	/**
+	 * Sets the age after which a new dictionary is automatically trained for a resource type, so
+	 * that dictionaries keep up with changes in the stored resources. Set to <code>0</code> to only
+	 * train a dictionary automatically for resource types which do not have one yet.
+	 * Default is {@link #DEFAULT_DICTIONARY_MAX_AGE_MILLIS}.
+	 */
+	public void setDictionaryMaxAgeMillis(long theDictionaryMaxAgeMillis) {
+		Validate.isTrue(theDictionaryMaxAgeMillis >= 0, "theDictionaryMaxAgeMillis must not be negative");
+		myDictionaryMaxAgeMillis = theDictionaryMaxAgeMillis;
+	}
+
+	public static class Job implements HapiJob {
+		@Autowired
+		private ZstdResourceCompressionSvc myTarget;
+
+		@Override
+		public void execute(JobExecutionContext theContext) {
+			myTarget.trainDictionariesIfNeeded();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.model.entity.ResourceCompressionDictEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface IResourceCompressionDictDao
+		extends JpaRepository<ResourceCompressionDictEntity, Long>, IHapiFhirJpaRepository {
+
+	@Query(
+			"SELECT d FROM ResourceCompressionDictEntity d WHERE d.myResourceType = :res_type ORDER BY d.myCreated DESC, d.myDictionaryId DESC")
+	List<ResourceCompressionDictEntity> findNewestForResourceType(
+			Pageable thePage, @Param("res_type") String theResourceType);
+
+	@Query("SELECT d FROM ResourceCompressionDictEntity d WHERE d.myDictionaryId = :dict_id")
+	Optional<ResourceCompressionDictEntity> findByDictionaryId(@Param("dict_id") long theDictionaryId);
+}
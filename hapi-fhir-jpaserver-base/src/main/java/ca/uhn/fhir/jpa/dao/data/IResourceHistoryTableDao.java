@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.dao.data;
 
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTablePk;
 import org.springframework.data.domain.Pageable;
@@ -30,6 +31,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface IResourceHistoryTableDao
@@ -74,6 +76,13 @@ public interface IResourceHistoryTableDao
 			+ "WHERE v.myResourceVersion <> t.myVersion")
 	Slice<ResourceHistoryTablePk> findIdsOfPreviousVersionsOfResources(Pageable thePage);
 
+	@Query(
+			"SELECT t FROM ResourceHistoryTable t WHERE t.myResourceType = :restype AND t.myEncoding IN (:encodings) ORDER BY t.myUpdated DESC")
+	Slice<ResourceHistoryTable> findNewestForResourceTypeAndEncodings(
+			Pageable thePage,
+			@Param("restype") String theResourceType,
+			@Param("encodings") Collection<ResourceEncodingEnum> theEncodings);
+
 	@Modifying
 	@Query(
 			"UPDATE ResourceHistoryTable r SET r.myResourceVersion = :newVersion WHERE r.myResourcePid = :id AND r.myResourceVersion = :oldVersion")
@@ -68,6 +68,9 @@ public interface IResourceTableDao
 	Slice<JpaPid> findIdsOfResourcesWithinUpdatedRangeOrderedFromOldest(
 			Pageable thePage, @Param("low") Date theLow, @Param("high") Date theHigh);
 
+	@Query("SELECT t.myResourceType, t.myFhirId FROM ResourceTable t")
+	Stream<Object[]> streamAllResourceTypesAndFhirIds();
+
 	@Query(
 			"SELECT t.myPid, t.myResourceType, t.myUpdated FROM ResourceTable t WHERE t.myUpdated >= :low AND t.myUpdated <= :high ORDER BY t.myUpdated ASC")
 	Stream<Object[]> streamIdsTypesAndUpdateTimesOfResourcesWithinUpdatedRangeOrderedFromOldest(
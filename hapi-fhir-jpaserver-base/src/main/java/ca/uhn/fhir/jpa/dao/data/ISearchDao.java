@@ -47,7 +47,7 @@ public interface ISearchDao extends JpaRepository<Search, Long>, IHapiFhirJpaRep
 	Stream<SearchIdAndResultSize> findDeleted();
 
 	@Query(
-			"SELECT s FROM Search s WHERE s.myResourceType = :type AND s.mySearchQueryStringHash = :hash AND (s.myCreated > :cutoff) AND s.myDeleted = FALSE AND s.myStatus <> 'FAILED'")
+			"SELECT s FROM Search s WHERE s.myResourceType = :type AND s.mySearchQueryStringHash = :hash AND (s.myCreated > :cutoff) AND s.myDeleted = FALSE AND s.myStatus <> 'FAILED' ORDER BY s.myCreated DESC")
 	Collection<Search> findWithCutoffOrExpiry(
 			@Param("type") String theResourceType,
 			@Param("hash") int theHashCode,
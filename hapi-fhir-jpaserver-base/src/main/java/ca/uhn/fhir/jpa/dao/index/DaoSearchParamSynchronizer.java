@@ -34,6 +34,7 @@ import ca.uhn.fhir.jpa.model.entity.StorageSettings;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.sp.SearchParamIdentityCacheSvcImpl;
 import ca.uhn.fhir.jpa.util.AddRemoveCount;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
 import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import com.google.common.annotations.VisibleForTesting;
 import jakarta.annotation.Nullable;
@@ -73,29 +74,51 @@ public class DaoSearchParamSynchronizer {
 			ResourceIndexedSearchParams theParams,
 			ResourceTable theEntity,
 			ResourceIndexedSearchParams existingParams) {
+		return synchronizeSearchParamsToDatabase(theParams, theEntity, existingParams, null);
+	}
+
+	/**
+	 * @param theTransactionDetails If the transaction details contain a {@link ResourceIndexBulkWriter},
+	 *                              new index rows will be queued in the writer instead of being persisted
+	 *                              through the entity manager.
+	 */
+	public AddRemoveCount synchronizeSearchParamsToDatabase(
+			ResourceIndexedSearchParams theParams,
+			ResourceTable theEntity,
+			ResourceIndexedSearchParams existingParams,
+			@Nullable TransactionDetails theTransactionDetails) {
 		AddRemoveCount retVal = new AddRemoveCount();
+		ResourceIndexBulkWriter bulkWriter = ResourceIndexBulkWriter.getFromTransactionDetails(theTransactionDetails);
 
-		synchronize(theEntity, retVal, theParams.myStringParams, existingParams.myStringParams, null);
-		synchronize(theEntity, retVal, theParams.myTokenParams, existingParams.myTokenParams, null);
-		synchronize(theEntity, retVal, theParams.myNumberParams, existingParams.myNumberParams, null);
-		synchronize(theEntity, retVal, theParams.myQuantityParams, existingParams.myQuantityParams, null);
+		synchronize(theEntity, retVal, theParams.myStringParams, existingParams.myStringParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myTokenParams, existingParams.myTokenParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myNumberParams, existingParams.myNumberParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myQuantityParams, existingParams.myQuantityParams, null, bulkWriter);
 		synchronize(
 				theEntity,
 				retVal,
 				theParams.myQuantityNormalizedParams,
 				existingParams.myQuantityNormalizedParams,
-				null);
-		synchronize(theEntity, retVal, theParams.myDateParams, existingParams.myDateParams, null);
-		synchronize(theEntity, retVal, theParams.myUriParams, existingParams.myUriParams, null);
-		synchronize(theEntity, retVal, theParams.myCoordsParams, existingParams.myCoordsParams, null);
-		synchronize(theEntity, retVal, theParams.myLinks, existingParams.myLinks, null);
-		synchronize(theEntity, retVal, theParams.myComboTokenNonUnique, existingParams.myComboTokenNonUnique, null);
+				null,
+				bulkWriter);
+		synchronize(theEntity, retVal, theParams.myDateParams, existingParams.myDateParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myUriParams, existingParams.myUriParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myCoordsParams, existingParams.myCoordsParams, null, bulkWriter);
+		synchronize(theEntity, retVal, theParams.myLinks, existingParams.myLinks, null, bulkWriter);
+		synchronize(
+				theEntity,
+				retVal,
+				theParams.myComboTokenNonUnique,
+				existingParams.myComboTokenNonUnique,
+				null,
+				bulkWriter);
 		synchronize(
 				theEntity,
 				retVal,
 				theParams.myComboStringUniques,
 				existingParams.myComboStringUniques,
-				new UniqueIndexPreExistenceChecker());
+				new UniqueIndexPreExistenceChecker(),
+				bulkWriter);
 
 		// make sure links are indexed
 		theEntity.setResourceLinks(theParams.myLinks);
@@ -123,7 +146,8 @@ public class DaoSearchParamSynchronizer {
 			AddRemoveCount theAddRemoveCount,
 			Collection<T> theNewParams,
 			Collection<T> theExistingParams,
-			@Nullable IPreSaveHook<T> theAddParamPreSaveHook) {
+			@Nullable IPreSaveHook<T> theAddParamPreSaveHook,
+			@Nullable ResourceIndexBulkWriter theBulkWriter) {
 		Collection<T> newParams = theNewParams;
 		for (T next : newParams) {
 			next.setResourceId(theEntity.getId().getId());
@@ -171,6 +195,17 @@ public class DaoSearchParamSynchronizer {
 		updateExistingParamsIfRequired(theExistingParams, paramsToAdd, newParams, paramsToRemove);
 
 		for (T next : paramsToRemove) {
+			if (theBulkWriter != null) {
+				if (theBulkWriter.remove(next)) {
+					// Queued in this transaction but never written, so nothing to delete
+					continue;
+				}
+				if (theBulkWriter.isWritten(next)) {
+					// Written by the bulk writer, so it exists but isn't managed
+					myEntityManager.remove(myEntityManager.merge(next));
+					continue;
+				}
+			}
 			if (!myEntityManager.contains(next)) {
 				// If a resource is created and deleted in the same transaction, we can end up
 				// in a state where we're deleting entities that don't actually exist. Hibernate
@@ -183,7 +218,11 @@ public class DaoSearchParamSynchronizer {
 		for (T next : paramsToAdd) {
 			findOrCreateSearchParamIdentity(next);
 			if (next.getId() == null) {
-				myEntityManager.persist(next);
+				if (theBulkWriter != null) {
+					theBulkWriter.add(next);
+				} else {
+					myEntityManager.persist(next);
+				}
 			} else {
 				myEntityManager.merge(next);
 			}
@@ -124,6 +124,9 @@ public class IdHelperService implements IIdHelperService<JpaPid> {
 	@Autowired
 	private PartitionSettings myPartitionSettings;
 
+	@Autowired
+	private ResourceIdExistenceFilterSvc myResourceIdExistenceFilterSvc;
+
 	private boolean myDontCheckActiveTransactionForUnitTest;
 
 	@VisibleForTesting
@@ -217,6 +220,9 @@ public class IdHelperService implements IIdHelperService<JpaPid> {
 			resolveResourceIdentitiesForFhirIdsUsingCache(requestPartitionId, theMode, ids, idToLookup);
 		}
 
+		// Skip any IDs which we know don't exist
+		ids.removeIf(t -> myResourceIdExistenceFilterSvc.isDefinitelyAbsent(t.getResourceType(), t.getIdPart()));
+
 		// We still haven't found IDs, let's look them up in the DB
 		if (!ids.isEmpty()) {
 			resolveResourceIdentitiesForFhirIdsUsingDatabase(requestPartitionId, ids, idToLookup);
@@ -535,7 +541,8 @@ public class IdHelperService implements IIdHelperService<JpaPid> {
 	 * be called by DAO methods if they are creating or changing the deleted status
 	 * of a resource. This method returns immediately, but the data is not
 	 * added to the internal caches until the current DB transaction is successfully
-	 * committed, and nothing is added if the transaction rolls back.
+	 * committed, and nothing is added if the transaction rolls back. The ID is
+	 * added to the {@link ResourceIdExistenceFilterSvc} immediately.
 	 */
 	@Override
 	public void addResolvedPidToFhirIdAfterCommit(
@@ -548,6 +555,8 @@ public class IdHelperService implements IIdHelperService<JpaPid> {
 			populateAssociatedResourceId(theResourceType, theFhirId, theJpaPid);
 		}
 
+		myResourceIdExistenceFilterSvc.register(theResourceType, theFhirId);
+
 		myMemoryCacheService.putAfterCommit(
 				MemoryCacheService.CacheEnum.PID_TO_FORCED_ID,
 				theJpaPid,
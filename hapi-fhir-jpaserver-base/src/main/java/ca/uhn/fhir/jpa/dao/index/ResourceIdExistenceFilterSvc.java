@@ -0,0 +1,320 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Maintains a Bloom filter containing the resource type and FHIR ID of every resource
+ * in the database, so that {@link IdHelperService} can skip the database lookup for
+ * IDs which definitely don't exist. This is enabled using
+ * {@link JpaStorageSettings#setResourceIdExistenceFilterEnabled(boolean)}.
+ * <p>
+ * The filter is built by a background thread which reads every ID from the database,
+ * and isn't used until that has finished. Resource IDs are added to the filter by
+ * {@link #register(String, String)} as soon as they are assigned, before the creating
+ * transaction commits. A rolled back transaction therefore only leaves behind a false
+ * positive, which costs a database lookup but never hides a resource.
+ * </p>
+ * <p>
+ * To avoid missing a resource whose transaction registers its ID before a new filter
+ * starts receiving IDs, but commits after the database scan has started, the scan
+ * waits until every such transaction has completed.
+ * </p>
+ * <p>
+ * Entries can't be removed from a Bloom filter, so the IDs of expunged resources
+ * remain in the filter (as false positives) until it is next rebuilt. The filter is
+ * rebuilt with a larger capacity once the number of IDs it holds exceeds the number
+ * it was sized for.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class ResourceIdExistenceFilterSvc {
+
+	static final int MINIMUM_EXPECTED_INSERTIONS = 100_000;
+	private static final Logger ourLog = LoggerFactory.getLogger(ResourceIdExistenceFilterSvc.class);
+	private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+	private static final long IN_FLIGHT_REGISTRATION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final String THREAD_PREFIX = "resource-id-existence-filter-";
+
+	private final JpaStorageSettings myStorageSettings;
+	private final IResourceTableDao myResourceTableDao;
+	private final TransactionTemplate myTxTemplate;
+	private final ThreadPoolTaskExecutor myExecutor;
+	private final AtomicBoolean myLoadPending = new AtomicBoolean();
+	private final Object myLock = new Object();
+
+	/**
+	 * Sequence numbers of registrations whose transaction hasn't completed yet
+	 */
+	private final TreeSet<Long> myInFlightRegistrations = new TreeSet<>();
+
+	private long myLastRegistrationSequence;
+	private volatile Filter myFilter;
+	private Filter myLoadingFilter;
+
+	/**
+	 * Constructor
+	 */
+	public ResourceIdExistenceFilterSvc(
+			JpaStorageSettings theStorageSettings,
+			IResourceTableDao theResourceTableDao,
+			PlatformTransactionManager theTxManager) {
+		myStorageSettings = theStorageSettings;
+		myResourceTableDao = theResourceTableDao;
+		myTxTemplate = new TransactionTemplate(theTxManager);
+		myTxTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		myTxTemplate.setReadOnly(true);
+		myExecutor = ThreadPoolUtil.newThreadPool(1, 1, THREAD_PREFIX, 1, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	@PreDestroy
+	public void stop() {
+		myExecutor.shutdown();
+	}
+
+	/**
+	 * Returns <code>true</code> if no resource with the given type and FHIR ID exists,
+	 * or <code>false</code> if one might exist (or the filter isn't available yet).
+	 * The filter is built in the background the first time this is called.
+	 */
+	public boolean isDefinitelyAbsent(String theResourceType, String theFhirId) {
+		if (!myStorageSettings.isResourceIdExistenceFilterEnabled()) {
+			discardFilter();
+			return false;
+		}
+		if (isBlank(theResourceType)) {
+			return false;
+		}
+
+		Filter filter = myFilter;
+		if (filter == null) {
+			scheduleLoad();
+			return false;
+		}
+
+		return !filter.mightContain(toKey(theResourceType, theFhirId));
+	}
+
+	/**
+	 * Adds a resource ID to the filter. This should be called as soon as a resource
+	 * is assigned its ID, and within the transaction which creates it.
+	 */
+	public void register(String theResourceType, String theFhirId) {
+		if (!myStorageSettings.isResourceIdExistenceFilterEnabled()) {
+			discardFilter();
+			return;
+		}
+
+		String key = toKey(theResourceType, theFhirId);
+		boolean overCapacity = false;
+		synchronized (myLock) {
+			Filter filter = myFilter;
+			if (filter != null) {
+				filter.put(key);
+				overCapacity = filter.isOverCapacity();
+			}
+			if (myLoadingFilter != null) {
+				myLoadingFilter.put(key);
+			}
+
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				long sequence = ++myLastRegistrationSequence;
+				myInFlightRegistrations.add(sequence);
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+					@Override
+					public void afterCompletion(int theStatus) {
+						synchronized (myLock) {
+							myInFlightRegistrations.remove(sequence);
+							myLock.notifyAll();
+						}
+					}
+				});
+			}
+		}
+
+		if (overCapacity) {
+			scheduleLoad();
+		}
+	}
+
+	/**
+	 * IDs aren't registered while the filter is disabled, so a filter built before it
+	 * was disabled can't be trusted if it is enabled again
+	 */
+	private void discardFilter() {
+		if (myFilter != null) {
+			synchronized (myLock) {
+				myFilter = null;
+			}
+		}
+	}
+
+	private void scheduleLoad() {
+		if (myLoadPending.compareAndSet(false, true)) {
+			myExecutor.execute(() -> {
+				try {
+					loadNow();
+				} catch (RuntimeException e) {
+					ourLog.warn("Failed to build resource ID existence filter", e);
+				} finally {
+					myLoadPending.set(false);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Builds a new filter from the database and starts using it. This is normally
+	 * done in the background, but may be called to build the filter immediately.
+	 */
+	public void loadNow() {
+		StopWatch sw = new StopWatch();
+		long resourceCount = myTxTemplate.execute(t -> myResourceTableDao.count());
+		long expectedInsertions = Math.max(MINIMUM_EXPECTED_INSERTIONS, resourceCount * 2);
+		Filter loadingFilter = new Filter(expectedInsertions);
+
+		long barrier;
+		synchronized (myLock) {
+			myLoadingFilter = loadingFilter;
+			barrier = myLastRegistrationSequence;
+		}
+
+		try {
+			if (!awaitRegistrationsCompleted(barrier)) {
+				ourLog.warn(
+						"Timed out waiting for in-flight transactions, resource ID existence filter will be built later");
+				return;
+			}
+
+			myTxTemplate.executeWithoutResult(t -> {
+				try (Stream<Object[]> ids = myResourceTableDao.streamAllResourceTypesAndFhirIds()) {
+					for (Iterator<Object[]> iter = ids.iterator(); iter.hasNext(); ) {
+						Object[] next = iter.next();
+						if (next[1] != null) {
+							loadingFilter.put(toKey((String) next[0], (String) next[1]));
+						}
+					}
+				}
+			});
+
+			synchronized (myLock) {
+				if (!myStorageSettings.isResourceIdExistenceFilterEnabled()) {
+					return;
+				}
+				myFilter = loadingFilter;
+			}
+			ourLog.info(
+					"Built resource ID existence filter with {} resource IDs in {}",
+					loadingFilter.getApproximateElementCount(),
+					sw);
+
+		} finally {
+			synchronized (myLock) {
+				myLoadingFilter = null;
+			}
+		}
+	}
+
+	/**
+	 * Waits until every transaction which registered a resource ID up to and including the
+	 * given sequence number has committed or rolled back
+	 */
+	private boolean awaitRegistrationsCompleted(long theBarrier) {
+		long deadline = System.currentTimeMillis() + IN_FLIGHT_REGISTRATION_TIMEOUT_MILLIS;
+		synchronized (myLock) {
+			while (!myInFlightRegistrations.isEmpty() && myInFlightRegistrations.first() <= theBarrier) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				try {
+					myLock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@VisibleForTesting
+	boolean isFilterAvailable() {
+		return myFilter != null;
+	}
+
+	private static String toKey(String theResourceType, String theFhirId) {
+		return theResourceType + "/" + theFhirId;
+	}
+
+	private static class Filter {
+		private final BloomFilter<CharSequence> myBloomFilter;
+		private final long myExpectedInsertions;
+
+		private Filter(long theExpectedInsertions) {
+			myExpectedInsertions = theExpectedInsertions;
+			myBloomFilter = BloomFilter.create(
+					Funnels.stringFunnel(StandardCharsets.UTF_8), theExpectedInsertions, FALSE_POSITIVE_PROBABILITY);
+		}
+
+		private void put(String theKey) {
+			myBloomFilter.put(theKey);
+		}
+
+		private boolean mightContain(String theKey) {
+			return myBloomFilter.mightContain(theKey);
+		}
+
+		private long getApproximateElementCount() {
+			return myBloomFilter.approximateElementCount();
+		}
+
+		private boolean isOverCapacity() {
+			return getApproximateElementCount() > myExpectedInsertions;
+		}
+	}
+}
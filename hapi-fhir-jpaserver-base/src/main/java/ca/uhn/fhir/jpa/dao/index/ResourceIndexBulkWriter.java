@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndex;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import jakarta.annotation.Nullable;
+import jakarta.persistence.EntityManager;
+import org.apache.commons.lang3.Validate;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.Generator;
+import org.hibernate.jpa.event.spi.CallbackRegistry;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects newly created search parameter index rows (string, token, date, reference, etc.)
+ * for the duration of a FHIR transaction bundle, and writes them to the database in
+ * a single pass when the bundle is flushed.
+ * <p>
+ * Rows are grouped by entity type (and therefore by table), so that each table receives
+ * one uninterrupted sequence of inserts, which the JDBC driver can send as a small number of
+ * large batches. The rows are written through the Hibernate entity persisters, so the generated
+ * SQL is identical to what Hibernate would otherwise produce, but they are never added to the
+ * persistence context. This avoids the snapshot, cascade and dirty-checking cost that Hibernate
+ * otherwise pays for every managed index row on every flush.
+ * </p>
+ * <p>
+ * An instance of this class is created for each transaction bundle if
+ * {@link ca.uhn.fhir.jpa.api.config.JpaStorageSettings#isBulkIndexWritesEnabled()} is enabled,
+ * and is stored in the {@link TransactionDetails}. Rows are written when the bundle is flushed,
+ * and any rows queued after that are written just before the database transaction commits.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class ResourceIndexBulkWriter {
+
+	public static final String XACT_USERDATA_KEY = ResourceIndexBulkWriter.class.getName();
+
+	private final int myBatchSize;
+	private final Map<Class<?>, List<BaseResourceIndex>> myPendingRows = new LinkedHashMap<>();
+	private final Set<BaseResourceIndex> myPendingRowSet = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<BaseResourceIndex> myWrittenRowSet = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Constructor
+	 *
+	 * @param theBatchSize The JDBC batch size to use when writing rows
+	 */
+	public ResourceIndexBulkWriter(int theBatchSize) {
+		Validate.isTrue(theBatchSize > 0, "theBatchSize must be greater than 0");
+		myBatchSize = theBatchSize;
+	}
+
+	/**
+	 * Queues a new index row to be written on the next {@link #flush(EntityManager)}. Adding a
+	 * row which is already queued has no effect.
+	 */
+	public void add(BaseResourceIndex theRow) {
+		Validate.isTrue(theRow.getId() == null, "Row has already been persisted: %s", theRow);
+		if (myPendingRowSet.add(theRow)) {
+			myPendingRows
+					.computeIfAbsent(theRow.getClass(), t -> new ArrayList<>())
+					.add(theRow);
+		}
+	}
+
+	/**
+	 * Removes a row from the queue if it has not yet been written
+	 *
+	 * @return Returns <code>true</code> if the row was queued and has now been removed
+	 */
+	public boolean remove(BaseResourceIndex theRow) {
+		if (myPendingRowSet.remove(theRow)) {
+			myPendingRows.get(theRow.getClass()).remove(theRow);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given row was written by this writer. Rows written
+	 * this way exist in the database but are not managed by the persistence context.
+	 */
+	public boolean isWritten(BaseResourceIndex theRow) {
+		return myWrittenRowSet.contains(theRow);
+	}
+
+	public int size() {
+		return myPendingRowSet.size();
+	}
+
+	/**
+	 * Writes all queued rows. The entity manager must have been flushed first, so that the
+	 * resource rows referenced by the queued index rows exist.
+	 *
+	 * @return The number of rows written
+	 */
+	public int flush(EntityManager theEntityManager) {
+		if (myPendingRowSet.isEmpty()) {
+			return 0;
+		}
+
+		SessionImplementor session = theEntityManager.unwrap(SessionImplementor.class);
+		CallbackRegistry callbackRegistry =
+				session.getFactory().getEventEngine().getCallbackRegistry();
+
+		int count = 0;
+		Integer initialBatchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(myBatchSize);
+		try {
+			for (List<BaseResourceIndex> rows : myPendingRows.values()) {
+				for (BaseResourceIndex row : rows) {
+					insert(session, callbackRegistry, row);
+					myWrittenRowSet.add(row);
+					count++;
+				}
+			}
+			session.getJdbcCoordinator().executeBatch();
+		} finally {
+			session.setJdbcBatchSize(initialBatchSize);
+		}
+
+		myPendingRows.clear();
+		myPendingRowSet.clear();
+		return count;
+	}
+
+	private static void insert(
+			SessionImplementor theSession, CallbackRegistry theCallbackRegistry, BaseResourceIndex theRow) {
+		// Entity listeners normally fire on persist, e.g. IndexStorageOptimizationListener
+		theCallbackRegistry.preCreate(theRow);
+
+		EntityPersister persister = theSession.getEntityPersister(null, theRow);
+		Object[] state = persister.getValues(theRow);
+		Generator generator = persister.getGenerator();
+		Validate.isTrue(
+				!generator.generatedOnExecution(theRow, theSession),
+				"Entity type %s uses a post-insert identifier generator",
+				persister.getEntityName());
+
+		Object id = ((BeforeExecutionGenerator) generator).generate(theSession, theRow, null, EventType.INSERT);
+		persister.getInsertCoordinator().insert(theRow, id, state, theSession);
+		persister.setIdentifier(theRow, id, theSession);
+	}
+
+	/**
+	 * Returns the writer for the current transaction bundle, or <code>null</code> if
+	 * index rows should be persisted normally.
+	 */
+	@Nullable
+	public static ResourceIndexBulkWriter getFromTransactionDetails(
+			@Nullable TransactionDetails theTransactionDetails) {
+		if (theTransactionDetails == null) {
+			return null;
+		}
+		return theTransactionDetails.getUserData(XACT_USERDATA_KEY);
+	}
+}
@@ -0,0 +1,362 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.interceptor;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.util.StopWatch;
+import jakarta.annotation.Nullable;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.apache.commons.lang3.Validate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Records metrics about the executed queries into a {@link PerformanceMetricsRegistry}.
+ * Where the {@link PerformanceTracingLoggingInterceptor} logs each event, this interceptor
+ * aggregates them, so that slow resource types and search shapes can be identified.
+ * <p>
+ * Search metrics are tagged with the resource type and the <i>search shape</i>, which
+ * is the sorted set of parameter names and modifiers used by the search, without their
+ * values (e.g. <code>birthdate&amp;family:exact&amp;_sort:name</code>). Once
+ * {@link #setMaximumSearchShapes(int) a maximum number} of distinct shapes has been seen,
+ * any further shapes are recorded as {@link #OTHER_SEARCH_SHAPE}.
+ * </p>
+ * <p>
+ * The following meters are recorded:
+ * </p>
+ * <ul>
+ * <li><code>hapi.fhir.jpa.search.first_result.millis</code> - Time until the first result of a search query is loaded</li>
+ * <li><code>hapi.fhir.jpa.search.select.millis</code> - Time to run a search query to completion</li>
+ * <li><code>hapi.fhir.jpa.search.select.rows</code> - Number of matches found by a search query</li>
+ * <li><code>hapi.fhir.jpa.search.index.millis</code> - Time to run a fulltext index query</li>
+ * <li><code>hapi.fhir.jpa.search.index.rows</code> - Number of matches found by a fulltext index query</li>
+ * <li><code>hapi.fhir.jpa.search.outcome</code> - Number of asynchronous searches which completed or failed, tagged with <code>outcome</code></li>
+ * <li><code>hapi.fhir.jpa.search.cache.lookups</code> / <code>hapi.fhir.jpa.search.cache.hits</code> - Number of times the search cache was checked, and the number of times a cached search was reused</li>
+ * <li><code>hapi.fhir.jpa.request.sql.queries</code> - Number of SQL queries executed per request</li>
+ * </ul>
+ * <p>
+ * SQL queries are only counted if the listener returned by {@link #getSqlQueryCountingListener()}
+ * has been added to a DataSource proxy, e.g. using
+ * <code>ProxyDataSourceBuilder.create(dataSource).listener(interceptor.getSqlQueryCountingListener())</code>.
+ * The Spring Boot auto-configuration does this for every DataSource when metrics are enabled.
+ * It only increments a counter for the current thread, so unlike capturing the SQL it is cheap
+ * enough to leave enabled. To record the count per request, this interceptor must also be
+ * registered with the RestfulServer so that it is notified when each request starts and completes.
+ * Queries run on other threads (e.g. by asynchronous searches) are not included.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+@Interceptor
+public class PerformanceMetricsInterceptor {
+
+	public static final String FIRST_RESULT_MILLIS = "hapi.fhir.jpa.search.first_result.millis";
+	public static final String SELECT_MILLIS = "hapi.fhir.jpa.search.select.millis";
+	public static final String SELECT_ROWS = "hapi.fhir.jpa.search.select.rows";
+	public static final String INDEX_MILLIS = "hapi.fhir.jpa.search.index.millis";
+	public static final String INDEX_ROWS = "hapi.fhir.jpa.search.index.rows";
+	public static final String SEARCH_OUTCOME = "hapi.fhir.jpa.search.outcome";
+	public static final String CACHE_LOOKUPS = "hapi.fhir.jpa.search.cache.lookups";
+	public static final String CACHE_HITS = "hapi.fhir.jpa.search.cache.hits";
+	public static final String REQUEST_SQL_QUERIES = "hapi.fhir.jpa.request.sql.queries";
+
+	public static final String TAG_RESOURCE_TYPE = "resourceType";
+	public static final String TAG_SEARCH_SHAPE = "searchShape";
+	public static final String TAG_OUTCOME = "outcome";
+	public static final String TAG_OPERATION = "operation";
+
+	/**
+	 * Search shape recorded once the maximum number of search shapes has been reached
+	 */
+	public static final String OTHER_SEARCH_SHAPE = "other";
+
+	/**
+	 * Default value for {@link #setMaximumSearchShapes(int)}
+	 */
+	public static final int DEFAULT_MAXIMUM_SEARCH_SHAPES = 1000;
+
+	private static final String NONE = "none";
+	private static final String SQL_QUERY_COUNT_KEY =
+			PerformanceMetricsInterceptor.class.getName() + "_SQL_QUERY_COUNT";
+
+	private final PerformanceMetricsRegistry myRegistry;
+	private final Map<String, SearchMeters> mySearchMeters = new ConcurrentHashMap<>();
+	private final Object mySearchMetersUserDataKey = new Object();
+	private final Map<String, ResourceTypeMeters> myResourceTypeMeters = new ConcurrentHashMap<>();
+	private final Map<String, PerformanceMetricsRegistry.Histogram> myRequestSqlQueriesHistograms =
+			new ConcurrentHashMap<>();
+	private final ThreadLocal<long[]> myThreadSqlQueryCount = ThreadLocal.withInitial(() -> new long[1]);
+	private final SqlQueryCountingListener mySqlQueryCountingListener = new SqlQueryCountingListener();
+	private volatile boolean mySqlQueryCountingEnabled;
+	private int myMaximumSearchShapes = DEFAULT_MAXIMUM_SEARCH_SHAPES;
+
+	/**
+	 * Constructor
+	 */
+	public PerformanceMetricsInterceptor(PerformanceMetricsRegistry theRegistry) {
+		Validate.notNull(theRegistry, "theRegistry must not be null");
+		myRegistry = theRegistry;
+	}
+
+	public PerformanceMetricsRegistry getRegistry() {
+		return myRegistry;
+	}
+
+	/**
+	 * Returns a listener which counts the SQL queries executed on each thread. It must be added
+	 * to the DataSource proxy in order for {@link #REQUEST_SQL_QUERIES} to be recorded.
+	 */
+	public QueryExecutionListener getSqlQueryCountingListener() {
+		mySqlQueryCountingEnabled = true;
+		return mySqlQueryCountingListener;
+	}
+
+	/**
+	 * Sets the maximum number of distinct search shapes which will be tracked
+	 * separately (default is {@value #DEFAULT_MAXIMUM_SEARCH_SHAPES}). This
+	 * bounds the number of meters created by this interceptor.
+	 */
+	public void setMaximumSearchShapes(int theMaximumSearchShapes) {
+		Validate.isTrue(theMaximumSearchShapes >= 0, "theMaximumSearchShapes must be >= 0");
+		myMaximumSearchShapes = theMaximumSearchShapes;
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_SEARCH_FIRST_RESULT_LOADED)
+	public void searchFirstResultLoaded(SearchRuntimeDetails theDetails) {
+		getSearchMeters(theDetails).myFirstResultMillis.record(getMillis(theDetails));
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_SEARCH_SELECT_COMPLETE)
+	public void searchSelectComplete(SearchRuntimeDetails theDetails) {
+		SearchMeters meters = getSearchMeters(theDetails);
+		meters.mySelectMillis.record(getMillis(theDetails));
+		// Depending on how the query was executed, matches are counted in one or the other
+		meters.mySelectRows.record(Math.max(theDetails.getFoundMatchesCount(), theDetails.getFoundIndexMatchesCount()));
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_INDEXSEARCH_QUERY_COMPLETE)
+	public void indexSearchQueryComplete(SearchRuntimeDetails theDetails) {
+		SearchMeters meters = getSearchMeters(theDetails);
+		meters.myIndexMillis.record(getMillis(theDetails));
+		meters.myIndexRows.record(theDetails.getFoundIndexMatchesCount());
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_SEARCH_COMPLETE)
+	public void searchComplete(SearchRuntimeDetails theDetails) {
+		getSearchMeters(theDetails).myCompleted.increment();
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_SEARCH_FAILED)
+	public void searchFailed(SearchRuntimeDetails theDetails) {
+		getSearchMeters(theDetails).myFailed.increment();
+	}
+
+	@Hook(Pointcut.STORAGE_PRECHECK_FOR_CACHED_SEARCH)
+	public boolean precheckForCachedSearch(RequestDetails theRequestDetails) {
+		getResourceTypeMeters(getResourceName(theRequestDetails)).myCacheLookups.increment();
+		return true;
+	}
+
+	@Hook(Pointcut.JPA_PERFTRACE_SEARCH_REUSING_CACHED)
+	public void searchReusingCached(RequestDetails theRequestDetails) {
+		getResourceTypeMeters(getResourceName(theRequestDetails)).myCacheHits.increment();
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void incomingRequestPreHandled(RequestDetails theRequestDetails) {
+		if (mySqlQueryCountingEnabled) {
+			theRequestDetails
+					.getUserData()
+					.put(SQL_QUERY_COUNT_KEY, myThreadSqlQueryCount.get()[0]);
+		}
+	}
+
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void processingCompleted(RequestDetails theRequestDetails) {
+		Long initialCount = (Long) theRequestDetails.getUserData().get(SQL_QUERY_COUNT_KEY);
+		if (initialCount != null) {
+			long count = myThreadSqlQueryCount.get()[0] - initialCount;
+			String resourceType = getResourceName(theRequestDetails);
+			String operation = theRequestDetails.getRestOperationType() != null
+					? theRequestDetails.getRestOperationType().getCode()
+					: NONE;
+			myRequestSqlQueriesHistograms
+					.computeIfAbsent(
+							resourceType + ' ' + operation,
+							t -> myRegistry.histogram(
+									REQUEST_SQL_QUERIES, TAG_RESOURCE_TYPE, resourceType, TAG_OPERATION, operation))
+					.record(count);
+		}
+	}
+
+	/**
+	 * The meters are looked up once per search and stored in the search details, since
+	 * computing the search shape requires walking the whole parameter map
+	 */
+	private SearchMeters getSearchMeters(SearchRuntimeDetails theDetails) {
+		if (theDetails.getSearchParameterMap() == null) {
+			// The search hasn't been started yet, so the shape isn't known
+			return lookupSearchMeters(theDetails);
+		}
+		return (SearchMeters) theDetails
+				.getUserData()
+				.computeIfAbsent(mySearchMetersUserDataKey, t -> lookupSearchMeters(theDetails));
+	}
+
+	private SearchMeters lookupSearchMeters(SearchRuntimeDetails theDetails) {
+		String resourceType = defaultIfBlank(theDetails.getResourceType(), NONE);
+		String shape = toSearchShape(theDetails.getSearchParameterMap());
+		String key = resourceType + '?' + shape;
+
+		SearchMeters retVal = mySearchMeters.get(key);
+		if (retVal == null) {
+			if (mySearchMeters.size() >= myMaximumSearchShapes) {
+				key = resourceType + '?' + OTHER_SEARCH_SHAPE;
+				shape = OTHER_SEARCH_SHAPE;
+			}
+			String finalShape = shape;
+			retVal = mySearchMeters.computeIfAbsent(key, t -> new SearchMeters(resourceType, finalShape));
+		}
+		return retVal;
+	}
+
+	private ResourceTypeMeters getResourceTypeMeters(String theResourceType) {
+		return myResourceTypeMeters.computeIfAbsent(theResourceType, ResourceTypeMeters::new);
+	}
+
+	private static long getMillis(SearchRuntimeDetails theDetails) {
+		StopWatch stopWatch = theDetails.getQueryStopwatch();
+		return stopWatch != null ? stopWatch.getMillis() : 0;
+	}
+
+	private static String getResourceName(@Nullable RequestDetails theRequestDetails) {
+		if (theRequestDetails != null && isNotBlank(theRequestDetails.getResourceName())) {
+			return theRequestDetails.getResourceName();
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the names and modifiers of the parameters in the given map, without
+	 * their values, in a stable order
+	 */
+	static String toSearchShape(@Nullable SearchParameterMap theParams) {
+		if (theParams == null) {
+			return NONE;
+		}
+
+		TreeSet<String> parts = new TreeSet<>();
+		for (Map.Entry<String, List<List<IQueryParameterType>>> nextEntry : theParams.entrySet()) {
+			for (List<IQueryParameterType> nextOrList : nextEntry.getValue()) {
+				for (IQueryParameterType nextParam : nextOrList) {
+					String qualifier = nextParam.getQueryParameterQualifier();
+					parts.add(qualifier != null ? nextEntry.getKey() + qualifier : nextEntry.getKey());
+				}
+			}
+		}
+		for (SortSpec nextSort : theParams.getAllChainsInOrder()) {
+			parts.add("_sort:" + nextSort.getParamName());
+		}
+		if (theParams.hasIncludes()) {
+			parts.add("_include");
+		}
+		if (theParams.hasRevIncludes()) {
+			parts.add("_revinclude");
+		}
+		if (theParams.getEverythingMode() != null) {
+			parts.add("$everything");
+		}
+
+		return parts.isEmpty() ? NONE : String.join("&", parts);
+	}
+
+	private class SearchMeters {
+		private final PerformanceMetricsRegistry.Histogram myFirstResultMillis;
+		private final PerformanceMetricsRegistry.Histogram mySelectMillis;
+		private final PerformanceMetricsRegistry.Histogram mySelectRows;
+		private final PerformanceMetricsRegistry.Histogram myIndexMillis;
+		private final PerformanceMetricsRegistry.Histogram myIndexRows;
+		private final PerformanceMetricsRegistry.Counter myCompleted;
+		private final PerformanceMetricsRegistry.Counter myFailed;
+
+		private SearchMeters(String theResourceType, String theShape) {
+			String[] tags = {TAG_RESOURCE_TYPE, theResourceType, TAG_SEARCH_SHAPE, theShape};
+			myFirstResultMillis = myRegistry.histogram(FIRST_RESULT_MILLIS, tags);
+			mySelectMillis = myRegistry.histogram(SELECT_MILLIS, tags);
+			mySelectRows = myRegistry.histogram(SELECT_ROWS, tags);
+			myIndexMillis = myRegistry.histogram(INDEX_MILLIS, tags);
+			myIndexRows = myRegistry.histogram(INDEX_ROWS, tags);
+			myCompleted = myRegistry.counter(
+					SEARCH_OUTCOME,
+					TAG_RESOURCE_TYPE,
+					theResourceType,
+					TAG_SEARCH_SHAPE,
+					theShape,
+					TAG_OUTCOME,
+					"completed");
+			myFailed = myRegistry.counter(
+					SEARCH_OUTCOME,
+					TAG_RESOURCE_TYPE,
+					theResourceType,
+					TAG_SEARCH_SHAPE,
+					theShape,
+					TAG_OUTCOME,
+					"failed");
+		}
+	}
+
+	private class SqlQueryCountingListener implements QueryExecutionListener {
+
+		@Override
+		public void beforeQuery(ExecutionInfo theExecutionInfo, List<QueryInfo> theQueryInfoList) {
+			// nothing
+		}
+
+		@Override
+		public void afterQuery(ExecutionInfo theExecutionInfo, List<QueryInfo> theQueryInfoList) {
+			myThreadSqlQueryCount.get()[0] += theQueryInfoList.size();
+		}
+	}
+
+	private class ResourceTypeMeters {
+		private final PerformanceMetricsRegistry.Counter myCacheLookups;
+		private final PerformanceMetricsRegistry.Counter myCacheHits;
+
+		private ResourceTypeMeters(String theResourceType) {
+			myCacheLookups = myRegistry.counter(CACHE_LOOKUPS, TAG_RESOURCE_TYPE, theResourceType);
+			myCacheHits = myRegistry.counter(CACHE_HITS, TAG_RESOURCE_TYPE, theResourceType);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.interceptor;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A lightweight registry of counters and histograms, populated by the
+ * {@link PerformanceMetricsInterceptor}. Recording a value doesn't allocate
+ * or take a lock, so meters may be updated from any thread.
+ * <p>
+ * This registry has no dependency on any metrics library. To publish its
+ * meters to a monitoring system (e.g. from a Spring Boot application using
+ * Micrometer), iterate over {@link #getMeters()} and bind each meter using
+ * its name, tags and accessor methods.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class PerformanceMetricsRegistry {
+
+	private final ConcurrentHashMap<MeterId, Meter> myMeters = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the counter with the given name and tags, creating it if needed
+	 *
+	 * @param theTags Alternating tag names and values
+	 */
+	public Counter counter(String theName, String... theTags) {
+		return getOrCreate(theName, theTags, Counter.class, Counter::new);
+	}
+
+	/**
+	 * Returns the histogram with the given name and tags, creating it if needed
+	 *
+	 * @param theTags Alternating tag names and values
+	 */
+	public Histogram histogram(String theName, String... theTags) {
+		return getOrCreate(theName, theTags, Histogram.class, Histogram::new);
+	}
+
+	/**
+	 * Returns all meters which have been created
+	 */
+	public List<Meter> getMeters() {
+		return new ArrayList<>(myMeters.values());
+	}
+
+	/**
+	 * Removes all meters
+	 */
+	public void clear() {
+		myMeters.clear();
+	}
+
+	private <T extends Meter> T getOrCreate(
+			String theName, String[] theTags, Class<T> theType, Function<MeterId, T> theFactory) {
+		Validate.notBlank(theName, "theName must not be blank");
+		Validate.isTrue(theTags.length % 2 == 0, "theTags must contain alternating names and values");
+		MeterId id = new MeterId(theName, theTags);
+		Meter meter = myMeters.computeIfAbsent(id, t -> theFactory.apply(id));
+		Validate.isTrue(theType.isInstance(meter), "Meter %s is not a %s", theName, theType.getSimpleName());
+		return theType.cast(meter);
+	}
+
+	private static class MeterId {
+		private final String myName;
+		private final String[] myTags;
+		private final int myHashCode;
+
+		private MeterId(String theName, String[] theTags) {
+			myName = theName;
+			myTags = theTags.clone();
+			myHashCode = 31 * theName.hashCode() + Arrays.hashCode(myTags);
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (!(theO instanceof MeterId)) {
+				return false;
+			}
+			MeterId other = (MeterId) theO;
+			return myName.equals(other.myName) && Arrays.equals(myTags, other.myTags);
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+
+	/**
+	 * Base class for all meters
+	 */
+	public abstract static class Meter {
+		private final String myName;
+		private final Map<String, String> myTags;
+
+		private Meter(MeterId theId) {
+			myName = theId.myName;
+			Map<String, String> tags = new LinkedHashMap<>();
+			for (int i = 0; i < theId.myTags.length; i += 2) {
+				tags.put(theId.myTags[i], theId.myTags[i + 1]);
+			}
+			myTags = Collections.unmodifiableMap(tags);
+		}
+
+		public String getName() {
+			return myName;
+		}
+
+		public Map<String, String> getTags() {
+			return myTags;
+		}
+	}
+
+	/**
+	 * A monotonically increasing count
+	 */
+	public static class Counter extends Meter {
+		private final LongAdder myCount = new LongAdder();
+
+		private Counter(MeterId theId) {
+			super(theId);
+		}
+
+		public void increment() {
+			myCount.increment();
+		}
+
+		public void increment(long theAmount) {
+			myCount.add(theAmount);
+		}
+
+		public long getCount() {
+			return myCount.sum();
+		}
+
+		@Override
+		public String toString() {
+			return getName() + getTags() + " count=" + getCount();
+		}
+	}
+
+	/**
+	 * Records the distribution of non-negative values (e.g. latencies in
+	 * milliseconds, or row counts) using buckets whose upper bounds are
+	 * powers of two. This keeps the memory used by each histogram fixed,
+	 * at the cost of percentiles only being accurate to within a factor of two.
+	 */
+	public static class Histogram extends Meter {
+		/**
+		 * Bucket 0 holds the value 0, and bucket <code>n</code> holds values
+		 * from <code>2^(n-1)</code> up to <code>2^n - 1</code>
+		 */
+		static final int BUCKET_COUNT = 64;
+
+		private final LongAdder myCount = new LongAdder();
+		private final LongAdder myTotal = new LongAdder();
+		private final LongAccumulator myMax = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+		private Histogram(MeterId theId) {
+			super(theId);
+		}
+
+		public void record(long theValue) {
+			long value = Math.max(theValue, 0);
+			myCount.increment();
+			myTotal.add(value);
+			myMax.accumulate(value);
+			myBuckets.incrementAndGet(bucketFor(value));
+		}
+
+		public long getCount() {
+			return myCount.sum();
+		}
+
+		public long getTotal() {
+			return myTotal.sum();
+		}
+
+		public long getMax() {
+			return myMax.get();
+		}
+
+		public double getMean() {
+			long count = getCount();
+			return count > 0 ? (double) getTotal() / count : 0;
+		}
+
+		/**
+		 * Returns an upper bound for the value at the given percentile
+		 *
+		 * @param thePercentile A value between 0 and 1, e.g. <code>0.99</code>
+		 */
+		public long getPercentile(double thePercentile) {
+			Validate.isTrue(thePercentile >= 0 && thePercentile <= 1, "thePercentile must be between 0 and 1");
+			long[] buckets = getBucketCounts();
+			long total = 0;
+			for (long next : buckets) {
+				total += next;
+			}
+			long threshold = (long) Math.ceil(total * thePercentile);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= threshold && buckets[i] > 0) {
+					return Math.min(getBucketUpperBound(i), getMax());
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the number of values recorded in each bucket
+		 *
+		 * @see #getBucketUpperBound(int)
+		 */
+		public long[] getBucketCounts() {
+			long[] retVal = new long[BUCKET_COUNT];
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				retVal[i] = myBuckets.get(i);
+			}
+			return retVal;
+		}
+
+		/**
+		 * Returns the largest value which is recorded in the given bucket
+		 */
+		public static long getBucketUpperBound(int theBucket) {
+			if (theBucket >= BUCKET_COUNT - 1) {
+				return Long.MAX_VALUE;
+			}
+			return (1L << theBucket) - 1;
+		}
+
+		static int bucketFor(long theValue) {
+			return Math.min(Long.SIZE - Long.numberOfLeadingZeros(theValue), BUCKET_COUNT - 1);
+		}
+
+		@Override
+		public String toString() {
+			return getName() + getTags() + " count=" + getCount() + " mean=" + getMean() + " max=" + getMax();
+		}
+	}
+}
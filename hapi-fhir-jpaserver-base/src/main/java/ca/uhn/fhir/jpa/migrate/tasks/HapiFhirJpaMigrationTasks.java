@@ -129,6 +129,33 @@ public class HapiFhirJpaMigrationTasks extends BaseMigrationTasks<VersionEnum> {
 		init760();
 		init780();
 		init820();
+		init840();
+	}
+
+	protected void init840() {
+		Builder version = forVersion(VersionEnum.V8_4_0);
+
+		// Add HFJ_RES_COMPRESS_DICT table
+		{
+			version.addIdGenerator("20250701.1", "SEQ_RES_COMPRESS_DICT", 1);
+			Builder.BuilderAddTableByColumns compressDict =
+					version.addTableByColumns("20250701.2", "HFJ_RES_COMPRESS_DICT", "PID");
+
+			compressDict.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+			compressDict.addColumn("DICT_ID").nonNullable().type(ColumnTypeEnum.LONG);
+			compressDict.addColumn("RES_TYPE").nonNullable().type(ColumnTypeEnum.STRING, 100);
+			compressDict.addColumn("CREATED_TIME").nonNullable().type(ColumnTypeEnum.DATE_TIMESTAMP);
+			compressDict.addColumn("DICT_CONTENT").nonNullable().type(ColumnTypeEnum.BINARY);
+
+			compressDict
+					.addIndex("20250701.3", "IDX_RESCOMPDICT_DICTID")
+					.unique(true)
+					.withColumns("DICT_ID");
+			compressDict
+					.addIndex("20250701.4", "IDX_RESCOMPDICT_TYPE")
+					.unique(false)
+					.withColumns("RES_TYPE", "CREATED_TIME");
+		}
 	}
 
 	protected void init820() {
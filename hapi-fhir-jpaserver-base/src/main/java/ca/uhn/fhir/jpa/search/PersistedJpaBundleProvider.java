@@ -39,6 +39,7 @@ import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.SearchCacheStatusEnum;
@@ -52,6 +53,7 @@ import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.SimplePreResourceAccessDetails;
 import ca.uhn.fhir.rest.api.server.SimplePreResourceShowDetails;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
 import ca.uhn.fhir.rest.server.interceptor.ServerInterceptorUtil;
 import ca.uhn.fhir.rest.server.method.ResponsePage;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
@@ -119,6 +121,9 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 
 	@Autowired
 	private IJpaStorageResourceParser myJpaStorageResourceParser;
+
+	@Autowired
+	private SearchPagePrefetchSvc mySearchPagePrefetchSvc;
 	/*
 	 * Non autowired fields (will be different for every instance
 	 * of this class, since it's a prototype
@@ -258,26 +263,114 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		final ISearchBuilder sb = mySearchBuilderFactory.newSearchBuilder(resourceName, resourceType);
 
 		RequestPartitionId requestPartitionId = getRequestPartitionId();
-		// we request 1 more resource than we need
-		// this is so we can be sure of when we hit the last page
-		// (when doing offset searches)
-		final List<JpaPid> pidsSubList = mySearchCoordinatorSvc.getResources(
-				myUuid, theFromIndex, theToIndex + 1, myRequest, requestPartitionId);
-		// max list size should be either the entire list, or from - to length
-		int maxSize = Math.min(theToIndex - theFromIndex, pidsSubList.size());
-		theResponsePageBuilder.setTotalRequestedResourcesFetched(pidsSubList.size());
-
-		List<JpaPid> firstBatchOfPids = pidsSubList.subList(0, maxSize);
-		List<IBaseResource> resources = myTxService
-				.withRequest(myRequest)
-				.withRequestPartitionId(requestPartitionId)
-				.execute(() -> {
-					return toResourceList(sb, firstBatchOfPids, theResponsePageBuilder);
-				});
+
+		SearchPagePrefetchSvc.PrefetchedPage prefetchedPage = null;
+		if (mySearchPagePrefetchSvc != null) {
+			prefetchedPage = mySearchPagePrefetchSvc.take(
+					new SearchPagePrefetchSvc.PageKey(myUuid, theFromIndex, theToIndex, requestPartitionId));
+		}
+
+		List<IBaseResource> resources;
+		int totalRequestedResourcesFetched;
+		if (prefetchedPage != null) {
+			ourLog.trace("Using prefetched page {}-{} of search {}", theFromIndex, theToIndex, myUuid);
+			totalRequestedResourcesFetched = prefetchedPage.getTotalRequestedResourcesFetched();
+			theResponsePageBuilder.setTotalRequestedResourcesFetched(totalRequestedResourcesFetched);
+			SearchPagePrefetchSvc.PrefetchedPage page = prefetchedPage;
+			resources = myTxService
+					.withRequest(myRequest)
+					.withRequestPartitionId(requestPartitionId)
+					.execute(() -> firePreshowAndPopulatePage(
+							page.getResources(), page.getIncludedResourceCount(), theResponsePageBuilder));
+		} else {
+			// we request 1 more resource than we need
+			// this is so we can be sure of when we hit the last page
+			// (when doing offset searches)
+			final List<JpaPid> pidsSubList = mySearchCoordinatorSvc.getResources(
+					myUuid, theFromIndex, theToIndex + 1, myRequest, requestPartitionId);
+			// max list size should be either the entire list, or from - to length
+			int maxSize = Math.min(theToIndex - theFromIndex, pidsSubList.size());
+			totalRequestedResourcesFetched = pidsSubList.size();
+			theResponsePageBuilder.setTotalRequestedResourcesFetched(totalRequestedResourcesFetched);
+
+			List<JpaPid> firstBatchOfPids = pidsSubList.subList(0, maxSize);
+			resources = myTxService
+					.withRequest(myRequest)
+					.withRequestPartitionId(requestPartitionId)
+					.execute(() -> {
+						return toResourceList(sb, firstBatchOfPids, theResponsePageBuilder);
+					});
+		}
+
+		if (totalRequestedResourcesFetched > theToIndex - theFromIndex) {
+			prefetchNextPage(theFromIndex, theToIndex, requestPartitionId);
+		}
 
 		return resources;
 	}
 
+	/**
+	 * Starts loading the page following the current one in the background, if
+	 * {@link JpaStorageSettings#setSearchPagePrefetchMaxPages(int) search page prefetching}
+	 * is enabled and can safely be used for this search
+	 */
+	private void prefetchNextPage(int theFromIndex, int theToIndex, RequestPartitionId theRequestPartitionId) {
+		if (mySearchPagePrefetchSvc == null || !mySearchPagePrefetchSvc.isEnabled()) {
+			return;
+		}
+
+		// Only prefetch results which have already been found, so that we never wait for the search
+		int fromIndex = theToIndex;
+		int toIndex = theToIndex + (theToIndex - theFromIndex);
+		Search search = mySearchEntity;
+		if (search.getStatus() == SearchStatusEnum.FINISHED) {
+			if (fromIndex >= search.getNumFound()) {
+				return;
+			}
+			// The last page is requested only up to the end of the results
+			toIndex = Math.min(toIndex, search.getNumFound());
+		} else if (search.getStatus().isDone() || search.getNumFound() - search.getNumBlocked() <= toIndex) {
+			return;
+		}
+
+		// Pre-access interceptors need to be invoked with the request which returns the resources
+		IInterceptorBroadcaster compositeBroadcaster =
+				CompositeInterceptorBroadcaster.newCompositeBroadcaster(myInterceptorBroadcaster, myRequest);
+		if (compositeBroadcaster.hasHooks(Pointcut.STORAGE_PREACCESS_RESOURCES)) {
+			return;
+		}
+
+		int pageToIndex = toIndex;
+		SearchPagePrefetchSvc.PageKey key =
+				new SearchPagePrefetchSvc.PageKey(myUuid, fromIndex, pageToIndex, theRequestPartitionId);
+		mySearchPagePrefetchSvc.prefetch(
+				key, () -> loadPrefetchedPage(search, fromIndex, pageToIndex, theRequestPartitionId));
+	}
+
+	private SearchPagePrefetchSvc.PrefetchedPage loadPrefetchedPage(
+			Search theSearch, int theFromIndex, int theToIndex, RequestPartitionId theRequestPartitionId) {
+		// The original request may have completed by the time this runs, so it is not used here
+		SystemRequestDetails request = new SystemRequestDetails();
+		request.setRequestPartitionId(theRequestPartitionId);
+
+		String resourceName = theSearch.getResourceType();
+		Class<? extends IBaseResource> resourceType =
+				myContext.getResourceDefinition(resourceName).getImplementingClass();
+		ISearchBuilder sb = mySearchBuilderFactory.newSearchBuilder(resourceName, resourceType);
+
+		List<JpaPid> pids = mySearchCoordinatorSvc.getResources(
+				myUuid, theFromIndex, theToIndex + 1, request, theRequestPartitionId);
+		int maxSize = Math.min(theToIndex - theFromIndex, pids.size());
+		List<JpaPid> pagePids = new ArrayList<>(pids.subList(0, maxSize));
+		List<JpaPid> includedPids = new ArrayList<>();
+
+		List<IBaseResource> resources = myTxService
+				.withRequest(request)
+				.withRequestPartitionId(theRequestPartitionId)
+				.execute(() -> loadResourcesAndIncludes(theSearch, sb, pagePids, includedPids, request));
+		return new SearchPagePrefetchSvc.PrefetchedPage(resources, includedPids.size(), pids.size());
+	}
+
 	/**
 	 * Returns false if the entity can't be found
 	 */
@@ -471,7 +564,23 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 			List<JpaPid> thePids,
 			ResponsePage.ResponsePageBuilder theResponsePageBuilder) {
 		List<JpaPid> includedPidList = new ArrayList<>();
-		if (mySearchEntity.getSearchType() == SearchTypeEnum.SEARCH) {
+		List<IBaseResource> resources =
+				loadResourcesAndIncludes(mySearchEntity, theSearchBuilder, thePids, includedPidList, myRequest);
+		return firePreshowAndPopulatePage(resources, includedPidList.size(), theResponsePageBuilder);
+	}
+
+	/**
+	 * Loads the given resources along with any resources they _include or _revinclude
+	 *
+	 * @param theIncludedPidList Populated with the PIDs of the included resources
+	 */
+	private List<IBaseResource> loadResourcesAndIncludes(
+			Search theSearch,
+			ISearchBuilder theSearchBuilder,
+			List<JpaPid> thePids,
+			List<JpaPid> theIncludedPidList,
+			RequestDetails theRequest) {
+		if (theSearch.getSearchType() == SearchTypeEnum.SEARCH) {
 			Integer maxIncludes = myStorageSettings.getMaximumIncludesToLoadPerPage();
 
 			// Load non-iterate _revincludes
@@ -479,70 +588,78 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 					myContext,
 					myEntityManager,
 					thePids,
-					mySearchEntity.toRevIncludesList(false),
+					theSearch.toRevIncludesList(false),
 					true,
-					mySearchEntity.getLastUpdated(),
+					theSearch.getLastUpdated(),
 					myUuid,
-					myRequest,
+					theRequest,
 					maxIncludes);
 			if (maxIncludes != null) {
 				maxIncludes -= nonIterateRevIncludedPids.size();
 			}
 			thePids.addAll(nonIterateRevIncludedPids);
-			includedPidList.addAll(nonIterateRevIncludedPids);
+			theIncludedPidList.addAll(nonIterateRevIncludedPids);
 
 			// Load non-iterate _includes
 			Set<JpaPid> nonIterateIncludedPids = theSearchBuilder.loadIncludes(
 					myContext,
 					myEntityManager,
 					thePids,
-					mySearchEntity.toIncludesList(false),
+					theSearch.toIncludesList(false),
 					false,
-					mySearchEntity.getLastUpdated(),
+					theSearch.getLastUpdated(),
 					myUuid,
-					myRequest,
+					theRequest,
 					maxIncludes);
 			if (maxIncludes != null) {
 				maxIncludes -= nonIterateIncludedPids.size();
 			}
 			thePids.addAll(nonIterateIncludedPids);
-			includedPidList.addAll(nonIterateIncludedPids);
+			theIncludedPidList.addAll(nonIterateIncludedPids);
 
 			// Load iterate _revinclude
 			Set<JpaPid> iterateRevIncludedPids = theSearchBuilder.loadIncludes(
 					myContext,
 					myEntityManager,
 					thePids,
-					mySearchEntity.toRevIncludesList(true),
+					theSearch.toRevIncludesList(true),
 					true,
-					mySearchEntity.getLastUpdated(),
+					theSearch.getLastUpdated(),
 					myUuid,
-					myRequest,
+					theRequest,
 					maxIncludes);
 			if (maxIncludes != null) {
 				maxIncludes -= iterateRevIncludedPids.size();
 			}
 			thePids.addAll(iterateRevIncludedPids);
-			includedPidList.addAll(iterateRevIncludedPids);
+			theIncludedPidList.addAll(iterateRevIncludedPids);
 
 			// Load iterate _includes
 			Set<JpaPid> iterateIncludedPids = theSearchBuilder.loadIncludes(
 					myContext,
 					myEntityManager,
 					thePids,
-					mySearchEntity.toIncludesList(true),
+					theSearch.toIncludesList(true),
 					false,
-					mySearchEntity.getLastUpdated(),
+					theSearch.getLastUpdated(),
 					myUuid,
-					myRequest,
+					theRequest,
 					maxIncludes);
 			thePids.addAll(iterateIncludedPids);
-			includedPidList.addAll(iterateIncludedPids);
+			theIncludedPidList.addAll(iterateIncludedPids);
 		}
 
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<>();
-		theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRequest);
+		theSearchBuilder.loadResourcesByPid(thePids, theIncludedPidList, resources, false, theRequest);
+		return resources;
+	}
+
+	private List<IBaseResource> firePreshowAndPopulatePage(
+			List<IBaseResource> theResources,
+			int theIncludedResourceCount,
+			ResponsePage.ResponsePageBuilder theResponsePageBuilder) {
+		List<IBaseResource> resources = theResources;
 
 		// we will send the resource list to our interceptors
 		// this can (potentially) change the results being returned.
@@ -551,7 +668,7 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		// we only care about omitted results from this page
 		theResponsePageBuilder.setOmittedResourceCount(precount - resources.size());
 		theResponsePageBuilder.setResources(resources);
-		theResponsePageBuilder.setIncludedResourceCount(includedPidList.size());
+		theResponsePageBuilder.setIncludedResourceCount(theIncludedResourceCount);
 
 		return resources;
 	}
@@ -144,4 +144,9 @@ public class PersistedJpaSearchFirstPageBundleProvider extends PersistedJpaBundl
 		}
 		return super.size();
 	}
+
+	@Override
+	public Integer getEstimatedSize() {
+		return mySearchTask.getEstimatedTotal();
+	}
 }
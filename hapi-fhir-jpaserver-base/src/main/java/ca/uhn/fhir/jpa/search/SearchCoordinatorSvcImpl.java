@@ -677,7 +677,10 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc<JpaPid> {
 
 		Optional<Search> candidate = mySearchCacheSvc.findCandidatesForReuse(
 				theResourceType, theQueryString, createdCutoff, theRequestPartitionId);
-		return candidate.orElse(null);
+
+		// The results may no longer be available even though the search has not expired, e.g. if
+		// they are held in memory and were discarded or are held by a different server
+		return candidate.filter(mySearchResultCacheSvc::isResultsAvailable).orElse(null);
 	}
 
 	@Nullable
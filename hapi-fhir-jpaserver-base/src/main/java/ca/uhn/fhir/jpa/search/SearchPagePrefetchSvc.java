@@ -0,0 +1,369 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.util.ThreadPoolUtil;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds pages of persisted search results which have been speculatively loaded in the
+ * background, in anticipation of a client requesting the next page of a search. Prefetching
+ * is enabled using {@link JpaStorageSettings#setSearchPagePrefetchMaxPages(int)}.
+ * <p>
+ * Each prefetched page can be taken exactly once, and pages which are not taken expire
+ * after a short time. The number of pages held in memory, the total number of resources
+ * in those pages, and the number of pages being loaded concurrently are all bounded, and
+ * prefetch requests beyond these limits are simply dropped. A request for a page which is
+ * still being loaded waits only briefly for it, after which the caller loads the page itself.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class SearchPagePrefetchSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchPagePrefetchSvc.class);
+	private static final long EXPIRY_MILLIS = 30 * DateUtils.MILLIS_PER_SECOND;
+	private static final long DEFAULT_MAX_WAIT_MILLIS = 5 * DateUtils.MILLIS_PER_SECOND;
+	private static final int MAX_THREADS = 100;
+
+	private final JpaStorageSettings myStorageSettings;
+	private final ThreadPoolTaskExecutor myExecutor;
+	private final Map<PageKey, PendingPage> myPages = new ConcurrentHashMap<>();
+	private final AtomicInteger myRunningCount = new AtomicInteger();
+	private final AtomicInteger myHeldResourceCount = new AtomicInteger();
+	private final AtomicLong myHitCount = new AtomicLong();
+	private long myMaxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+	/**
+	 * Constructor
+	 */
+	public SearchPagePrefetchSvc(JpaStorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+		myExecutor = ThreadPoolUtil.newThreadPool(
+				1, MAX_THREADS, "search-page-prefetch-", 0, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@PreDestroy
+	public void preDestroy() {
+		myExecutor.shutdown();
+	}
+
+	public boolean isEnabled() {
+		return myStorageSettings.getSearchPagePrefetchMaxPages() > 0;
+	}
+
+	/**
+	 * Loads the given page in the background using the supplied loader, unless it is
+	 * already loaded (or being loaded), or the limits on cached pages, cached resources or
+	 * concurrently loading pages have been reached.
+	 */
+	public void prefetch(PageKey theKey, Supplier<PrefetchedPage> theLoader) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		purgeExpiredPages();
+		if (myPages.containsKey(theKey)) {
+			return;
+		}
+		if (myPages.size() >= myStorageSettings.getSearchPagePrefetchMaxPages()) {
+			ourLog.trace("Not prefetching {}, too many pages already prefetched", theKey);
+			return;
+		}
+
+		int maxConcurrent = Math.min(myStorageSettings.getSearchPagePrefetchMaxConcurrent(), MAX_THREADS);
+		if (myRunningCount.incrementAndGet() > maxConcurrent) {
+			myRunningCount.decrementAndGet();
+			ourLog.trace("Not prefetching {}, too many prefetches already running", theKey);
+			return;
+		}
+
+		// The page size is reserved up front, and adjusted once includes are known
+		int pageSize = theKey.getPageSize();
+		if (!tryReserveResources(pageSize)) {
+			myRunningCount.decrementAndGet();
+			ourLog.trace("Not prefetching {}, too many resources already prefetched", theKey);
+			return;
+		}
+
+		PendingPage pending = new PendingPage(pageSize);
+		if (myPages.putIfAbsent(theKey, pending) != null) {
+			myRunningCount.decrementAndGet();
+			pending.release();
+			return;
+		}
+
+		try {
+			myExecutor.execute(() -> {
+				try {
+					PrefetchedPage page = theLoader.get();
+					if (!pending.resize(page.getResources().size())) {
+						ourLog.trace("Discarding prefetched {}, too many resources already prefetched", theKey);
+						discard(theKey, pending);
+						page = null;
+					}
+					pending.myFuture.complete(page);
+				} catch (Throwable t) {
+					ourLog.warn("Failed to prefetch {}: {}", theKey, t.toString());
+					discard(theKey, pending);
+					pending.myFuture.completeExceptionally(t);
+				} finally {
+					myRunningCount.decrementAndGet();
+				}
+			});
+		} catch (TaskRejectedException e) {
+			myRunningCount.decrementAndGet();
+			discard(theKey, pending);
+		}
+	}
+
+	/**
+	 * Returns and removes the prefetched page with the given key, waiting briefly for it if
+	 * it is still being loaded. Returns <code>null</code> if the page was not prefetched, if
+	 * prefetching it failed, or if it did not finish loading in time, in which case the caller
+	 * should load the page itself.
+	 */
+	@Nullable
+	public PrefetchedPage take(PageKey theKey) {
+		PendingPage pending = myPages.remove(theKey);
+		if (pending == null) {
+			return null;
+		}
+		pending.release();
+		if (pending.isExpired()) {
+			return null;
+		}
+
+		try {
+			PrefetchedPage retVal = pending.myFuture.get(myMaxWaitMillis, TimeUnit.MILLISECONDS);
+			if (retVal != null) {
+				myHitCount.incrementAndGet();
+			}
+			return retVal;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		} catch (TimeoutException e) {
+			ourLog.debug("Timed out waiting for prefetched {}", theKey);
+			return null;
+		}
+	}
+
+	public void invalidateAll() {
+		myPages.forEach(this::discard);
+	}
+
+	/**
+	 * Returns the number of times a page was served from a prefetch
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	/**
+	 * Returns the number of resources currently reserved by prefetched pages
+	 */
+	public int getHeldResourceCount() {
+		return myHeldResourceCount.get();
+	}
+
+	@VisibleForTesting
+	public void setMaxWaitMillisForUnitTest(long theMaxWaitMillis) {
+		myMaxWaitMillis = theMaxWaitMillis;
+	}
+
+	private void purgeExpiredPages() {
+		myPages.forEach((key, pending) -> {
+			if (pending.isExpired()) {
+				discard(key, pending);
+			}
+		});
+	}
+
+	private void discard(PageKey theKey, PendingPage thePending) {
+		myPages.remove(theKey, thePending);
+		thePending.release();
+	}
+
+	private boolean tryReserveResources(int theCount) {
+		int max = myStorageSettings.getSearchPagePrefetchMaxResources();
+		while (true) {
+			int current = myHeldResourceCount.get();
+			if (current + theCount > max) {
+				return false;
+			}
+			if (myHeldResourceCount.compareAndSet(current, current + theCount)) {
+				return true;
+			}
+		}
+	}
+
+	private class PendingPage {
+
+		private final CompletableFuture<PrefetchedPage> myFuture = new CompletableFuture<>();
+		private final long myCreated = System.currentTimeMillis();
+		private int myReservedCount;
+		private boolean myReleased;
+
+		private PendingPage(int theReservedCount) {
+			myReservedCount = theReservedCount;
+		}
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() - myCreated > EXPIRY_MILLIS;
+		}
+
+		/**
+		 * Adjusts the reservation to the actual number of loaded resources. Returns
+		 * <code>false</code> if the additional resources don't fit in the budget.
+		 */
+		private synchronized boolean resize(int theCount) {
+			if (myReleased) {
+				// Already taken (or discarded), so the page no longer counts against the budget
+				return true;
+			}
+			int delta = theCount - myReservedCount;
+			if (delta > 0 && !tryReserveResources(delta)) {
+				return false;
+			}
+			if (delta < 0) {
+				myHeldResourceCount.addAndGet(delta);
+			}
+			myReservedCount = theCount;
+			return true;
+		}
+
+		private synchronized void release() {
+			if (!myReleased) {
+				myReleased = true;
+				myHeldResourceCount.addAndGet(-myReservedCount);
+			}
+		}
+	}
+
+	/**
+	 * Identifies a page of a persisted search
+	 */
+	public static class PageKey {
+
+		private final String mySearchUuid;
+		private final int myFromIndex;
+		private final int myToIndex;
+		private final RequestPartitionId myRequestPartitionId;
+		private final int myHashCode;
+
+		public PageKey(
+				String theSearchUuid, int theFromIndex, int theToIndex, RequestPartitionId theRequestPartitionId) {
+			mySearchUuid = theSearchUuid;
+			myFromIndex = theFromIndex;
+			myToIndex = theToIndex;
+			myRequestPartitionId = theRequestPartitionId;
+			myHashCode = Objects.hash(mySearchUuid, myFromIndex, myToIndex, myRequestPartitionId);
+		}
+
+		public int getPageSize() {
+			return myToIndex - myFromIndex;
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof PageKey)) {
+				return false;
+			}
+			PageKey that = (PageKey) theO;
+			return myFromIndex == that.myFromIndex
+					&& myToIndex == that.myToIndex
+					&& mySearchUuid.equals(that.mySearchUuid)
+					&& Objects.equals(myRequestPartitionId, that.myRequestPartitionId);
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+
+		@Override
+		public String toString() {
+			return "search " + mySearchUuid + " page " + myFromIndex + "-" + myToIndex;
+		}
+	}
+
+	/**
+	 * A page of loaded search results. Storage interceptors which filter or modify the
+	 * resources being returned have not yet been invoked on these resources.
+	 */
+	public static class PrefetchedPage {
+
+		private final List<IBaseResource> myResources;
+		private final int myIncludedResourceCount;
+		private final int myTotalRequestedResourcesFetched;
+
+		public PrefetchedPage(
+				List<IBaseResource> theResources, int theIncludedResourceCount, int theTotalRequestedResourcesFetched) {
+			myResources = theResources;
+			myIncludedResourceCount = theIncludedResourceCount;
+			myTotalRequestedResourcesFetched = theTotalRequestedResourcesFetched;
+		}
+
+		public List<IBaseResource> getResources() {
+			return myResources;
+		}
+
+		public int getIncludedResourceCount() {
+			return myIncludedResourceCount;
+		}
+
+		/**
+		 * The number of search result PIDs which were fetched, including one past the
+		 * end of the page if there are more results
+		 */
+		public int getTotalRequestedResourcesFetched() {
+			return myTotalRequestedResourcesFetched;
+		}
+	}
+}
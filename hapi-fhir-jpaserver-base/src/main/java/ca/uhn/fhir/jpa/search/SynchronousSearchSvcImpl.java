@@ -33,8 +33,10 @@ import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
 import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
+import ca.uhn.fhir.jpa.search.builder.models.KeysetPageToken;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.api.Constants;
@@ -46,6 +48,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.interceptor.ServerInterceptorUtil;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.rest.server.util.CompositeInterceptorBroadcaster;
+import jakarta.annotation.Nullable;
 import jakarta.persistence.EntityManager;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -57,6 +60,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantCount;
+import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantEstimatedCount;
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantOnlyCount;
 import static java.util.Objects.nonNull;
 
@@ -106,6 +110,11 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 				? isWantCount(theParams)
 				: isWantCount(myStorageSettings.getDefaultTotalMode());
 		boolean wantCount = theParamWantOnlyCount || theParamOrConfigWantCount;
+		boolean wantEstimatedCount = !wantCount
+				&& isWantEstimatedCount(
+						nonNull(theParams.getSearchTotalMode())
+								? theParams.getSearchTotalMode()
+								: myStorageSettings.getDefaultTotalMode());
 
 		// Execute the query and make sure we return distinct results
 		return myTxService
@@ -138,6 +147,21 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 						ourLog.trace("Got count {}", count);
 					}
 
+					Long estimatedCount = null;
+					if (wantEstimatedCount) {
+						// See the note about full text parameters above
+						List<List<IQueryParameterType>> contentAndTerms = theParams.get(Constants.PARAM_CONTENT);
+						List<List<IQueryParameterType>> textAndTerms = theParams.get(Constants.PARAM_TEXT);
+
+						estimatedCount = theSb.createEstimatedCountQuery(
+								theParams, theSearchUuid, theRequestDetails, theRequestPartitionId);
+
+						if (contentAndTerms != null) theParams.put(Constants.PARAM_CONTENT, contentAndTerms);
+						if (textAndTerms != null) theParams.put(Constants.PARAM_TEXT, textAndTerms);
+
+						ourLog.trace("Got estimated count {}", estimatedCount);
+					}
+
 					if (theParamWantOnlyCount) {
 						SimpleBundleProvider bundleProvider = new SimpleBundleProvider();
 						bundleProvider.setSize(count.intValue());
@@ -172,11 +196,15 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 
 					// truncate the list we retrieved - if needed
 					int receivedResourceCount = -1;
+					JpaPid lastPidBeforeNextPage = null;
 					if (hasACount) {
 						// we want the accurate received resource count
 						receivedResourceCount = pids.size();
 						int resourcesToReturn = Math.min(theParams.getCount(), pids.size());
 						pids = pids.subList(0, resourcesToReturn);
+						if (receivedResourceCount > resourcesToReturn && resourcesToReturn > 0) {
+							lastPidBeforeNextPage = pids.get(resourcesToReturn - 1);
+						}
 					}
 
 					JpaPreResourceAccessDetails accessDetails = new JpaPreResourceAccessDetails(pids, () -> theSb);
@@ -255,10 +283,18 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 					if (theParams.isOffsetQuery()) {
 						bundleProvider.setCurrentPageOffset(theParams.getOffset());
 						bundleProvider.setCurrentPageSize(theParams.getCount());
+						if (lastPidBeforeNextPage != null
+								&& pids.contains(lastPidBeforeNextPage)
+								&& KeysetPageToken.isKeysetPagingCandidate(myStorageSettings, theParams)) {
+							bundleProvider.setNextPageToken(createNextPageToken(theParams, lastPidBeforeNextPage));
+						}
 					}
 
 					if (wantCount) {
 						bundleProvider.setSize(count.intValue());
+					} else if (estimatedCount != null
+							&& estimatedCount <= myStorageSettings.getEstimatedTotalExactCountThreshold()) {
+						bundleProvider.setSize(estimatedCount.intValue());
 					} else {
 						Integer queryCount = getQueryCount(theLoadSynchronousUpTo, theParams);
 						if (queryCount == null || queryCount > resources.size()) {
@@ -266,6 +302,9 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 							bundleProvider.setSize(getTotalCount(queryCount, theParams.getOffset(), resources.size()));
 						} else {
 							bundleProvider.setSize(null);
+							if (estimatedCount != null) {
+								bundleProvider.setEstimatedSize((int) Math.min(estimatedCount, Integer.MAX_VALUE));
+							}
 						}
 					}
 
@@ -275,6 +314,28 @@ public class SynchronousSearchSvcImpl implements ISynchronousSearchSvc {
 				});
 	}
 
+	/**
+	 * Creates the keyset page token for the page following the given resource. The resource
+	 * entity was loaded along with the page, so it is taken from the persistence context. If the
+	 * resource was filtered out of the results by an interceptor, no token is created and the
+	 * next page is fetched using the offset.
+	 */
+	@Nullable
+	private String createNextPageToken(SearchParameterMap theParams, JpaPid theLastPid) {
+		ResourceTable entity = myEntityManager.find(ResourceTable.class, theLastPid);
+		if (entity == null) {
+			return null;
+		}
+		int nextOffset = theParams.getOffset() + theParams.getCount();
+		return KeysetPageToken.forLastResource(
+						theParams.getSort(),
+						nextOffset,
+						theLastPid.getId(),
+						entity.getUpdatedDate(),
+						entity.getFhirId())
+				.encode();
+	}
+
 	@Override
 	public IBundleProvider executeQuery(
 			String theResourceType,
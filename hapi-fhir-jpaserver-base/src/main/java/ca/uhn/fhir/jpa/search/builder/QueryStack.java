@@ -32,6 +32,7 @@ import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.entity.NormalizedQuantitySearchLevel;
 import ca.uhn.fhir.jpa.model.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.model.util.UcumServiceUtil;
+import ca.uhn.fhir.jpa.search.builder.models.KeysetPageToken;
 import ca.uhn.fhir.jpa.search.builder.models.MissingParameterQueryParams;
 import ca.uhn.fhir.jpa.search.builder.models.MissingQueryParameterPredicateParams;
 import ca.uhn.fhir.jpa.search.builder.models.PredicateBuilderCacheKey;
@@ -158,6 +159,7 @@ public class QueryStack {
 	// used for _offset queries with sort, should be removed once the fix is applied to the async path too.
 	private boolean myUseAggregate;
 	private boolean myGroupingAdded;
+	private ResourceTablePredicateBuilder mySortResourceTablePredicateBuilder;
 
 	/**
 	 * Constructor
@@ -248,14 +250,7 @@ public class QueryStack {
 	}
 
 	public void addSortOnLastUpdated(boolean theAscending) {
-		ResourceTablePredicateBuilder resourceTablePredicateBuilder;
-		BaseJoiningPredicateBuilder firstPredicateBuilder = mySqlBuilder.getOrCreateFirstPredicateBuilder();
-		if (firstPredicateBuilder instanceof ResourceTablePredicateBuilder) {
-			resourceTablePredicateBuilder = (ResourceTablePredicateBuilder) firstPredicateBuilder;
-		} else {
-			resourceTablePredicateBuilder =
-					mySqlBuilder.addResourceTablePredicateBuilder(firstPredicateBuilder.getJoinColumns());
-		}
+		ResourceTablePredicateBuilder resourceTablePredicateBuilder = getOrCreateSortResourceTablePredicateBuilder();
 		mySqlBuilder.addSortDate(resourceTablePredicateBuilder.getColumnLastUpdated(), theAscending, myUseAggregate);
 	}
 
@@ -285,14 +280,7 @@ public class QueryStack {
 	}
 
 	public void addSortOnResourceId(boolean theAscending) {
-		ResourceTablePredicateBuilder resourceTablePredicateBuilder;
-		BaseJoiningPredicateBuilder firstPredicateBuilder = mySqlBuilder.getOrCreateFirstPredicateBuilder();
-		if (firstPredicateBuilder instanceof ResourceTablePredicateBuilder) {
-			resourceTablePredicateBuilder = (ResourceTablePredicateBuilder) firstPredicateBuilder;
-		} else {
-			resourceTablePredicateBuilder =
-					mySqlBuilder.addResourceTablePredicateBuilder(firstPredicateBuilder.getJoinColumns());
-		}
+		ResourceTablePredicateBuilder resourceTablePredicateBuilder = getOrCreateSortResourceTablePredicateBuilder();
 		mySqlBuilder.addSortString(resourceTablePredicateBuilder.getColumnFhirId(), theAscending, myUseAggregate);
 	}
 
@@ -302,6 +290,46 @@ public class QueryStack {
 		mySqlBuilder.addSortString(predicateBuilder.getResourceIdColumn(), theAscending);
 	}
 
+	/**
+	 * Adds a keyset (seek) predicate which skips all results up to and including the
+	 * last result of the previous page. The sort (including the tie-breaking sort
+	 * on the resource PID) must already have been added.
+	 */
+	public void addKeysetPredicate(KeysetPageToken thePageToken) {
+		DbColumn resourceIdColumn =
+				mySqlBuilder.getOrCreateFirstPredicateBuilder().getResourceIdColumn();
+		DbColumn sortColumn = null;
+		Object lastSortValue = null;
+		switch (thePageToken.getSortParamName()) {
+			case Constants.PARAM_LASTUPDATED:
+				sortColumn = getOrCreateSortResourceTablePredicateBuilder().getColumnLastUpdated();
+				lastSortValue = thePageToken.getLastUpdated();
+				break;
+			case IAnyResource.SP_RES_ID:
+				sortColumn = getOrCreateSortResourceTablePredicateBuilder().getColumnFhirId();
+				lastSortValue = thePageToken.getLastFhirId();
+				break;
+			default:
+				// _pid: the PID is the sort column
+				break;
+		}
+		mySqlBuilder.addKeysetPredicate(
+				sortColumn, lastSortValue, resourceIdColumn, thePageToken.getLastPid(), thePageToken.isAscending());
+	}
+
+	private ResourceTablePredicateBuilder getOrCreateSortResourceTablePredicateBuilder() {
+		if (mySortResourceTablePredicateBuilder == null) {
+			BaseJoiningPredicateBuilder firstPredicateBuilder = mySqlBuilder.getOrCreateFirstPredicateBuilder();
+			if (firstPredicateBuilder instanceof ResourceTablePredicateBuilder) {
+				mySortResourceTablePredicateBuilder = (ResourceTablePredicateBuilder) firstPredicateBuilder;
+			} else {
+				mySortResourceTablePredicateBuilder =
+						mySqlBuilder.addResourceTablePredicateBuilder(firstPredicateBuilder.getJoinColumns());
+			}
+		}
+		return mySortResourceTablePredicateBuilder;
+	}
+
 	public void addSortOnResourceLink(
 			String theResourceName,
 			String theReferenceTargetType,
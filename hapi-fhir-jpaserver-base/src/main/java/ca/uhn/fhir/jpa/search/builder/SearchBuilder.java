@@ -51,6 +51,7 @@ import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.cross.IResourceLookup;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
+import ca.uhn.fhir.jpa.model.dao.JpaPidSet;
 import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
 import ca.uhn.fhir.jpa.model.entity.BaseTag;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
@@ -62,11 +63,13 @@ import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.search.SearchConstants;
+import ca.uhn.fhir.jpa.search.builder.models.KeysetPageToken;
 import ca.uhn.fhir.jpa.search.builder.models.ResolvedSearchQueryExecutor;
 import ca.uhn.fhir.jpa.search.builder.models.SearchQueryProperties;
 import ca.uhn.fhir.jpa.search.builder.sql.GeneratedSql;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryBuilder;
 import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryExecutor;
+import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryShapeCache;
 import ca.uhn.fhir.jpa.search.builder.sql.SqlObjectFactory;
 import ca.uhn.fhir.jpa.search.lastn.IElasticsearchSvc;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
@@ -104,6 +107,7 @@ import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.rest.server.util.CompositeInterceptorBroadcaster;
 import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import ca.uhn.fhir.system.HapiSystemProperties;
+import ca.uhn.fhir.util.IoUtil;
 import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.StringUtil;
 import ca.uhn.fhir.util.UrlUtil;
@@ -147,6 +151,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.jpa.model.util.JpaConstants.UNDESIRED_RESOURCE_LINKAGES_FOR_EVERYTHING_ON_PATIENT_INSTANCE;
@@ -186,6 +193,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	private static final String MY_TARGET_RESOURCE_PARTITION_ID = "myTargetResourcePartitionId";
 	private static final String MY_TARGET_RESOURCE_TYPE = "myTargetResourceType";
 	private static final String MY_TARGET_RESOURCE_VERSION = "myTargetResourceVersion";
+	private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("\"Plan Rows\"\\s*:\\s*([0-9.eE+]+)");
 	public static final JpaPid[] EMPTY_JPA_PID_ARRAY = new JpaPid[0];
 	public static boolean myUseMaxPageSize50ForTest = false;
 	public static Integer myMaxPageSizeForTests = null;
@@ -219,9 +227,10 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	/**
 	 * @see SearchBuilder#setDeduplicateInDatabase(boolean)
 	 */
-	private Set<JpaPid> myPidSet;
+	private JpaPidSet myPidSet;
 
 	private boolean myHasNextIteratorQuery = false;
+	private Consumer<Object> myLoadedEntityConsumer;
 	private RequestPartitionId myRequestPartitionId;
 
 	private IFulltextSearchSvc myFulltextSearchSvc;
@@ -234,6 +243,9 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 	@Autowired(required = false)
 	private IElasticsearchSvc myIElasticsearchSvc;
 
+	@Autowired(required = false)
+	private SearchQueryShapeCache mySearchQueryShapeCache;
+
 	@Autowired
 	private IResourceHistoryTagDao myResourceHistoryTagDao;
 
@@ -396,12 +408,108 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		}
 	}
 
+	/**
+	 * Estimates the number of matching resources by first counting up to
+	 * {@link JpaStorageSettings#getEstimatedTotalExactCountThreshold()} distinct matches, and
+	 * then (if there are more) asking the database query planner how many rows it expects
+	 * the search to return. This avoids the full <code>COUNT(*)</code> performed by
+	 * {@link #createCountQuery(SearchParameterMap, String, RequestDetails, RequestPartitionId)},
+	 * which can be very slow for searches matching a large number of resources.
+	 */
+	@Override
+	public Long createEstimatedCountQuery(
+			SearchParameterMap theParams,
+			String theSearchUuid,
+			RequestDetails theRequest,
+			@Nonnull RequestPartitionId theRequestPartitionId) {
+
+		assert theRequestPartitionId != null;
+		assert TransactionSynchronizationManager.isActualTransactionActive();
+
+		init(theParams, theSearchUuid, theRequestPartitionId);
+
+		if (checkUseHibernateSearch()) {
+			return myFulltextSearchSvc.count(myResourceName, theParams.clone());
+		}
+
+		int threshold = myStorageSettings.getEstimatedTotalExactCountThreshold();
+		SearchQueryProperties properties = mySearchProperties.clone();
+		properties.setSortSpec(null);
+		properties.setOffset(null);
+		properties.setDeduplicateInDatabase(true);
+		properties.setMaxResultsRequested(threshold + 1);
+		List<ISearchQueryExecutor> queries = createQuery(theParams.clone(), properties, theRequest, null);
+		JpaPidSet found = new JpaPidSet();
+		try {
+			for (ISearchQueryExecutor next : queries) {
+				while (next.hasNext() && found.size() <= threshold) {
+					found.add(next.next());
+				}
+			}
+		} finally {
+			queries.forEach(IoUtil::closeQuietly);
+		}
+		if (found.size() <= threshold) {
+			return (long) found.size();
+		}
+
+		if (!myDialectProvider.isPostgreSqlDialect()) {
+			ourLog.debug("Search matches more than {} resources and no estimate is available", threshold);
+			return null;
+		}
+
+		properties.setMaxResultsRequested(null);
+		queries = createQuery(theParams.clone(), properties, theRequest, null);
+		Long estimate = estimateRowCountFromQueryPlan(queries);
+		queries.forEach(IoUtil::closeQuietly);
+		if (estimate == null) {
+			return null;
+		}
+
+		// The planner knows nothing about what we've already counted
+		return Math.max(estimate, threshold + 1L);
+	}
+
+	/**
+	 * Sums the number of rows the PostgreSQL query planner expects each of the given
+	 * queries to return, or returns <code>null</code> if any of them can't be estimated
+	 */
+	@Nullable
+	private Long estimateRowCountFromQueryPlan(List<ISearchQueryExecutor> theQueries) {
+		long retVal = 0;
+		for (ISearchQueryExecutor next : theQueries) {
+			if (!(next instanceof SearchQueryExecutor)) {
+				return null;
+			}
+			GeneratedSql generatedSql = ((SearchQueryExecutor) next).getGeneratedSql();
+			if (generatedSql == null) {
+				continue;
+			}
+
+			Query query = myEntityManager.createNativeQuery("EXPLAIN (FORMAT JSON) " + generatedSql.getSql());
+			List<Object> bindVariables = generatedSql.getBindVariables();
+			for (int i = 0; i < bindVariables.size(); i++) {
+				query.setParameter(i + 1, bindVariables.get(i));
+			}
+			String plan = String.valueOf(query.getSingleResult());
+
+			// The first "Plan Rows" is the estimate for the top level node of the plan
+			Matcher matcher = PLAN_ROWS_PATTERN.matcher(plan);
+			if (!matcher.find()) {
+				ourLog.warn("Unable to find row estimate in query plan: {}", plan);
+				return null;
+			}
+			retVal += (long) Double.parseDouble(matcher.group(1));
+		}
+		return retVal;
+	}
+
 	/**
 	 * @param thePidSet May be null
 	 */
 	@Override
 	public void setPreviouslyAddedResourcePids(@Nonnull List<JpaPid> thePidSet) {
-		myPidSet = new HashSet<>(thePidSet);
+		myPidSet = new JpaPidSet(thePidSet);
 	}
 
 	@SuppressWarnings("ConstantConditions")
@@ -415,9 +523,11 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		assert TransactionSynchronizationManager.isActualTransactionActive();
 
 		init(theParams, theSearchRuntimeDetails.getSearchUuid(), theRequestPartitionId);
+		theSearchRuntimeDetails.setResourceType(myResourceName);
+		theSearchRuntimeDetails.setSearchParameterMap(theParams);
 
 		if (myPidSet == null) {
-			myPidSet = new HashSet<>();
+			myPidSet = new JpaPidSet();
 		}
 
 		return new QueryIterator(theSearchRuntimeDetails, theRequest);
@@ -430,6 +540,25 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		mySearchProperties.setSortSpec(myParams.getSort());
 		mySearchUuid = theSearchUuid;
 		myRequestPartitionId = theRequestPartitionId;
+		initKeysetPaging();
+	}
+
+	private void initKeysetPaging() {
+		boolean keysetPaging = KeysetPageToken.isKeysetPagingCandidate(myStorageSettings, myParams);
+		KeysetPageToken pageToken = null;
+		if (keysetPaging && isNotBlank(myParams.getPageToken())) {
+			pageToken = KeysetPageToken.decode(myParams.getPageToken());
+			if (!myParams.getOffset().equals(pageToken.getOffset())) {
+				throw new InvalidRequestException(Msg.code(2790) + "The " + Constants.PARAM_OFFSET + " value "
+						+ myParams.getOffset() + " does not match the page the " + Constants.PARAM_PAGE_TOKEN
+						+ " was created for");
+			}
+			if (!pageToken.matches(myParams.getSort())) {
+				// The token was created for a different sort order, so use the offset instead
+				pageToken = null;
+			}
+		}
+		mySearchProperties.setKeysetPaging(keysetPaging).setKeysetPageToken(pageToken);
 	}
 
 	/**
@@ -711,6 +840,13 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				mySqlBuilderFactory,
 				myDialectProvider,
 				theSearchProperties.isDoCountOnlyFlag());
+		if (mySearchQueryShapeCache != null) {
+			SearchQueryShapeCache.ShapeKey shapeKey = mySearchQueryShapeCache.createKey(
+					myResourceName, theParams, theSearchProperties, myRequestPartitionId);
+			if (shapeKey != null) {
+				sqlBuilder.setShapeCache(mySearchQueryShapeCache, shapeKey);
+			}
+		}
 		QueryStack queryStack3 = new QueryStack(
 				theRequest,
 				theParams,
@@ -808,6 +944,14 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			assert !theSearchProperties.isDoCountOnlyFlag();
 
 			createSort(queryStack3, theSearchProperties.getSortSpec(), theParams);
+
+			/*
+			 * Keyset paging needs a unique sort order, so break ties using the
+			 * resource PID, and seek past the previous page if we have a token
+			 */
+			if (theSearchProperties.isKeysetPaging()) {
+				createKeysetPaging(queryStack3, theSearchProperties);
+			}
 		}
 
 		/*
@@ -981,6 +1125,17 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 						.anyMatch(ReferenceParam.class::isInstance);
 	}
 
+	private void createKeysetPaging(QueryStack theQueryStack, SearchQueryProperties theSearchProperties) {
+		SortSpec sort = theSearchProperties.getSortSpec();
+		if (!Constants.PARAM_PID.equals(sort.getParamName())) {
+			boolean ascending = (sort.getOrder() == null) || (sort.getOrder() == SortOrderEnum.ASC);
+			theQueryStack.addSortOnResourcePID(ascending);
+		}
+		if (theSearchProperties.hasKeysetPageToken()) {
+			theQueryStack.addKeysetPredicate(theSearchProperties.getKeysetPageToken());
+		}
+	}
+
 	private void createSort(QueryStack theQueryStack, SortSpec theSort, SearchParameterMap theParams) {
 		if (theSort == null || isBlank(theSort.getParamName())) {
 			return;
@@ -1202,7 +1357,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			Collection<JpaPid> theIncludedPids,
 			List<IBaseResource> theResourceListToPopulate,
 			boolean theForHistoryOperation,
-			Map<Long, Integer> thePosition) {
+			JpaPidSet thePosition) {
 
 		Map<JpaPid, Long> resourcePidToVersion = null;
 		for (JpaPid next : thePids) {
@@ -1243,6 +1398,9 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 					ResourceHistoryTable replacement = myResourceHistoryTableDao.findForIdAndVersion(
 							next.getResourceId().toFk(), version);
 					resourceSearchViewList.set(i, replacement);
+					if (myLoadedEntityConsumer != null) {
+						myLoadedEntityConsumer.accept(next);
+					}
 				}
 			}
 		}
@@ -1250,14 +1408,27 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		// -- preload all tags with tag definition if any
 		Map<JpaPid, Collection<BaseTag>> tagMap = getResourceTagMap(resourceSearchViewList);
 
-		for (ResourceHistoryTable next : resourceSearchViewList) {
-			if (next.getDeleted() != null) {
-				continue;
+		if (myLoadedEntityConsumer != null) {
+			for (ResourceHistoryTable next : resourceSearchViewList) {
+				if (next != null) {
+					myLoadedEntityConsumer.accept(next);
+					myLoadedEntityConsumer.accept(next.getResourceTable());
+				}
 			}
+			tagMap.values().forEach(tags -> tags.forEach(myLoadedEntityConsumer));
+		}
 
-			Class<? extends IBaseResource> resourceType =
-					myContext.getResourceDefinition(next.getResourceType()).getImplementingClass();
+		List<ResourceHistoryTable> entitiesToLoad = new ArrayList<>(resourceSearchViewList.size());
+		for (ResourceHistoryTable next : resourceSearchViewList) {
+			if (next.getDeleted() == null) {
+				entitiesToLoad.add(next);
+			}
+		}
+		List<IBaseResource> resources =
+				myJpaStorageResourceParser.toResources(entitiesToLoad, tagMap, theForHistoryOperation);
 
+		for (int i = 0; i < entitiesToLoad.size(); i++) {
+			ResourceHistoryTable next = entitiesToLoad.get(i);
 			JpaPid resourceId = next.getPersistentId();
 
 			if (resourcePidToVersion != null) {
@@ -1265,9 +1436,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				resourceId.setVersion(version);
 			}
 
-			IBaseResource resource;
-			resource = myJpaStorageResourceParser.toResource(
-					resourceType, next, tagMap.get(next.getResourceId()), theForHistoryOperation);
+			IBaseResource resource = resources.get(i);
 			if (resource == null) {
 				ourLog.warn(
 						"Unable to find resource {}/{}/_history/{} in database",
@@ -1277,8 +1446,8 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				continue;
 			}
 
-			Integer index = thePosition.get(resourceId.getId());
-			if (index == null) {
+			int index = thePosition.indexOf(resourceId.getId());
+			if (index == -1) {
 				ourLog.warn("Got back unexpected resource PID {}", resourceId);
 				continue;
 			}
@@ -1402,11 +1571,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		// when running asserts
 		assert new HashSet<>(thePids).size() == thePids.size() : "PID list contains duplicates: " + thePids;
 
-		Map<Long, Integer> position = new HashMap<>();
-		int index = 0;
-		for (JpaPid next : thePids) {
-			position.put(next.getId(), index++);
-		}
+		JpaPidSet position = new JpaPidSet(thePids);
 
 		// Can we fast track this loading by checking elastic search?
 		boolean isUsingElasticSearch = isLoadingFromElasticSearchSupported(thePids);
@@ -1428,6 +1593,17 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position));
 	}
 
+	@Override
+	public List<IBaseResource> loadResourcesByPid(
+			Collection<JpaPid> thePids, RequestDetails theDetails, Consumer<Object> theLoadedEntityConsumer) {
+		myLoadedEntityConsumer = theLoadedEntityConsumer;
+		try {
+			return loadResourcesByPid(thePids, theDetails);
+		} finally {
+			myLoadedEntityConsumer = null;
+		}
+	}
+
 	/**
 	 * Check if we can load the resources from Hibernate Search instead of the database.
 	 * We assume this is faster.
@@ -1532,8 +1708,10 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		}
 
 		List<JpaPid> nextRoundMatches = new ArrayList<>(matches);
-		HashSet<JpaPid> allAdded = new HashSet<>();
-		HashSet<JpaPid> original = new HashSet<>(matches);
+		JpaPidSet allAdded = new JpaPidSet();
+		JpaPidSet original = new JpaPidSet(matches);
+		// Matches found again by an include aren't returned, but still count towards the maximum
+		JpaPidSet originalIncluded = new JpaPidSet();
 		ArrayList<Include> includes = new ArrayList<>(currentIncludes);
 
 		int roundCounts = 0;
@@ -1543,7 +1721,8 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		do {
 			roundCounts++;
 
-			HashSet<JpaPid> pidsToInclude = new HashSet<>();
+			JpaPidSet pidsToInclude = new JpaPidSet();
+			List<Include> specificIncludes = new ArrayList<>();
 
 			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
 				Include nextInclude = iter.next();
@@ -1580,6 +1759,8 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 							desiredResourceTypes,
 							pidsToInclude,
 							request);
+				} else if (myStorageSettings.isCombinedIncludeQueriesEnabled()) {
+					specificIncludes.add(nextInclude);
 				} else {
 					loadIncludesMatchSpecific(
 							nextInclude,
@@ -1588,7 +1769,6 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 							findPartitionIdFieldName,
 							findVersionFieldName,
 							searchPidFieldName,
-							searchPartitionIdFieldName,
 							reverseMode,
 							nextRoundMatches,
 							entityManager,
@@ -1598,25 +1778,42 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				}
 			}
 
+			if (!specificIncludes.isEmpty()) {
+				loadIncludesMatchSpecificCombined(
+						specificIncludes,
+						fhirContext,
+						findPidFieldName,
+						findPartitionIdFieldName,
+						findVersionFieldName,
+						searchPidFieldName,
+						reverseMode,
+						nextRoundMatches,
+						entityManager,
+						maxCount,
+						pidsToInclude,
+						request);
+			}
+
 			nextRoundMatches.clear();
+			addedSomeThisRound = false;
 			for (JpaPid next : pidsToInclude) {
-				if (!original.contains(next) && !allAdded.contains(next)) {
+				if (original.contains(next)) {
+					addedSomeThisRound |= originalIncluded.add(next);
+					ourLog.trace("Skipping include since it has already been seen. [jpaPid={}]", next);
+				} else if (allAdded.add(next)) {
+					addedSomeThisRound = true;
 					nextRoundMatches.add(next);
 				} else {
 					ourLog.trace("Skipping include since it has already been seen. [jpaPid={}]", next);
 				}
 			}
 
-			addedSomeThisRound = allAdded.addAll(pidsToInclude);
-
-			if (maxCount != null && allAdded.size() >= maxCount) {
+			if (maxCount != null && allAdded.size() + originalIncluded.size() >= maxCount) {
 				break;
 			}
 
 		} while (!includes.isEmpty() && !nextRoundMatches.isEmpty() && addedSomeThisRound);
 
-		allAdded.removeAll(original);
-
 		ourLog.info(
 				"Loaded {} {} in {} rounds and {} ms for search {}",
 				allAdded.size(),
@@ -1646,16 +1843,15 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 
 				for (int i = includedPidList.size() - 1; i >= 0; i--) {
 					if (accessDetails.isDontReturnResourceAtIndex(i)) {
-						JpaPid value = includedPidList.remove(i);
-						if (value != null) {
-							allAdded.remove(value);
-						}
+						includedPidList.remove(i);
 					}
 				}
+				return new HashSet<>(includedPidList);
 			}
 		}
 
-		return allAdded;
+		// JpaPidSet is only used internally, callers get a regular set which supports removal
+		return new HashSet<>(allAdded);
 	}
 
 	private void loadIncludesMatchSpecific(
@@ -1665,25 +1861,130 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			String findPartitionFieldName,
 			String findVersionFieldName,
 			String searchPidFieldName,
-			String searchPartitionFieldName,
 			boolean reverseMode,
 			List<JpaPid> nextRoundMatches,
 			EntityManager entityManager,
 			Integer maxCount,
-			HashSet<JpaPid> pidsToInclude,
+			JpaPidSet pidsToInclude,
+			RequestDetails theRequest) {
+		List<Pair<String, Map<String, Object>>> queries = buildIncludeQueries(
+				nextInclude,
+				fhirContext,
+				findPidFieldName,
+				findPartitionFieldName,
+				findVersionFieldName,
+				searchPidFieldName,
+				reverseMode,
+				theRequest);
+		for (Pair<String, Map<String, Object>> nextQuery : queries) {
+			executeIncludeQuery(
+					nextQuery.getLeft(),
+					nextQuery.getRight(),
+					findVersionFieldName,
+					nextRoundMatches,
+					entityManager,
+					maxCount,
+					pidsToInclude,
+					getMaximumPageSize());
+		}
+	}
+
+	/**
+	 * Loads the targets of all of the given includes using a single SQL statement for each chunk
+	 * of PIDs being searched. The statement is the <code>UNION</code> of the statements which would
+	 * otherwise be issued separately for each include and path, so duplicate targets are removed
+	 * by the database.
+	 *
+	 * @see JpaStorageSettings#setCombinedIncludeQueriesEnabled(boolean)
+	 */
+	private void loadIncludesMatchSpecificCombined(
+			List<Include> theIncludes,
+			FhirContext fhirContext,
+			String findPidFieldName,
+			String findPartitionFieldName,
+			String findVersionFieldName,
+			String searchPidFieldName,
+			boolean reverseMode,
+			List<JpaPid> nextRoundMatches,
+			EntityManager entityManager,
+			Integer maxCount,
+			JpaPidSet pidsToInclude,
+			RequestDetails theRequest) {
+		StringBuilder sql = new StringBuilder();
+		Map<String, Object> params = new HashMap<>();
+		int branchCount = 0;
+		for (Include nextInclude : theIncludes) {
+			List<Pair<String, Map<String, Object>>> queries = buildIncludeQueries(
+					nextInclude,
+					fhirContext,
+					findPidFieldName,
+					findPartitionFieldName,
+					findVersionFieldName,
+					searchPidFieldName,
+					reverseMode,
+					theRequest);
+			for (Pair<String, Map<String, Object>> nextQuery : queries) {
+				// Give each branch its own parameter names, except for the shared PID and partition ones
+				String branchSql = nextQuery.getLeft();
+				for (Map.Entry<String, Object> nextParam : nextQuery.getRight().entrySet()) {
+					String name = nextParam.getKey() + "_" + branchCount;
+					branchSql = branchSql.replaceAll(
+							Pattern.quote(":" + nextParam.getKey()) + "\\b", Matcher.quoteReplacement(":" + name));
+					params.put(name, nextParam.getValue());
+				}
+				if (branchCount > 0) {
+					sql.append(" UNION ");
+				}
+				sql.append(branchSql);
+				branchCount++;
+			}
+		}
+		if (branchCount == 0) {
+			return;
+		}
+
+		// Each branch binds the PIDs being searched twice (for local and canonical references), so
+		// use smaller chunks in order to stay within the database's limit on bind parameters
+		int chunkSize = Math.max(1, getMaximumPageSize() / (2 * branchCount));
+		executeIncludeQuery(
+				sql.toString(),
+				params,
+				findVersionFieldName,
+				nextRoundMatches,
+				entityManager,
+				maxCount,
+				pidsToInclude,
+				chunkSize);
+	}
+
+	/**
+	 * Builds the SQL used to find the targets of an include, with one statement for each of
+	 * the paths of the included search parameter. The statements use the named parameters
+	 * <code>target_pids</code> and <code>search_partition_id</code> (if database partition mode is
+	 * enabled) for the PIDs being searched, and the returned parameters for everything else.
+	 */
+	private List<Pair<String, Map<String, Object>>> buildIncludeQueries(
+			Include nextInclude,
+			FhirContext fhirContext,
+			String findPidFieldName,
+			String findPartitionFieldName,
+			String findVersionFieldName,
+			String searchPidFieldName,
+			boolean reverseMode,
 			RequestDetails theRequest) {
+		List<Pair<String, Map<String, Object>>> retVal = new ArrayList<>();
 		List<String> paths;
 
 		// Start replace
 		RuntimeSearchParam param;
 		String resType = nextInclude.getParamType();
 		if (isBlank(resType)) {
-			return;
+			return retVal;
 		}
 		RuntimeResourceDefinition def = fhirContext.getResourceDefinition(resType);
 		if (def == null) {
 			ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-			return;
+			return retVal;
 		}
 
 		String paramName = nextInclude.getParamName();
@@ -1695,7 +1996,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		}
 		if (param == null) {
 			ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-			return;
+			return retVal;
 		}
 
 		paths = param.getPathsSplitForResourceType(resType);
@@ -1767,62 +2068,74 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 					buildCanonicalUrlQuery(findVersionFieldName, targetResourceTypes, reverseMode, theRequest);
 
 			String sql = localReferenceQuery + "UNION " + canonicalQuery.getLeft();
+			Map<String, Object> params = new HashMap<>(localReferenceQueryParams);
+			params.putAll(canonicalQuery.getRight());
+			retVal.add(Pair.of(sql, params));
+		}
+		return retVal;
+	}
 
-			Map<String, Object> limitParams = new HashMap<>();
-			if (maxCount != null) {
-				LinkedList<Object> bindVariables = new LinkedList<>();
-				sql = SearchQueryBuilder.applyLimitToSql(
-						myDialectProvider.getDialect(), null, maxCount, sql, null, bindVariables);
-
-				// The dialect SQL limiter uses positional params, but we're using
-				// named params here, so we need to replace the positional params
-				// with equivalent named ones
-				StringBuilder sb = new StringBuilder();
-				for (int i = 0; i < sql.length(); i++) {
-					char nextChar = sql.charAt(i);
-					if (nextChar == '?') {
-						String nextName = "limit" + i;
-						sb.append(':').append(nextName);
-						limitParams.put(nextName, bindVariables.removeFirst());
-					} else {
-						sb.append(nextChar);
-					}
+	private void executeIncludeQuery(
+			String theSql,
+			Map<String, Object> theParams,
+			String findVersionFieldName,
+			List<JpaPid> nextRoundMatches,
+			EntityManager entityManager,
+			Integer maxCount,
+			JpaPidSet pidsToInclude,
+			int theChunkSize) {
+		String sql = theSql;
+		Map<String, Object> limitParams = new HashMap<>();
+		if (maxCount != null) {
+			LinkedList<Object> bindVariables = new LinkedList<>();
+			sql = SearchQueryBuilder.applyLimitToSql(
+					myDialectProvider.getDialect(), null, maxCount, sql, null, bindVariables);
+
+			// The dialect SQL limiter uses positional params, but we're using
+			// named params here, so we need to replace the positional params
+			// with equivalent named ones
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < sql.length(); i++) {
+				char nextChar = sql.charAt(i);
+				if (nextChar == '?') {
+					String nextName = "limit" + i;
+					sb.append(':').append(nextName);
+					limitParams.put(nextName, bindVariables.removeFirst());
+				} else {
+					sb.append(nextChar);
 				}
-				sql = sb.toString();
 			}
+			sql = sb.toString();
+		}
 
-			List<Collection<JpaPid>> partitions = partitionBySizeAndPartitionId(nextRoundMatches, getMaximumPageSize());
-			for (Collection<JpaPid> nextPartition : partitions) {
-				Query q = entityManager.createNativeQuery(sql, Tuple.class);
-				q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
-				if (myPartitionSettings.isDatabasePartitionMode()) {
-					q.setParameter(
-							"search_partition_id",
-							nextPartition.iterator().next().getPartitionId());
-				}
-				localReferenceQueryParams.forEach(q::setParameter);
-				canonicalQuery.getRight().forEach(q::setParameter);
-				limitParams.forEach(q::setParameter);
-
-				@SuppressWarnings("unchecked")
-				List<Tuple> results = q.getResultList();
-				for (Tuple result : results) {
-					if (result != null) {
-						Long resourceId = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_ID_ALIAS)));
-						Long resourceVersion = null;
-						if (findVersionFieldName != null && result.get(RESOURCE_VERSION_ALIAS) != null) {
-							resourceVersion =
-									NumberUtils.createLong(String.valueOf(result.get(RESOURCE_VERSION_ALIAS)));
-						}
-						Integer partitionId = null;
-						if (myPartitionSettings.isDatabasePartitionMode()) {
-							partitionId = result.get(PARTITION_ID_ALIAS, Integer.class);
-						}
-
-						JpaPid pid = JpaPid.fromIdAndVersion(resourceId, resourceVersion);
-						pid.setPartitionId(partitionId);
-						pidsToInclude.add(pid);
+		List<Collection<JpaPid>> partitions = partitionBySizeAndPartitionId(nextRoundMatches, theChunkSize);
+		for (Collection<JpaPid> nextPartition : partitions) {
+			Query q = entityManager.createNativeQuery(sql, Tuple.class);
+			q.setParameter("target_pids", JpaPid.toLongList(nextPartition));
+			if (myPartitionSettings.isDatabasePartitionMode()) {
+				q.setParameter(
+						"search_partition_id", nextPartition.iterator().next().getPartitionId());
+			}
+			theParams.forEach(q::setParameter);
+			limitParams.forEach(q::setParameter);
+
+			@SuppressWarnings("unchecked")
+			List<Tuple> results = q.getResultList();
+			for (Tuple result : results) {
+				if (result != null) {
+					Long resourceId = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_ID_ALIAS)));
+					Long resourceVersion = null;
+					if (findVersionFieldName != null && result.get(RESOURCE_VERSION_ALIAS) != null) {
+						resourceVersion = NumberUtils.createLong(String.valueOf(result.get(RESOURCE_VERSION_ALIAS)));
 					}
+					Integer partitionId = null;
+					if (myPartitionSettings.isDatabasePartitionMode()) {
+						partitionId = result.get(PARTITION_ID_ALIAS, Integer.class);
+					}
+
+					JpaPid pid = JpaPid.fromIdAndVersion(resourceId, resourceVersion);
+					pid.setPartitionId(partitionId);
+					pidsToInclude.add(pid);
 				}
 			}
 		}
@@ -1842,7 +2155,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			EntityManager entityManager,
 			Integer maxCount,
 			List<String> desiredResourceTypes,
-			HashSet<JpaPid> pidsToInclude,
+			JpaPidSet pidsToInclude,
 			RequestDetails request) {
 		StringBuilder sqlBuilder = new StringBuilder();
 		sqlBuilder.append("SELECT r.").append(findPidFieldName);
@@ -1966,7 +2279,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 			RequestDetails theRequestDetails,
 			Set<String> theCanonicalUrls,
 			EntityManager theEntityManager,
-			HashSet<JpaPid> thePidsToInclude,
+			JpaPidSet thePidsToInclude,
 			boolean theReverse) {
 		StringBuilder sqlBuilder;
 		CanonicalUrlTargets canonicalUrlTargets =
@@ -2555,7 +2868,7 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		private JpaPid myNext;
 
 		IncludesIterator(Set<JpaPid> thePidSet, RequestDetails theRequest) {
-			myCurrentPids = new HashSet<>(thePidSet);
+			myCurrentPids = new JpaPidSet(thePidSet);
 			myCurrentIterator = null;
 			myRequest = theRequest;
 		}
@@ -2665,7 +2978,8 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 		private QueryIterator(SearchRuntimeDetails theSearchRuntimeDetails, RequestDetails theRequest) {
 			mySearchRuntimeDetails = theSearchRuntimeDetails;
 			mySort = myParams.getSort();
-			myOffset = myParams.getOffset();
+			// With a keyset page token, the query seeks directly to the start of the page
+			myOffset = mySearchProperties.hasKeysetPageToken() ? null : myParams.getOffset();
 			myRequest = theRequest;
 			myCompositeBroadcaster =
 					CompositeInterceptorBroadcaster.newCompositeBroadcaster(myInterceptorBroadcaster, theRequest);
@@ -2878,11 +3192,15 @@ public class SearchBuilder implements ISearchBuilder<JpaPid> {
 				}
 
 				SearchQueryProperties properties = mySearchProperties.clone();
+				// A keyset page token replaces the offset, but results still need to be deduplicated
+				// in the database so that the page is filled
 				properties
 						.setOffset(offset)
 						.setMaxResultsRequested(theMaxResultsToFetch)
 						.setDoCountOnlyFlag(false)
-						.setDeduplicateInDatabase(properties.isDeduplicateInDatabase() || offset != null);
+						.setDeduplicateInDatabase(properties.isDeduplicateInDatabase()
+								|| offset != null
+								|| properties.hasKeysetPageToken());
 				myQueryList = createQuery(myParams, properties, myRequest, mySearchRuntimeDetails);
 			}
 
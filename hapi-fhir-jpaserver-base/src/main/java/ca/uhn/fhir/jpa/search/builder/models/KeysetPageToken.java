@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.builder.models;
+
+import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * The decoded form of a keyset (seek) pagination token, as carried in the
+ * <code>_pageToken</code> parameter of an offset search. The token records the sort
+ * order of the search, the offset of the page it was created for, and the sort value
+ * and resource PID of the last result on the previous page, so that the next page can
+ * be fetched using a predicate such as
+ * <code>(RES_UPDATED &gt; ?) OR (RES_UPDATED = ? AND RES_ID &gt; ?)</code> instead of
+ * skipping all earlier rows.
+ * <p>
+ * Keyset paging is only supported for sorts on columns of the resource table, since
+ * these have exactly one value per resource.
+ * </p>
+ *
+ * @see JpaStorageSettings#setKeysetPagingEnabled(boolean)
+ * @since 8.4.0
+ */
+public class KeysetPageToken {
+
+	private static final String TOKEN_VERSION = "1";
+	private static final Set<String> SUPPORTED_SORT_PARAMS =
+			Set.of(Constants.PARAM_LASTUPDATED, IAnyResource.SP_RES_ID, Constants.PARAM_PID);
+
+	private final String mySortParamName;
+	private final boolean myAscending;
+	private final int myOffset;
+	private final long myLastPid;
+	private final String myLastSortValue;
+
+	private KeysetPageToken(
+			String theSortParamName, boolean theAscending, int theOffset, long theLastPid, String theLastSortValue) {
+		mySortParamName = theSortParamName;
+		myAscending = theAscending;
+		myOffset = theOffset;
+		myLastPid = theLastPid;
+		myLastSortValue = theLastSortValue;
+	}
+
+	public String getSortParamName() {
+		return mySortParamName;
+	}
+
+	public boolean isAscending() {
+		return myAscending;
+	}
+
+	/**
+	 * Returns the <code>_offset</code> of the page this token was created for
+	 */
+	public int getOffset() {
+		return myOffset;
+	}
+
+	/**
+	 * Returns the PID of the last resource on the previous page
+	 */
+	public long getLastPid() {
+		return myLastPid;
+	}
+
+	/**
+	 * Returns the last updated time of the last resource on the previous page, if the
+	 * search is sorted by <code>_lastUpdated</code>
+	 */
+	public Date getLastUpdated() {
+		return new Date(Long.parseLong(myLastSortValue));
+	}
+
+	/**
+	 * Returns the FHIR ID of the last resource on the previous page, if the
+	 * search is sorted by <code>_id</code>
+	 */
+	public String getLastFhirId() {
+		return myLastSortValue;
+	}
+
+	/**
+	 * Returns <code>true</code> if this token was created for a search with the given sort
+	 */
+	public boolean matches(@Nullable SortSpec theSort) {
+		return isSupportedSort(theSort)
+				&& mySortParamName.equals(theSort.getParamName())
+				&& myAscending == isAscending(theSort);
+	}
+
+	@Nonnull
+	public String encode() {
+		String value = TOKEN_VERSION + "|" + mySortParamName + "|" + (myAscending ? "a" : "d") + "|" + myOffset + "|"
+				+ myLastPid + "|" + myLastSortValue;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Creates a token for the page following the given resource
+	 *
+	 * @param theSort        The search sort, must be {@link #isSupportedSort(SortSpec) supported}
+	 * @param theOffset      The <code>_offset</code> of the following page
+	 * @param theLastPid     The PID of the last resource on the current page
+	 * @param theLastUpdated The last updated time of the last resource on the current page
+	 * @param theLastFhirId  The FHIR ID of the last resource on the current page
+	 */
+	@Nonnull
+	public static KeysetPageToken forLastResource(
+			SortSpec theSort, int theOffset, long theLastPid, Date theLastUpdated, String theLastFhirId) {
+		Validate.isTrue(isSupportedSort(theSort), "Unsupported sort for keyset paging: %s", theSort);
+		String sortParamName = theSort.getParamName();
+		String lastSortValue;
+		switch (sortParamName) {
+			case Constants.PARAM_LASTUPDATED:
+				lastSortValue = Long.toString(theLastUpdated.getTime());
+				break;
+			case IAnyResource.SP_RES_ID:
+				lastSortValue = theLastFhirId;
+				break;
+			default:
+				lastSortValue = Long.toString(theLastPid);
+				break;
+		}
+		return new KeysetPageToken(sortParamName, isAscending(theSort), theOffset, theLastPid, lastSortValue);
+	}
+
+	/**
+	 * Parses a token previously created by {@link #encode()}
+	 *
+	 * @throws InvalidRequestException If the token is not valid
+	 */
+	@Nonnull
+	public static KeysetPageToken decode(String theToken) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(theToken), StandardCharsets.UTF_8);
+			String[] parts = value.split("\\|", 6);
+			if (parts.length == 6
+					&& TOKEN_VERSION.equals(parts[0])
+					&& SUPPORTED_SORT_PARAMS.contains(parts[1])
+					&& ("a".equals(parts[2]) || "d".equals(parts[2]))
+					&& !isBlank(parts[5])) {
+				if (!IAnyResource.SP_RES_ID.equals(parts[1])) {
+					// Timestamp or PID, throws NumberFormatException if invalid
+					Long.parseLong(parts[5]);
+				}
+				int offset = Integer.parseInt(parts[3]);
+				if (offset >= 0) {
+					return new KeysetPageToken(
+							parts[1], "a".equals(parts[2]), offset, Long.parseLong(parts[4]), parts[5]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// fall through
+		}
+		throw new InvalidRequestException(
+				Msg.code(2782) + "Invalid " + Constants.PARAM_PAGE_TOKEN + " value: " + theToken);
+	}
+
+	/**
+	 * Returns <code>true</code> if keyset paging is enabled, and should be used for the given search
+	 */
+	public static boolean isKeysetPagingCandidate(JpaStorageSettings theStorageSettings, SearchParameterMap theParams) {
+		return theStorageSettings.isKeysetPagingEnabled()
+				&& theParams.isOffsetQuery()
+				&& theParams.getEverythingMode() == null
+				&& isSupportedSort(theParams.getSort());
+	}
+
+	/**
+	 * Returns <code>true</code> if keyset paging can be used for a search with the given sort
+	 */
+	public static boolean isSupportedSort(@Nullable SortSpec theSort) {
+		return theSort != null && theSort.getChain() == null && SUPPORTED_SORT_PARAMS.contains(theSort.getParamName());
+	}
+
+	private static boolean isAscending(SortSpec theSort) {
+		return theSort.getOrder() == null || theSort.getOrder() == SortOrderEnum.ASC;
+	}
+}
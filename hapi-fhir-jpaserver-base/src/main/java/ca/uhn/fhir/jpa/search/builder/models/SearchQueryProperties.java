@@ -56,6 +56,18 @@ public class SearchQueryProperties {
 	 */
 	private SortSpec mySortSpec;
 
+	/**
+	 * True if keyset paging applies to this search, meaning that results are
+	 * additionally sorted by resource PID so that a page token can be created
+	 */
+	private boolean myKeysetPaging;
+
+	/**
+	 * The keyset page token for the page to fetch. If this is set,
+	 * the query seeks past the previous page instead of using an offset.
+	 */
+	private KeysetPageToken myKeysetPageToken;
+
 	public boolean isDoCountOnlyFlag() {
 		return myDoCountOnlyFlag;
 	}
@@ -132,12 +144,36 @@ public class SearchQueryProperties {
 		return this;
 	}
 
+	public boolean isKeysetPaging() {
+		return myKeysetPaging;
+	}
+
+	public SearchQueryProperties setKeysetPaging(boolean theKeysetPaging) {
+		myKeysetPaging = theKeysetPaging;
+		return this;
+	}
+
+	public KeysetPageToken getKeysetPageToken() {
+		return myKeysetPageToken;
+	}
+
+	public boolean hasKeysetPageToken() {
+		return myKeysetPageToken != null;
+	}
+
+	public SearchQueryProperties setKeysetPageToken(KeysetPageToken theKeysetPageToken) {
+		myKeysetPageToken = theKeysetPageToken;
+		return this;
+	}
+
 	public SearchQueryProperties clone() {
 		return new SearchQueryProperties()
 				.setMaxResultsRequested(myMaxResultsRequested)
 				.setSortSpec(mySortSpec)
 				.setOffset(myOffset)
 				.setDoCountOnlyFlag(myDoCountOnlyFlag)
-				.setDeduplicateInDatabase(myDeduplicateInDB);
+				.setDeduplicateInDatabase(myDeduplicateInDB)
+				.setKeysetPaging(myKeysetPaging)
+				.setKeysetPageToken(myKeysetPageToken);
 	}
 }
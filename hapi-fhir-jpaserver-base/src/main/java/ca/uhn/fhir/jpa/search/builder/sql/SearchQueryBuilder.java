@@ -114,6 +114,8 @@ public class SearchQueryBuilder {
 	private int myNextNearnessColumnId = 0;
 	private DbColumn mySelectedResourceIdColumn;
 	private DbColumn mySelectedPartitionIdColumn;
+	private SearchQueryShapeCache myShapeCache;
+	private SearchQueryShapeCache.ShapeKey myShapeKey;
 
 	/**
 	 * Constructor
@@ -524,23 +526,56 @@ public class SearchQueryBuilder {
 	public GeneratedSql generate(@Nullable Integer theOffset, @Nullable Integer theMaxResultsToFetch) {
 		getOrCreateFirstPredicateBuilder();
 
-		mySelect.validate();
-		String sql = mySelect.toString();
+		SearchQueryShapeCache.CachedSql cachedSql = null;
+		if (myShapeKey != null && !myMatchNothing) {
+			cachedSql = myShapeCache.get(myShapeKey);
+			if (cachedSql != null && cachedSql.getBindVariableCount() != myBindVariableValues.size()) {
+				// The search didn't build the same statement as the one which populated the cache
+				ourLog.debug("Not using cached SQL for search shape {}", myShapeKey);
+				cachedSql = null;
+			}
+		}
 
+		String sql;
 		List<Object> bindVariables = new ArrayList<>();
-		while (true) {
-
-			int idx = sql.indexOf(myBindVariableSubstitutionBase);
-			if (idx == -1) {
-				break;
+		if (cachedSql != null) {
+			sql = cachedSql.getSql();
+			for (int next : cachedSql.getBindVariableIndexes()) {
+				bindVariables.add(myBindVariableValues.get(next));
 			}
+		} else {
+			mySelect.validate();
+			String renderedSql = mySelect.toString();
+
+			// Replace the quoted placeholders with bind parameters in a single pass
+			List<Integer> bindVariableIndexes = new ArrayList<>();
+			StringBuilder sqlBuilder = new StringBuilder(renderedSql.length());
+			int baseLength = myBindVariableSubstitutionBase.length();
+			int position = 0;
+			while (true) {
+
+				int idx = renderedSql.indexOf(myBindVariableSubstitutionBase, position);
+				if (idx == -1) {
+					break;
+				}
 
-			int endIdx = sql.indexOf("'", idx + myBindVariableSubstitutionBase.length());
-			String substitutionIndexString = sql.substring(idx + myBindVariableSubstitutionBase.length(), endIdx);
-			int substitutionIndex = Integer.parseInt(substitutionIndexString);
-			bindVariables.add(myBindVariableValues.get(substitutionIndex));
+				int endIdx = renderedSql.indexOf('\'', idx + baseLength);
+				int substitutionIndex = Integer.parseInt(renderedSql, idx + baseLength, endIdx, 10);
+				bindVariableIndexes.add(substitutionIndex);
+				bindVariables.add(myBindVariableValues.get(substitutionIndex));
 
-			sql = sql.substring(0, idx - 1) + "?" + sql.substring(endIdx + 1);
+				sqlBuilder.append(renderedSql, position, idx - 1).append('?');
+				position = endIdx + 1;
+			}
+			sqlBuilder.append(renderedSql, position, renderedSql.length());
+			sql = sqlBuilder.toString();
+
+			if (myShapeKey != null && !myMatchNothing) {
+				int[] indexes =
+						bindVariableIndexes.stream().mapToInt(Integer::intValue).toArray();
+				myShapeCache.put(
+						myShapeKey, new SearchQueryShapeCache.CachedSql(sql, indexes, myBindVariableValues.size()));
+			}
 		}
 
 		Integer maxResultsToFetch = theMaxResultsToFetch;
@@ -832,6 +867,9 @@ public class SearchQueryBuilder {
 	}
 
 	public void addResourceIdsPredicate(List<JpaPid> thePidList) {
+		// The number of IDs is not part of the search shape
+		myShapeKey = null;
+
 		List<Long> pidList = thePidList.stream().map(JpaPid::getId).collect(Collectors.toList());
 
 		DbColumn resourceIdColumn = getOrCreateFirstPredicateBuilder().getResourceIdColumn();
@@ -844,6 +882,9 @@ public class SearchQueryBuilder {
 		// Do  nothing if it's empty
 		if (theExistingPidSetToExclude == null || theExistingPidSetToExclude.isEmpty()) return;
 
+		// The number of IDs is not part of the search shape
+		myShapeKey = null;
+
 		List<Long> excludePids = JpaPid.toLongList(theExistingPidSetToExclude);
 
 		ourLog.trace("excludePids = {}", excludePids);
@@ -854,6 +895,35 @@ public class SearchQueryBuilder {
 		addPredicate(predicate);
 	}
 
+	/**
+	 * Adds a keyset (seek) predicate, which restricts the results to those sorted after the
+	 * given sort value and resource PID, i.e.
+	 * <code>(sortCol &gt; ?) OR (sortCol = ? AND resIdCol &gt; ?)</code> when ascending.
+	 *
+	 * @param theSortColumn       The sort column, or <code>null</code> if the results are only sorted by PID
+	 * @param theLastSortValue    The sort value of the last result on the previous page
+	 * @param theResourceIdColumn The resource PID column, used to break ties
+	 * @param theLastPid          The PID of the last result on the previous page
+	 * @param theAscending        Whether the sort is ascending
+	 */
+	public void addKeysetPredicate(
+			@Nullable DbColumn theSortColumn,
+			@Nullable Object theLastSortValue,
+			DbColumn theResourceIdColumn,
+			long theLastPid,
+			boolean theAscending) {
+		ParamPrefixEnum comparator = theAscending ? GREATERTHAN : LESSTHAN;
+		Condition pidCondition = createConditionForValueWithComparator(comparator, theResourceIdColumn, theLastPid);
+		if (theSortColumn == null) {
+			addPredicate(pidCondition);
+			return;
+		}
+
+		Condition afterCondition = createConditionForValueWithComparator(comparator, theSortColumn, theLastSortValue);
+		Condition equalCondition = BinaryCondition.equalTo(theSortColumn, generatePlaceholder(theLastSortValue));
+		addPredicate(ComboCondition.or(afterCondition, ComboCondition.and(equalCondition, pidCondition)));
+	}
+
 	public BinaryCondition createConditionForValueWithComparator(
 			ParamPrefixEnum theComparator, DbColumn theColumn, Object theValue) {
 		switch (theComparator) {
@@ -1090,4 +1160,15 @@ public class SearchQueryBuilder {
 	public void setNeedResourceTableRoot(boolean theNeedResourceTableRoot) {
 		myNeedResourceTableRoot = theNeedResourceTableRoot;
 	}
+
+	/**
+	 * Enables reusing the SQL of an earlier search with the same shape. Building the
+	 * statement is still required in order to compute the bind variable values.
+	 *
+	 * @see SearchQueryShapeCache
+	 */
+	public void setShapeCache(SearchQueryShapeCache theShapeCache, SearchQueryShapeCache.ShapeKey theShapeKey) {
+		myShapeCache = theShapeCache;
+		myShapeKey = theShapeKey;
+	}
 }
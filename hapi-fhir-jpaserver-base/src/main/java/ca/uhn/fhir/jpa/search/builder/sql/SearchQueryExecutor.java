@@ -75,6 +75,13 @@ public class SearchQueryExecutor implements ISearchQueryExecutor {
 		myNext = NO_MORE;
 	}
 
+	/**
+	 * Returns the SQL executed by this executor, or <code>null</code> for the empty executor
+	 */
+	public GeneratedSql getGeneratedSql() {
+		return myGeneratedSql;
+	}
+
 	@Override
 	public void close() {
 		IoUtil.closeQuietly(myResultSet);
@@ -0,0 +1,399 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.builder.sql;
+
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.search.builder.QueryStack;
+import ca.uhn.fhir.jpa.search.builder.models.SearchQueryProperties;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.api.SearchContainedModeEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import ca.uhn.fhir.sl.cache.Cache;
+import ca.uhn.fhir.sl.cache.CacheFactory;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Caches the SQL generated for searches with the same "shape", i.e. searches which only differ
+ * in the values being searched for. The predicate builders still run for every search, since they
+ * compute the bind variable values (such as index hashes), but rendering the SQL statement and
+ * locating its bind variables is skipped when the shape has been seen before.
+ * <p>
+ * Only searches whose SQL can not depend on the parameter values are cached: plain (unmodified)
+ * token and string parameters, optionally sorted. Searches using any other parameter type, any
+ * modifier, <code>_lastUpdated</code>, combo search parameters, or a keyset page token are always
+ * rendered. As an additional safeguard, cached SQL is only used if the search created exactly as
+ * many bind variables as the search which populated the cache.
+ * </p>
+ * <p>
+ * The storage and partition settings which change the SQL generated for these parameters are
+ * part of the shape, so changing them at runtime doesn't cause stale SQL to be used.
+ * </p>
+ *
+ * @see JpaStorageSettings#setSearchSqlShapeCacheSize(int)
+ * @since 8.4.0
+ */
+public class SearchQueryShapeCache {
+
+	private static final long EXPIRY_MILLIS = DateUtils.MILLIS_PER_HOUR;
+
+	private final JpaStorageSettings myStorageSettings;
+	private final PartitionSettings myPartitionSettings;
+	private final ISearchParamRegistry mySearchParamRegistry;
+	private final AtomicLong myHitCount = new AtomicLong();
+	private final AtomicLong myMissCount = new AtomicLong();
+	private volatile Cache<ShapeKey, CachedSql> myCache;
+	private volatile int myCacheSize;
+
+	/**
+	 * Constructor
+	 */
+	public SearchQueryShapeCache(
+			JpaStorageSettings theStorageSettings,
+			PartitionSettings thePartitionSettings,
+			ISearchParamRegistry theSearchParamRegistry) {
+		myStorageSettings = theStorageSettings;
+		myPartitionSettings = thePartitionSettings;
+		mySearchParamRegistry = theSearchParamRegistry;
+	}
+
+	public boolean isEnabled() {
+		return myStorageSettings.getSearchSqlShapeCacheSize() > 0;
+	}
+
+	/**
+	 * Returns the shape key for the given search, or <code>null</code> if the SQL for the search
+	 * can't be cached
+	 */
+	@Nullable
+	public ShapeKey createKey(
+			String theResourceName,
+			SearchParameterMap theParams,
+			SearchQueryProperties theSearchProperties,
+			RequestPartitionId theRequestPartitionId) {
+		if (!isEnabled()
+				|| theResourceName == null
+				|| theParams.getEverythingMode() != null
+				|| theParams.getLastUpdated() != null
+				|| theParams.isLastN()
+				|| theParams.getNearDistanceParam() != null
+				|| (theParams.getSearchContainedMode() != null
+						&& theParams.getSearchContainedMode() != SearchContainedModeEnum.FALSE)
+				|| theSearchProperties.hasKeysetPageToken()) {
+			return null;
+		}
+
+		StringBuilder shape = new StringBuilder(theResourceName);
+		appendSettingsShape(shape);
+		shape.append(theSearchProperties.isDoCountOnlyFlag() ? "|count" : "|ids");
+		shape.append(theSearchProperties.isDeduplicateInDatabase() ? "|group" : "");
+		shape.append(theSearchProperties.isKeysetPaging() ? "|keyset" : "");
+
+		// Parameters are added to the SQL in the order of the map, so the order is part of the shape
+		for (String nextParamName : theParams.keySet()) {
+			RuntimeSearchParam searchParam = getSearchParam(theResourceName, nextParamName);
+			if (searchParam == null) {
+				return null;
+			}
+			RestSearchParameterTypeEnum paramType = searchParam.getParamType();
+			if (paramType == RestSearchParameterTypeEnum.TOKEN) {
+				if (QueryStack.LOCATION_POSITION.equals(searchParam.getPath())) {
+					return null;
+				}
+			} else if (paramType != RestSearchParameterTypeEnum.STRING) {
+				return null;
+			}
+
+			shape.append('|').append(nextParamName).append('=');
+			for (List<IQueryParameterType> nextAnd : theParams.get(nextParamName)) {
+				shape.append('(');
+				char andShape = 0;
+				for (IQueryParameterType nextOr : nextAnd) {
+					char orShape = paramType == RestSearchParameterTypeEnum.TOKEN
+							? getTokenShape(nextOr)
+							: getStringShape(nextOr);
+					if (orShape == 0) {
+						return null;
+					}
+					// Mixed token kinds are sorted by value, so their order isn't fixed by the shape
+					if (paramType == RestSearchParameterTypeEnum.TOKEN
+							&& orShape != 'E'
+							&& andShape != 0
+							&& andShape != orShape) {
+						return null;
+					}
+					if (orShape != 'E') {
+						andShape = orShape;
+					}
+					shape.append(orShape);
+				}
+				shape.append(')');
+			}
+		}
+
+		for (SortSpec nextSort = theParams.getSort(); nextSort != null; nextSort = nextSort.getChain()) {
+			String sortParamName = nextSort.getParamName();
+			if (!isCacheableSortParam(theResourceName, sortParamName)) {
+				return null;
+			}
+			shape.append("|sort=").append(sortParamName).append(':').append(nextSort.getOrder());
+		}
+
+		if (!theParams.isEmpty()
+				&& !mySearchParamRegistry
+						.getActiveComboSearchParams(
+								theResourceName,
+								theParams.keySet(),
+								ISearchParamRegistry.SearchParamLookupContextEnum.SEARCH)
+						.isEmpty()) {
+			return null;
+		}
+
+		return new ShapeKey(shape.toString(), theRequestPartitionId);
+	}
+
+	/**
+	 * Returns the cached SQL for the given shape, or <code>null</code> if it hasn't been cached
+	 */
+	@Nullable
+	public CachedSql get(ShapeKey theKey) {
+		CachedSql retVal = getCache().getIfPresent(theKey);
+		if (retVal != null) {
+			myHitCount.incrementAndGet();
+		} else {
+			myMissCount.incrementAndGet();
+		}
+		return retVal;
+	}
+
+	public void put(ShapeKey theKey, CachedSql theCachedSql) {
+		getCache().put(theKey, theCachedSql);
+	}
+
+	public void invalidateAll() {
+		Cache<ShapeKey, CachedSql> cache = myCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Returns the number of searches which used cached SQL
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	/**
+	 * Returns the number of cacheable searches which had to render their SQL
+	 */
+	public long getMissCount() {
+		return myMissCount.get();
+	}
+
+	/**
+	 * Appends the settings which change the SQL generated for cacheable searches
+	 */
+	private void appendSettingsShape(StringBuilder theShape) {
+		theShape.append('|');
+		theShape.append(myPartitionSettings.isPartitioningEnabled() ? 'P' : '-');
+		theShape.append(myPartitionSettings.isDatabasePartitionMode() ? 'D' : '-');
+		theShape.append(myStorageSettings.isIncludeHashIdentityForTokenSearches() ? 'H' : '-');
+		theShape.append(myStorageSettings.isSuppressStringIndexingInTokens() ? 'S' : '-');
+		theShape.append(myStorageSettings.isIndexOnContainedResources() ? 'C' : '-');
+	}
+
+	@Nullable
+	private RuntimeSearchParam getSearchParam(String theResourceName, String theParamName) {
+		if (theParamName.startsWith("_") || theParamName.contains(".") || theParamName.contains(":")) {
+			return null;
+		}
+		return mySearchParamRegistry.getActiveSearchParam(
+				theResourceName, theParamName, ISearchParamRegistry.SearchParamLookupContextEnum.SEARCH);
+	}
+
+	private boolean isCacheableSortParam(String theResourceName, String theParamName) {
+		if (Constants.PARAM_ID.equals(theParamName)
+				|| Constants.PARAM_LASTUPDATED.equals(theParamName)
+				|| Constants.PARAM_PID.equals(theParamName)) {
+			return true;
+		}
+		RuntimeSearchParam searchParam = getSearchParam(theResourceName, theParamName);
+		if (searchParam == null) {
+			return false;
+		}
+		switch (searchParam.getParamType()) {
+			case TOKEN:
+			case STRING:
+			case DATE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns a character identifying the index hash a token is matched on, mirroring the choice
+	 * made by the token predicate builder, or <code>0</code> if the token isn't cacheable
+	 */
+	private static char getTokenShape(IQueryParameterType theParam) {
+		if (!(theParam instanceof TokenParam) || theParam.getMissing() != null) {
+			return 0;
+		}
+		TokenParam token = (TokenParam) theParam;
+		if (token.getModifier() != null) {
+			return 0;
+		}
+		if (token.isEmpty()) {
+			return 'E';
+		}
+		if (token.getSystem() == null) {
+			return 'V';
+		}
+		if (isBlank(token.getValue())) {
+			return 'S';
+		}
+		return 'B';
+	}
+
+	/**
+	 * Returns a character identifying the kind of string match, or <code>0</code> if the string
+	 * isn't cacheable
+	 */
+	private static char getStringShape(IQueryParameterType theParam) {
+		if (!(theParam instanceof StringParam) || theParam.getMissing() != null) {
+			return 0;
+		}
+		StringParam string = (StringParam) theParam;
+		if (string.isText() || string.isNicknameExpand()) {
+			return 0;
+		}
+		if (string.isExact()) {
+			return 'X';
+		}
+		if (string.isContains()) {
+			return 'C';
+		}
+		return 'N';
+	}
+
+	@Nonnull
+	private Cache<ShapeKey, CachedSql> getCache() {
+		int size = myStorageSettings.getSearchSqlShapeCacheSize();
+		Cache<ShapeKey, CachedSql> retVal = myCache;
+		if (retVal == null || myCacheSize != size) {
+			synchronized (this) {
+				retVal = myCache;
+				if (retVal == null || myCacheSize != size) {
+					retVal = CacheFactory.build(EXPIRY_MILLIS, Math.max(size, 1));
+					myCache = retVal;
+					myCacheSize = size;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Identifies the shape of a search
+	 */
+	public static class ShapeKey {
+
+		private final String myShape;
+		private final RequestPartitionId myRequestPartitionId;
+		private final int myHashCode;
+
+		public ShapeKey(String theShape, RequestPartitionId theRequestPartitionId) {
+			myShape = theShape;
+			myRequestPartitionId = theRequestPartitionId;
+			myHashCode = Objects.hash(myShape, myRequestPartitionId);
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof ShapeKey)) {
+				return false;
+			}
+			ShapeKey that = (ShapeKey) theO;
+			return myShape.equals(that.myShape) && Objects.equals(myRequestPartitionId, that.myRequestPartitionId);
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+
+		@Override
+		public String toString() {
+			return myShape;
+		}
+	}
+
+	/**
+	 * The SQL generated for a search shape (without any limit clause), along with the index of
+	 * the bind variable value used by each <code>?</code> in the SQL
+	 */
+	public static class CachedSql {
+
+		private final String mySql;
+		private final int[] myBindVariableIndexes;
+		private final int myBindVariableCount;
+
+		public CachedSql(String theSql, int[] theBindVariableIndexes, int theBindVariableCount) {
+			mySql = theSql;
+			myBindVariableIndexes = theBindVariableIndexes;
+			myBindVariableCount = theBindVariableCount;
+		}
+
+		public String getSql() {
+			return mySql;
+		}
+
+		public int[] getBindVariableIndexes() {
+			return myBindVariableIndexes;
+		}
+
+		/**
+		 * The total number of bind variable values created while building the search
+		 */
+		public int getBindVariableCount() {
+			return myBindVariableCount;
+		}
+	}
+}
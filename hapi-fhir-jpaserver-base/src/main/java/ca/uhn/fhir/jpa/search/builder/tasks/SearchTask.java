@@ -33,6 +33,7 @@ import ca.uhn.fhir.jpa.dao.tx.HapiTransactionService;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.interceptor.JpaPreResourceAccessDetails;
 import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.model.dao.JpaPidList;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
@@ -40,6 +41,7 @@ import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.QueryParameterUtils;
 import ca.uhn.fhir.jpa.util.SearchParameterMapCalculator;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.server.IPreResourceAccessDetails;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IPagingProvider;
@@ -69,6 +71,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantCount;
+import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantEstimatedCount;
 import static ca.uhn.fhir.jpa.util.SearchParameterMapCalculator.isWantOnlyCount;
 import static java.util.Objects.nonNull;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
@@ -95,10 +98,10 @@ public class SearchTask implements Callable<Void> {
 	protected final ISearchResultCacheSvc mySearchResultCacheSvc;
 	private final SearchParameterMap myParams;
 	private final String myResourceType;
-	private final ArrayList<JpaPid> mySyncedPids = new ArrayList<>();
+	private final JpaPidList mySyncedPids = new JpaPidList();
 	private final CountDownLatch myInitialCollectionLatch = new CountDownLatch(1);
 	private final CountDownLatch myCompletionLatch;
-	private final ArrayList<JpaPid> myUnsyncedPids = new ArrayList<>();
+	private final JpaPidList myUnsyncedPids = new JpaPidList();
 	private final RequestDetails myRequest;
 	private final RequestPartitionId myRequestPartitionId;
 	private final SearchRuntimeDetails mySearchRuntimeDetails;
@@ -123,6 +126,7 @@ public class SearchTask implements Callable<Void> {
 	// Note that this is set using the configured pre-fetch thresholds, maximum page size, and/or the client provided
 	// _count parameter
 	private Integer myMaxResultsToFetch;
+	private volatile Integer myEstimatedTotal;
 
 	/**
 	 * Constructor
@@ -189,6 +193,14 @@ public class SearchTask implements Callable<Void> {
 		return getSearch().getTotalCount();
 	}
 
+	/**
+	 * Returns the estimated number of matching resources if the search requested
+	 * <code>_total=estimated</code> and the exact total isn't known
+	 */
+	public Integer getEstimatedTotal() {
+		return myEstimatedTotal;
+	}
+
 	public Search getSearch() {
 		return mySearch;
 	}
@@ -296,7 +308,7 @@ public class SearchTask implements Callable<Void> {
 						doSaveSearch();
 					}
 
-					ArrayList<JpaPid> unsyncedPids = myUnsyncedPids;
+					JpaPidList unsyncedPids = myUnsyncedPids;
 					int countBlocked = 0;
 
 					// Interceptor call: STORAGE_PREACCESS_RESOURCES
@@ -564,6 +576,14 @@ public class SearchTask implements Callable<Void> {
 				return;
 			}
 		}
+		if (!myParamWantOnlyCount && !myParamOrDefaultWantCount) {
+			SearchTotalModeEnum totalMode = nonNull(myParams.getSearchTotalMode())
+					? myParams.getSearchTotalMode()
+					: myStorageSettings.getDefaultTotalMode();
+			if (isWantEstimatedCount(totalMode)) {
+				doEstimatedCountQuery();
+			}
+		}
 
 		ourLog.trace("Done count");
 		ISearchBuilder sb = newSearchBuilder();
@@ -698,6 +718,36 @@ public class SearchTask implements Callable<Void> {
 		}
 	}
 
+	/**
+	 * Estimates the total for a search using <code>_total=estimated</code>. Small totals
+	 * are exact, so they are stored just like the result of a count query.
+	 */
+	private void doEstimatedCountQuery() {
+		ourLog.trace("Performing estimated count");
+		@SuppressWarnings("rawtypes")
+		ISearchBuilder sb = newSearchBuilder();
+
+		// See the note about cloning the params in doCountOnlyQuery
+		Long estimate =
+				sb.createEstimatedCountQuery(myParams.clone(), mySearch.getUuid(), myRequest, myRequestPartitionId);
+		ourLog.trace("Got estimated count {}", estimate);
+		if (estimate == null) {
+			return;
+		}
+
+		if (estimate <= myStorageSettings.getEstimatedTotalExactCountThreshold()) {
+			myTxService
+					.withRequest(myRequest)
+					.withRequestPartitionId(myRequestPartitionId)
+					.execute(() -> {
+						mySearch.setTotalCount(estimate.intValue());
+						doSaveSearch();
+					});
+		} else {
+			myEstimatedTotal = (int) Math.min(estimate, Integer.MAX_VALUE);
+		}
+	}
+
 	/**
 	 * Does the query but only for the count.
 	 * @param theParamWantOnlyCount - if count query is wanted only
@@ -165,6 +165,8 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 		Collection<Search> candidates =
 				mySearchDao.findWithCutoffOrExpiry(theResourceType, hashCode, Date.from(theCreatedAfter));
 
+		// Candidates are newest first, so a search which has been re-run (e.g. by cache warming)
+		// is preferred over the one it replaces
 		for (Search nextCandidateSearch : candidates) {
 			// We should only reuse our search if it was created within the permitted window
 			// Date.after() is unreliable.  Instant.isAfter() always works.
@@ -67,4 +67,17 @@ public interface ISearchResultCacheSvc {
 	@Nullable
 	List<JpaPid> fetchAllResultPids(
 			Search theSearch, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId);
+
+	/**
+	 * Returns <code>true</code> if the results of the given search can be fetched from this cache,
+	 * meaning that the search may be reused for a subsequent identical query. The default implementation
+	 * always returns <code>true</code>, since results are only expected to be removed along with the
+	 * search itself.
+	 *
+	 * @param theSearch The search which is a candidate for reuse
+	 * @since 8.4.0
+	 */
+	default boolean isResultsAvailable(Search theSearch) {
+		return true;
+	}
 }
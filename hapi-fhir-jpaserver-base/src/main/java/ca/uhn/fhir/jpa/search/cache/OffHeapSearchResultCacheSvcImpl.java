@@ -0,0 +1,411 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.model.sched.HapiJob;
+import ca.uhn.fhir.jpa.model.sched.IHasScheduledJobs;
+import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
+import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.Validate;
+import org.quartz.JobExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A search result cache which stores the result PIDs of each search in compact off-heap
+ * buffers instead of in the <code>HFJ_SEARCH_RESULT</code> table, avoiding the cost of
+ * writing (and later deleting) one row per search result. Each batch of results is stored
+ * as a sequence of variable length, delta encoded PIDs, so a typical result takes only a
+ * few bytes.
+ * <p>
+ * Results are only held in the memory of the server which performed the search, so this
+ * implementation is only suitable for a single server, or for a cluster where requests for
+ * a given search are always routed to the same server (e.g. using sticky sessions). Searches
+ * whose results are not present on the server handling a request are treated as expired, and are
+ * not {@link #isResultsAvailable(Search) reused} for subsequent identical queries.
+ * </p>
+ * <p>
+ * The total size of the stored results is bounded. When storing new results would exceed the
+ * limit, the results of the least recently accessed searches are discarded. Results are also
+ * discarded by a scheduled job once they have not been accessed for longer than the
+ * {@link JpaStorageSettings#getExpireSearchResultsAfterMillis() search expiry time}. The memory
+ * of discarded results is reclaimed by the garbage collector.
+ * </p>
+ *
+ * @see JpaStorageSettings#setSearchResultOffHeapCacheMaxBytes(long)
+ * @since 8.4.0
+ */
+public class OffHeapSearchResultCacheSvcImpl implements ISearchResultCacheSvc, IHasScheduledJobs {
+	private static final Logger ourLog = LoggerFactory.getLogger(OffHeapSearchResultCacheSvcImpl.class);
+
+	private final JpaStorageSettings myStorageSettings;
+	private final Map<Long, StoredResults> mySearchPidToResults = new ConcurrentHashMap<>();
+	private final AtomicLong myTotalBytes = new AtomicLong();
+	private Long myNowForUnitTests;
+
+	/**
+	 * Constructor
+	 */
+	public OffHeapSearchResultCacheSvcImpl(JpaStorageSettings theStorageSettings) {
+		myStorageSettings = theStorageSettings;
+	}
+
+	@Override
+	public void storeResults(
+			Search theSearch,
+			List<JpaPid> thePreviouslyStoredResourcePids,
+			List<JpaPid> theNewResourcePids,
+			RequestDetails theRequestDetails,
+			RequestPartitionId theRequestPartitionId) {
+		Validate.notNull(theSearch.getId(), "Search has not been saved");
+		if (theNewResourcePids.isEmpty()) {
+			if (thePreviouslyStoredResourcePids.isEmpty()) {
+				// Still record a search with no results so that it is known to be available here
+				mySearchPidToResults.computeIfAbsent(theSearch.getId(), k -> new StoredResults());
+			}
+			return;
+		}
+
+		ByteBuffer segment = encode(theNewResourcePids);
+		synchronized (this) {
+			expireAndEvict(segment.capacity());
+
+			StoredResults results;
+			if (thePreviouslyStoredResourcePids.isEmpty()) {
+				results = mySearchPidToResults.computeIfAbsent(theSearch.getId(), k -> new StoredResults());
+			} else {
+				results = mySearchPidToResults.get(theSearch.getId());
+				if (results == null) {
+					// The earlier results have been discarded, so the remaining ones are of no use
+					return;
+				}
+			}
+			long bytesAdded =
+					results.append(thePreviouslyStoredResourcePids.size(), theNewResourcePids.size(), segment, now());
+			myTotalBytes.addAndGet(bytesAdded);
+		}
+
+		ourLog.debug(
+				"Stored {} results with {} previous for search {} using {} bytes",
+				theNewResourcePids.size(),
+				thePreviouslyStoredResourcePids.size(),
+				theSearch.getUuid(),
+				segment.capacity());
+	}
+
+	@Nullable
+	@Override
+	public List<JpaPid> fetchResultPids(
+			Search theSearch,
+			int theFrom,
+			int theTo,
+			RequestDetails theRequestDetails,
+			RequestPartitionId theRequestPartitionId) {
+		StoredResults results = mySearchPidToResults.get(theSearch.getId());
+		if (results == null) {
+			return null;
+		}
+		List<JpaPid> retVal = results.decode(theFrom, theTo, now());
+		if (retVal != null) {
+			ourLog.debug("fetchResultPids for range {}-{} returned {} pids", theFrom, theTo, retVal.size());
+		}
+		return retVal;
+	}
+
+	@Nullable
+	@Override
+	public List<JpaPid> fetchAllResultPids(
+			Search theSearch, RequestDetails theRequestDetails, RequestPartitionId theRequestPartitionId) {
+		StoredResults results = mySearchPidToResults.get(theSearch.getId());
+		if (results == null) {
+			return null;
+		}
+		return results.decode(0, Integer.MAX_VALUE, now());
+	}
+
+	/**
+	 * Results are only available if they are held by this server and have not been discarded
+	 */
+	@Override
+	public boolean isResultsAvailable(Search theSearch) {
+		StoredResults results = mySearchPidToResults.get(theSearch.getId());
+		return results != null && !results.isReleased();
+	}
+
+	/**
+	 * Returns the total number of bytes used to store search results
+	 */
+	public long getTotalBytes() {
+		return myTotalBytes.get();
+	}
+
+	/**
+	 * Discards results which have not been accessed within the search expiry time
+	 */
+	public synchronized void expireResults() {
+		expireAndEvict(0);
+	}
+
+	@Override
+	public void scheduleJobs(ISchedulerService theSchedulerService) {
+		ScheduledJobDefinition jobDetail = new ScheduledJobDefinition();
+		jobDetail.setId(getClass().getName());
+		jobDetail.setJobClass(Job.class);
+		theSchedulerService.scheduleLocalJob(DatabaseSearchCacheSvcImpl.SEARCH_CLEANUP_JOB_INTERVAL_MILLIS, jobDetail);
+	}
+
+	public static class Job implements HapiJob {
+		@Autowired
+		private OffHeapSearchResultCacheSvcImpl myTarget;
+
+		@Override
+		public void execute(JobExecutionContext theContext) {
+			myTarget.expireResults();
+		}
+	}
+
+	/**
+	 * Discards results which have expired, and then discards the least recently accessed
+	 * results until the given number of additional bytes can be stored within the limit
+	 */
+	private void expireAndEvict(int theBytesNeeded) {
+		long cutoff = now()
+				- myStorageSettings.getExpireSearchResultsAfterMillis()
+				- DatabaseSearchCacheSvcImpl.SEARCH_CLEANUP_JOB_INTERVAL_MILLIS;
+		mySearchPidToResults.entrySet().removeIf(t -> {
+			if (t.getValue().getLastAccessed() < cutoff) {
+				myTotalBytes.addAndGet(-t.getValue().release());
+				return true;
+			}
+			return false;
+		});
+
+		long maxBytes = myStorageSettings.getSearchResultOffHeapCacheMaxBytes();
+		if (myTotalBytes.get() + theBytesNeeded <= maxBytes) {
+			return;
+		}
+
+		List<Map.Entry<Long, StoredResults>> entries = new ArrayList<>(mySearchPidToResults.entrySet());
+		entries.sort(Comparator.comparingLong(t -> t.getValue().getLastAccessed()));
+		for (Map.Entry<Long, StoredResults> next : entries) {
+			if (myTotalBytes.get() + theBytesNeeded <= maxBytes) {
+				break;
+			}
+			if (mySearchPidToResults.remove(next.getKey(), next.getValue())) {
+				ourLog.debug("Discarding results for search {} to free space", next.getKey());
+				myTotalBytes.addAndGet(-next.getValue().release());
+			}
+		}
+	}
+
+	private long now() {
+		return myNowForUnitTests != null ? myNowForUnitTests : System.currentTimeMillis();
+	}
+
+	@VisibleForTesting
+	public void setNowForUnitTests(Long theNowForUnitTests) {
+		myNowForUnitTests = theNowForUnitTests;
+	}
+
+	/**
+	 * Encodes the PIDs as pairs of variable length integers: the difference from the previous
+	 * PID (zigzag encoded, since the PIDs are not sorted), and the partition ID plus one
+	 * (zero for a <code>null</code> partition ID).
+	 */
+	@VisibleForTesting
+	static ByteBuffer encode(List<JpaPid> thePids) {
+		ByteBuffer buffer = ByteBuffer.allocate(thePids.size() * 12);
+		long previous = 0;
+		for (JpaPid next : thePids) {
+			long pid = next.getId();
+			long delta = pid - previous;
+			previous = pid;
+			if (buffer.remaining() < 20) {
+				ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			writeVarLong(buffer, zigzag(delta));
+			Integer partitionId = next.getPartitionId();
+			writeVarLong(buffer, partitionId != null ? zigzag(partitionId) + 1 : 0);
+		}
+		buffer.flip();
+
+		ByteBuffer retVal = ByteBuffer.allocateDirect(buffer.remaining());
+		retVal.put(buffer);
+		retVal.flip();
+		return retVal;
+	}
+
+	@VisibleForTesting
+	static void decode(ByteBuffer theSegment, int theSkip, int theCount, List<JpaPid> theTarget) {
+		ByteBuffer buffer = theSegment.duplicate();
+		long previous = 0;
+		for (int i = 0; i < theSkip + theCount; i++) {
+			long pid = previous + unzigzag(readVarLong(buffer));
+			previous = pid;
+			long partition = readVarLong(buffer);
+			if (i >= theSkip) {
+				Integer partitionId = partition != 0 ? (int) unzigzag(partition - 1) : null;
+				theTarget.add(JpaPid.fromId(pid, partitionId));
+			}
+		}
+	}
+
+	/**
+	 * Maps signed values to unsigned ones so that small negative values are also encoded compactly
+	 */
+	private static long zigzag(long theValue) {
+		return (theValue << 1) ^ (theValue >> 63);
+	}
+
+	private static long unzigzag(long theValue) {
+		return (theValue >>> 1) ^ -(theValue & 1);
+	}
+
+	private static void writeVarLong(ByteBuffer theBuffer, long theValue) {
+		long value = theValue;
+		while ((value & ~0x7FL) != 0) {
+			theBuffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		theBuffer.put((byte) value);
+	}
+
+	private static long readVarLong(ByteBuffer theBuffer) {
+		long retVal = 0;
+		int shift = 0;
+		byte next;
+		do {
+			next = theBuffer.get();
+			retVal |= (long) (next & 0x7F) << shift;
+			shift += 7;
+		} while ((next & 0x80) != 0);
+		return retVal;
+	}
+
+	/**
+	 * The results of a single search, stored as one segment for each batch of results
+	 */
+	private static class StoredResults {
+
+		private final List<ByteBuffer> mySegments = new ArrayList<>();
+		private final List<Integer> mySegmentStartIndexes = new ArrayList<>();
+		private final List<Integer> mySegmentSizes = new ArrayList<>();
+		private long myBytes;
+		private boolean myReleased;
+		private volatile long myLastAccessed;
+
+		/**
+		 * Returns the change in the number of stored bytes
+		 */
+		synchronized long append(int theStartIndex, int theCount, ByteBuffer theSegment, long theNow) {
+			if (myReleased) {
+				// The results were discarded while the search was still loading
+				return 0;
+			}
+			long bytesBefore = myBytes;
+
+			// Discard any previously stored results which are being replaced
+			while (!mySegments.isEmpty() && mySegmentStartIndexes.get(mySegments.size() - 1) >= theStartIndex) {
+				int last = mySegments.size() - 1;
+				myBytes -= mySegments.get(last).capacity();
+				mySegments.remove(last);
+				mySegmentStartIndexes.remove(last);
+				mySegmentSizes.remove(last);
+			}
+			mySegments.add(theSegment);
+			mySegmentStartIndexes.add(theStartIndex);
+			mySegmentSizes.add(theCount);
+			myBytes += theSegment.capacity();
+			myLastAccessed = theNow;
+			return myBytes - bytesBefore;
+		}
+
+		/**
+		 * Returns <code>null</code> if the results have been discarded
+		 */
+		@Nullable
+		synchronized List<JpaPid> decode(int theFrom, int theTo, long theNow) {
+			if (myReleased) {
+				return null;
+			}
+			myLastAccessed = theNow;
+			if (theTo <= theFrom) {
+				return Collections.emptyList();
+			}
+
+			List<JpaPid> retVal = new ArrayList<>();
+			for (int i = 0; i < mySegments.size(); i++) {
+				int segmentStart = mySegmentStartIndexes.get(i);
+				int segmentEnd = segmentStart + mySegmentSizes.get(i);
+				if (segmentEnd <= theFrom) {
+					continue;
+				}
+				if (segmentStart >= theTo) {
+					break;
+				}
+				int skip = Math.max(0, theFrom - segmentStart);
+				int count = Math.min(segmentEnd, theTo) - segmentStart - skip;
+				OffHeapSearchResultCacheSvcImpl.decode(mySegments.get(i), skip, count, retVal);
+			}
+			return retVal;
+		}
+
+		/**
+		 * Discards the stored results, and returns the number of bytes which were freed
+		 */
+		synchronized long release() {
+			long retVal = myBytes;
+			myReleased = true;
+			mySegments.clear();
+			mySegmentStartIndexes.clear();
+			mySegmentSizes.clear();
+			myBytes = 0;
+			return retVal;
+		}
+
+		synchronized boolean isReleased() {
+			return myReleased;
+		}
+
+		long getLastAccessed() {
+			return myLastAccessed;
+		}
+	}
+}
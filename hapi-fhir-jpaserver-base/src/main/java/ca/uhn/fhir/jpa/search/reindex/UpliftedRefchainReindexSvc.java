@@ -0,0 +1,341 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.reindex;
+
+import ca.uhn.fhir.batch2.api.IJobCoordinator;
+import ca.uhn.fhir.batch2.api.IJobPartitionProvider;
+import ca.uhn.fhir.batch2.jobs.reindex.ReindexJobParameters;
+import ca.uhn.fhir.batch2.model.JobInstanceStartRequest;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.batch.models.Batch2JobStartResponse;
+import ca.uhn.fhir.jpa.cache.IResourceChangeEvent;
+import ca.uhn.fhir.jpa.cache.IResourceChangeListener;
+import ca.uhn.fhir.jpa.cache.IResourceChangeListenerRegistry;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ca.uhn.fhir.batch2.jobs.reindex.ReindexUtils.JOB_REINDEX;
+import static ca.uhn.fhir.rest.server.util.ISearchParamRegistry.SearchParamLookupContextEnum.INDEX;
+
+/**
+ * Keeps uplifted refchain indexes up to date when the resource they were calculated from
+ * changes. This is enabled using
+ * {@link JpaStorageSettings#setReindexOnUpliftedRefchainTargetChange(boolean)}.
+ * <p>
+ * Uplifted refchain indexes are stored against the referencing resource (e.g. an Encounter),
+ * but their values come from the referenced resource (e.g. its subject Patient). When a resource
+ * is updated, this service checks whether any value used by an uplifted refchain pointing at it has
+ * changed, and if so starts a reindex job covering every resource which references it through the
+ * corresponding reference search parameter (e.g. <code>Encounter?subject=Patient/123</code>).
+ * </p>
+ * <p>
+ * Changes are collected for the duration of the transaction, and a single job is started once it
+ * commits. Because reindexing a referencing resource doesn't change the referenced resource, this
+ * can't trigger further reindexing.
+ * </p>
+ * <p>
+ * The uplifted refchains pointing at each resource type are cached, and the cache is cleared
+ * whenever a SearchParameter is created, updated or deleted.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class UpliftedRefchainReindexSvc implements IResourceChangeListener {
+
+	static final int MAX_TARGETS_PER_URL = 100;
+	private static final Logger ourLog = LoggerFactory.getLogger(UpliftedRefchainReindexSvc.class);
+	private static final String PENDING_REINDEX_KEY = UpliftedRefchainReindexSvc.class.getName() + "_PENDING_REINDEX";
+
+	private final JpaStorageSettings myStorageSettings;
+	private final FhirContext myFhirContext;
+	private final ISearchParamRegistry mySearchParamRegistry;
+	private final SearchParamExtractorService mySearchParamExtractorService;
+	private final IJobCoordinator myJobCoordinator;
+	private final IJobPartitionProvider myJobPartitionProvider;
+	private final IResourceChangeListenerRegistry myResourceChangeListenerRegistry;
+	private final Map<String, Map<String, Set<String>>> myTargetTypeToSources = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 */
+	public UpliftedRefchainReindexSvc(
+			JpaStorageSettings theStorageSettings,
+			FhirContext theFhirContext,
+			ISearchParamRegistry theSearchParamRegistry,
+			SearchParamExtractorService theSearchParamExtractorService,
+			IJobCoordinator theJobCoordinator,
+			IJobPartitionProvider theJobPartitionProvider,
+			IResourceChangeListenerRegistry theResourceChangeListenerRegistry) {
+		myStorageSettings = theStorageSettings;
+		myFhirContext = theFhirContext;
+		mySearchParamRegistry = theSearchParamRegistry;
+		mySearchParamExtractorService = theSearchParamExtractorService;
+		myJobCoordinator = theJobCoordinator;
+		myJobPartitionProvider = theJobPartitionProvider;
+		myResourceChangeListenerRegistry = theResourceChangeListenerRegistry;
+	}
+
+	@PostConstruct
+	public void registerListener() {
+		SearchParameterMap spMap = SearchParameterMap.newSynchronous();
+		myResourceChangeListenerRegistry.registerResourceResourceChangeListener(
+				"SearchParameter", spMap, this, DateUtils.MILLIS_PER_MINUTE);
+	}
+
+	@PreDestroy
+	public void unregisterListener() {
+		myResourceChangeListenerRegistry.unregisterResourceResourceChangeListener(this);
+	}
+
+	@Override
+	public void handleInit(Collection<IIdType> theResourceIds) {
+		myTargetTypeToSources.clear();
+	}
+
+	@Override
+	public void handleChange(IResourceChangeEvent theResourceChangeEvent) {
+		if (!theResourceChangeEvent.isEmpty()) {
+			myTargetTypeToSources.clear();
+		}
+	}
+
+	/**
+	 * Called when a resource has been updated, within the updating transaction. If a value used by an
+	 * uplifted refchain has changed, the resources referencing the updated resource are reindexed after
+	 * the transaction commits.
+	 *
+	 * @param theOldResource The previous version of the resource, or <code>null</code> if it isn't available
+	 *                       (in which case the resource is assumed to have changed, unless
+	 *                       {@link JpaStorageSettings#isMassIngestionMode() mass ingestion mode} is enabled,
+	 *                       in which case nothing is reindexed)
+	 * @param theNewResource The new version of the resource
+	 */
+	public void resourceUpdated(
+			RequestDetails theRequestDetails,
+			@Nullable IBaseResource theOldResource,
+			IBaseResource theNewResource,
+			TransactionDetails theTransactionDetails) {
+		if (!myStorageSettings.isIndexOnUpliftedRefchains()
+				|| !myStorageSettings.isReindexOnUpliftedRefchainTargetChange()) {
+			return;
+		}
+		if (theOldResource == null && myStorageSettings.isMassIngestionMode()) {
+			// The previous version isn't loaded in mass ingestion mode, and treating every
+			// update as a change would reindex all referencing resources on each write
+			return;
+		}
+
+		IIdType targetId = theNewResource.getIdElement();
+		if (!targetId.hasIdPart()) {
+			return;
+		}
+
+		String targetType = myFhirContext.getResourceType(theNewResource);
+		Map<String, Set<String>> sourceReferenceParams = findUpliftedRefchainSources(targetType);
+		if (sourceReferenceParams.isEmpty()) {
+			return;
+		}
+
+		PendingReindex pendingReindex = null;
+		String targetReference = targetId.toUnqualifiedVersionless().getValue();
+		for (Map.Entry<String, Set<String>> next : sourceReferenceParams.entrySet()) {
+			if (hasChanged(targetType, next.getValue(), theOldResource, theNewResource)) {
+				if (pendingReindex == null) {
+					pendingReindex = getOrCreatePendingReindex(theRequestDetails, theTransactionDetails);
+				}
+				pendingReindex.add(next.getKey(), targetReference);
+			}
+		}
+
+		if (pendingReindex != null && !TransactionSynchronizationManager.isSynchronizationActive()) {
+			pendingReindex.start();
+		}
+	}
+
+	/**
+	 * Returns the reference search parameters declaring uplifted refchains which can point to
+	 * the given resource type, as a map from the search URL prefix
+	 * (e.g. <code>Encounter?subject=</code>) to the codes of the uplifted refchains
+	 */
+	@VisibleForTesting
+	Map<String, Set<String>> findUpliftedRefchainSources(String theTargetType) {
+		return myTargetTypeToSources.computeIfAbsent(theTargetType, this::doFindUpliftedRefchainSources);
+	}
+
+	private Map<String, Set<String>> doFindUpliftedRefchainSources(String theTargetType) {
+		Map<String, Set<String>> retVal = new TreeMap<>();
+		for (String sourceType : myFhirContext.getResourceTypes()) {
+			for (RuntimeSearchParam sourceParam : mySearchParamRegistry
+					.getActiveSearchParams(sourceType, INDEX)
+					.values()) {
+				if (sourceParam.getParamType() != RestSearchParameterTypeEnum.REFERENCE
+						|| !sourceParam.hasUpliftRefchains()) {
+					continue;
+				}
+				if (!sourceParam.getTargets().isEmpty()
+						&& !sourceParam.getTargets().contains(theTargetType)) {
+					continue;
+				}
+				String prefix = sourceType + "?" + sourceParam.getName() + "=";
+				retVal.computeIfAbsent(prefix, t -> new TreeSet<>()).addAll(sourceParam.getUpliftRefchainCodes());
+			}
+		}
+		return Collections.unmodifiableMap(retVal);
+	}
+
+	private boolean hasChanged(
+			String theTargetType,
+			Set<String> theUpliftRefchainCodes,
+			@Nullable IBaseResource theOldResource,
+			IBaseResource theNewResource) {
+		if (theOldResource == null) {
+			return true;
+		}
+		for (String nextCode : theUpliftRefchainCodes) {
+			RuntimeSearchParam targetParam = mySearchParamRegistry.getActiveSearchParam(theTargetType, nextCode, INDEX);
+			if (targetParam == null) {
+				continue;
+			}
+			List<String> oldValues = extractSortedValues(targetParam, theOldResource);
+			List<String> newValues = extractSortedValues(targetParam, theNewResource);
+			if (!Objects.equals(oldValues, newValues)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<String> extractSortedValues(RuntimeSearchParam theSearchParam, IBaseResource theResource) {
+		List<String> retVal =
+				new ArrayList<>(mySearchParamExtractorService.extractParamValuesAsStrings(theSearchParam, theResource));
+		Collections.sort(retVal);
+		return retVal;
+	}
+
+	/**
+	 * Changes made within a transaction are collected and reindexed together once it commits
+	 */
+	private PendingReindex getOrCreatePendingReindex(
+			RequestDetails theRequestDetails, TransactionDetails theTransactionDetails) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new PendingReindex(theRequestDetails);
+		}
+
+		PendingReindex retVal = theTransactionDetails.getUserData(PENDING_REINDEX_KEY);
+		if (retVal == null) {
+			PendingReindex pendingReindex = new PendingReindex(theRequestDetails);
+			theTransactionDetails.putUserData(PENDING_REINDEX_KEY, pendingReindex);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					try {
+						pendingReindex.start();
+					} catch (RuntimeException e) {
+						// The transaction has already committed, so this must not propagate to the client
+						ourLog.error("Failed to start reindex job for uplifted refchains: {}", e.getMessage(), e);
+					}
+				}
+			});
+			retVal = pendingReindex;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Builds the URLs selecting the resources to reindex. The referenced resources for each source
+	 * search parameter are combined into URLs of up to {@link #MAX_TARGETS_PER_URL} references each.
+	 */
+	@VisibleForTesting
+	static List<String> buildUrls(Map<String, Set<String>> theSourceUrlPrefixToTargets) {
+		List<String> retVal = new ArrayList<>();
+		for (Map.Entry<String, Set<String>> next : theSourceUrlPrefixToTargets.entrySet()) {
+			for (List<String> targets : Iterables.partition(next.getValue(), MAX_TARGETS_PER_URL)) {
+				retVal.add(next.getKey() + String.join(",", targets));
+			}
+		}
+		return retVal;
+	}
+
+	private class PendingReindex {
+
+		private final RequestDetails myRequestDetails;
+		private final Map<String, Set<String>> mySourceUrlPrefixToTargets = new TreeMap<>();
+		private boolean myStarted;
+
+		private PendingReindex(RequestDetails theRequestDetails) {
+			myRequestDetails = theRequestDetails;
+		}
+
+		private void add(String theSourceUrlPrefix, String theTargetReference) {
+			mySourceUrlPrefixToTargets
+					.computeIfAbsent(theSourceUrlPrefix, t -> new TreeSet<>())
+					.add(theTargetReference);
+		}
+
+		private void start() {
+			if (myStarted || mySourceUrlPrefixToTargets.isEmpty()) {
+				return;
+			}
+			myStarted = true;
+
+			List<String> urls = buildUrls(mySourceUrlPrefixToTargets);
+			ReindexJobParameters params = new ReindexJobParameters();
+			myJobPartitionProvider.getPartitionedUrls(myRequestDetails, urls).forEach(params::addPartitionedUrl);
+
+			JobInstanceStartRequest request = new JobInstanceStartRequest();
+			request.setJobDefinitionId(JOB_REINDEX);
+			request.setParameters(params);
+			Batch2JobStartResponse response = myJobCoordinator.startInstance(myRequestDetails, request);
+			ourLog.info(
+					"Started reindex job {} to refresh uplifted refchain indexes for URLs: {}",
+					response.getInstanceId(),
+					urls);
+		}
+	}
+}
@@ -19,40 +19,121 @@
  */
 package ca.uhn.fhir.jpa.search.warm;
 
+import ca.uhn.fhir.IHapiBootOrder;
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.i18n.Msg;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.api.model.WarmCacheEntry;
+import ca.uhn.fhir.jpa.api.svc.ISearchCoordinatorSvc;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.sched.HapiJob;
 import ca.uhn.fhir.jpa.model.sched.IHasScheduledJobs;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
+import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.ResourceMetaParams;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.CacheControlDirective;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.QualifiedParamList;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.util.UrlUtil;
+import jakarta.annotation.Nullable;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.apache.commons.lang3.time.DateUtils;
 import org.quartz.JobExecutionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.substringBefore;
+
+/**
+ * Keeps searches warm in the search cache by re-running them in the background.
+ * <p>
+ * Searches listed in {@link JpaStorageSettings#getWarmCacheEntries()} are re-run at their
+ * configured period. In addition, if {@link JpaStorageSettings#getAdaptiveCacheWarmingMaxSearches()}
+ * is set, this service learns the most frequently requested searches from the
+ * {@link Pointcut#SERVER_INCOMING_REQUEST_PRE_HANDLED} pointcut and re-runs them shortly before
+ * their cached results expire. This service registers itself with the JPA interceptor service,
+ * so if the RestfulServer uses a different interceptor service, it must also be registered
+ * there for searches to be tracked.
+ * </p>
+ * <p>
+ * Searches are tracked separately for each request partition, and are re-run in that partition.
+ * Since each server only knows about the searches it has received itself, the adaptive warming
+ * pass runs as a local job on every server, whereas the configured searches are warmed by a
+ * clustered job.
+ * </p>
+ */
 @Component
+@Interceptor
 public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs {
 
+	/**
+	 * A search must be seen this many times within a cache reuse period to be warmed
+	 * adaptively. Since counts are halved each period, this means on average at least
+	 * once per period.
+	 */
+	static final int ADAPTIVE_MINIMUM_COUNT = 2;
+
 	private static final Logger ourLog = LoggerFactory.getLogger(CacheWarmingSvcImpl.class);
+	private static final long WARMING_PASS_INTERVAL_MILLIS = 10 * DateUtils.MILLIS_PER_SECOND;
+	private static final int ADAPTIVE_SKETCH_WIDTH = 4096;
+	private static final Set<String> ADAPTIVE_IGNORED_PARAMS = Set.of(
+			Constants.PARAM_FORMAT,
+			Constants.PARAM_PRETTY,
+			Constants.PARAM_ELEMENTS,
+			Constants.PARAM_ELEMENTS + Constants.PARAM_ELEMENTS_EXCLUDE_MODIFIER,
+			Constants.PARAM_SUMMARY,
+			Constants.PARAM_COUNT);
+	/**
+	 * Parameters beginning with an underscore which are translated into a {@link SearchParameterMap}
+	 * the same way by {@link #refreshAdaptiveNow(String)} as by the REST server. Searches using
+	 * any other such parameter aren't warmed adaptively.
+	 */
+	private static final Set<String> ADAPTIVE_SUPPORTED_SPECIAL_PARAMS = Set.of(
+			Constants.PARAM_LASTUPDATED,
+			Constants.PARAM_LANGUAGE,
+			Constants.PARAM_SOURCE,
+			Constants.PARAM_SEARCH_TOTAL_MODE,
+			Constants.PARAM_SORT,
+			Constants.PARAM_INCLUDE,
+			Constants.PARAM_REVINCLUDE);
 
 	@Autowired
 	private JpaStorageSettings myStorageSettings;
@@ -68,6 +149,20 @@ public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs
 	@Autowired
 	private MatchUrlService myMatchUrlService;
 
+	@Autowired
+	private ISearchCoordinatorSvc<JpaPid> mySearchCoordinatorSvc;
+
+	@Autowired
+	private IRequestPartitionHelperSvc myRequestPartitionHelperSvc;
+
+	@Autowired
+	private IInterceptorService myInterceptorService;
+
+	private volatile SearchFrequencySketch<AdaptiveWarmSearch> mySearchFrequencySketch;
+	private int mySearchFrequencySketchMaxSearches;
+	private final Map<AdaptiveWarmSearch, Long> myAdaptiveSearchToLastWarmed = new HashMap<>();
+	private long myNextAdaptiveDecay;
+
 	@Override
 	public synchronized void performWarmingPass() {
 		ourLog.trace("Starting cache warming pass for {} tasks", myCacheEntryToNextRefresh.size());
@@ -87,6 +182,219 @@ public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs
 		}
 	}
 
+	@Override
+	public synchronized void performAdaptiveWarmingPass() {
+		int maxSearches = myStorageSettings.getAdaptiveCacheWarmingMaxSearches();
+		Long reuseMillis = myStorageSettings.getReuseCachedSearchResultsForMillis();
+		SearchFrequencySketch<AdaptiveWarmSearch> sketch = mySearchFrequencySketch;
+		if (maxSearches <= 0 || reuseMillis == null || sketch == null) {
+			myAdaptiveSearchToLastWarmed.clear();
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if (now >= myNextAdaptiveDecay) {
+			if (myNextAdaptiveDecay != 0) {
+				sketch.decay();
+			}
+			myNextAdaptiveDecay = now + reuseMillis;
+		}
+
+		List<AdaptiveWarmSearch> searches = sketch.getMostFrequent(maxSearches, ADAPTIVE_MINIMUM_COUNT);
+		myAdaptiveSearchToLastWarmed.keySet().retainAll(searches);
+		ourLog.trace("Starting adaptive cache warming pass for {} searches", searches.size());
+
+		// Re-run each search before its cached results stop being reused, allowing
+		// for the time until the next warming pass
+		long refreshAfterMillis = Math.max(reuseMillis - 2 * WARMING_PASS_INTERVAL_MILLIS, reuseMillis / 2);
+		for (AdaptiveWarmSearch nextSearch : searches) {
+			Long lastWarmed = myAdaptiveSearchToLastWarmed.get(nextSearch);
+			if (lastWarmed != null && now - lastWarmed < refreshAfterMillis) {
+				continue;
+			}
+
+			try {
+				refreshAdaptiveNow(nextSearch);
+				myAdaptiveSearchToLastWarmed.put(nextSearch, now);
+			} catch (RuntimeException e) {
+				ourLog.warn(
+						"Failed to warm search {}, it will not be warmed again until requested again", nextSearch, e);
+				sketch.remove(nextSearch);
+				myAdaptiveSearchToLastWarmed.remove(nextSearch);
+			}
+		}
+	}
+
+	/**
+	 * Unlike {@link #refreshNow(WarmCacheEntry)}, this bypasses the search cache so that a
+	 * new search replaces the cached one before it expires. The search is performed in the
+	 * partition it was originally requested in.
+	 */
+	private void refreshAdaptiveNow(AdaptiveWarmSearch theSearch) {
+		String url = theSearch.getUrl();
+		RuntimeResourceDefinition resourceDef = UrlUtil.parseUrlResourceType(myCtx, url);
+		String resourceType = resourceDef.getName();
+		IFhirResourceDao<?> callingDao = myDaoRegistry.getResourceDao(resourceType);
+		SearchParameterMap params = myMatchUrlService.translateMatchUrl(
+				parseWarmUrlParamPart(url),
+				resourceDef,
+				MatchUrlService.processIncludes(),
+				CacheWarmingSvcImpl::processSort);
+
+		RequestPartitionId requestPartitionId = theSearch.getRequestPartitionId();
+		SystemRequestDetails requestDetails = SystemRequestDetails.forRequestPartitionId(requestPartitionId);
+		CacheControlDirective cacheControlDirective = new CacheControlDirective().setNoCache(true);
+		mySearchCoordinatorSvc.registerSearch(
+				callingDao, params, resourceType, cacheControlDirective, requestDetails, requestPartitionId);
+	}
+
+	/**
+	 * Records each incoming type-level search so that the most frequent ones can be warmed
+	 */
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void incomingRequestPreHandled(RequestDetails theRequestDetails, RestOperationTypeEnum theOperation) {
+		if (theOperation != RestOperationTypeEnum.SEARCH_TYPE) {
+			return;
+		}
+		int maxSearches = myStorageSettings.getAdaptiveCacheWarmingMaxSearches();
+		if (maxSearches <= 0 || myStorageSettings.getReuseCachedSearchResultsForMillis() == null) {
+			return;
+		}
+
+		String url = toAdaptiveWarmUrl(theRequestDetails);
+		if (url != null) {
+			RequestPartitionId requestPartitionId =
+					myRequestPartitionHelperSvc.determineReadPartitionForRequestForSearchType(
+							theRequestDetails, theRequestDetails.getResourceName());
+			getOrCreateSearchFrequencySketch(maxSearches).increment(new AdaptiveWarmSearch(requestPartitionId, url));
+		}
+	}
+
+	/**
+	 * Translates the <code>_sort</code> parameter, which {@link MatchUrlService} ignores
+	 */
+	private static void processSort(
+			String theParamName, List<QualifiedParamList> theValues, SearchParameterMap theMapToPopulate) {
+		if (!Constants.PARAM_SORT.equals(theParamName)) {
+			return;
+		}
+
+		SortSpec outerSpec = null;
+		SortSpec innerSpec = null;
+		for (QualifiedParamList nextList : theValues) {
+			for (String nextValue : nextList) {
+				if (isBlank(nextValue) || nextValue.equals("-")) {
+					continue;
+				}
+				SortSpec spec = new SortSpec();
+				if (nextValue.startsWith("-")) {
+					spec.setOrder(SortOrderEnum.DESC);
+					spec.setParamName(nextValue.substring(1));
+				} else {
+					spec.setOrder(SortOrderEnum.ASC);
+					spec.setParamName(nextValue);
+				}
+				if (innerSpec == null) {
+					outerSpec = spec;
+				} else {
+					innerSpec.setChain(spec);
+				}
+				innerSpec = spec;
+			}
+		}
+		theMapToPopulate.setSort(outerSpec);
+	}
+
+	private SearchFrequencySketch<AdaptiveWarmSearch> getOrCreateSearchFrequencySketch(int theMaxSearches) {
+		SearchFrequencySketch<AdaptiveWarmSearch> retVal = mySearchFrequencySketch;
+		if (retVal == null || mySearchFrequencySketchMaxSearches != theMaxSearches) {
+			synchronized (this) {
+				retVal = mySearchFrequencySketch;
+				if (retVal == null || mySearchFrequencySketchMaxSearches != theMaxSearches) {
+					// Keep extra candidates so that searches near the cutoff don't displace each other
+					retVal = new SearchFrequencySketch<>(ADAPTIVE_SKETCH_WIDTH, theMaxSearches * 2);
+					mySearchFrequencySketchMaxSearches = theMaxSearches;
+					mySearchFrequencySketch = retVal;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Builds a search URL which, once translated into a {@link SearchParameterMap}, has the same
+	 * normalized query string as the search performed for this request, so that warming it
+	 * refreshes the same cache entry. Parameters are sorted, and parameters which don't affect
+	 * the cached results are removed. Returns <code>null</code> if the results of this request
+	 * wouldn't be cached.
+	 */
+	@Nullable
+	static String toAdaptiveWarmUrl(RequestDetails theRequestDetails) {
+		String resourceName = theRequestDetails.getResourceName();
+		IRestfulServerDefaults server = theRequestDetails.getServer();
+		if (resourceName == null || server == null || server.getPagingProvider() == null) {
+			return null;
+		}
+
+		CacheControlDirective cacheControlDirective = new CacheControlDirective();
+		cacheControlDirective.parse(theRequestDetails.getHeaders(Constants.HEADER_CACHE_CONTROL));
+		if (cacheControlDirective.isNoCache() || cacheControlDirective.isNoStore()) {
+			return null;
+		}
+
+		Map<String, String[]> parameters = new TreeMap<>(theRequestDetails.getParameters());
+		String[] summary = parameters.get(Constants.PARAM_SUMMARY);
+		if (summary != null && Arrays.asList(summary).contains(SummaryEnum.COUNT.getCode())) {
+			return null;
+		}
+
+		StringBuilder b = new StringBuilder(resourceName).append('?');
+		boolean first = true;
+		for (Map.Entry<String, String[]> next : parameters.entrySet()) {
+			String paramName = next.getKey();
+			if (ADAPTIVE_IGNORED_PARAMS.contains(paramName)) {
+				continue;
+			}
+			String baseParamName = substringBefore(substringBefore(paramName, ":"), ".");
+			if (baseParamName.startsWith("_")
+					&& !ADAPTIVE_SUPPORTED_SPECIAL_PARAMS.contains(baseParamName)
+					&& !ResourceMetaParams.RESOURCE_META_PARAMS.containsKey(baseParamName)) {
+				return null;
+			}
+
+			// Sort order is significant, but the order of other repeated parameters isn't
+			String[] values = next.getValue().clone();
+			if (!Constants.PARAM_SORT.equals(paramName)) {
+				Arrays.sort(values);
+			}
+			for (String nextValue : values) {
+				if (!first) {
+					b.append('&');
+				}
+				first = false;
+				b.append(UrlUtil.escapeUrlParam(next.getKey()));
+				b.append('=');
+				b.append(UrlUtil.escapeUrlParam(nextValue));
+			}
+		}
+
+		// The page size is part of the cached search, so resolve it the same way as the DAO does
+		Integer count = RestfulServerUtils.extractCountParameter(theRequestDetails);
+		if (count != null && server.getMaximumPageSize() != null) {
+			count = Math.min(count, server.getMaximumPageSize());
+		} else if (count == null) {
+			count = server.getDefaultPageSize();
+		}
+		if (count != null) {
+			if (!first) {
+				b.append('&');
+			}
+			b.append(Constants.PARAM_COUNT).append('=').append(count);
+		}
+
+		return b.toString();
+	}
+
 	private void refreshNow(WarmCacheEntry theCacheEntry) {
 		String nextUrl = theCacheEntry.getUrl();
 
@@ -111,12 +419,28 @@ public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs
 		initCacheMap();
 	}
 
+	@EventListener(classes = {ContextRefreshedEvent.class})
+	@Order(IHapiBootOrder.REGISTER_INTERCEPTORS)
+	public void registerInterceptor() {
+		myInterceptorService.registerInterceptor(this);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myInterceptorService.unregisterInterceptor(this);
+	}
+
 	@Override
 	public void scheduleJobs(ISchedulerService theSchedulerService) {
 		ScheduledJobDefinition jobDetail = new ScheduledJobDefinition();
 		jobDetail.setId(getClass().getName());
 		jobDetail.setJobClass(Job.class);
-		theSchedulerService.scheduleClusteredJob(10 * DateUtils.MILLIS_PER_SECOND, jobDetail);
+		theSchedulerService.scheduleClusteredJob(WARMING_PASS_INTERVAL_MILLIS, jobDetail);
+
+		ScheduledJobDefinition adaptiveJobDetail = new ScheduledJobDefinition();
+		adaptiveJobDetail.setId(AdaptiveJob.class.getName());
+		adaptiveJobDetail.setJobClass(AdaptiveJob.class);
+		theSchedulerService.scheduleLocalJob(WARMING_PASS_INTERVAL_MILLIS, adaptiveJobDetail);
 	}
 
 	public static class Job implements HapiJob {
@@ -129,6 +453,16 @@ public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs
 		}
 	}
 
+	public static class AdaptiveJob implements HapiJob {
+		@Autowired
+		private ICacheWarmingSvc myTarget;
+
+		@Override
+		public void execute(JobExecutionContext theContext) {
+			myTarget.performAdaptiveWarmingPass();
+		}
+	}
+
 	public synchronized Set<WarmCacheEntry> initCacheMap() {
 
 		myCacheEntryToNextRefresh.clear();
@@ -144,4 +478,58 @@ public class CacheWarmingSvcImpl implements ICacheWarmingSvc, IHasScheduledJobs
 
 		return Collections.unmodifiableSet(myCacheEntryToNextRefresh.keySet());
 	}
+
+	/**
+	 * A search tracked for adaptive warming, i.e. a normalized search URL and the
+	 * partition it was requested in
+	 */
+	static class AdaptiveWarmSearch implements Comparable<AdaptiveWarmSearch> {
+
+		private final RequestPartitionId myRequestPartitionId;
+		private final String myUrl;
+
+		AdaptiveWarmSearch(RequestPartitionId theRequestPartitionId, String theUrl) {
+			myRequestPartitionId = theRequestPartitionId;
+			myUrl = theUrl;
+		}
+
+		RequestPartitionId getRequestPartitionId() {
+			return myRequestPartitionId;
+		}
+
+		String getUrl() {
+			return myUrl;
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof AdaptiveWarmSearch)) {
+				return false;
+			}
+			AdaptiveWarmSearch that = (AdaptiveWarmSearch) theO;
+			return myUrl.equals(that.myUrl) && Objects.equals(myRequestPartitionId, that.myRequestPartitionId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(myRequestPartitionId, myUrl);
+		}
+
+		@Override
+		public int compareTo(AdaptiveWarmSearch theOther) {
+			int retVal = myUrl.compareTo(theOther.myUrl);
+			if (retVal == 0) {
+				retVal = String.valueOf(myRequestPartitionId).compareTo(String.valueOf(theOther.myRequestPartitionId));
+			}
+			return retVal;
+		}
+
+		@Override
+		public String toString() {
+			return myUrl + " (partition " + myRequestPartitionId + ")";
+		}
+	}
 }
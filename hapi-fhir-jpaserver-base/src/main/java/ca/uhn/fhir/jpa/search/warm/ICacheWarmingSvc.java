@@ -21,4 +21,12 @@ package ca.uhn.fhir.jpa.search.warm;
 
 public interface ICacheWarmingSvc {
 	void performWarmingPass();
+
+	/**
+	 * Re-runs the searches this server has seen most frequently, shortly before their cached
+	 * results expire. Unlike {@link #performWarmingPass()}, this should be invoked on every server.
+	 *
+	 * @since 8.4.0
+	 */
+	void performAdaptiveWarmingPass();
 }
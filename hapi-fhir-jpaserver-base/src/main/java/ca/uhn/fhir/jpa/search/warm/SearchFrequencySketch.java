@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.search.warm;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates how often each key (e.g. a search URL) has been seen, using a fixed amount of
+ * memory regardless of how many distinct keys there are. Counts are held in a
+ * <a href="https://en.wikipedia.org/wiki/Count%E2%80%93min_sketch">count-min sketch</a>,
+ * which may overestimate (but never underestimates) the count for a key. The most
+ * frequently seen keys are also kept as a bounded set of candidates, so that they can
+ * be listed without having to store every key.
+ * <p>
+ * Calling {@link #decay()} halves every count, so that keys which are no longer being
+ * seen gradually drop out of the candidates.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @param <K> The key type. Keys must implement {@link Object#hashCode()} and {@link Object#equals(Object)}.
+ * @since 8.4.0
+ */
+public class SearchFrequencySketch<K extends Comparable<? super K>> {
+
+	private static final int DEPTH = 4;
+
+	private final int myWidth;
+	private final AtomicLongArray myCounts;
+	private final int myMaxCandidates;
+	private final ConcurrentHashMap<K, Long> myCandidates = new ConcurrentHashMap<>();
+
+	/**
+	 * Once the candidates are full, a key must have a count greater than this to replace one
+	 */
+	private volatile long myCandidateFloor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theWidth         The number of counters per row of the sketch. Larger values reduce
+	 *                         overestimation caused by keys sharing a counter. Will be rounded up
+	 *                         to a power of two.
+	 * @param theMaxCandidates The maximum number of frequently seen keys to keep
+	 */
+	public SearchFrequencySketch(int theWidth, int theMaxCandidates) {
+		Validate.isTrue(theWidth > 0, "theWidth must be > 0");
+		Validate.isTrue(theMaxCandidates > 0, "theMaxCandidates must be > 0");
+		myWidth = theWidth == 1 ? 1 : Integer.highestOneBit(theWidth - 1) << 1;
+		myCounts = new AtomicLongArray(DEPTH * myWidth);
+		myMaxCandidates = theMaxCandidates;
+	}
+
+	/**
+	 * Records one occurrence of the given key
+	 *
+	 * @return Returns the estimated number of occurrences of the key, including this one
+	 */
+	public long increment(K theKey) {
+		int hash = theKey.hashCode();
+		int step = spread(hash);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = row * myWidth + ((hash + row * step) & (myWidth - 1));
+			estimate = Math.min(estimate, myCounts.incrementAndGet(index));
+		}
+		offerCandidate(theKey, estimate);
+		return estimate;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of the given key
+	 */
+	public long estimate(K theKey) {
+		int hash = theKey.hashCode();
+		int step = spread(hash);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = row * myWidth + ((hash + row * step) & (myWidth - 1));
+			estimate = Math.min(estimate, myCounts.get(index));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns up to the given number of keys with the highest estimated counts, most frequent first
+	 *
+	 * @param theMaxKeys      The maximum number of keys to return
+	 * @param theMinimumCount Keys with an estimated count lower than this are not returned
+	 */
+	public List<K> getMostFrequent(int theMaxKeys, long theMinimumCount) {
+		return myCandidates.entrySet().stream()
+				.filter(t -> t.getValue() >= theMinimumCount)
+				.sorted(Map.Entry.<K, Long>comparingByValue(Comparator.reverseOrder())
+						.thenComparing(Map.Entry.comparingByKey()))
+				.limit(theMaxKeys)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Stops listing the given key as a frequently seen key, until it is seen again
+	 */
+	public synchronized void remove(K theKey) {
+		myCandidates.remove(theKey);
+		myCandidateFloor = 0;
+	}
+
+	/**
+	 * Halves all counts
+	 */
+	public synchronized void decay() {
+		for (int i = 0; i < myCounts.length(); i++) {
+			myCounts.updateAndGet(i, t -> t >> 1);
+		}
+		myCandidates.replaceAll((k, v) -> v >> 1);
+		myCandidates.values().removeIf(t -> t == 0);
+		myCandidateFloor = 0;
+	}
+
+	private void offerCandidate(K theKey, long theEstimate) {
+		if (myCandidates.computeIfPresent(theKey, (k, v) -> Math.max(v, theEstimate)) != null) {
+			return;
+		}
+		if (myCandidates.size() >= myMaxCandidates && theEstimate <= myCandidateFloor) {
+			return;
+		}
+
+		synchronized (this) {
+			if (myCandidates.size() < myMaxCandidates) {
+				myCandidates.put(theKey, theEstimate);
+				return;
+			}
+
+			Map.Entry<K, Long> lowest = myCandidates.entrySet().stream()
+					.min(Map.Entry.comparingByValue())
+					.orElseThrow();
+			if (theEstimate > lowest.getValue()) {
+				myCandidates.remove(lowest.getKey());
+				myCandidates.put(theKey, theEstimate);
+			}
+			myCandidateFloor = myCandidates.values().stream()
+					.mapToLong(Long::longValue)
+					.min()
+					.orElse(0);
+		}
+	}
+
+	/**
+	 * Derives a second, odd valued hash so that each row of the sketch maps a key to
+	 * a different counter
+	 */
+	private static int spread(int theHash) {
+		int hash = theHash * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) | 1;
+	}
+}
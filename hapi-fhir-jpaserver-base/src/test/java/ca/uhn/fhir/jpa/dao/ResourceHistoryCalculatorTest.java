@@ -11,9 +11,12 @@ import org.hl7.fhir.dstu3.hapi.ctx.FhirDstu3;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.hapi.ctx.FhirR4;
 import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
@@ -29,6 +32,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ResourceHistoryCalculatorTest {
@@ -43,6 +47,7 @@ class ResourceHistoryCalculatorTest {
 	private static final String ENCODED_RESOURCE_1 = "1234";
 	private static final String ENCODED_RESOURCE_2 = "abcd";
 	private static final String RESOURCE_TEXT_VC = "resourceTextVc";
+	private static final String ENCODED_RESOURCE_JSON = "{\"resourceType\":\"Patient\",\"active\":true}";
 	private static final List<String> EXCLUDED_ELEMENTS_1 = List.of("id");
 	private static final List<String> EXCLUDED_ELEMENTS_2 = List.of("resourceType", "birthDate");
 	private static final HashFunction SHA_256 = Hashing.sha256();
@@ -99,6 +104,32 @@ class ResourceHistoryCalculatorTest {
 	}
 
 
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	void calculateResourceHistoryState_smileIsAlwaysBinary(boolean theIsOracle) {
+		final IBaseResource patient = getPatient(CONTEXT);
+
+		final ResourceHistoryCalculator calculator = getCalculator(theIsOracle);
+		final ResourceHistoryState result = calculator.calculateResourceHistoryState(patient, ResourceEncodingEnum.SMILE, EXCLUDED_ELEMENTS_1);
+
+		assertNotNull(result.getResourceBinary());
+		assertNull(result.getResourceText());
+		assertEquals(ResourceEncodingEnum.SMILE, result.getEncoding());
+		assertEquals(SHA_256.hashBytes(result.getResourceBinary()), result.getHashCode());
+
+		final String expectedJson = calculator.encodeResource(patient, ResourceEncodingEnum.SMILE, EXCLUDED_ELEMENTS_1);
+		assertEquals(expectedJson, BaseHapiFhirDao.decodeResource(result.getResourceBinary(), ResourceEncodingEnum.SMILE));
+	}
+
+	@Test
+	void getResourceBinary_smilePreservesDecimalPrecision() {
+		final String json = "{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.50,\"unit\":\"kg\"}}";
+
+		final byte[] resourceBinary = CALCULATOR_NON_ORACLE.getResourceBinary("Observation", ResourceEncodingEnum.SMILE, json);
+
+		assertEquals(json, BaseHapiFhirDao.decodeResource(resourceBinary, ResourceEncodingEnum.SMILE));
+	}
+
 	private static Stream<Arguments> conditionallyAlterHistoryEntityArguments() {
 		return Stream.of(
 			Arguments.of(true, ResourceEncodingEnum.JSONC, ENCODED_RESOURCE_1),
@@ -148,6 +179,44 @@ class ResourceHistoryCalculatorTest {
 		}
 	}
 
+	@ParameterizedTest
+	@EnumSource(value = ResourceEncodingEnum.class, names = {"JSON", "JSONC", "SMILE"})
+	void conditionallyReencodeHistoryEntity_movesBodyToVarchar(ResourceEncodingEnum theResourceEncoding) {
+		final ResourceTable resourceTable = new ResourceTable();
+		resourceTable.setIdForUnitTest(123L);
+
+		final ResourceHistoryTable resourceHistoryTable = new ResourceHistoryTable();
+		resourceHistoryTable.setVersion(1);
+		resourceHistoryTable.setResource(ResourceHistoryCalculator.getResourceBinary(theResourceEncoding, ENCODED_RESOURCE_JSON));
+		resourceHistoryTable.setEncoding(theResourceEncoding);
+
+		final boolean isChanged = CALCULATOR_NON_ORACLE.conditionallyReencodeHistoryEntity(resourceTable, resourceHistoryTable, ResourceEncodingEnum.JSON);
+
+		assertTrue(isChanged);
+		assertNull(resourceHistoryTable.getResource());
+		assertEquals(ENCODED_RESOURCE_JSON, resourceHistoryTable.getResourceTextVc());
+		assertEquals(ResourceEncodingEnum.JSON, resourceHistoryTable.getEncoding());
+	}
+
+	@Test
+	void conditionallyReencodeHistoryEntity_keepsConfiguredSmileBody() {
+		final ResourceTable resourceTable = new ResourceTable();
+		resourceTable.setIdForUnitTest(123L);
+
+		final byte[] resourceBinary = ResourceHistoryCalculator.getResourceBinary(ResourceEncodingEnum.SMILE, ENCODED_RESOURCE_JSON);
+		final ResourceHistoryTable resourceHistoryTable = new ResourceHistoryTable();
+		resourceHistoryTable.setVersion(1);
+		resourceHistoryTable.setResource(resourceBinary);
+		resourceHistoryTable.setEncoding(ResourceEncodingEnum.SMILE);
+
+		final boolean isChanged = CALCULATOR_NON_ORACLE.conditionallyReencodeHistoryEntity(resourceTable, resourceHistoryTable, ResourceEncodingEnum.SMILE);
+
+		assertFalse(isChanged);
+		assertArrayEquals(resourceBinary, resourceHistoryTable.getResource());
+		assertNull(resourceHistoryTable.getResourceTextVc());
+		assertEquals(ResourceEncodingEnum.SMILE, resourceHistoryTable.getEncoding());
+	}
+
 	private static Stream<Arguments> encodeResourceArguments() {
 		return Stream.of(
 			Arguments.of(FhirContext.forDstu3Cached(), ResourceEncodingEnum.JSONC, EXCLUDED_ELEMENTS_1),
@@ -197,7 +266,7 @@ class ResourceHistoryCalculatorTest {
 	@ParameterizedTest
 	@MethodSource("getResourceBinaryArguments")
 	void getResourceBinary(ResourceEncodingEnum theResourceEncoding, String theEncodedResource) {
-		final byte[] resourceBinary = ResourceHistoryCalculator.getResourceBinary(theResourceEncoding, theEncodedResource);
+		final byte[] resourceBinary = CALCULATOR_NON_ORACLE.getResourceBinary("Patient", theResourceEncoding, theEncodedResource);
 
 		switch (theResourceEncoding) {
 			case JSON:
@@ -215,6 +284,11 @@ class ResourceHistoryCalculatorTest {
 		ourLog.info("resourceBinary: {}", resourceBinary);
 	}
 
+	@Test
+	void getResourceBinary_zstdRequiresCompressionSvc() {
+		assertThrows(NullPointerException.class, () -> CALCULATOR_NON_ORACLE.getResourceBinary("Patient", ResourceEncodingEnum.ZSTD, ENCODED_RESOURCE_1));
+	}
+
 	private static Stream<Arguments> isResourceHistoryChangedArguments() {
 		return Stream.of(
 			Arguments.of(true, ENCODED_RESOURCE_1.getBytes(StandardCharsets.UTF_8), ENCODED_RESOURCE_1),
@@ -0,0 +1,285 @@
+package ca.uhn.fhir.jpa.dao;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceCompressionDictEntity;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.parser.DataFormatException;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ZstdResourceCompressionSvcTest {
+
+	private static final FhirContext ourCtx = FhirContext.forR4Cached();
+
+	@Mock
+	private IResourceCompressionDictDao myResourceCompressionDictDao;
+	@Mock
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
+	@Mock
+	private PlatformTransactionManager myTxManager;
+
+	private ZstdResourceCompressionSvc mySvc;
+
+	@BeforeEach
+	void beforeEach() {
+		mySvc = new ZstdResourceCompressionSvc(myResourceCompressionDictDao, myResourceHistoryTableDao, myTxManager);
+	}
+
+	@Test
+	void testCompressAndDecompress_noDictionary() {
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation"))).thenReturn(List.of());
+
+		String json = createObservationJson(1);
+		byte[] compressed = mySvc.compress("Observation", json);
+
+		assertThat(compressed.length).isLessThan(json.length());
+		assertEquals(json, mySvc.decompress(compressed));
+		verify(myResourceCompressionDictDao, never()).findByDictionaryId(anyLong());
+	}
+
+	@Test
+	void testTrainDictionary() {
+		List<ResourceHistoryTable> samples = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			ResourceHistoryTable version = new ResourceHistoryTable();
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResourceTextVc(createObservationJson(i));
+			samples.add(version);
+		}
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(samples));
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation"))).thenReturn(List.of());
+
+		// Compress before training
+		String json = createObservationJson(1000);
+		byte[] compressedWithoutDictionary = mySvc.compress("Observation", json);
+
+		// Train
+		mySvc.setDictionarySize(8 * 1024);
+		Long dictionaryId = mySvc.trainDictionary("Observation");
+		assertNotNull(dictionaryId);
+
+		ArgumentCaptor<ResourceCompressionDictEntity> captor =
+				ArgumentCaptor.forClass(ResourceCompressionDictEntity.class);
+		verify(myResourceCompressionDictDao).save(captor.capture());
+		ResourceCompressionDictEntity dictionary = captor.getValue();
+		assertEquals(dictionaryId, dictionary.getDictionaryId());
+		assertEquals("Observation", dictionary.getResourceType());
+
+		// Compress after training
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation")))
+				.thenReturn(List.of(dictionary));
+		byte[] compressedWithDictionary = mySvc.compress("Observation", json);
+		assertThat(compressedWithDictionary.length).isLessThan(compressedWithoutDictionary.length);
+
+		// Both forms remain readable
+		assertEquals(json, mySvc.decompress(compressedWithDictionary));
+		assertEquals(json, mySvc.decompress(compressedWithoutDictionary));
+
+		// A different server instance loads the dictionary by ID
+		when(myResourceCompressionDictDao.findByDictionaryId(dictionaryId)).thenReturn(Optional.of(dictionary));
+		ZstdResourceCompressionSvc svc =
+				new ZstdResourceCompressionSvc(myResourceCompressionDictDao, myResourceHistoryTableDao, myTxManager);
+		assertEquals(json, svc.decompress(compressedWithDictionary));
+	}
+
+	@Test
+	void testTrainDictionary_notEnoughSamples() {
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(List.of()));
+
+		assertNull(mySvc.trainDictionary("Observation"));
+		verify(myResourceCompressionDictDao, never()).save(any());
+	}
+
+	@Test
+	void testTrainDictionariesIfNeeded() {
+		List<ResourceHistoryTable> samples = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ResourceHistoryTable version = new ResourceHistoryTable();
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResourceTextVc(createObservationJson(i));
+			samples.add(version);
+		}
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(samples));
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation"))).thenReturn(List.of());
+		mySvc.setDictionarySize(4 * 1024);
+
+		// Nothing has been compressed yet
+		mySvc.trainDictionariesIfNeeded();
+		verify(myResourceCompressionDictDao, never()).save(any());
+
+		// No dictionary exists for a compressed resource type
+		mySvc.compress("Observation", createObservationJson(1));
+		mySvc.trainDictionariesIfNeeded();
+		ArgumentCaptor<ResourceCompressionDictEntity> captor =
+				ArgumentCaptor.forClass(ResourceCompressionDictEntity.class);
+		verify(myResourceCompressionDictDao, times(1)).save(captor.capture());
+
+		// The newest dictionary is recent
+		ResourceCompressionDictEntity dictionary = captor.getValue();
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation")))
+				.thenReturn(List.of(dictionary));
+		mySvc.trainDictionariesIfNeeded();
+		verify(myResourceCompressionDictDao, times(1)).save(any());
+
+		// The newest dictionary is too old
+		dictionary.setCreated(new Date(System.currentTimeMillis() - 8 * DateUtils.MILLIS_PER_DAY));
+		mySvc.trainDictionariesIfNeeded();
+		verify(myResourceCompressionDictDao, times(2)).save(any());
+
+		// Retraining is disabled
+		mySvc.setDictionaryMaxAgeMillis(0);
+		mySvc.trainDictionariesIfNeeded();
+		verify(myResourceCompressionDictDao, times(2)).save(any());
+	}
+
+	@Test
+	void testTrainDictionary_dictionaryIdAlreadyInUse() {
+		List<ResourceHistoryTable> samples = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ResourceHistoryTable version = new ResourceHistoryTable();
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResourceTextVc(createObservationJson(i));
+			samples.add(version);
+		}
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(samples));
+		when(myResourceCompressionDictDao.findByDictionaryId(anyLong()))
+				.thenReturn(Optional.of(new ResourceCompressionDictEntity()));
+		mySvc.setDictionarySize(4 * 1024);
+
+		assertNull(mySvc.trainDictionary("Observation"));
+		verify(myResourceCompressionDictDao, never()).save(any());
+	}
+
+	@Test
+	void testDecompress_unknownDictionary() {
+		List<ResourceHistoryTable> samples = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ResourceHistoryTable version = new ResourceHistoryTable();
+			version.setEncoding(ResourceEncodingEnum.JSONC);
+			version.setResource(GZipUtil.compress(createObservationJson(i)));
+			samples.add(version);
+		}
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(samples));
+		mySvc.setDictionarySize(4 * 1024);
+		Long dictionaryId = mySvc.trainDictionary("Observation");
+		assertNotNull(dictionaryId);
+
+		ArgumentCaptor<ResourceCompressionDictEntity> captor =
+				ArgumentCaptor.forClass(ResourceCompressionDictEntity.class);
+		verify(myResourceCompressionDictDao).save(captor.capture());
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation")))
+				.thenReturn(List.of(captor.getValue()));
+		byte[] compressed = mySvc.compress("Observation", createObservationJson(1));
+
+		// A new server instance without the dictionary row
+		when(myResourceCompressionDictDao.findByDictionaryId(dictionaryId)).thenReturn(Optional.empty());
+		ZstdResourceCompressionSvc svc =
+				new ZstdResourceCompressionSvc(myResourceCompressionDictDao, myResourceHistoryTableDao, myTxManager);
+		assertThatThrownBy(() -> svc.decompress(compressed))
+				.isInstanceOf(DataFormatException.class)
+				.hasMessageContaining("HAPI-2781");
+	}
+
+	@Test
+	void testPrepareForDecompression() throws Exception {
+		List<ResourceHistoryTable> samples = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ResourceHistoryTable version = new ResourceHistoryTable();
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResourceTextVc(createObservationJson(i));
+			samples.add(version);
+		}
+		when(myResourceHistoryTableDao.findNewestForResourceTypeAndEncodings(any(), eq("Observation"), anyCollection()))
+				.thenReturn(new SliceImpl<>(samples));
+		mySvc.setDictionarySize(4 * 1024);
+		Long dictionaryId = mySvc.trainDictionary("Observation");
+		assertNotNull(dictionaryId);
+
+		ArgumentCaptor<ResourceCompressionDictEntity> captor =
+				ArgumentCaptor.forClass(ResourceCompressionDictEntity.class);
+		verify(myResourceCompressionDictDao).save(captor.capture());
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation")))
+				.thenReturn(List.of(captor.getValue()));
+		String json = createObservationJson(1);
+		byte[] compressed = mySvc.compress("Observation", json);
+
+		// A new server instance loads the dictionary when preparing, and not when decompressing
+		clearInvocations(myResourceCompressionDictDao);
+		when(myResourceCompressionDictDao.findByDictionaryId(dictionaryId)).thenReturn(Optional.of(captor.getValue()));
+		ZstdResourceCompressionSvc svc =
+				new ZstdResourceCompressionSvc(myResourceCompressionDictDao, myResourceHistoryTableDao, myTxManager);
+		svc.prepareForDecompression(compressed);
+		verify(myResourceCompressionDictDao, times(1)).findByDictionaryId(dictionaryId);
+
+		assertEquals(json, CompletableFuture.supplyAsync(() -> svc.decompress(compressed)).get());
+		verify(myResourceCompressionDictDao, times(1)).findByDictionaryId(dictionaryId);
+	}
+
+	@Test
+	void testDecodeResource_requiresCompressionSvc() {
+		when(myResourceCompressionDictDao.findNewestForResourceType(any(), eq("Observation"))).thenReturn(List.of());
+		byte[] compressed = mySvc.compress("Observation", createObservationJson(1));
+
+		assertThatThrownBy(() -> BaseHapiFhirDao.decodeResource(compressed, ResourceEncodingEnum.ZSTD))
+				.isInstanceOf(DataFormatException.class)
+				.hasMessageContaining("HAPI-2788");
+	}
+
+	private static String createObservationJson(int theIndex) {
+		Observation obs = new Observation();
+		obs.setId("Observation/" + theIndex);
+		obs.getMeta().setVersionId("1").addProfile("http://hl7.org/fhir/StructureDefinition/vitalsigns");
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.addCategory()
+				.addCoding()
+				.setSystem("http://terminology.hl7.org/CodeSystem/observation-category")
+				.setCode("vital-signs")
+				.setDisplay("Vital Signs");
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7").setDisplay("Body weight");
+		obs.getSubject().setReference("Patient/" + (theIndex % 37));
+		obs.getValueQuantity()
+				.setValue(50 + (theIndex % 40))
+				.setUnit("kg")
+				.setSystem("http://unitsofmeasure.org")
+				.setCode("kg");
+		return ourCtx.newJsonParser().encodeResourceToString(obs);
+	}
+}
@@ -78,6 +78,9 @@ public class IdHelperServiceTest {
     @Mock
     private PartitionSettings myPartitionSettings;
 
+    @Mock
+    private ResourceIdExistenceFilterSvc myResourceIdExistenceFilterSvc;
+
 	@Mock
 	private TypedQuery myTypedQuery;
 
@@ -0,0 +1,133 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+public class ResourceIdExistenceFilterSvcTest {
+
+	private final JpaStorageSettings myStorageSettings = new JpaStorageSettings();
+
+	@Mock
+	private IResourceTableDao myResourceTableDao;
+
+	@Mock
+	private PlatformTransactionManager myTxManager;
+
+	private ResourceIdExistenceFilterSvc mySvc;
+
+	@BeforeEach
+	public void before() {
+		mySvc = new ResourceIdExistenceFilterSvc(myStorageSettings, myResourceTableDao, myTxManager);
+		lenient().when(myResourceTableDao.count()).thenReturn(2L);
+		lenient()
+				.when(myResourceTableDao.streamAllResourceTypesAndFhirIds())
+				.thenAnswer(t -> Stream.of(new Object[] {"Patient", "A"}, new Object[] {"Observation", "1"}));
+	}
+
+	@AfterEach
+	public void after() {
+		mySvc.stop();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testDisabled() {
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "B"));
+		mySvc.register("Patient", "B");
+
+		assertFalse(mySvc.isFilterAvailable());
+		verifyNoInteractions(myResourceTableDao);
+	}
+
+	@Test
+	public void testNotUsedUntilLoaded() {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "B"));
+
+		mySvc.loadNow();
+		assertTrue(mySvc.isFilterAvailable());
+		assertTrue(mySvc.isDefinitelyAbsent("Patient", "B"));
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "A"));
+		assertFalse(mySvc.isDefinitelyAbsent("Observation", "1"));
+		assertTrue(mySvc.isDefinitelyAbsent("Patient", "1"));
+	}
+
+	@Test
+	public void testUntypedIdIsNeverAbsent() {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+		mySvc.loadNow();
+
+		assertFalse(mySvc.isDefinitelyAbsent(null, "B"));
+	}
+
+	@Test
+	public void testRegisterAfterLoad() {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+		mySvc.loadNow();
+		assertTrue(mySvc.isDefinitelyAbsent("Patient", "B"));
+
+		mySvc.register("Patient", "B");
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "B"));
+	}
+
+	@Test
+	public void testLoadWaitsForInFlightRegistrations() throws Exception {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+
+		TransactionSynchronizationManager.initSynchronization();
+		mySvc.register("Patient", "B");
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+		CompletableFuture<Void> load = CompletableFuture.runAsync(() -> mySvc.loadNow());
+		Thread.sleep(200);
+		assertFalse(load.isDone());
+		assertFalse(mySvc.isFilterAvailable());
+
+		synchronizations.forEach(t -> t.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+		load.get(10, TimeUnit.SECONDS);
+
+		assertTrue(mySvc.isFilterAvailable());
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "A"));
+	}
+
+	@Test
+	public void testRegistrationsDuringLoadAreKept() {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+		lenient()
+				.when(myResourceTableDao.streamAllResourceTypesAndFhirIds())
+				.thenAnswer(t -> {
+					// Simulates a resource created while the database is being scanned
+					mySvc.register("Patient", "C");
+					return Stream.<Object[]>of(new Object[] {"Patient", "A"});
+				});
+
+		mySvc.loadNow();
+
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "A"));
+		assertFalse(mySvc.isDefinitelyAbsent("Patient", "C"));
+		assertTrue(mySvc.isDefinitelyAbsent("Patient", "B"));
+	}
+}
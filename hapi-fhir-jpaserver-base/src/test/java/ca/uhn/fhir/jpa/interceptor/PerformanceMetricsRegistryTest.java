@@ -0,0 +1,101 @@
+package ca.uhn.fhir.jpa.interceptor;
+
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.TokenParamModifier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PerformanceMetricsRegistryTest {
+
+	private final PerformanceMetricsRegistry mySvc = new PerformanceMetricsRegistry();
+
+	@Test
+	public void testCounter() {
+		PerformanceMetricsRegistry.Counter counter = mySvc.counter("foo", "a", "1");
+		counter.increment();
+		counter.increment(4);
+
+		assertSame(counter, mySvc.counter("foo", "a", "1"));
+		assertEquals(5, mySvc.counter("foo", "a", "1").getCount());
+		assertEquals(0, mySvc.counter("foo", "a", "2").getCount());
+		assertEquals(Map.of("a", "1"), counter.getTags());
+		assertThat(mySvc.getMeters()).hasSize(2);
+	}
+
+	@Test
+	public void testHistogram() {
+		PerformanceMetricsRegistry.Histogram histogram = mySvc.histogram("foo");
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050, histogram.getTotal());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean());
+		// Percentiles are the upper bound of the bucket the value falls in
+		assertEquals(63, histogram.getPercentile(0.5));
+		assertEquals(100, histogram.getPercentile(0.99));
+		assertEquals(1, histogram.getPercentile(0.0));
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		assertEquals(0, PerformanceMetricsRegistry.Histogram.bucketFor(0));
+		assertEquals(1, PerformanceMetricsRegistry.Histogram.bucketFor(1));
+		assertEquals(2, PerformanceMetricsRegistry.Histogram.bucketFor(2));
+		assertEquals(2, PerformanceMetricsRegistry.Histogram.bucketFor(3));
+		assertEquals(3, PerformanceMetricsRegistry.Histogram.bucketFor(4));
+		assertEquals(63, PerformanceMetricsRegistry.Histogram.bucketFor(Long.MAX_VALUE));
+		assertEquals(3, PerformanceMetricsRegistry.Histogram.getBucketUpperBound(2));
+		assertEquals(Long.MAX_VALUE, PerformanceMetricsRegistry.Histogram.getBucketUpperBound(63));
+	}
+
+	@Test
+	public void testMeterTypeMismatch() {
+		mySvc.counter("foo");
+		assertThrows(IllegalArgumentException.class, () -> mySvc.histogram("foo"));
+	}
+
+	@Test
+	public void testInvalidTags() {
+		assertThrows(IllegalArgumentException.class, () -> mySvc.counter("foo", "a"));
+	}
+
+	@Test
+	public void testSearchShape() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add("name", new StringParam("SMITH").setExact(true));
+		map.add("identifier", new TokenParam("http://foo", "123").setModifier(TokenParamModifier.TEXT));
+		map.add("birthdate", new DateParam("ge2020-01-01"));
+		map.setSort(new SortSpec("family"));
+		map.addInclude(new Include("Patient:organization"));
+
+		assertEquals(
+				"_include&_sort:family&birthdate&identifier:text&name:exact",
+				PerformanceMetricsInterceptor.toSearchShape(map));
+
+		// Values don't affect the shape
+		SearchParameterMap other = new SearchParameterMap();
+		other.add("birthdate", new DateParam("lt1990"));
+		other.add("identifier", new TokenParam("http://bar", "456").setModifier(TokenParamModifier.TEXT));
+		other.add("name", new StringParam("JONES").setExact(true));
+		other.setSort(new SortSpec("family"));
+		other.addInclude(new Include("Patient:general-practitioner"));
+		assertEquals(PerformanceMetricsInterceptor.toSearchShape(map), PerformanceMetricsInterceptor.toSearchShape(other));
+
+		assertEquals("none", PerformanceMetricsInterceptor.toSearchShape(new SearchParameterMap()));
+		assertEquals("none", PerformanceMetricsInterceptor.toSearchShape(null));
+	}
+}
@@ -0,0 +1,110 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc.PageKey;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc.PrefetchedPage;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SearchPagePrefetchSvcTest {
+
+	private final JpaStorageSettings myStorageSettings = new JpaStorageSettings();
+	private SearchPagePrefetchSvc mySvc;
+
+	@BeforeEach
+	void before() {
+		myStorageSettings.setSearchPagePrefetchMaxPages(10);
+		myStorageSettings.setSearchPagePrefetchMaxResources(25);
+		mySvc = new SearchPagePrefetchSvc(myStorageSettings);
+	}
+
+	@AfterEach
+	void after() {
+		mySvc.preDestroy();
+	}
+
+	@Test
+	void testResourceBudget() {
+		PageKey page0 = newKey(0, 10);
+		PageKey page1 = newKey(10, 20);
+		PageKey page2 = newKey(20, 30);
+
+		mySvc.prefetch(page0, () -> newPage(10));
+		mySvc.prefetch(page1, () -> newPage(10));
+		mySvc.prefetch(page2, () -> newPage(10));
+		assertEquals(20, mySvc.getHeldResourceCount());
+
+		assertNull(mySvc.take(page2));
+		assertNotNull(mySvc.take(page0));
+		assertEquals(10, mySvc.getHeldResourceCount());
+
+		// The released budget can be used again
+		mySvc.prefetch(page2, () -> newPage(10));
+		assertNotNull(mySvc.take(page1));
+		assertNotNull(mySvc.take(page2));
+		assertEquals(0, mySvc.getHeldResourceCount());
+		assertEquals(3, mySvc.getHitCount());
+	}
+
+	@Test
+	void testIncludesExceedingBudgetAreDiscarded() {
+		PageKey page0 = newKey(0, 10);
+		PageKey page1 = newKey(10, 20);
+
+		mySvc.prefetch(page0, () -> newPage(12));
+		await().atMost(10, TimeUnit.SECONDS).until(() -> mySvc.getHeldResourceCount() == 12);
+
+		// Only 10 resources are reserved for the page, but its includes take it over budget
+		mySvc.prefetch(page1, () -> newPage(20));
+		await().atMost(10, TimeUnit.SECONDS).until(() -> mySvc.getHeldResourceCount() == 12);
+		assertNull(mySvc.take(page1));
+		assertNotNull(mySvc.take(page0));
+		assertEquals(0, mySvc.getHeldResourceCount());
+	}
+
+	@Test
+	void testTakeDoesNotWaitIndefinitely() throws InterruptedException {
+		mySvc.setMaxWaitMillisForUnitTest(100);
+		CountDownLatch latch = new CountDownLatch(1);
+		PageKey page0 = newKey(0, 10);
+
+		mySvc.prefetch(page0, () -> {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return newPage(10);
+		});
+
+		assertNull(mySvc.take(page0));
+		assertEquals(0, mySvc.getHeldResourceCount());
+		assertEquals(0, mySvc.getHitCount());
+		latch.countDown();
+	}
+
+	private static PageKey newKey(int theFromIndex, int theToIndex) {
+		return new PageKey("search-uuid", theFromIndex, theToIndex, null);
+	}
+
+	private static PrefetchedPage newPage(int theResourceCount) {
+		List<IBaseResource> resources = new ArrayList<>();
+		for (int i = 0; i < theResourceCount; i++) {
+			resources.add(new Patient());
+		}
+		return new PrefetchedPage(resources, 0, theResourceCount);
+	}
+}
@@ -0,0 +1,155 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OffHeapSearchResultCacheSvcImplTest {
+
+	private final JpaStorageSettings myStorageSettings = new JpaStorageSettings();
+	private OffHeapSearchResultCacheSvcImpl mySvc;
+
+	@BeforeEach
+	void before() {
+		myStorageSettings.setSearchResultOffHeapCacheMaxBytes(10000);
+		mySvc = new OffHeapSearchResultCacheSvcImpl(myStorageSettings);
+		mySvc.setNowForUnitTests(1000L);
+	}
+
+	@Test
+	void testEncodeAndDecode() {
+		List<JpaPid> pids = List.of(
+				JpaPid.fromId(100L),
+				JpaPid.fromId(5L, 3),
+				JpaPid.fromId(Long.MAX_VALUE, -1),
+				JpaPid.fromId(1L, Integer.MAX_VALUE),
+				JpaPid.fromId(101L, 0));
+
+		ByteBuffer encoded = OffHeapSearchResultCacheSvcImpl.encode(pids);
+		assertTrue(encoded.isDirect());
+
+		List<JpaPid> decoded = new ArrayList<>();
+		OffHeapSearchResultCacheSvcImpl.decode(encoded, 0, pids.size(), decoded);
+		assertEquals(pids, decoded);
+		assertThat(decoded).extracting(JpaPid::getPartitionId).containsExactly(null, 3, -1, Integer.MAX_VALUE, 0);
+
+		decoded.clear();
+		OffHeapSearchResultCacheSvcImpl.decode(encoded, 2, 2, decoded);
+		assertEquals(pids.subList(2, 4), decoded);
+	}
+
+	@Test
+	void testStoreAndFetchInBatches() {
+		Search search = newSearch(1L);
+		List<JpaPid> pids = createPids(250);
+
+		mySvc.storeResults(search, List.of(), pids.subList(0, 100), null, null);
+		mySvc.storeResults(search, pids.subList(0, 100), pids.subList(100, 250), null, null);
+
+		assertEquals(pids.subList(0, 10), mySvc.fetchResultPids(search, 0, 10, null, null));
+		assertEquals(pids.subList(95, 130), mySvc.fetchResultPids(search, 95, 130, null, null));
+		assertEquals(pids.subList(240, 250), mySvc.fetchResultPids(search, 240, 260, null, null));
+		assertThat(mySvc.fetchResultPids(search, 300, 310, null, null)).isEmpty();
+		assertEquals(pids, mySvc.fetchAllResultPids(search, null, null));
+
+		// A few bytes per result
+		assertThat(mySvc.getTotalBytes()).isLessThan(250 * 4);
+
+		assertNull(mySvc.fetchResultPids(newSearch(2L), 0, 10, null, null));
+		assertNull(mySvc.fetchAllResultPids(newSearch(2L), null, null));
+	}
+
+	@Test
+	void testEvictLeastRecentlyUsed() {
+		myStorageSettings.setSearchResultOffHeapCacheMaxBytes(1000);
+		Search search1 = newSearch(1L);
+		Search search2 = newSearch(2L);
+		Search search3 = newSearch(3L);
+
+		mySvc.storeResults(search1, List.of(), createPids(200), null, null);
+		mySvc.setNowForUnitTests(2000L);
+		mySvc.storeResults(search2, List.of(), createPids(200), null, null);
+		mySvc.setNowForUnitTests(3000L);
+		mySvc.fetchResultPids(search1, 0, 10, null, null);
+
+		mySvc.storeResults(search3, List.of(), createPids(200), null, null);
+		assertNotNull(mySvc.fetchAllResultPids(search1, null, null));
+		assertNull(mySvc.fetchAllResultPids(search2, null, null));
+		assertNotNull(mySvc.fetchAllResultPids(search3, null, null));
+		assertThat(mySvc.getTotalBytes()).isLessThanOrEqualTo(1000);
+
+		assertTrue(mySvc.isResultsAvailable(search1));
+		assertFalse(mySvc.isResultsAvailable(search2));
+		assertTrue(mySvc.isResultsAvailable(search3));
+
+		// Further results for an evicted search are not stored, since the earlier ones are gone
+		mySvc.storeResults(search2, createPids(200), createPids(10), null, null);
+		assertFalse(mySvc.isResultsAvailable(search2));
+		assertNull(mySvc.fetchAllResultPids(search2, null, null));
+	}
+
+	@Test
+	void testSearchWithNoResultsIsAvailable() {
+		Search search = newSearch(1L);
+		assertFalse(mySvc.isResultsAvailable(search));
+
+		mySvc.storeResults(search, List.of(), List.of(), null, null);
+		assertTrue(mySvc.isResultsAvailable(search));
+		assertThat(mySvc.fetchResultPids(search, 0, 10, null, null)).isEmpty();
+	}
+
+	@Test
+	void testExpire() {
+		Search search1 = newSearch(1L);
+		mySvc.storeResults(search1, List.of(), createPids(10), null, null);
+
+		mySvc.setNowForUnitTests(1000L + myStorageSettings.getExpireSearchResultsAfterMillis() + 2 * DateUtils.MILLIS_PER_MINUTE);
+		mySvc.storeResults(newSearch(2L), List.of(), createPids(10), null, null);
+		assertNull(mySvc.fetchAllResultPids(search1, null, null));
+	}
+
+	@Test
+	void testExpireResults() {
+		Search search1 = newSearch(1L);
+		mySvc.storeResults(search1, List.of(), createPids(10), null, null);
+		assertTrue(mySvc.getTotalBytes() > 0);
+
+		mySvc.expireResults();
+		assertTrue(mySvc.isResultsAvailable(search1));
+
+		mySvc.setNowForUnitTests(1000L + myStorageSettings.getExpireSearchResultsAfterMillis() + 2 * DateUtils.MILLIS_PER_MINUTE);
+		mySvc.expireResults();
+		assertFalse(mySvc.isResultsAvailable(search1));
+		assertEquals(0, mySvc.getTotalBytes());
+	}
+
+	private static Search newSearch(long theId) {
+		Search retVal = mock(Search.class);
+		when(retVal.getId()).thenReturn(theId);
+		return retVal;
+	}
+
+	private static List<JpaPid> createPids(int theCount) {
+		List<JpaPid> retVal = new ArrayList<>();
+		for (int i = 0; i < theCount; i++) {
+			retVal.add(JpaPid.fromId(1000L + (i * 7L) % 50));
+		}
+		return retVal;
+	}
+}
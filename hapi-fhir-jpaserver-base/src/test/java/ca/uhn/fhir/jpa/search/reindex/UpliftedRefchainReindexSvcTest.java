@@ -0,0 +1,150 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+import ca.uhn.fhir.batch2.api.IJobCoordinator;
+import ca.uhn.fhir.batch2.api.IJobPartitionProvider;
+import ca.uhn.fhir.batch2.model.JobInstanceStartRequest;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.cache.IResourceChangeListenerRegistry;
+import ca.uhn.fhir.jpa.cache.ResourceChangeEvent;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import ca.uhn.fhir.rest.server.util.ResourceSearchParams;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static ca.uhn.fhir.rest.server.util.ISearchParamRegistry.SearchParamLookupContextEnum.INDEX;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UpliftedRefchainReindexSvcTest {
+
+	@Spy
+	private JpaStorageSettings myStorageSettings = new JpaStorageSettings();
+	@Spy
+	private FhirContext myCtx = FhirContext.forR4Cached();
+	@Mock
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Mock
+	private SearchParamExtractorService mySearchParamExtractorService;
+	@Mock
+	private IJobCoordinator myJobCoordinator;
+	@Mock
+	private IJobPartitionProvider myJobPartitionProvider;
+	@Mock
+	private IResourceChangeListenerRegistry myResourceChangeListenerRegistry;
+	@InjectMocks
+	private UpliftedRefchainReindexSvc mySvc;
+
+	@BeforeEach
+	public void before() {
+		myStorageSettings.setIndexOnUpliftedRefchains(true);
+		myStorageSettings.setReindexOnUpliftedRefchainTargetChange(true);
+	}
+
+	@AfterEach
+	public void after() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testFindUpliftedRefchainSources_CachedUntilSearchParametersChange() {
+		registerEncounterSubjectWithUpliftOnName();
+
+		Map<String, Set<String>> expected = Map.of("Encounter?subject=", Set.of("name"));
+		assertThat(mySvc.findUpliftedRefchainSources("Patient")).isEqualTo(expected);
+		assertThat(mySvc.findUpliftedRefchainSources("Patient")).isEqualTo(expected);
+		verify(mySearchParamRegistry, times(1)).getActiveSearchParams(eq("Encounter"), eq(INDEX));
+
+		// An empty event doesn't clear the cache
+		mySvc.handleChange(ResourceChangeEvent.fromCreatedUpdatedDeletedResourceIds(List.of(), List.of(), List.of()));
+		mySvc.findUpliftedRefchainSources("Patient");
+		verify(mySearchParamRegistry, times(1)).getActiveSearchParams(eq("Encounter"), eq(INDEX));
+
+		List<IIdType> updated = List.of(new IdType("SearchParameter/encounter-subject"));
+		mySvc.handleChange(ResourceChangeEvent.fromCreatedUpdatedDeletedResourceIds(List.of(), updated, List.of()));
+		assertThat(mySvc.findUpliftedRefchainSources("Patient")).isEqualTo(expected);
+		verify(mySearchParamRegistry, times(2)).getActiveSearchParams(eq("Encounter"), eq(INDEX));
+	}
+
+	@Test
+	public void testResourceUpdated_MassIngestionModeWithoutOldResource_NoReindex() {
+		myStorageSettings.setMassIngestionMode(true);
+
+		mySvc.resourceUpdated(new SystemRequestDetails(), null, newPatient(), new TransactionDetails());
+
+		verifyNoInteractions(mySearchParamRegistry, myJobCoordinator);
+	}
+
+	@Test
+	public void testResourceUpdated_JobStartFailsAfterCommit_NotPropagated() {
+		registerEncounterSubjectWithUpliftOnName();
+		when(myJobCoordinator.startInstance(any(), any(JobInstanceStartRequest.class)))
+			.thenThrow(new IllegalStateException("FAILED"));
+		TransactionSynchronizationManager.initSynchronization();
+
+		mySvc.resourceUpdated(new SystemRequestDetails(), null, newPatient(), new TransactionDetails());
+		verifyNoInteractions(myJobCoordinator);
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		assertThat(synchronizations).hasSize(1);
+		assertDoesNotThrow(() -> synchronizations.get(0).afterCommit());
+		verify(myJobCoordinator, times(1)).startInstance(any(), any(JobInstanceStartRequest.class));
+	}
+
+	private void registerEncounterSubjectWithUpliftOnName() {
+		RuntimeSearchParam subject = new RuntimeSearchParam(
+			null,
+			null,
+			"subject",
+			null,
+			"Encounter.subject",
+			RestSearchParameterTypeEnum.REFERENCE,
+			Set.of(),
+			Set.of("Patient"),
+			RuntimeSearchParam.RuntimeSearchParamStatusEnum.ACTIVE,
+			List.of("Encounter"));
+		subject.addUpliftRefchain("name", "name");
+		ResourceSearchParams encounterParams = new ResourceSearchParams("Encounter");
+		encounterParams.put("subject", subject);
+
+		when(mySearchParamRegistry.getActiveSearchParams(anyString(), eq(INDEX)))
+			.thenAnswer(t -> ResourceSearchParams.empty(t.getArgument(0)));
+		when(mySearchParamRegistry.getActiveSearchParams(eq("Encounter"), eq(INDEX))).thenReturn(encounterParams);
+	}
+
+	private static Patient newPatient() {
+		Patient retVal = new Patient();
+		retVal.setId("Patient/123");
+		return retVal;
+	}
+}
@@ -0,0 +1,161 @@
+package ca.uhn.fhir.jpa.search.warm;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.svc.ISearchCoordinatorSvc;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.partition.IRequestPartitionHelperSvc;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheWarmingSvcImplTest {
+
+	@Mock
+	private IRestfulServerDefaults myServer;
+	@Mock
+	private IPagingProvider myPagingProvider;
+	@Spy
+	private FhirContext myCtx = FhirContext.forR4Cached();
+	@Spy
+	private JpaStorageSettings myStorageSettings = new JpaStorageSettings();
+	@Mock
+	private DaoRegistry myDaoRegistry;
+	@Mock
+	private MatchUrlService myMatchUrlService;
+	@Mock
+	private ISearchCoordinatorSvc<JpaPid> mySearchCoordinatorSvc;
+	@Mock
+	private IRequestPartitionHelperSvc myRequestPartitionHelperSvc;
+	@Mock
+	private IInterceptorService myInterceptorService;
+	@InjectMocks
+	private CacheWarmingSvcImpl mySvc;
+	@Captor
+	private ArgumentCaptor<RequestDetails> myRequestDetailsCaptor;
+
+	@BeforeEach
+	public void before() {
+		lenient().when(myServer.getPagingProvider()).thenReturn(myPagingProvider);
+		lenient().when(myServer.getDefaultPageSize()).thenReturn(20);
+		lenient().when(myServer.getMaximumPageSize()).thenReturn(100);
+	}
+
+	@Test
+	public void testToAdaptiveWarmUrl_ParametersAreSorted() {
+		RequestDetails request = newRequest(Map.of(
+			"name", new String[]{"smith"},
+			"birthdate", new String[]{"lt2000", "ge1990"},
+			"_sort", new String[]{"-birthdate,name"},
+			"_format", new String[]{"json"}));
+
+		assertEquals("Patient?_sort=-birthdate%2Cname&birthdate=ge1990&birthdate=lt2000&name=smith&_count=20", CacheWarmingSvcImpl.toAdaptiveWarmUrl(request));
+	}
+
+	@Test
+	public void testToAdaptiveWarmUrl_Count() {
+		RequestDetails request = newRequest(Map.of("name", new String[]{"smith"}, "_count", new String[]{"50"}));
+		assertEquals("Patient?name=smith&_count=50", CacheWarmingSvcImpl.toAdaptiveWarmUrl(request));
+
+		request = newRequest(Map.of("name", new String[]{"smith"}, "_count", new String[]{"500"}));
+		assertEquals("Patient?name=smith&_count=100", CacheWarmingSvcImpl.toAdaptiveWarmUrl(request));
+	}
+
+	@Test
+	public void testToAdaptiveWarmUrl_NotCached() {
+		// Offset searches are synchronous
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(newRequest(Map.of("_offset", new String[]{"10"}))));
+
+		// _summary=count doesn't store results
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(newRequest(Map.of("_summary", new String[]{"count"}))));
+
+		// Client asked to bypass the cache
+		SystemRequestDetails request = newRequest(Map.of("name", new String[]{"smith"}));
+		request.addHeader(Constants.HEADER_CACHE_CONTROL, Constants.CACHE_CONTROL_NO_CACHE);
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(request));
+
+		// Parameters which can't be reproduced from a URL
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(newRequest(Map.of("_content", new String[]{"smith"}))));
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(newRequest(Map.of("_list", new String[]{"123"}))));
+
+		// No paging provider, so searches are synchronous
+		when(myServer.getPagingProvider()).thenReturn(null);
+		assertNull(CacheWarmingSvcImpl.toAdaptiveWarmUrl(newRequest(Map.of("name", new String[]{"smith"}))));
+	}
+
+	@Test
+	public void testToAdaptiveWarmUrl_SpecialParametersSupported() {
+		RequestDetails request = newRequest(Map.of(
+			"_id", new String[]{"123"},
+			"_tag", new String[]{"http://foo|bar"},
+			"_include", new String[]{"Patient:organization"}));
+
+		assertEquals("Patient?_id=123&_include=Patient%3Aorganization&_tag=http%3A%2F%2Ffoo%7Cbar&_count=20", CacheWarmingSvcImpl.toAdaptiveWarmUrl(request));
+	}
+
+	@Test
+	public void testAdaptiveWarming_SearchesAreTrackedPerPartition() {
+		myStorageSettings.setAdaptiveCacheWarmingMaxSearches(10);
+		RequestPartitionId partition1 = RequestPartitionId.fromPartitionId(1);
+		RequestPartitionId partition2 = RequestPartitionId.fromPartitionId(2);
+		SystemRequestDetails request1 = newRequest(Map.of("name", new String[]{"smith"}));
+		SystemRequestDetails request2 = newRequest(Map.of("name", new String[]{"smith"}));
+		when(myRequestPartitionHelperSvc.determineReadPartitionForRequestForSearchType(request1, "Patient")).thenReturn(partition1);
+		when(myRequestPartitionHelperSvc.determineReadPartitionForRequestForSearchType(request2, "Patient")).thenReturn(partition2);
+		when(myMatchUrlService.translateMatchUrl(any(), any(), any(), any())).thenReturn(new SearchParameterMap());
+
+		// The same search is frequent in partition 1, but not in partition 2
+		mySvc.incomingRequestPreHandled(request1, RestOperationTypeEnum.SEARCH_TYPE);
+		mySvc.incomingRequestPreHandled(request1, RestOperationTypeEnum.SEARCH_TYPE);
+		mySvc.incomingRequestPreHandled(request2, RestOperationTypeEnum.SEARCH_TYPE);
+
+		mySvc.performAdaptiveWarmingPass();
+
+		verify(mySearchCoordinatorSvc).registerSearch(any(), any(), eq("Patient"), any(), myRequestDetailsCaptor.capture(), eq(partition1));
+		verifyNoMoreInteractions(mySearchCoordinatorSvc);
+		SystemRequestDetails warmingRequest = (SystemRequestDetails) myRequestDetailsCaptor.getValue();
+		assertEquals(partition1, warmingRequest.getRequestPartitionId());
+	}
+
+	private SystemRequestDetails newRequest(Map<String, String[]> theParameters) {
+		SystemRequestDetails retVal = new SystemRequestDetails() {
+			@Override
+			public IRestfulServerDefaults getServer() {
+				return myServer;
+			}
+		};
+		retVal.setResourceName("Patient");
+		retVal.setParameters(new HashMap<>(theParameters));
+		return retVal;
+	}
+}
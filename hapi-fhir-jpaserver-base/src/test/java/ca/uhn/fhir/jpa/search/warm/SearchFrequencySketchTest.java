@@ -0,0 +1,95 @@
+package ca.uhn.fhir.jpa.search.warm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearchFrequencySketchTest {
+
+	@Test
+	public void testIncrementAndEstimate() {
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(1024, 10);
+		for (int i = 0; i < 5; i++) {
+			sketch.increment("Patient?name=smith");
+		}
+		assertEquals(6, sketch.increment("Patient?name=smith"));
+		assertEquals(6, sketch.estimate("Patient?name=smith"));
+		assertEquals(0, sketch.estimate("Patient?name=jones"));
+	}
+
+	@Test
+	public void testEstimateNeverUndercounts() {
+		// A narrow sketch forces keys to share counters
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(16, 10);
+		for (int i = 0; i < 500; i++) {
+			for (int j = 0; j <= i % 10; j++) {
+				sketch.increment("Observation?code=" + i);
+			}
+		}
+		for (int i = 0; i < 500; i++) {
+			assertThat(sketch.estimate("Observation?code=" + i)).isGreaterThanOrEqualTo(i % 10 + 1);
+		}
+	}
+
+	@Test
+	public void testGetMostFrequent() {
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(1024, 3);
+		increment(sketch, "Patient?name=a", 5);
+		increment(sketch, "Patient?name=b", 1);
+		increment(sketch, "Patient?name=c", 8);
+		increment(sketch, "Patient?name=d", 3);
+
+		// Only 3 candidates are kept, so the least frequent one was replaced
+		assertThat(sketch.getMostFrequent(10, 1)).containsExactly("Patient?name=c", "Patient?name=a", "Patient?name=d");
+		assertThat(sketch.getMostFrequent(2, 1)).containsExactly("Patient?name=c", "Patient?name=a");
+		assertThat(sketch.getMostFrequent(10, 5)).containsExactly("Patient?name=c", "Patient?name=a");
+	}
+
+	@Test
+	public void testInfrequentKeysDoNotDisplaceFrequentOnes() {
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(4096, 2);
+		increment(sketch, "Patient?name=a", 10);
+		increment(sketch, "Patient?name=b", 10);
+		for (int i = 0; i < 1000; i++) {
+			sketch.increment("Patient?identifier=" + i);
+		}
+
+		assertThat(sketch.getMostFrequent(10, 1)).containsExactly("Patient?name=a", "Patient?name=b");
+	}
+
+	@Test
+	public void testDecay() {
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(1024, 10);
+		increment(sketch, "Patient?name=a", 8);
+		increment(sketch, "Patient?name=b", 1);
+
+		sketch.decay();
+
+		assertEquals(4, sketch.estimate("Patient?name=a"));
+		assertEquals(0, sketch.estimate("Patient?name=b"));
+		assertThat(sketch.getMostFrequent(10, 1)).containsExactly("Patient?name=a");
+
+		// A key which is seen again becomes a candidate again
+		increment(sketch, "Patient?name=b", 6);
+		assertThat(sketch.getMostFrequent(10, 1)).containsExactly("Patient?name=b", "Patient?name=a");
+	}
+
+	@Test
+	public void testRemove() {
+		SearchFrequencySketch<String> sketch = new SearchFrequencySketch<>(1024, 10);
+		increment(sketch, "Patient?name=a", 3);
+
+		sketch.remove("Patient?name=a");
+		assertThat(sketch.getMostFrequent(10, 1)).isEmpty();
+
+		sketch.increment("Patient?name=a");
+		assertThat(sketch.getMostFrequent(10, 1)).containsExactly("Patient?name=a");
+	}
+
+	private static void increment(SearchFrequencySketch<String> theSketch, String theKey, int theCount) {
+		for (int i = 0; i < theCount; i++) {
+			theSketch.increment(theKey);
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Model
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.model.dao;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of {@link JpaPid JpaPids} which stores the resource ID and partition ID of
+ * each entry in primitive arrays, using 12 bytes per entry instead of a
+ * <code>JpaPid</code> object (plus its boxed <code>Long</code> and <code>Integer</code>)
+ * for each one. <code>JpaPid</code> objects are only created when entries are read.
+ * <p>
+ * The version and resource type of each entry are also kept, but the arrays holding
+ * them are only allocated once an entry which has one is added.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class JpaPidList extends AbstractList<JpaPid> implements RandomAccess {
+
+	/**
+	 * Stored in place of a <code>null</code> partition ID
+	 */
+	static final int NULL_PARTITION_ID = Integer.MIN_VALUE;
+
+	/**
+	 * Stored in place of a <code>null</code> version
+	 */
+	static final long NULL_VERSION = Long.MIN_VALUE;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] myIds;
+	private int[] myPartitionIds;
+	private long[] myVersions;
+	private String[] myResourceTypes;
+	private int mySize;
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidList(int theInitialCapacity) {
+		int capacity = Math.max(theInitialCapacity, 1);
+		myIds = new long[capacity];
+		myPartitionIds = new int[capacity];
+	}
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidList(Collection<JpaPid> thePids) {
+		this(thePids.size());
+		addAll(thePids);
+	}
+
+	@Override
+	public JpaPid get(int theIndex) {
+		checkIndex(theIndex);
+		JpaPid retVal = toJpaPid(myIds[theIndex], myPartitionIds[theIndex]);
+		if (myVersions != null && myVersions[theIndex] != NULL_VERSION) {
+			retVal.setVersion(myVersions[theIndex]);
+		}
+		if (myResourceTypes != null) {
+			retVal.setResourceType(myResourceTypes[theIndex]);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the resource ID at the given index without creating a <code>JpaPid</code>
+	 */
+	public long getId(int theIndex) {
+		checkIndex(theIndex);
+		return myIds[theIndex];
+	}
+
+	/**
+	 * Returns the partition ID at the given index without creating a <code>JpaPid</code>
+	 */
+	public Integer getPartitionId(int theIndex) {
+		checkIndex(theIndex);
+		return toPartitionId(myPartitionIds[theIndex]);
+	}
+
+	@Override
+	public int size() {
+		return mySize;
+	}
+
+	@Override
+	public boolean add(JpaPid thePid) {
+		add(thePid.getId(), thePid.getPartitionId());
+		setVersionAndResourceType(mySize - 1, thePid);
+		return true;
+	}
+
+	/**
+	 * Adds a PID without requiring a <code>JpaPid</code>
+	 */
+	public void add(long theId, Integer thePartitionId) {
+		ensureCapacity(mySize + 1);
+		myIds[mySize] = theId;
+		myPartitionIds[mySize] = fromPartitionId(thePartitionId);
+		if (myVersions != null) {
+			myVersions[mySize] = NULL_VERSION;
+		}
+		if (myResourceTypes != null) {
+			myResourceTypes[mySize] = null;
+		}
+		mySize++;
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends JpaPid> thePids) {
+		if (thePids instanceof JpaPidList) {
+			JpaPidList other = (JpaPidList) thePids;
+			ensureCapacity(mySize + other.mySize);
+			System.arraycopy(other.myIds, 0, myIds, mySize, other.mySize);
+			System.arraycopy(other.myPartitionIds, 0, myPartitionIds, mySize, other.mySize);
+			if (other.myVersions != null) {
+				allocateVersions();
+				System.arraycopy(other.myVersions, 0, myVersions, mySize, other.mySize);
+			} else if (myVersions != null) {
+				Arrays.fill(myVersions, mySize, mySize + other.mySize, NULL_VERSION);
+			}
+			if (other.myResourceTypes != null) {
+				allocateResourceTypes();
+				System.arraycopy(other.myResourceTypes, 0, myResourceTypes, mySize, other.mySize);
+			} else if (myResourceTypes != null) {
+				Arrays.fill(myResourceTypes, mySize, mySize + other.mySize, null);
+			}
+			mySize += other.mySize;
+			modCount++;
+			return other.mySize > 0;
+		}
+		ensureCapacity(mySize + thePids.size());
+		return super.addAll(thePids);
+	}
+
+	@Override
+	public void add(int theIndex, JpaPid thePid) {
+		if (theIndex == mySize) {
+			add(thePid);
+			return;
+		}
+		checkIndex(theIndex);
+		ensureCapacity(mySize + 1);
+		System.arraycopy(myIds, theIndex, myIds, theIndex + 1, mySize - theIndex);
+		System.arraycopy(myPartitionIds, theIndex, myPartitionIds, theIndex + 1, mySize - theIndex);
+		if (myVersions != null) {
+			System.arraycopy(myVersions, theIndex, myVersions, theIndex + 1, mySize - theIndex);
+		}
+		if (myResourceTypes != null) {
+			System.arraycopy(myResourceTypes, theIndex, myResourceTypes, theIndex + 1, mySize - theIndex);
+		}
+		myIds[theIndex] = thePid.getId();
+		myPartitionIds[theIndex] = fromPartitionId(thePid.getPartitionId());
+		mySize++;
+		setVersionAndResourceType(theIndex, thePid);
+		modCount++;
+	}
+
+	@Override
+	public JpaPid set(int theIndex, JpaPid thePid) {
+		JpaPid retVal = get(theIndex);
+		myIds[theIndex] = thePid.getId();
+		myPartitionIds[theIndex] = fromPartitionId(thePid.getPartitionId());
+		setVersionAndResourceType(theIndex, thePid);
+		return retVal;
+	}
+
+	@Override
+	public JpaPid remove(int theIndex) {
+		JpaPid retVal = get(theIndex);
+		int toMove = mySize - theIndex - 1;
+		System.arraycopy(myIds, theIndex + 1, myIds, theIndex, toMove);
+		System.arraycopy(myPartitionIds, theIndex + 1, myPartitionIds, theIndex, toMove);
+		if (myVersions != null) {
+			System.arraycopy(myVersions, theIndex + 1, myVersions, theIndex, toMove);
+		}
+		if (myResourceTypes != null) {
+			System.arraycopy(myResourceTypes, theIndex + 1, myResourceTypes, theIndex, toMove);
+			myResourceTypes[mySize - 1] = null;
+		}
+		mySize--;
+		modCount++;
+		return retVal;
+	}
+
+	@Override
+	public void clear() {
+		mySize = 0;
+		myVersions = null;
+		myResourceTypes = null;
+		modCount++;
+	}
+
+	private void ensureCapacity(int theCapacity) {
+		if (theCapacity > myIds.length) {
+			int newCapacity = Math.max(theCapacity, myIds.length + (myIds.length >> 1));
+			myIds = Arrays.copyOf(myIds, newCapacity);
+			myPartitionIds = Arrays.copyOf(myPartitionIds, newCapacity);
+			if (myVersions != null) {
+				myVersions = Arrays.copyOf(myVersions, newCapacity);
+			}
+			if (myResourceTypes != null) {
+				myResourceTypes = Arrays.copyOf(myResourceTypes, newCapacity);
+			}
+		}
+	}
+
+	private void setVersionAndResourceType(int theIndex, JpaPid thePid) {
+		Long version = thePid.getVersion();
+		if (version != null) {
+			allocateVersions();
+			myVersions[theIndex] = version;
+		} else if (myVersions != null) {
+			myVersions[theIndex] = NULL_VERSION;
+		}
+
+		String resourceType = thePid.getResourceType();
+		if (resourceType != null) {
+			allocateResourceTypes();
+			myResourceTypes[theIndex] = resourceType;
+		} else if (myResourceTypes != null) {
+			myResourceTypes[theIndex] = null;
+		}
+	}
+
+	private void allocateVersions() {
+		if (myVersions == null) {
+			myVersions = new long[myIds.length];
+			Arrays.fill(myVersions, NULL_VERSION);
+		}
+	}
+
+	private void allocateResourceTypes() {
+		if (myResourceTypes == null) {
+			myResourceTypes = new String[myIds.length];
+		}
+	}
+
+	private void checkIndex(int theIndex) {
+		Objects.checkIndex(theIndex, mySize);
+	}
+
+	static JpaPid toJpaPid(long theId, int thePartitionId) {
+		return JpaPid.fromId(theId, toPartitionId(thePartitionId));
+	}
+
+	static int fromPartitionId(Integer thePartitionId) {
+		if (thePartitionId == null) {
+			return NULL_PARTITION_ID;
+		}
+		Validate.isTrue(thePartitionId != NULL_PARTITION_ID, "Unsupported partition ID: %s", thePartitionId);
+		return thePartitionId;
+	}
+
+	static Integer toPartitionId(int thePartitionId) {
+		return thePartitionId != NULL_PARTITION_ID ? thePartitionId : null;
+	}
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * HAPI FHIR JPA Model
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.model.dao;
+
+import ca.uhn.fhir.i18n.Msg;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of {@link JpaPid JpaPids} which avoids creating an object for each entry.
+ * Entries are stored in a {@link JpaPidList} in insertion order, and are looked up
+ * using an open addressing hash table of indexes into that list. Like
+ * {@link JpaPid#equals(Object)}, entries are identified by their resource ID only.
+ * <p>
+ * Because entries keep their insertion order, {@link #indexOf(long)} can also be
+ * used to map a resource ID to its position, in place of a
+ * <code>Map&lt;Long, Integer&gt;</code>.
+ * </p>
+ * <p>
+ * The version and resource type of the first entry added for each resource ID are
+ * kept, as they would be by a <code>HashSet</code>. Removing entries is not supported.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+public class JpaPidSet extends AbstractSet<JpaPid> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final JpaPidList myEntries;
+
+	/**
+	 * Each slot holds the index of an entry plus one, or zero if the slot is empty
+	 */
+	private int[] myTable;
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidSet(int theExpectedSize) {
+		myEntries = new JpaPidList(theExpectedSize);
+		myTable = new int[tableSizeFor(theExpectedSize)];
+	}
+
+	/**
+	 * Constructor
+	 */
+	public JpaPidSet(Collection<JpaPid> thePids) {
+		this(thePids.size());
+		addAll(thePids);
+	}
+
+	@Override
+	public boolean add(JpaPid thePid) {
+		int slot = findSlot(thePid.getId());
+		if (myTable[slot] != 0) {
+			return false;
+		}
+
+		myEntries.add(thePid);
+		addToTable(slot);
+		return true;
+	}
+
+	/**
+	 * Adds a PID without requiring a <code>JpaPid</code>
+	 *
+	 * @return Returns <code>true</code> if the set did not already contain the resource ID
+	 */
+	public boolean add(long theId, Integer thePartitionId) {
+		int slot = findSlot(theId);
+		if (myTable[slot] != 0) {
+			return false;
+		}
+
+		myEntries.add(theId, thePartitionId);
+		addToTable(slot);
+		return true;
+	}
+
+	/**
+	 * Stores the index of the entry which was just added in the given slot
+	 */
+	private void addToTable(int theSlot) {
+		myTable[theSlot] = myEntries.size();
+		if (myEntries.size() * 2 > myTable.length) {
+			rehash(myTable.length * 2);
+		}
+	}
+
+	@Override
+	public boolean contains(Object theObject) {
+		if (!(theObject instanceof JpaPid)) {
+			return false;
+		}
+		Long id = ((JpaPid) theObject).getId();
+		return id != null && contains(id.longValue());
+	}
+
+	/**
+	 * Returns <code>true</code> if the set contains the given resource ID
+	 */
+	public boolean contains(long theId) {
+		return myTable[findSlot(theId)] != 0;
+	}
+
+	/**
+	 * Returns the position at which the given resource ID was added to this set,
+	 * or <code>-1</code> if the set doesn't contain it
+	 */
+	public int indexOf(long theId) {
+		return myTable[findSlot(theId)] - 1;
+	}
+
+	@Override
+	public Iterator<JpaPid> iterator() {
+		return new Iterator<>() {
+			private int myNextIndex;
+
+			@Override
+			public boolean hasNext() {
+				return myNextIndex < myEntries.size();
+			}
+
+			@Override
+			public JpaPid next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException(Msg.code(2783) + "No more PIDs in set");
+				}
+				return myEntries.get(myNextIndex++);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return myEntries.size();
+	}
+
+	@Override
+	public void clear() {
+		myEntries.clear();
+		myTable = new int[tableSizeFor(DEFAULT_CAPACITY)];
+	}
+
+	/**
+	 * Returns the slot holding the given ID, or the empty slot where it would be stored
+	 */
+	private int findSlot(long theId) {
+		int mask = myTable.length - 1;
+		int slot = mix(theId) & mask;
+		while (true) {
+			int entry = myTable[slot];
+			if (entry == 0 || myEntries.getId(entry - 1) == theId) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void rehash(int theNewTableSize) {
+		myTable = new int[theNewTableSize];
+		int mask = theNewTableSize - 1;
+		for (int i = 0; i < myEntries.size(); i++) {
+			int slot = mix(myEntries.getId(i)) & mask;
+			while (myTable[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			myTable[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * PIDs are often sequential, so spread them across the table
+	 */
+	private static int mix(long theId) {
+		long hash = theId * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Returns a power of two table size which keeps the load factor at or below 0.5
+	 */
+	private static int tableSizeFor(int theExpectedSize) {
+		int size = Integer.highestOneBit(Math.max(theExpectedSize, DEFAULT_CAPACITY / 2) * 2 - 1) << 1;
+		return Math.max(size, DEFAULT_CAPACITY);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * HAPI FHIR JPA Model
+ * %%
+ * Copyright (C) 2014 - 2025 Smile CDR, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ca.uhn.fhir.jpa.model.entity;
+
+import ca.uhn.fhir.rest.api.Constants;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.hibernate.Length;
+
+import java.util.Date;
+
+/**
+ * Stores a compression dictionary which has been trained for a specific resource type, and is
+ * used to compress resource bodies stored using {@link ResourceEncodingEnum#ZSTD}.
+ * <p>
+ * Dictionaries are never modified once they have been created. The dictionary ID which is embedded
+ * in the dictionary itself (and in every frame compressed using it) is unique, so resource bodies
+ * remain readable after newer dictionaries are trained for the same resource type.
+ * </p>
+ *
+ * @since 8.4.0
+ */
+@Entity
+@Table(
+		name = "HFJ_RES_COMPRESS_DICT",
+		indexes = {
+			@Index(name = "IDX_RESCOMPDICT_DICTID", columnList = "DICT_ID", unique = true),
+			@Index(name = "IDX_RESCOMPDICT_TYPE", columnList = "RES_TYPE, CREATED_TIME")
+		})
+public class ResourceCompressionDictEntity {
+
+	@Id
+	@SequenceGenerator(name = "SEQ_RES_COMPRESS_DICT", sequenceName = "SEQ_RES_COMPRESS_DICT", allocationSize = 1)
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RES_COMPRESS_DICT")
+	@Column(name = "PID", nullable = false)
+	private Long myId;
+
+	@Column(name = "DICT_ID", nullable = false)
+	private Long myDictionaryId;
+
+	@Column(name = "RES_TYPE", nullable = false, length = Constants.MAX_RESOURCE_NAME_LENGTH)
+	private String myResourceType;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED_TIME", nullable = false)
+	private Date myCreated;
+
+	@Column(name = "DICT_CONTENT", nullable = false, length = Length.LONG32)
+	private byte[] myDictionary;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Long getDictionaryId() {
+		return myDictionaryId;
+	}
+
+	public void setDictionaryId(Long theDictionaryId) {
+		myDictionaryId = theDictionaryId;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public byte[] getDictionary() {
+		return myDictionary;
+	}
+
+	public void setDictionary(byte[] theDictionary) {
+		myDictionary = theDictionary;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+				.append("id", myId)
+				.append("dictionaryId", myDictionaryId)
+				.append("resourceType", myResourceType)
+				.append("created", myCreated)
+				.append("size", myDictionary != null ? myDictionary.length : 0)
+				.toString();
+	}
+}
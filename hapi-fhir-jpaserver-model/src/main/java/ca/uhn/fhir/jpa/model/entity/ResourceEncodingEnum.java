@@ -49,9 +49,39 @@ public enum ResourceEncodingEnum {
 	 * Externally stored resource - Resource text is a reference to an external storage location,
 	 * which will be stored in {@link ResourceHistoryTable#getResourceTextVc()}
 	 */
-	ESR;
+	ESR,
+
+	/**
+	 * Smile (binary JSON) - The resource body is stored as a
+	 * <a href="https://github.com/FasterXML/smile-format-specification">Smile</a> encoded
+	 * binary in {@link ResourceHistoryTable#getResource()}. Smile content can be parsed
+	 * without tokenizing JSON text, and is generally smaller than the equivalent JSON.
+	 *
+	 * @since 8.4.0
+	 */
+	SMILE,
+
+	/**
+	 * Json compressed using <a href="https://facebook.github.io/zstd/">Zstandard</a> - The resource
+	 * body is stored in {@link ResourceHistoryTable#getResource()}, optionally compressed using a
+	 * dictionary trained for the resource type. The ID of the dictionary (if any) is recorded in the
+	 * compressed frame header, and the dictionary itself is stored in {@link ResourceCompressionDictEntity}.
+	 *
+	 * @since 8.4.0
+	 */
+	ZSTD;
 
 	public IParser newParser(FhirContext theContext) {
 		return theContext.newJsonParser();
 	}
+
+	/**
+	 * Returns {@literal true} if resource bodies using this encoding are always stored
+	 * as a binary, regardless of the database platform
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isAlwaysBinary() {
+		return this == SMILE || this == ZSTD;
+	}
 }
@@ -95,6 +95,7 @@ public class StorageSettings {
 	private boolean myAutoCreatePlaceholderReferenceTargets;
 	private Integer myBundleBatchPoolSize = DEFAULT_BUNDLE_BATCH_POOL_SIZE;
 	private Integer myBundleBatchMaxPoolSize = DEFAULT_BUNDLE_BATCH_MAX_POOL_SIZE;
+	private int myTransactionPreparationThreadCount = 1;
 	private boolean myMassIngestionMode;
 	private Integer myMaximumTransactionBundleSize = DEFAULT_MAXIMUM_TRANSACTION_BUNDLE_SIZE;
 	private boolean myNormalizeTerminologyForBulkExportJobs = false;
@@ -112,6 +113,7 @@ public class StorageSettings {
 	private Map<String, Set<String>> myTypeToAutoVersionReferenceAtPaths = Collections.emptyMap();
 	private boolean myRespectVersionsForSearchIncludes;
 	private boolean myIndexOnUpliftedRefchains = false;
+	private boolean myReindexOnUpliftedRefchainTargetChange = false;
 	private boolean myIndexOnContainedResources = false;
 	private boolean myIndexOnContainedResourcesRecursively = false;
 	private boolean myAllowMdmExpansion = false;
@@ -239,6 +241,32 @@ public class StorageSettings {
 		this.myBundleBatchMaxPoolSize = theBundleBatchMaxPoolSize;
 	}
 
+	/**
+	 * If set to a value greater than 1 (default is 1), the CPU-bound preparation of newly created
+	 * resources in a FHIR transaction bundle (i.e. search parameter index extraction) is split
+	 * across up to this many threads from the bundle batch thread pool. Reference resolution and
+	 * database writes are always performed in order on the request thread.
+	 *
+	 * @since 8.4.0
+	 */
+	public int getTransactionPreparationThreadCount() {
+		return myTransactionPreparationThreadCount;
+	}
+
+	/**
+	 * If set to a value greater than 1 (default is 1), the CPU-bound preparation of newly created
+	 * resources in a FHIR transaction bundle (i.e. search parameter index extraction) is split
+	 * across up to this many threads from the bundle batch thread pool. Reference resolution and
+	 * database writes are always performed in order on the request thread.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setTransactionPreparationThreadCount(int theTransactionPreparationThreadCount) {
+		Validate.isTrue(
+				theTransactionPreparationThreadCount >= 1, "theTransactionPreparationThreadCount must be at least 1");
+		myTransactionPreparationThreadCount = theTransactionPreparationThreadCount;
+	}
+
 	/**
 	 * If set to {@link IndexEnabledEnum#DISABLED} (default is {@link IndexEnabledEnum#DISABLED})
 	 * the server will not create search indexes for search parameters with no values in resources.
@@ -1085,6 +1113,50 @@ public class StorageSettings {
 		myIndexOnUpliftedRefchains = theIndexOnUpliftedRefchains;
 	}
 
+	/**
+	 * If enabled (and {@link #isIndexOnUpliftedRefchains() uplifted refchains} are also enabled),
+	 * updating a resource which is the target of an uplifted refchain causes the resources which
+	 * reference it to be reindexed, so that their uplifted refchain indexes reflect the new contents
+	 * of the target. For example, if the "Encounter:subject" SearchParameter declares an uplifted
+	 * refchain on "name", changing the name of a Patient causes every Encounter with that Patient as
+	 * its subject to be reindexed.
+	 * <p>
+	 * Reindexing only happens if a value used by an uplifted refchain actually changed. It is performed
+	 * asynchronously by a reindex batch job which is started after the update commits, so searches
+	 * using the uplifted refchain may briefly return results based on the previous contents of the target.
+	 * </p>
+	 * <p>
+	 * Default is <code>false</code>
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isReindexOnUpliftedRefchainTargetChange() {
+		return myReindexOnUpliftedRefchainTargetChange;
+	}
+
+	/**
+	 * If enabled (and {@link #isIndexOnUpliftedRefchains() uplifted refchains} are also enabled),
+	 * updating a resource which is the target of an uplifted refchain causes the resources which
+	 * reference it to be reindexed, so that their uplifted refchain indexes reflect the new contents
+	 * of the target. For example, if the "Encounter:subject" SearchParameter declares an uplifted
+	 * refchain on "name", changing the name of a Patient causes every Encounter with that Patient as
+	 * its subject to be reindexed.
+	 * <p>
+	 * Reindexing only happens if a value used by an uplifted refchain actually changed. It is performed
+	 * asynchronously by a reindex batch job which is started after the update commits, so searches
+	 * using the uplifted refchain may briefly return results based on the previous contents of the target.
+	 * </p>
+	 * <p>
+	 * Default is <code>false</code>
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setReindexOnUpliftedRefchainTargetChange(boolean theReindexOnUpliftedRefchainTargetChange) {
+		myReindexOnUpliftedRefchainTargetChange = theReindexOnUpliftedRefchainTargetChange;
+	}
+
 	/**
 	 * Should indexing and searching on contained resources be enabled on this server.
 	 * This may have performance impacts, and should be enabled only if it is needed. Default is <code>false</code>.
@@ -0,0 +1,83 @@
+package ca.uhn.fhir.jpa.model.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ca.uhn.fhir.jpa.model.dao.JpaPid.fromId;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JpaPidListTest {
+
+	@Test
+	void testAddGetAndRemove() {
+		JpaPidList list = new JpaPidList(1);
+		list.add(fromId(10L, 2));
+		list.add(fromId(11L));
+		list.add(12L, -1);
+		list.add(1, fromId(13L, 0));
+
+		assertThat(list).containsExactly(fromId(10L), fromId(13L), fromId(11L), fromId(12L));
+		assertThat(list).extracting(JpaPid::getPartitionId).containsExactly(2, 0, null, -1);
+		assertEquals(12L, list.getId(3));
+		assertNull(list.getPartitionId(2));
+
+		assertEquals(fromId(13L), list.remove(1));
+		assertThat(list).containsExactly(fromId(10L), fromId(11L), fromId(12L));
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(3));
+
+		List<JpaPid> arrayList = new ArrayList<>(list);
+		assertEquals(arrayList, list);
+		assertEquals(arrayList.subList(1, 3), list.subList(1, 3));
+	}
+
+	@Test
+	void testAddAll() {
+		JpaPidList list = new JpaPidList();
+		JpaPidList other = new JpaPidList();
+		for (long i = 0; i < 100; i++) {
+			other.add(i, i % 2 == 0 ? null : (int) i);
+		}
+
+		list.add(fromId(1000L));
+		list.addAll(other);
+		list.addAll(List.of(fromId(2000L, 7)));
+
+		assertEquals(102, list.size());
+		assertEquals(fromId(1000L), list.get(0));
+		assertEquals(99, list.getId(100));
+		assertEquals(99, list.getPartitionId(100));
+		assertNull(list.getPartitionId(99));
+		assertEquals(7, list.getPartitionId(101));
+
+		list.clear();
+		assertThat(list).isEmpty();
+	}
+
+	@Test
+	void testVersionAndResourceType() {
+		JpaPidList list = new JpaPidList(1);
+		list.add(fromId(1L));
+		list.add(JpaPid.fromIdAndVersionAndResourceType(2L, 3L, "Patient"));
+		list.add(4L, null);
+		list.add(1, JpaPid.fromIdAndVersion(5L, 6L));
+
+		assertThat(list).extracting(JpaPid::getId).containsExactly(1L, 5L, 2L, 4L);
+		assertThat(list).extracting(JpaPid::getVersion).containsExactly(null, 6L, 3L, null);
+		assertThat(list).extracting(JpaPid::getResourceType).containsExactly(null, null, "Patient", null);
+
+		list.remove(1);
+		list.set(0, JpaPid.fromIdAndResourceType(7L, "Observation"));
+		JpaPidList other = new JpaPidList();
+		other.add(8L, 1);
+		list.addAll(other);
+
+		assertThat(list).extracting(JpaPid::getId).containsExactly(7L, 2L, 4L, 8L);
+		assertThat(list).extracting(JpaPid::getVersion).containsExactly(null, 3L, null, null);
+		assertThat(list).extracting(JpaPid::getResourceType).containsExactly("Observation", "Patient", null, null);
+	}
+}
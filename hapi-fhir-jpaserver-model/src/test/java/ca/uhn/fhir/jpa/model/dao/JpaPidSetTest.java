@@ -0,0 +1,89 @@
+package ca.uhn.fhir.jpa.model.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static ca.uhn.fhir.jpa.model.dao.JpaPid.fromId;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpaPidSetTest {
+
+	@Test
+	void testAddAndContains() {
+		JpaPidSet set = new JpaPidSet();
+		assertTrue(set.add(fromId(5L, 1)));
+		assertTrue(set.add(fromId(3L)));
+		assertFalse(set.add(fromId(5L, 2)));
+		assertTrue(set.add(-1L, null));
+
+		assertEquals(3, set.size());
+		assertTrue(set.contains(fromId(5L)));
+		assertTrue(set.contains(3L));
+		assertTrue(set.contains(-1L));
+		assertFalse(set.contains(4L));
+		assertFalse(set.contains("5"));
+
+		// Insertion order is preserved, and the first partition ID added wins
+		assertThat(set).containsExactly(fromId(5L), fromId(3L), fromId(-1L));
+		assertThat(set).extracting(JpaPid::getPartitionId).containsExactly(1, null, null);
+		assertEquals(0, set.indexOf(5L));
+		assertEquals(2, set.indexOf(-1L));
+		assertEquals(-1, set.indexOf(4L));
+	}
+
+	@Test
+	void testVersionAndResourceType() {
+		JpaPidSet set = new JpaPidSet();
+		assertTrue(set.add(JpaPid.fromIdAndVersionAndResourceType(1L, 2L, "Patient")));
+		assertFalse(set.add(JpaPid.fromIdAndVersionAndResourceType(1L, 3L, "Patient")));
+		assertTrue(set.add(fromId(4L)));
+
+		// The first version added wins
+		assertThat(set).extracting(JpaPid::getVersion).containsExactly(2L, null);
+		assertThat(set).extracting(JpaPid::getResourceType).containsExactly("Patient", null);
+	}
+
+	@Test
+	void testIteratorExhausted() {
+		Iterator<JpaPid> iterator = new JpaPidSet(List.of(fromId(1L))).iterator();
+		assertEquals(fromId(1L), iterator.next());
+		NoSuchElementException e = assertThrows(NoSuchElementException.class, iterator::next);
+		assertThat(e.getMessage()).contains("HAPI-2783");
+	}
+
+	@Test
+	void testGrow() {
+		List<JpaPid> pids = new ArrayList<>();
+		for (long i = 0; i < 10000; i++) {
+			pids.add(fromId(i * 3, (int) (i % 5)));
+		}
+
+		JpaPidSet set = new JpaPidSet(pids);
+		set.addAll(pids);
+
+		assertEquals(10000, set.size());
+		assertThat(set).containsExactlyElementsOf(pids);
+		for (int i = 0; i < pids.size(); i++) {
+			assertEquals(i, set.indexOf(pids.get(i).getId()));
+			assertFalse(set.contains(pids.get(i).getId() + 1));
+		}
+
+		Set<JpaPid> hashSet = new HashSet<>(pids);
+		assertEquals(hashSet, set);
+		assertEquals(hashSet.hashCode(), set.hashCode());
+
+		set.clear();
+		assertThat(set).isEmpty();
+		assertFalse(set.contains(3L));
+	}
+}
@@ -147,6 +147,10 @@ public class MatchUrlService {
 								Msg.code(486) + "Invalid " + Constants.PARAM_OFFSET + " value: " + intString);
 					}
 				}
+			} else if (Constants.PARAM_PAGE_TOKEN.equals(nextParamName)) {
+				if (!paramList.isEmpty() && !paramList.get(0).isEmpty()) {
+					paramMap.setPageToken(paramList.get(0).get(0));
+				}
 			} else if (ResourceMetaParams.RESOURCE_META_PARAMS.containsKey(nextParamName)) {
 				if (isNotBlank(paramList.get(0).getQualifier())
 						&& paramList.get(0).getQualifier().startsWith(".")) {
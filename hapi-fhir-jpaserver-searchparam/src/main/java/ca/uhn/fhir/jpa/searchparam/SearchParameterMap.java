@@ -71,6 +71,7 @@ public class SearchParameterMap implements Serializable {
 	private final HashMap<String, List<List<IQueryParameterType>>> mySearchParameterMap = new LinkedHashMap<>();
 	private Integer myCount;
 	private Integer myOffset;
+	private String myPageToken;
 	private EverythingModeEnum myEverythingMode = null;
 	private Set<Include> myIncludes;
 	private DateRangeParam myLastUpdated;
@@ -122,6 +123,7 @@ public class SearchParameterMap implements Serializable {
 		map.setNearDistanceParam(getNearDistanceParam());
 		map.setLoadSynchronousUpTo(getLoadSynchronousUpTo());
 		map.setOffset(getOffset());
+		map.setPageToken(getPageToken());
 		map.setSearchContainedMode(getSearchContainedMode());
 
 		for (Map.Entry<String, List<List<IQueryParameterType>>> entry : mySearchParameterMap.entrySet()) {
@@ -280,6 +282,28 @@ public class SearchParameterMap implements Serializable {
 		myOffset = theOffset;
 	}
 
+	/**
+	 * Returns the opaque keyset page token (<code>_pageToken</code>) supplied with an
+	 * offset query, or <code>null</code>
+	 *
+	 * @since 8.4.0
+	 */
+	public String getPageToken() {
+		return myPageToken;
+	}
+
+	/**
+	 * Sets the opaque keyset page token (<code>_pageToken</code>) for an offset query. If
+	 * keyset paging is enabled and the token is valid for the requested sort, the
+	 * token is used to seek directly to the start of the page instead of skipping
+	 * {@link #getOffset() offset} rows.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setPageToken(String thePageToken) {
+		myPageToken = thePageToken;
+	}
+
 	public EverythingModeEnum getEverythingMode() {
 		return myEverythingMode;
 	}
@@ -531,6 +555,13 @@ public class SearchParameterMap implements Serializable {
 			b.append(getOffset());
 		}
 
+		if (isNotBlank(getPageToken())) {
+			addUrlParamSeparator(b);
+			b.append(Constants.PARAM_PAGE_TOKEN);
+			b.append('=');
+			b.append(UrlUtil.escapeUrlParam(getPageToken()));
+		}
+
 		// Summary mode (_summary)
 		if (getSummaryMode() != null) {
 			addUrlParamSeparator(b);
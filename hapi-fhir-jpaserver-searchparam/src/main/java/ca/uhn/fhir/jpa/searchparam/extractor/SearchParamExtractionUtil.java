@@ -35,9 +35,10 @@ import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamUri;
 import ca.uhn.fhir.jpa.model.entity.StorageSettings;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
-import static ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorService.handleWarnings;
+import java.util.List;
 
 public class SearchParamExtractionUtil {
 
@@ -62,23 +63,38 @@ public class SearchParamExtractionUtil {
 			ResourceIndexedSearchParams theParams,
 			IBaseResource theResource,
 			@Nonnull ISearchParamExtractor.ISearchParamFilter theSearchParamFilter) {
+		extractSearchIndexParameters(theRequestDetails, theParams, theResource, theSearchParamFilter, null);
+	}
+
+	/**
+	 * @param theWarningCollector If not null, any extraction warnings are added to this list instead
+	 *                            of being broadcast, so that they can be broadcast later from the
+	 *                            thread which owns the request
+	 * @since 8.4.0
+	 */
+	public void extractSearchIndexParameters(
+			RequestDetails theRequestDetails,
+			ResourceIndexedSearchParams theParams,
+			IBaseResource theResource,
+			@Nonnull ISearchParamExtractor.ISearchParamFilter theSearchParamFilter,
+			@Nullable List<String> theWarningCollector) {
 
 		// Strings
 		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamString> strings =
 				extractSearchParamStrings(theResource, theSearchParamFilter);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, strings);
+		handleWarnings(theRequestDetails, strings, theWarningCollector);
 		theParams.myStringParams.addAll(strings);
 
 		// Numbers
 		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamNumber> numbers =
 				extractSearchParamNumber(theResource, theSearchParamFilter);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, numbers);
+		handleWarnings(theRequestDetails, numbers, theWarningCollector);
 		theParams.myNumberParams.addAll(numbers);
 
 		// Quantities
 		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantity> quantities =
 				extractSearchParamQuantity(theResource, theSearchParamFilter);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantities);
+		handleWarnings(theRequestDetails, quantities, theWarningCollector);
 		theParams.myQuantityParams.addAll(quantities);
 
 		if (myStorageSettings
@@ -89,20 +105,20 @@ public class SearchParamExtractionUtil {
 						.equals(NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_SUPPORTED)) {
 			ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamQuantityNormalized> quantitiesNormalized =
 					extractSearchParamQuantityNormalized(theResource, theSearchParamFilter);
-			handleWarnings(theRequestDetails, myInterceptorBroadcaster, quantitiesNormalized);
+			handleWarnings(theRequestDetails, quantitiesNormalized, theWarningCollector);
 			theParams.myQuantityNormalizedParams.addAll(quantitiesNormalized);
 		}
 
 		// Dates
 		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamDate> dates =
 				extractSearchParamDates(theResource, theSearchParamFilter);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, dates);
+		handleWarnings(theRequestDetails, dates, theWarningCollector);
 		theParams.myDateParams.addAll(dates);
 
 		// URIs
 		ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamUri> uris =
 				extractSearchParamUri(theResource, theSearchParamFilter);
-		handleWarnings(theRequestDetails, myInterceptorBroadcaster, uris);
+		handleWarnings(theRequestDetails, uris, theWarningCollector);
 		theParams.myUriParams.addAll(uris);
 
 		// Tokens (can result in both Token and String, as we index the display name for
@@ -124,7 +140,7 @@ public class SearchParamExtractionUtil {
 		if (myFhirContext.getVersion().getVersion().isEqualOrNewerThan(FhirVersionEnum.DSTU3)) {
 			ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamComposite> composites =
 					extractSearchParamComposites(theResource, theSearchParamFilter);
-			handleWarnings(theRequestDetails, myInterceptorBroadcaster, composites);
+			handleWarnings(theRequestDetails, composites, theWarningCollector);
 			theParams.myCompositeParams.addAll(composites);
 		}
 
@@ -138,6 +154,17 @@ public class SearchParamExtractionUtil {
 		}
 	}
 
+	private void handleWarnings(
+			RequestDetails theRequestDetails,
+			ISearchParamExtractor.SearchParamSet<?> theSearchParamSet,
+			@Nullable List<String> theWarningCollector) {
+		if (theWarningCollector != null) {
+			theWarningCollector.addAll(theSearchParamSet.getWarnings());
+		} else {
+			SearchParamExtractorService.handleWarnings(theRequestDetails, myInterceptorBroadcaster, theSearchParamSet);
+		}
+	}
+
 	private ISearchParamExtractor.SearchParamSet<ResourceIndexedSearchParamDate> extractSearchParamDates(
 			IBaseResource theResource, ISearchParamExtractor.ISearchParamFilter theSearchParamFilter) {
 		return mySearchParamExtractor.extractSearchParamDates(theResource, theSearchParamFilter);
@@ -67,6 +67,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -84,6 +85,9 @@ public class SearchParamExtractorService {
 	@Autowired
 	private ISearchParamExtractor mySearchParamExtractor;
 
+	private static final String PREPARED_SEARCH_PARAMS_KEY =
+			SearchParamExtractorService.class.getName() + "_PREPARED_SEARCH_PARAMS";
+
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
 
@@ -138,9 +142,15 @@ public class SearchParamExtractorService {
 		myContext.newTerser().containResources(theResource, null, true);
 
 		// All search parameter types except Reference
-		ResourceIndexedSearchParams normalParams = ResourceIndexedSearchParams.withSets();
-		getExtractionUtil()
-				.extractSearchIndexParameters(theRequestDetails, normalParams, theResource, theSearchParamFilter);
+		ResourceIndexedSearchParams normalParams = null;
+		if (theSearchParamFilter == ISearchParamExtractor.ALL_PARAMS) {
+			normalParams = getPreparedSearchParams(theRequestDetails, theTransactionDetails, theResource);
+		}
+		if (normalParams == null) {
+			normalParams = ResourceIndexedSearchParams.withSets();
+			getExtractionUtil()
+					.extractSearchIndexParameters(theRequestDetails, normalParams, theResource, theSearchParamFilter);
+		}
 		mergeParams(normalParams, theNewParams);
 
 		// Reference search parameters
@@ -225,6 +235,75 @@ public class SearchParamExtractorService {
 		theNewParams.setUpdatedTime(theTransactionDetails.getTransactionDate());
 	}
 
+	/**
+	 * Prepares a resource for {@link #extractNonReferenceSearchParams(RequestDetails, IBaseResource)}. This
+	 * method modifies the resource, so it must be called on the thread which owns the resource.
+	 *
+	 * @since 8.4.0
+	 */
+	public void prepareResourceForExtraction(IBaseResource theResource) {
+		myContext.newTerser().containResources(theResource, null, true);
+	}
+
+	/**
+	 * Extracts all indexes except for reference indexes from a resource which has already been
+	 * passed to {@link #prepareResourceForExtraction(IBaseResource)}. This method does not modify
+	 * the resource, does not touch the database and does not invoke any interceptors, so it can be
+	 * called from any thread. Any extraction warnings are kept with the returned params and are
+	 * broadcast when the params are used.
+	 * <p>
+	 * If the returned params are stored in the {@link TransactionDetails} using
+	 * {@link #putPreparedSearchParams(TransactionDetails, Map)}, they are used in place of a
+	 * fresh extraction when the resource is later indexed within the same transaction. The
+	 * resource must not be modified in between.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public PreparedSearchParams extractNonReferenceSearchParams(
+			RequestDetails theRequestDetails, IBaseResource theResource) {
+		ResourceIndexedSearchParams params = ResourceIndexedSearchParams.withSets();
+		List<String> warnings = new ArrayList<>();
+		getExtractionUtil()
+				.extractSearchIndexParameters(
+						theRequestDetails, params, theResource, ISearchParamExtractor.ALL_PARAMS, warnings);
+		return new PreparedSearchParams(params, warnings);
+	}
+
+	/**
+	 * Stores params produced by {@link #extractNonReferenceSearchParams(RequestDetails, IBaseResource)}
+	 * for use later in the transaction. The map must use identity semantics for its keys.
+	 *
+	 * @since 8.4.0
+	 */
+	public static void putPreparedSearchParams(
+			TransactionDetails theTransactionDetails,
+			Map<IBaseResource, PreparedSearchParams> thePreparedSearchParams) {
+		Map<IBaseResource, PreparedSearchParams> map =
+				theTransactionDetails.getOrCreateUserData(PREPARED_SEARCH_PARAMS_KEY, IdentityHashMap::new);
+		map.putAll(thePreparedSearchParams);
+	}
+
+	@Nullable
+	private ResourceIndexedSearchParams getPreparedSearchParams(
+			RequestDetails theRequestDetails,
+			@Nullable TransactionDetails theTransactionDetails,
+			IBaseResource theResource) {
+		if (theTransactionDetails == null) {
+			return null;
+		}
+		Map<IBaseResource, PreparedSearchParams> map = theTransactionDetails.getUserData(PREPARED_SEARCH_PARAMS_KEY);
+		if (map == null) {
+			return null;
+		}
+		PreparedSearchParams prepared = map.remove(theResource);
+		if (prepared == null) {
+			return null;
+		}
+		handleWarnings(theRequestDetails, myInterceptorBroadcaster, prepared.getWarnings());
+		return prepared.getParams();
+	}
+
 	private SearchParamExtractionUtil getExtractionUtil() {
 		if (mySearchParamExtractionUtil == null) {
 			mySearchParamExtractionUtil = new SearchParamExtractionUtil(
@@ -1102,7 +1181,14 @@ public class SearchParamExtractorService {
 			RequestDetails theRequestDetails,
 			IInterceptorBroadcaster theInterceptorBroadcaster,
 			ISearchParamExtractor.SearchParamSet<?> theSearchParamSet) {
-		if (theSearchParamSet.getWarnings().isEmpty()) {
+		handleWarnings(theRequestDetails, theInterceptorBroadcaster, theSearchParamSet.getWarnings());
+	}
+
+	static void handleWarnings(
+			RequestDetails theRequestDetails,
+			IInterceptorBroadcaster theInterceptorBroadcaster,
+			List<String> theWarnings) {
+		if (theWarnings.isEmpty()) {
 			return;
 		}
 
@@ -1110,7 +1196,7 @@ public class SearchParamExtractorService {
 		IInterceptorBroadcaster compositeBroadcaster =
 				CompositeInterceptorBroadcaster.newCompositeBroadcaster(theInterceptorBroadcaster, theRequestDetails);
 		if (compositeBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_WARNING)) {
-			for (String next : theSearchParamSet.getWarnings()) {
+			for (String next : theWarnings) {
 				StorageProcessingMessage messageHolder = new StorageProcessingMessage();
 				messageHolder.setMessage(next);
 				HookParams params = new HookParams()
@@ -1121,4 +1207,30 @@ public class SearchParamExtractorService {
 			}
 		}
 	}
+
+	/**
+	 * Non-reference indexes extracted in advance by
+	 * {@link #extractNonReferenceSearchParams(RequestDetails, IBaseResource)}, along with any
+	 * warnings which have not yet been broadcast.
+	 *
+	 * @since 8.4.0
+	 */
+	public static class PreparedSearchParams {
+
+		private final ResourceIndexedSearchParams myParams;
+		private final List<String> myWarnings;
+
+		PreparedSearchParams(ResourceIndexedSearchParams theParams, List<String> theWarnings) {
+			myParams = theParams;
+			myWarnings = theWarnings;
+		}
+
+		public ResourceIndexedSearchParams getParams() {
+			return myParams;
+		}
+
+		public List<String> getWarnings() {
+			return myWarnings;
+		}
+	}
 }
@@ -2,6 +2,10 @@ package ca.uhn.fhir.jpa.dao.r4;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -39,6 +43,7 @@ public class FhirResourceDaoR4HistoryRewriteTest extends BaseJpaR4Test {
 	@AfterEach
 	public void tearDown() {
 		myStorageSettings.setUpdateWithHistoryRewriteEnabled(false);
+		myStorageSettings.setResourceEncoding(new JpaStorageSettings().getResourceEncoding());
 		when(mySrd.getHeader(eq(Constants.HEADER_REWRITE_HISTORY))).thenReturn("");
 	}
 
@@ -87,6 +92,38 @@ public class FhirResourceDaoR4HistoryRewriteTest extends BaseJpaR4Test {
 		assertTrue(Math.abs(h1.getMeta().getLastUpdated().getTime() - new Date().getTime()) < 1000L);
 	}
 
+	@Test
+	public void testHistoryRewriteNonCurrentVersion_ZstdEncoding() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.ZSTD);
+		String testFamilyNameModified = "Jackson";
+
+		// setup
+		IIdType id = createPatientWithHistory();
+
+		// execute update
+		when(mySrd.isRewriteHistory()).thenReturn(true);
+
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:system").setValue(TEST_SYSTEM_NAME);
+		p.addName().setFamily(testFamilyNameModified);
+		p.setId("Patient/" + id.getIdPart() + "/_history/2");
+		myPatientDao.update(p, mySrd);
+
+		// verify
+		runInTransaction(() -> {
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id.getIdPartAsLong()), 2);
+			assertEquals(ResourceEncodingEnum.ZSTD, historyEntity.getEncoding());
+			assertThat(historyEntity.getResource()).isNotEmpty();
+		});
+
+		Patient h2 = myPatientDao.read(id.withVersion("2"), mySrd);
+		assertEquals(testFamilyNameModified, h2.getName().get(0).getFamily());
+		assertEquals(TEST_SYSTEM_NAME, h2.getIdentifier().get(0).getValue());
+
+		Patient h3 = myPatientDao.read(id.withVersion("3"), mySrd);
+		assertEquals(TEST_FAMILY_NAME, h3.getName().get(0).getFamily());
+	}
+
 	@Test
 	public void testHistoryRewriteCurrentVersion() {
 		String testFamilyNameModified = "Jackson";
@@ -1,18 +1,31 @@
 package ca.uhn.fhir.jpa.dao.r4;
 
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.ZstdResourceCompressionSvc;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictDao;
+import ca.uhn.fhir.jpa.api.dao.ReindexParameters;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
 import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
 import ca.uhn.fhir.rest.param.HistorySearchDateRangeParam;
+import com.github.luben.zstd.Zstd;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -21,6 +34,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FhirResourceDaoR4InlineResourceModeTest extends BaseJpaR4Test {
 
+	@Autowired
+	private ZstdResourceCompressionSvc myZstdResourceCompressionSvc;
+	@Autowired
+	private IResourceCompressionDictDao myResourceCompressionDictDao;
+
+	@AfterEach
+	public void after() {
+		myStorageSettings.setResourceEncoding(new JpaStorageSettings().getResourceEncoding());
+		myZstdResourceCompressionSvc.setDictionarySize(ZstdResourceCompressionSvc.DEFAULT_DICTIONARY_SIZE);
+		runInTransaction(() -> myResourceCompressionDictDao.deleteAll());
+		myZstdResourceCompressionSvc.invalidateCaches();
+	}
+
 	@Test
 	public void testRetrieveNonInlinedResource() {
 		IIdType id = createPatient(withActiveTrue());
@@ -52,6 +78,187 @@ public class FhirResourceDaoR4InlineResourceModeTest extends BaseJpaR4Test {
 	}
 
 
+	@Test
+	public void testRetrieveSmileEncodedResource() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.SMILE);
+
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+		obs.setValue(new Quantity().setValueElement(new DecimalType("72.50")).setUnit("kg"));
+		IIdType id = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+		JpaPidFk pid = JpaPidFk.fromId(id.getIdPartAsLong());
+
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid, 1);
+			assertNotNull(historyEntity.getResource());
+			assertNull(historyEntity.getResourceTextVc());
+			assertEquals(ResourceEncodingEnum.SMILE, historyEntity.getEncoding());
+		});
+
+		// Read
+		validateObservation(myObservationDao.read(id, mySrd));
+
+		// Search (Sync)
+		validateObservation(myObservationDao.search(SearchParameterMap.newSynchronous(), mySrd).getResources(0, 1).get(0));
+
+		// An update with no changes should not create a new version
+		Observation read = myObservationDao.read(id, mySrd);
+		assertEquals("1", myObservationDao.update(read, mySrd).getId().getVersionIdPart());
+
+		// Switching back to JSON should leave previously stored versions readable
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSON);
+		validateObservation(myObservationDao.read(id, mySrd));
+	}
+
+	@Test
+	public void testRetrieveZstdEncodedResource() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.ZSTD);
+
+		// Stored before a dictionary exists
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+		obs.setValue(new Quantity().setValueElement(new DecimalType("72.50")).setUnit("kg"));
+		IIdType id = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+		JpaPidFk pid = JpaPidFk.fromId(id.getIdPartAsLong());
+
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid, 1);
+			assertNotNull(historyEntity.getResource());
+			assertNull(historyEntity.getResourceTextVc());
+			assertEquals(ResourceEncodingEnum.ZSTD, historyEntity.getEncoding());
+			assertEquals(0, Zstd.getDictIdFromFrame(historyEntity.getResource()));
+		});
+
+		// Train a dictionary
+		for (int i = 0; i < 50; i++) {
+			Observation next = new Observation();
+			next.setStatus(Observation.ObservationStatus.FINAL);
+			next.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+			next.setValue(new Quantity().setValue(50 + i).setUnit("kg"));
+			myObservationDao.create(next, mySrd);
+		}
+		myZstdResourceCompressionSvc.setDictionarySize(4 * 1024);
+		Long dictionaryId = myZstdResourceCompressionSvc.trainDictionary("Observation");
+		assertNotNull(dictionaryId);
+
+		// Stored using the dictionary
+		IIdType id2 = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id2.getIdPartAsLong()), 1);
+			assertEquals(dictionaryId.longValue(), Zstd.getDictIdFromFrame(historyEntity.getResource()));
+		});
+
+		// Read
+		validateObservation(myObservationDao.read(id, mySrd));
+		validateObservation(myObservationDao.read(id2, mySrd));
+
+		// An update with no changes should not create a new version, even though the
+		// existing version was compressed using a different dictionary
+		Observation read = myObservationDao.read(id, mySrd);
+		assertEquals("1", myObservationDao.update(read, mySrd).getId().getVersionIdPart());
+
+		// Switching back to JSON should leave previously stored versions readable
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSON);
+		validateObservation(myObservationDao.read(id, mySrd));
+		validateObservation(myObservationDao.read(id2, mySrd));
+	}
+
+	@Test
+	public void testReindexOptimizeStorage_ZstdEncodedResource() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.ZSTD);
+
+		// Stored before a dictionary exists
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+		obs.setValue(new Quantity().setValueElement(new DecimalType("72.50")).setUnit("kg"));
+		IIdType id = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+		JpaPid pid = JpaPid.fromId(id.getIdPartAsLong());
+
+		for (int i = 0; i < 50; i++) {
+			Observation next = new Observation();
+			next.setStatus(Observation.ObservationStatus.FINAL);
+			next.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+			next.setValue(new Quantity().setValue(50 + i).setUnit("kg"));
+			myObservationDao.create(next, mySrd);
+		}
+		myZstdResourceCompressionSvc.setDictionarySize(4 * 1024);
+		Long dictionaryId = myZstdResourceCompressionSvc.trainDictionary("Observation");
+		assertNotNull(dictionaryId);
+
+		// Recompressed using the dictionary
+		reindexOptimizeStorage(pid);
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid.toFk(), 1);
+			assertEquals(ResourceEncodingEnum.ZSTD, historyEntity.getEncoding());
+			assertEquals(dictionaryId.longValue(), Zstd.getDictIdFromFrame(historyEntity.getResource()));
+		});
+		validateObservation(myObservationDao.read(id, mySrd));
+
+		// Moved to inline text once ZSTD is no longer used
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		reindexOptimizeStorage(pid);
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid.toFk(), 1);
+			assertEquals(ResourceEncodingEnum.JSON, historyEntity.getEncoding());
+			assertNull(historyEntity.getResource());
+			assertNotNull(historyEntity.getResourceTextVc());
+		});
+		validateObservation(myObservationDao.read(id, mySrd));
+	}
+
+	@Test
+	public void testReindexOptimizeStorage_SmileEncodedResource() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.SMILE);
+
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+		obs.setValue(new Quantity().setValueElement(new DecimalType("72.50")).setUnit("kg"));
+		IIdType id = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+		JpaPid pid = JpaPid.fromId(id.getIdPartAsLong());
+
+		// Left as is while Smile is still used
+		reindexOptimizeStorage(pid);
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid.toFk(), 1);
+			assertEquals(ResourceEncodingEnum.SMILE, historyEntity.getEncoding());
+			assertNotNull(historyEntity.getResource());
+			assertNull(historyEntity.getResourceTextVc());
+		});
+		validateObservation(myObservationDao.read(id, mySrd));
+
+		// Moved to inline text once Smile is no longer used
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.JSON);
+		reindexOptimizeStorage(pid);
+		runInTransaction(()->{
+			ResourceHistoryTable historyEntity = myResourceHistoryTableDao.findForIdAndVersion(pid.toFk(), 1);
+			assertEquals(ResourceEncodingEnum.JSON, historyEntity.getEncoding());
+			assertNull(historyEntity.getResource());
+			assertNotNull(historyEntity.getResourceTextVc());
+		});
+		validateObservation(myObservationDao.read(id, mySrd));
+	}
+
+	private void reindexOptimizeStorage(JpaPid thePid) {
+		ReindexParameters params = new ReindexParameters()
+				.setOptimizeStorage(ReindexParameters.OptimizeStorageModeEnum.CURRENT_VERSION)
+				.setReindexSearchParameters(ReindexParameters.ReindexSearchParametersEnum.NONE);
+		runInTransaction(() -> {
+			// Loads the current version, as the reindex job does
+			mySystemDao.preFetchResources(List.of(thePid), false);
+			myObservationDao.reindex(thePid, params, mySrd, new TransactionDetails());
+		});
+	}
+
+	private void validateObservation(IBaseResource theRead) {
+		Observation obs = (Observation) theRead;
+		assertEquals("29463-7", obs.getCode().getCodingFirstRep().getCode());
+		assertEquals("72.50", obs.getValueQuantity().getValueElement().getValueAsString());
+	}
+
 	private void validatePatient(IBaseResource theRead) {
 		assertTrue(((Patient) theRead).getActive());
 	}
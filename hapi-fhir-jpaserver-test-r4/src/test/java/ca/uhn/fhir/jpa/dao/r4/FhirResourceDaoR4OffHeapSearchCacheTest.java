@@ -0,0 +1,76 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
+import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
+import ca.uhn.fhir.jpa.search.cache.OffHeapSearchResultCacheSvcImpl;
+import ca.uhn.fhir.jpa.search.cache.SearchCacheStatusEnum;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ContextConfiguration(classes = FhirResourceDaoR4OffHeapSearchCacheTest.OffHeapCacheConfig.class)
+@DirtiesContext
+public class FhirResourceDaoR4OffHeapSearchCacheTest extends BaseJpaR4Test {
+
+	@BeforeEach
+	public void beforeEnableCache() {
+		myStorageSettings.setSearchResultOffHeapCacheMaxBytes(100_000);
+	}
+
+	@AfterEach
+	public void afterResetCache() {
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setSearchResultOffHeapCacheMaxBytes(defaults.getSearchResultOffHeapCacheMaxBytes());
+	}
+
+	@Test
+	public void testSearchIsNotReusedAfterResultsAreEvicted() {
+		IIdType smithId = createPatient(withFamily("Smith"));
+		createPatient(withFamily("Jones"));
+
+		PersistedJpaBundleProvider outcome = search("Smith");
+		assertEquals(SearchCacheStatusEnum.MISS, outcome.getCacheStatus());
+		assertThat(toUnqualifiedVersionlessIds(outcome)).containsExactly(smithId);
+
+		outcome = search("Smith");
+		assertEquals(SearchCacheStatusEnum.HIT, outcome.getCacheStatus());
+		assertThat(toUnqualifiedVersionlessIds(outcome)).containsExactly(smithId);
+
+		// Storing the results of another search with no room left evicts the first one
+		myStorageSettings.setSearchResultOffHeapCacheMaxBytes(1);
+		search("Jones");
+
+		outcome = search("Smith");
+		assertEquals(SearchCacheStatusEnum.MISS, outcome.getCacheStatus());
+		assertThat(toUnqualifiedVersionlessIds(outcome)).containsExactly(smithId);
+	}
+
+	private PersistedJpaBundleProvider search(String theFamily) {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add("family", new StringParam(theFamily));
+		return (PersistedJpaBundleProvider) myPatientDao.search(map, mySrd);
+	}
+
+	@Configuration
+	public static class OffHeapCacheConfig {
+
+		@Bean
+		@Primary
+		public ISearchResultCacheSvc offHeapSearchResultCacheSvc(JpaStorageSettings theStorageSettings) {
+			return new OffHeapSearchResultCacheSvcImpl(theStorageSettings);
+		}
+	}
+}
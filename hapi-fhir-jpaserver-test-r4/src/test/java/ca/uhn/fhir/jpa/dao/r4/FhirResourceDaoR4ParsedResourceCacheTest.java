@@ -0,0 +1,150 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCache;
+import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class FhirResourceDaoR4ParsedResourceCacheTest extends BaseJpaR4Test {
+
+	@Autowired
+	private ParsedResourceCache myParsedResourceCache;
+
+	@BeforeEach
+	public void before() {
+		myStorageSettings.setParsedResourceCacheSize(100);
+		myParsedResourceCache.invalidateAll();
+	}
+
+	@AfterEach
+	public void after() {
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setParsedResourceCacheSize(defaults.getParsedResourceCacheSize());
+		myStorageSettings.setParsedResourceCacheResourceTypes(defaults.getParsedResourceCacheResourceTypes());
+	}
+
+	@Test
+	public void testReadUsesCache() {
+		Practitioner practitioner = new Practitioner();
+		practitioner.addName().setFamily("Smith");
+		IIdType id = myPractitionerDao.create(practitioner, mySrd).getId().toUnqualifiedVersionless();
+
+		long hits = myParsedResourceCache.getHitCount();
+		long misses = myParsedResourceCache.getMissCount();
+
+		Practitioner read = myPractitionerDao.read(id, mySrd);
+		assertEquals("Smith", read.getNameFirstRep().getFamily());
+		assertEquals(misses + 1, myParsedResourceCache.getMissCount());
+
+		// Modifying the returned copy must not affect the cached resource
+		read.getNameFirstRep().setFamily("Jones");
+
+		read = myPractitionerDao.read(id, mySrd);
+		assertEquals("Smith", read.getNameFirstRep().getFamily());
+		assertEquals(id.withVersion("1").getValue(), read.getIdElement().toUnqualified().getValue());
+		assertEquals(hits + 1, myParsedResourceCache.getHitCount());
+
+		// Search results are loaded through the cache too
+		IBundleProvider outcome = myPractitionerDao.search(SearchParameterMap.newSynchronous(), mySrd);
+		assertThat(toUnqualifiedVersionlessIdValues(outcome)).containsExactly(id.getValue());
+		assertEquals(hits + 2, myParsedResourceCache.getHitCount());
+	}
+
+	@Test
+	public void testUpdateAndMetaAddAreVisible() {
+		Practitioner practitioner = new Practitioner();
+		practitioner.addName().setFamily("Smith");
+		IIdType id = myPractitionerDao.create(practitioner, mySrd).getId().toUnqualifiedVersionless();
+		myPractitionerDao.read(id, mySrd);
+
+		// Tags are stored outside of the resource body
+		Meta meta = new Meta();
+		meta.addTag().setSystem("http://tags").setCode("tag0");
+		myPractitionerDao.metaAddOperation(id, meta, mySrd);
+
+		Practitioner read = myPractitionerDao.read(id, mySrd);
+		assertEquals("Smith", read.getNameFirstRep().getFamily());
+		assertEquals("tag0", read.getMeta().getTagFirstRep().getCode());
+
+		// A new version is never served from the cache entry for the old one
+		read.getNameFirstRep().setFamily("Jones");
+		myPractitionerDao.update(read, mySrd);
+
+		read = myPractitionerDao.read(id, mySrd);
+		assertEquals("Jones", read.getNameFirstRep().getFamily());
+		assertEquals("2", read.getIdElement().getVersionIdPart());
+
+		read = myPractitionerDao.read(id.withVersion("1"), mySrd);
+		assertEquals("Smith", read.getNameFirstRep().getFamily());
+	}
+
+	@Test
+	public void testHistoryRewriteOfCurrentVersionIsVisible() {
+		myStorageSettings.setUpdateWithHistoryRewriteEnabled(true);
+		try {
+			Practitioner practitioner = new Practitioner();
+			practitioner.addName().setFamily("Smith");
+			IIdType id = myPractitionerDao.create(practitioner, mySrd).getId().toUnqualifiedVersionless();
+			Practitioner read = myPractitionerDao.read(id, mySrd);
+			Date lastUpdated = read.getMeta().getLastUpdated();
+
+			when(mySrd.isRewriteHistory()).thenReturn(true);
+			read.getNameFirstRep().setFamily("Jones");
+			read.setId(id.withVersion("1"));
+			myPractitionerDao.update(read, mySrd);
+
+			read = myPractitionerDao.read(id, mySrd);
+			assertEquals("Jones", read.getNameFirstRep().getFamily());
+			assertEquals("1", read.getIdElement().getVersionIdPart());
+			read = myPractitionerDao.read(id.withVersion("1"), mySrd);
+			assertEquals("Jones", read.getNameFirstRep().getFamily());
+
+			// The rewrite doesn't change the timestamp of the version
+			runInTransaction(() -> {
+				ResourceHistoryTable version = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id.getIdPartAsLong()), 1);
+				assertEquals(lastUpdated, version.getUpdatedDate());
+			});
+		} finally {
+			myStorageSettings.setUpdateWithHistoryRewriteEnabled(false);
+			when(mySrd.isRewriteHistory()).thenReturn(false);
+		}
+	}
+
+	@Test
+	public void testRestrictToResourceTypes() {
+		myStorageSettings.setParsedResourceCacheResourceTypes(Set.of("Practitioner"));
+
+		assertTrue(myParsedResourceCache.isEnabled("Practitioner"));
+		assertFalse(myParsedResourceCache.isEnabled("Organization"));
+
+		Organization org = new Organization();
+		org.setName("Acme");
+		IIdType id = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+
+		long misses = myParsedResourceCache.getMissCount();
+		myOrganizationDao.read(id, mySrd);
+		myOrganizationDao.read(id, mySrd);
+		assertEquals(misses, myParsedResourceCache.getMissCount());
+		assertEquals(0, myParsedResourceCache.getEstimatedSize());
+	}
+}
@@ -17,6 +17,8 @@ import ca.uhn.fhir.context.support.ConceptValidationOptions;
 import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.context.support.ValueSetExpansionOptions;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
@@ -25,6 +27,7 @@ import ca.uhn.fhir.jpa.api.model.DeleteMethodOutcome;
 import ca.uhn.fhir.jpa.api.model.ExpungeOptions;
 import ca.uhn.fhir.jpa.api.model.HistoryCountModeEnum;
 import ca.uhn.fhir.jpa.dao.data.ISearchParamPresentDao;
+import ca.uhn.fhir.jpa.dao.index.ResourceIdExistenceFilterSvc;
 import ca.uhn.fhir.jpa.entity.TermValueSet;
 import ca.uhn.fhir.jpa.entity.TermValueSetPreExpansionStatusEnum;
 import ca.uhn.fhir.jpa.interceptor.ForceOffsetSearchModeInterceptor;
@@ -49,11 +52,14 @@ import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
 import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.param.DateParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.auth.IAuthRule;
 import ca.uhn.fhir.rest.server.interceptor.auth.PolicyEnum;
@@ -139,6 +145,7 @@ import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -181,6 +188,8 @@ public class FhirResourceDaoR4QueryCountTest extends BaseResourceProviderR4Test
 	private ReindexStepV2 myReindexStep;
 	@Autowired
 	private DeleteExpungeStep myDeleteExpungeStep;
+	@Autowired
+	private ResourceIdExistenceFilterSvc myResourceIdExistenceFilterSvc;
 	private ReindexTestHelper myReindexTestHelper;
 	@Mock
 	private IJobDataSink<VoidModel> myMockJobDataSinkVoid;
@@ -210,6 +219,10 @@ public class FhirResourceDaoR4QueryCountTest extends BaseResourceProviderR4Test
 		myStorageSettings.setExpungeEnabled(false);
 		myStorageSettings.setUniqueIndexesEnabled(new JpaStorageSettings().isUniqueIndexesEnabled());
 		myStorageSettings.setUniqueIndexesCheckedBeforeSave(new JpaStorageSettings().isUniqueIndexesCheckedBeforeSave());
+		myStorageSettings.setBulkIndexWritesEnabled(new JpaStorageSettings().isBulkIndexWritesEnabled());
+		myStorageSettings.setBulkIndexWriteBatchSize(new JpaStorageSettings().getBulkIndexWriteBatchSize());
+		myStorageSettings.setTransactionPreparationThreadCount(new JpaStorageSettings().getTransactionPreparationThreadCount());
+		myStorageSettings.setResourceIdExistenceFilterEnabled(new JpaStorageSettings().isResourceIdExistenceFilterEnabled());
 
 		myFhirContext.getParserOptions().setStripVersionsFromReferences(true);
 		TermReadSvcImpl.setForceDisableHibernateSearchForUnitTest(false);
@@ -1932,6 +1945,200 @@ public class FhirResourceDaoR4QueryCountTest extends BaseResourceProviderR4Test
 
 	}
 
+	@Test
+	public void testTransactionWithMultipleCreates_BulkIndexWrites() {
+		myStorageSettings.setBulkIndexWritesEnabled(true);
+
+		BundleBuilder bb = new BundleBuilder(myFhirContext);
+		Patient p = new Patient();
+		p.setId(IdType.newRandomUuid());
+		p.setActive(true);
+		bb.addTransactionCreateEntry(p);
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("code" + (i % 2));
+			obs.setSubject(new Reference(p.getId()));
+			obs.setEffective(new DateTimeType("2024-01-0" + ((i % 9) + 1)));
+			bb.addTransactionCreateEntry(obs);
+		}
+
+		// Test
+		myCaptureQueriesListener.clear();
+		Bundle output = mySystemDao.transaction(mySrd, bb.getBundleTyped());
+
+		// Verify
+		assertEquals(1, myCaptureQueriesListener.countGetConnections());
+		assertEquals(0, myCaptureQueriesListener.countDeleteQueries());
+
+		// The 20 date rows are sent as a single JDBC batch
+		List<SqlQuery> dateInserts = myCaptureQueriesListener.getInsertQueries(t -> t.getSql(false, false).contains("HFJ_SPIDX_DATE"));
+		assertThat(dateInserts).hasSize(1);
+		assertEquals(20, dateInserts.get(0).getSize());
+
+		String patientId = new IdType(output.getEntry().get(0).getResponse().getLocation()).toUnqualifiedVersionless().getValue();
+		SearchParameterMap map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "code1"))
+			.add(Observation.SP_SUBJECT, new ReferenceParam(patientId));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(10);
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_DATE, new DateParam("2024-01-01"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(3);
+
+		// Update the resources in a second transaction, which replaces the bulk written rows
+		String observationId = new IdType(output.getEntry().get(1).getResponse().getLocation()).toUnqualifiedVersionless().getValue();
+		Observation obs = myObservationDao.read(new IdType(observationId), mySrd);
+		obs.getCode().getCodingFirstRep().setCode("code2");
+		bb = new BundleBuilder(myFhirContext);
+		bb.addTransactionUpdateEntry(obs);
+		mySystemDao.transaction(mySrd, bb.getBundleTyped());
+
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "code2"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).containsExactly(observationId);
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "code0"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(9);
+	}
+
+	@Test
+	public void testTransactionWithMultipleCreates_BulkIndexWrites_SmallBatchSize() {
+		myStorageSettings.setBulkIndexWritesEnabled(true);
+		myStorageSettings.setBulkIndexWriteBatchSize(5);
+
+		BundleBuilder bb = new BundleBuilder(myFhirContext);
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.setEffective(new DateTimeType("2024-01-0" + ((i % 9) + 1)));
+			bb.addTransactionCreateEntry(obs);
+		}
+
+		// Test
+		myCaptureQueriesListener.clear();
+		mySystemDao.transaction(mySrd, bb.getBundleTyped());
+
+		// Verify
+		List<SqlQuery> dateInserts = myCaptureQueriesListener.getInsertQueries(t -> t.getSql(false, false).contains("HFJ_SPIDX_DATE"));
+		assertThat(dateInserts).hasSize(4);
+		assertThat(dateInserts).allMatch(t -> t.getSize() == 5);
+	}
+
+	/**
+	 * Rows queued after the bundle has been flushed (here by an interceptor which
+	 * stores a resource while the deferred broadcasts are processed) must still
+	 * be written
+	 */
+	@Test
+	public void testTransactionWithMultipleCreates_BulkIndexWrites_ResourceStoredAfterFlush() {
+		myStorageSettings.setBulkIndexWritesEnabled(true);
+
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_TRANSACTION_PROCESSED)
+			public void transactionProcessed(RequestDetails theRequestDetails, TransactionDetails theTransactionDetails) {
+				Patient patient = new Patient();
+				patient.addName().setFamily("Interceptor");
+				myPatientDao.create(patient, null, true, theRequestDetails, theTransactionDetails);
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			BundleBuilder bb = new BundleBuilder(myFhirContext);
+			Patient p = new Patient();
+			p.addName().setFamily("Bundle");
+			bb.addTransactionCreateEntry(p);
+
+			// Test
+			mySystemDao.transaction(mySrd, bb.getBundleTyped());
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+
+		// Verify
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Bundle"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).hasSize(1);
+		map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("Interceptor"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).hasSize(1);
+	}
+
+	@Test
+	public void testTransactionWithMultipleCreates_ParallelPreparation() {
+		myStorageSettings.setTransactionPreparationThreadCount(4);
+
+		BundleBuilder bb = new BundleBuilder(myFhirContext);
+		Patient p = new Patient();
+		p.setId(IdType.newRandomUuid());
+		p.setActive(true);
+		p.addName().setFamily("Simpson");
+		bb.addTransactionCreateEntry(p);
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("code" + (i % 2));
+			obs.setSubject(new Reference(p.getId()));
+			obs.setEffective(new DateTimeType("2024-01-0" + ((i % 9) + 1)));
+			bb.addTransactionCreateEntry(obs);
+		}
+
+		// Test
+		myCaptureQueriesListener.clear();
+		Bundle output = mySystemDao.transaction(mySrd, bb.getBundleTyped());
+
+		// Verify
+		assertEquals(1, myCaptureQueriesListener.countGetConnections());
+
+		String patientId = new IdType(output.getEntry().get(0).getResponse().getLocation()).toUnqualifiedVersionless().getValue();
+		SearchParameterMap map = SearchParameterMap.newSynchronous()
+			.add(Patient.SP_FAMILY, new StringParam("Simpson"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(patientId);
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "code1"))
+			.add(Observation.SP_SUBJECT, new ReferenceParam(patientId));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(10);
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_DATE, new DateParam("2024-01-01"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(3);
+	}
+
+	/**
+	 * Indexes must not be prepared in advance if a pre-storage hook could modify the resource
+	 */
+	@Test
+	public void testTransactionWithMultipleCreates_ParallelPreparation_PreStorageHookModifiesResource() {
+		myStorageSettings.setTransactionPreparationThreadCount(4);
+
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_CREATED)
+			public void preStorageResourceCreated(IBaseResource theResource) {
+				if (theResource instanceof Observation obs) {
+					obs.getCode().getCodingFirstRep().setCode("modified");
+				}
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			BundleBuilder bb = new BundleBuilder(myFhirContext);
+			for (int i = 0; i < 10; i++) {
+				Observation obs = new Observation();
+				obs.setStatus(Observation.ObservationStatus.FINAL);
+				obs.getCode().addCoding().setSystem("http://loinc.org").setCode("original");
+				bb.addTransactionCreateEntry(obs);
+			}
+
+			// Test
+			mySystemDao.transaction(mySrd, bb.getBundleTyped());
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+
+		// Verify
+		SearchParameterMap map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "modified"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).hasSize(10);
+		map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam("http://loinc.org", "original"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd))).isEmpty();
+	}
+
 	@Nonnull
 	private Bundle createTransactionWithCreatesAndOneMatchUrl() {
 		BundleBuilder bb = new BundleBuilder(myFhirContext);
@@ -2921,6 +3128,38 @@ public class FhirResourceDaoR4QueryCountTest extends BaseResourceProviderR4Test
 
 	}
 
+	/**
+	 * See the class javadoc before changing the counts in this test!
+	 */
+	@Test
+	public void testTransactionWithUpdateAsCreate_ResourceIdExistenceFilter() {
+		myStorageSettings.setResourceIdExistenceFilterEnabled(true);
+		createPatient(withId("A"), withActiveTrue());
+		myResourceIdExistenceFilterSvc.loadNow();
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		for (String id : List.of("A", "B", "C")) {
+			Patient patient = new Patient();
+			patient.setId("Patient/" + id);
+			patient.setActive(false);
+			input.addEntry().setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/" + id);
+		}
+
+		// The new IDs aren't looked up, only the existing resource is loaded
+		myCaptureQueriesListener.clear();
+		mySystemDao.transaction(mySrd, input);
+		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
+		assertEquals(2, myCaptureQueriesListener.countSelectQueriesForCurrentThread());
+		for (SqlQuery next : myCaptureQueriesListener.getSelectQueriesForCurrentThread()) {
+			assertThat(next.getSql(true, false)).doesNotContain("'B'", "'C'");
+		}
+
+		// Resources created since the filter was built are found
+		assertFalse(myPatientDao.read(new IdType("Patient/B"), mySrd).getActive());
+		assertThrows(ResourceNotFoundException.class, () -> myPatientDao.read(new IdType("Patient/D"), mySrd));
+	}
+
 	@Test
 	public void testTransactionWithCreatePlaceholders() {
 		// Setup
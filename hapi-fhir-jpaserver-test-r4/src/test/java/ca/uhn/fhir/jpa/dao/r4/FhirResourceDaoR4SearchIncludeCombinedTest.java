@@ -0,0 +1,122 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FhirResourceDaoR4SearchIncludeCombinedTest extends BaseJpaR4Test {
+
+	@AfterEach
+	public void after() {
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setCombinedIncludeQueriesEnabled(defaults.isCombinedIncludeQueriesEnabled());
+	}
+
+	@Test
+	public void testRevIncludeIterate() {
+		List<String> expected = createPatientSummary();
+
+		List<String> separate = searchPatientSummary();
+		long separateQueries = countIncludeQueries();
+		assertThat(separate).containsExactlyInAnyOrderElementsOf(expected);
+
+		myStorageSettings.setCombinedIncludeQueriesEnabled(true);
+		List<String> combined = searchPatientSummary();
+		long combinedQueries = countIncludeQueries();
+		assertThat(combined).containsExactlyInAnyOrderElementsOf(expected);
+
+		// One query for each level of iteration (the last level finds nothing new) instead of
+		// one for each include at each level
+		assertThat(combinedQueries).isEqualTo(3);
+		assertThat(separateQueries).isEqualTo(7);
+	}
+
+	@Test
+	public void testIncludeWithTargetTypes() {
+		Organization org = new Organization();
+		org.setName("ORG");
+		IIdType orgId = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://foo").setValue("bar");
+		patient.setManagingOrganization(new Reference(orgId));
+		patient.addGeneralPractitioner(new Reference(orgId));
+		IIdType patientId = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		myStorageSettings.setCombinedIncludeQueriesEnabled(true);
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "bar"));
+		map.addInclude(new Include("Patient:organization"));
+		map.addInclude(new Include("Patient:general-practitioner:Organization"));
+		map.addInclude(new Include("Patient:link"));
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+
+		assertThat(toUnqualifiedVersionlessIdValues(outcome))
+				.containsExactlyInAnyOrder(patientId.getValue(), orgId.getValue());
+	}
+
+	private List<String> searchPatientSummary() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("http://foo", "bar"));
+		map.addRevInclude(new Include("Encounter:subject"));
+		map.addRevInclude(new Include("Observation:encounter").setRecurse(true));
+		map.addRevInclude(new Include("Condition:encounter").setRecurse(true));
+		myCaptureQueriesListener.clear();
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		return toUnqualifiedVersionlessIdValues(outcome);
+	}
+
+	private long countIncludeQueries() {
+		return myCaptureQueriesListener.getSelectQueriesForCurrentThread().stream()
+				.map(t -> t.getSql(false, false).toLowerCase(Locale.ROOT))
+				.filter(t -> t.contains("from hfj_res_link r where r.src_path"))
+				.count();
+	}
+
+	private List<String> createPatientSummary() {
+		List<String> retVal = new ArrayList<>();
+
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://foo").setValue("bar");
+		IIdType patientId = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		retVal.add(patientId.getValue());
+
+		for (int i = 0; i < 3; i++) {
+			Encounter encounter = new Encounter();
+			encounter.setSubject(new Reference(patientId));
+			IIdType encounterId = myEncounterDao.create(encounter, mySrd).getId().toUnqualifiedVersionless();
+			retVal.add(encounterId.getValue());
+
+			Observation observation = new Observation();
+			observation.setStatus(Observation.ObservationStatus.FINAL);
+			observation.setSubject(new Reference(patientId));
+			observation.setEncounter(new Reference(encounterId));
+			retVal.add(myObservationDao.create(observation, mySrd).getId().toUnqualifiedVersionless().getValue());
+
+			Condition condition = new Condition();
+			condition.setSubject(new Reference(patientId));
+			condition.setEncounter(new Reference(encounterId));
+			retVal.add(myConditionDao.create(condition, mySrd).getId().toUnqualifiedVersionless().getValue());
+		}
+
+		return retVal;
+	}
+}
@@ -3,9 +3,14 @@ package ca.uhn.fhir.jpa.dao.r4;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.jpa.model.search.SearchBuilderLoadIncludesParameters;
 import ca.uhn.fhir.jpa.search.PersistedJpaSearchFirstPageBundleProvider;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
@@ -37,12 +42,15 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -63,6 +71,8 @@ public class FhirResourceDaoR4SearchIncludeTest extends BaseJpaR4Test {
 	private IAnonymousInterceptor myAnonymousInterceptor;
 	@Captor
 	private ArgumentCaptor<HookParams> myParamsCaptor;
+	@Autowired
+	private SearchBuilderFactory<JpaPid> mySearchBuilderFactory;
 
 	@AfterEach
 	public void afterEach() {
@@ -434,4 +444,34 @@ public class FhirResourceDaoR4SearchIncludeTest extends BaseJpaR4Test {
 		assertThat(ids).containsExactlyInAnyOrder(patId.getValue(), groupId.getValue(), careTeam.getValue(), org.getValue());
 	}
 
+	/**
+	 * Callers of {@link ISearchBuilder#loadIncludes(SearchBuilderLoadIncludesParameters)} are
+	 * free to modify the returned set
+	 */
+	@Test
+	void testLoadIncludesReturnsModifiableSet() {
+		IIdType orgId = createOrganization();
+		IIdType patId = createPatient(withReference("managingOrganization", orgId));
+
+		Set<JpaPid> includes = runInTransaction(() -> {
+			SearchBuilderLoadIncludesParameters<JpaPid> parameters = new SearchBuilderLoadIncludesParameters<>();
+			parameters.setFhirContext(myFhirContext);
+			parameters.setEntityManager(myEntityManager);
+			parameters.setMatches(List.of(myIdHelperService.getPidOrThrowException(RequestPartitionId.allPartitions(), patId)));
+			parameters.setIncludeFilters(List.of(new Include("Patient:organization")));
+			parameters.setReverseMode(false);
+			parameters.setRequestDetails(mySrd);
+			return mySearchBuilderFactory.newSearchBuilder("Patient", Patient.class).loadIncludes(parameters);
+		});
+
+		JpaPid orgPid = runInTransaction(() -> myIdHelperService.getPidOrThrowException(RequestPartitionId.allPartitions(), orgId));
+		assertThat(includes).containsExactly(orgPid);
+		assertTrue(includes.add(null));
+		assertTrue(includes.remove(orgPid));
+		Iterator<JpaPid> iterator = includes.iterator();
+		iterator.next();
+		iterator.remove();
+		assertThat(includes).isEmpty();
+	}
+
 }
@@ -0,0 +1,122 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.dao.ZstdResourceCompressionSvc;
+import ca.uhn.fhir.jpa.dao.data.IResourceCompressionDictDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class FhirResourceDaoR4SearchResultParseTest extends BaseJpaR4Test {
+
+	@Autowired
+	private ZstdResourceCompressionSvc myZstdResourceCompressionSvc;
+	@Autowired
+	private IResourceCompressionDictDao myResourceCompressionDictDao;
+
+	@AfterEach
+	public void after() {
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setSearchResultParseThreadCount(defaults.getSearchResultParseThreadCount());
+		myStorageSettings.setTagStorageMode(defaults.getTagStorageMode());
+		myStorageSettings.setResourceEncoding(defaults.getResourceEncoding());
+		myZstdResourceCompressionSvc.setDictionarySize(ZstdResourceCompressionSvc.DEFAULT_DICTIONARY_SIZE);
+		runInTransaction(() -> myResourceCompressionDictDao.deleteAll());
+		myZstdResourceCompressionSvc.invalidateCaches();
+	}
+
+	@Test
+	public void testParseConcurrently() {
+		List<String> ids = createPatients(50);
+
+		List<IBaseResource> serial = searchAllPatients();
+
+		myStorageSettings.setSearchResultParseThreadCount(4);
+		List<IBaseResource> concurrent = searchAllPatients();
+
+		assertThat(toUnqualifiedVersionlessIdValues(concurrent)).containsExactlyElementsOf(ids);
+		assertThat(Thread.getAllStackTraces().keySet())
+				.anyMatch(t -> t.getName().startsWith("resource-parse-"));
+		for (int i = 0; i < serial.size(); i++) {
+			Patient expected = (Patient) serial.get(i);
+			Patient actual = (Patient) concurrent.get(i);
+			assertEquals(expected.getNameFirstRep().getFamily(), actual.getNameFirstRep().getFamily());
+			assertEquals(expected.getIdElement().getValue(), actual.getIdElement().getValue());
+			assertEquals(expected.getMeta().getLastUpdated(), actual.getMeta().getLastUpdated());
+			assertThat(actual.getMeta().getTag()).hasSize(1);
+			assertEquals("tag" + i, actual.getMeta().getTag().get(0).getCode());
+		}
+	}
+
+	@Test
+	public void testParseConcurrently_NonVersionedTags() {
+		myStorageSettings.setTagStorageMode(JpaStorageSettings.TagStorageModeEnum.NON_VERSIONED);
+		myStorageSettings.setSearchResultParseThreadCount(4);
+		List<String> ids = createPatients(20);
+
+		List<IBaseResource> resources = searchAllPatients();
+		assertThat(toUnqualifiedVersionlessIdValues(resources)).containsExactlyElementsOf(ids);
+		for (int i = 0; i < resources.size(); i++) {
+			Patient actual = (Patient) resources.get(i);
+			assertEquals("tag" + i, actual.getMeta().getTag().get(0).getCode());
+		}
+	}
+
+	@Test
+	public void testParseConcurrently_ZstdWithDictionary() {
+		myStorageSettings.setResourceEncoding(ResourceEncodingEnum.ZSTD);
+		createPatients(50);
+		myZstdResourceCompressionSvc.setDictionarySize(4 * 1024);
+		assertNotNull(myZstdResourceCompressionSvc.trainDictionary("Patient"));
+		for (int i = 0; i < 20; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily(String.format("Family%03d", 50 + i));
+			myPatientDao.create(patient, mySrd);
+		}
+
+		// Dictionaries are loaded by the search thread, not by the parsing threads
+		myZstdResourceCompressionSvc.invalidateCaches();
+		myStorageSettings.setSearchResultParseThreadCount(4);
+		List<IBaseResource> resources = searchAllPatients();
+
+		assertThat(resources).hasSize(70);
+		for (int i = 0; i < resources.size(); i++) {
+			Patient actual = (Patient) resources.get(i);
+			assertEquals(String.format("Family%03d", i), actual.getNameFirstRep().getFamily());
+		}
+	}
+
+	private List<IBaseResource> searchAllPatients() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous();
+		map.setSort(new SortSpec(Patient.SP_FAMILY));
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		return outcome.getResources(0, 1000);
+	}
+
+	private List<String> createPatients(int theCount) {
+		List<String> retVal = new ArrayList<>();
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.getMeta().addTag().setSystem("http://tags").setCode("tag" + i);
+			patient.addName().setFamily(String.format("Family%03d", i));
+			IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+			retVal.add(id.getValue());
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,95 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.search.builder.sql.SearchQueryShapeCache;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FhirResourceDaoR4SearchSqlShapeCacheTest extends BaseJpaR4Test {
+
+	@Autowired
+	private SearchQueryShapeCache mySearchQueryShapeCache;
+
+	@BeforeEach
+	public void beforeEnableCache() {
+		myStorageSettings.setSearchSqlShapeCacheSize(100);
+		mySearchQueryShapeCache.invalidateAll();
+	}
+
+	@AfterEach
+	public void afterResetCache() {
+		myStorageSettings.setSearchSqlShapeCacheSize(new JpaStorageSettings().getSearchSqlShapeCacheSize());
+		mySearchQueryShapeCache.invalidateAll();
+	}
+
+	@Test
+	public void testSameShapeReusesSql() {
+		IIdType idA = createPatient(withIdentifier("http://foo", "A"), withFamily("Smith"));
+		IIdType idB = createPatient(withIdentifier("http://foo", "B"), withFamily("Jones"));
+		long hits = mySearchQueryShapeCache.getHitCount();
+		long misses = mySearchQueryShapeCache.getMissCount();
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous("identifier", new TokenParam("http://foo", "A"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idA.getValue());
+		assertEquals(hits, mySearchQueryShapeCache.getHitCount());
+		assertEquals(misses + 1, mySearchQueryShapeCache.getMissCount());
+
+		// Only the value differs, so the SQL is reused with the new bind variables
+		map = SearchParameterMap.newSynchronous("identifier", new TokenParam("http://foo", "B"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idB.getValue());
+		assertEquals(hits + 1, mySearchQueryShapeCache.getHitCount());
+		assertEquals(misses + 1, mySearchQueryShapeCache.getMissCount());
+
+		// A token without a system is matched on a different hash, so it is a different shape
+		map = SearchParameterMap.newSynchronous("identifier", new TokenParam(null, "B"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idB.getValue());
+		assertEquals(hits + 1, mySearchQueryShapeCache.getHitCount());
+		assertEquals(misses + 2, mySearchQueryShapeCache.getMissCount());
+
+		map = SearchParameterMap.newSynchronous("family", new StringParam("Smith"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idA.getValue());
+		map = SearchParameterMap.newSynchronous("family", new StringParam("Jones"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idB.getValue());
+		assertEquals(hits + 2, mySearchQueryShapeCache.getHitCount());
+		assertEquals(misses + 3, mySearchQueryShapeCache.getMissCount());
+	}
+
+	@Test
+	public void testUncacheableSearchIsNotCached() {
+		IIdType idA = createPatient(withIdentifier("http://foo", "A"));
+		long hits = mySearchQueryShapeCache.getHitCount();
+		long misses = mySearchQueryShapeCache.getMissCount();
+
+		for (int i = 0; i < 2; i++) {
+			SearchParameterMap map = SearchParameterMap.newSynchronous("identifier", new TokenParam("http://foo", "A"));
+			map.setLastUpdated(new DateRangeParam("2000-01-01", null));
+			assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).containsExactly(idA.getValue());
+		}
+
+		assertEquals(hits, mySearchQueryShapeCache.getHitCount());
+		assertEquals(misses, mySearchQueryShapeCache.getMissCount());
+	}
+
+	@Test
+	public void testDisabledWhenSizeIsZero() {
+		myStorageSettings.setSearchSqlShapeCacheSize(0);
+		createPatient(withIdentifier("http://foo", "A"));
+		long misses = mySearchQueryShapeCache.getMissCount();
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous("identifier", new TokenParam("http://foo", "A"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map, mySrd))).hasSize(1);
+
+		assertEquals(misses, mySearchQueryShapeCache.getMissCount());
+	}
+}
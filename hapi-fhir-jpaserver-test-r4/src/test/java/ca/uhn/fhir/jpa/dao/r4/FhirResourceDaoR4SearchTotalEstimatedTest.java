@@ -0,0 +1,90 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FhirResourceDaoR4SearchTotalEstimatedTest extends BaseJpaR4Test {
+
+	@AfterEach
+	public void after() {
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setEstimatedTotalExactCountThreshold(defaults.getEstimatedTotalExactCountThreshold());
+		myStorageSettings.setDefaultTotalMode(defaults.getDefaultTotalMode());
+	}
+
+	@Test
+	public void testSynchronous_TotalBelowThresholdIsExact() {
+		createPatients(5);
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("SIMPSON"));
+		map.setCount(2);
+		map.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		myCaptureQueriesListener.clear();
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+
+		assertEquals(5, outcome.size());
+		assertNull(outcome.getEstimatedSize());
+		assertThat(outcome.getResources(0, 10)).hasSize(2);
+		assertNoCountQuery();
+	}
+
+	@Test
+	public void testSynchronous_TotalAboveThreshold() {
+		myStorageSettings.setEstimatedTotalExactCountThreshold(3);
+		createPatients(5);
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("SIMPSON"));
+		map.setCount(2);
+		map.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		myCaptureQueriesListener.clear();
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+
+		// H2 has no planner estimate, so no total is available
+		assertNull(outcome.size());
+		assertNull(outcome.getEstimatedSize());
+		assertThat(outcome.getResources(0, 10)).hasSize(2);
+		assertNoCountQuery();
+	}
+
+	@Test
+	public void testAsynchronous_DefaultTotalMode() {
+		myStorageSettings.setDefaultTotalMode(SearchTotalModeEnum.ESTIMATED);
+		createPatients(5);
+
+		SearchParameterMap map = new SearchParameterMap(Patient.SP_FAMILY, new StringParam("SIMPSON"));
+		map.setCount(2);
+		myCaptureQueriesListener.clear();
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+
+		assertEquals(5, outcome.size());
+		assertThat(outcome.getResources(0, 2)).hasSize(2);
+		assertNoCountQuery();
+	}
+
+	private void assertNoCountQuery() {
+		assertThat(myCaptureQueriesListener.getSelectQueries())
+				.map(t -> t.getSql(false, false).toLowerCase(Locale.ROOT))
+				.noneMatch(t -> t.contains("count("));
+	}
+
+	private void createPatients(int theCount) {
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("SIMPSON").addGiven("GIVEN" + i);
+			myPatientDao.create(patient, mySrd);
+		}
+	}
+}
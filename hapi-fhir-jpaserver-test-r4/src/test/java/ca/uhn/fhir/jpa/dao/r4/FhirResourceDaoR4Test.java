@@ -23,6 +23,7 @@ import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.model.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
 import ca.uhn.fhir.jpa.model.util.UcumServiceUtil;
+import ca.uhn.fhir.jpa.search.builder.SearchBuilder;
 import ca.uhn.fhir.jpa.searchparam.SearchParamConstants;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
@@ -63,6 +64,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.search.mapper.orm.Search;
 import org.hibernate.search.mapper.orm.session.SearchSession;
 import org.hl7.fhir.instance.model.api.IAnyResource;
@@ -144,8 +146,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static ca.uhn.fhir.batch2.jobs.termcodesystem.TermCodeSystemJobConfig.TERM_CODE_SYSTEM_VERSION_DELETE_JOB_NAME;
 import static ca.uhn.fhir.rest.api.Constants.PARAM_HAS;
@@ -4377,6 +4381,73 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		assertEquals(ids, createdIds);
 	}
 
+	@Test
+	void testSearchForResourceStream_loadsResourcesInChunks() {
+		// given
+		Set<String> createdIds = IntStream.range(0, 7)
+			.mapToObj(i -> createObservation().getIdPart())
+			.collect(Collectors.toSet());
+
+		SystemRequestDetails request = new SystemRequestDetails();
+		TransactionTemplate txTemplate = newTxTemplate();
+		txTemplate.setReadOnly(true);
+
+		SearchBuilder.setMaxPageSizeForTest(3);
+		try {
+			// when
+			AtomicInteger maxManagedEntities = new AtomicInteger();
+			Set<String> ids = txTemplate.execute(t -> {
+				SessionImplementor session = myEntityManager.unwrap(SessionImplementor.class);
+				try (Stream<Observation> stream = myObservationDao.searchForResourceStream(new SearchParameterMap(), request)) {
+					return stream
+						.peek(resource -> maxManagedEntities.accumulateAndGet(
+							session.getPersistenceContextInternal().getNumberOfManagedEntities(), Math::max))
+						.map(resource -> resource.getIdElement().getIdPart())
+						.collect(Collectors.toSet());
+				}
+			});
+
+			// then
+			assertEquals(createdIds, ids);
+			// Only the entities for one chunk (a history entity and a resource entity per resource) are held at once
+			assertThat(maxManagedEntities.get()).isLessThanOrEqualTo(6);
+		} finally {
+			SearchBuilder.setMaxPageSizeForTest(null);
+		}
+	}
+
+	@Test
+	void testSearchForResourceStream_keepsEntitiesHeldByCaller() {
+		// given
+		IIdType heldId = createObservation(withObservationCode("http://foo", "bar"));
+		IntStream.range(0, 6).forEach(i -> createObservation());
+
+		SystemRequestDetails request = new SystemRequestDetails();
+		TransactionTemplate txTemplate = newTxTemplate();
+		txTemplate.setReadOnly(true);
+
+		SearchBuilder.setMaxPageSizeForTest(3);
+		try {
+			txTemplate.executeWithoutResult(t -> {
+				ResourceTable heldEntity = (ResourceTable) myObservationDao.readEntity(heldId, request);
+				SessionImplementor session = myEntityManager.unwrap(SessionImplementor.class);
+				int managedEntityCount = session.getPersistenceContextInternal().getNumberOfManagedEntities();
+
+				// when
+				try (Stream<Observation> stream = myObservationDao.searchForResourceStream(new SearchParameterMap(), request)) {
+					assertThat(stream.count()).isEqualTo(7);
+				}
+
+				// then
+				assertEquals(managedEntityCount, session.getPersistenceContextInternal().getNumberOfManagedEntities());
+				assertTrue(myEntityManager.contains(heldEntity));
+				assertThat(heldEntity.getParamsToken()).isNotEmpty();
+			});
+		} finally {
+			SearchBuilder.setMaxPageSizeForTest(null);
+		}
+	}
+
 	@Test
 	public void bundle1CreatesResourceByCondition_bundle2UpdatesExistingResourceToNotMatchConditionThenCreatesBySameCondition_shouldPass() {
 		// setup
@@ -0,0 +1,131 @@
+package ca.uhn.fhir.jpa.interceptor;
+
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.test.BaseJpaR4Test;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.param.StringParam;
+import net.ttddyy.dsproxy.listener.ChainListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.sql.DataSource;
+
+import static ca.uhn.fhir.jpa.interceptor.PerformanceMetricsInterceptor.TAG_RESOURCE_TYPE;
+import static ca.uhn.fhir.jpa.interceptor.PerformanceMetricsInterceptor.TAG_SEARCH_SHAPE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.lenient;
+
+public class PerformanceMetricsInterceptorR4Test extends BaseJpaR4Test {
+
+	private PerformanceMetricsRegistry myRegistry;
+	private PerformanceMetricsInterceptor mySvc;
+	@Autowired
+	private DataSource myDataSource;
+
+	@BeforeEach
+	public void beforeRegisterInterceptor() {
+		myRegistry = new PerformanceMetricsRegistry();
+		mySvc = new PerformanceMetricsInterceptor(myRegistry);
+		myInterceptorRegistry.registerInterceptor(mySvc);
+		lenient().when(mySrd.getResourceName()).thenReturn("Patient");
+	}
+
+	@AfterEach
+	public void afterUnregisterInterceptor() {
+		myInterceptorRegistry.unregisterInterceptor(mySvc);
+	}
+
+	@Test
+	public void testSynchronousSearch() {
+		createPatients(3);
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("SIMPSON").setExact(true));
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		assertThat(outcome.getResources(0, 10)).hasSize(3);
+
+		PerformanceMetricsRegistry.Histogram rows = getHistogram(PerformanceMetricsInterceptor.SELECT_ROWS, "family:exact");
+		assertEquals(1, rows.getCount());
+		assertEquals(3, rows.getTotal());
+		assertEquals(1, getHistogram(PerformanceMetricsInterceptor.SELECT_MILLIS, "family:exact").getCount());
+		assertEquals(1, getHistogram(PerformanceMetricsInterceptor.FIRST_RESULT_MILLIS, "family:exact").getCount());
+	}
+
+	@Test
+	public void testAsynchronousSearch_ReusesCache() {
+		createPatients(3);
+
+		for (int i = 0; i < 2; i++) {
+			SearchParameterMap map = new SearchParameterMap(Patient.SP_FAMILY, new StringParam("SIMPSON"));
+			IBundleProvider outcome = myPatientDao.search(map, mySrd);
+			assertThat(outcome.getResources(0, 10)).hasSize(3);
+		}
+
+		assertEquals(2, myRegistry.counter(PerformanceMetricsInterceptor.CACHE_LOOKUPS, TAG_RESOURCE_TYPE, "Patient").getCount());
+		assertEquals(1, myRegistry.counter(PerformanceMetricsInterceptor.CACHE_HITS, TAG_RESOURCE_TYPE, "Patient").getCount());
+
+		// Only the first search actually ran a query
+		assertEquals(1, getHistogram(PerformanceMetricsInterceptor.SELECT_ROWS, "family").getCount());
+		assertEquals(3, getHistogram(PerformanceMetricsInterceptor.SELECT_ROWS, "family").getTotal());
+	}
+
+	@Test
+	public void testMaximumSearchShapes() {
+		mySvc.setMaximumSearchShapes(1);
+		createPatients(1);
+
+		myPatientDao.search(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("SIMPSON")), mySrd);
+		myPatientDao.search(SearchParameterMap.newSynchronous(Patient.SP_GIVEN, new StringParam("GIVEN0")), mySrd);
+
+		assertEquals(1, getHistogram(PerformanceMetricsInterceptor.SELECT_ROWS, "family").getCount());
+		assertEquals(1, getHistogram(PerformanceMetricsInterceptor.SELECT_ROWS, PerformanceMetricsInterceptor.OTHER_SEARCH_SHAPE).getCount());
+		assertThat(myRegistry.getMeters())
+				.map(PerformanceMetricsRegistry.Meter::getTags)
+				.map(t -> t.get(TAG_SEARCH_SHAPE))
+				.doesNotContain("given");
+	}
+
+	@Test
+	public void testRequestSqlQueryCount() {
+		createPatients(3);
+		ChainListener queryListener = ((ProxyDataSource) myDataSource).getProxyConfig().getQueryListener();
+		QueryExecutionListener countingListener = mySvc.getSqlQueryCountingListener();
+		queryListener.addListener(countingListener);
+		try {
+			SystemRequestDetails requestDetails = new SystemRequestDetails();
+			requestDetails.setResourceName("Patient");
+			requestDetails.setRestOperationType(RestOperationTypeEnum.SEARCH_TYPE);
+
+			mySvc.incomingRequestPreHandled(requestDetails);
+			myCaptureQueriesListener.clear();
+			myPatientDao.search(SearchParameterMap.newSynchronous(Patient.SP_FAMILY, new StringParam("SIMPSON")), requestDetails);
+			int queryCount = myCaptureQueriesListener.countSelectQueriesForCurrentThread();
+			mySvc.processingCompleted(requestDetails);
+
+			PerformanceMetricsRegistry.Histogram histogram = myRegistry.histogram(PerformanceMetricsInterceptor.REQUEST_SQL_QUERIES, TAG_RESOURCE_TYPE, "Patient", PerformanceMetricsInterceptor.TAG_OPERATION, "search-type");
+			assertEquals(1, histogram.getCount());
+			assertThat(histogram.getTotal()).isGreaterThanOrEqualTo(queryCount).isGreaterThan(0);
+		} finally {
+			queryListener.getListeners().remove(countingListener);
+		}
+	}
+
+	private PerformanceMetricsRegistry.Histogram getHistogram(String theName, String theShape) {
+		return myRegistry.histogram(theName, TAG_RESOURCE_TYPE, "Patient", TAG_SEARCH_SHAPE, theShape);
+	}
+
+	private void createPatients(int theCount) {
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("SIMPSON").addGiven("GIVEN" + i);
+			myPatientDao.create(patient, mySrd);
+		}
+	}
+}
@@ -17,6 +17,8 @@ import org.hl7.fhir.r4.model.Patient;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +43,7 @@ public class ResourceProviderR4CacheTest extends BaseResourceProviderR4Test {
 		super.after();
 		myStorageSettings.setReuseCachedSearchResultsForMillis(new JpaStorageSettings().getReuseCachedSearchResultsForMillis());
 		myStorageSettings.setCacheControlNoStoreMaxResultsUpperLimit(new JpaStorageSettings().getCacheControlNoStoreMaxResultsUpperLimit());
+		myStorageSettings.setAdaptiveCacheWarmingMaxSearches(new JpaStorageSettings().getAdaptiveCacheWarmingMaxSearches());
 
 		myClient.unregisterInterceptor(myCapturingInterceptor);
 	}
@@ -193,6 +196,44 @@ public class ResourceProviderR4CacheTest extends BaseResourceProviderR4Test {
 		assertEquals(results1.getId(), results2.getId());
 	}
 
+	@ParameterizedTest
+	@ValueSource(strings = {"Patient?family=FAM", "Patient?family=FAM&_sort=-birthdate,_id&_count=5"})
+	public void testAdaptiveCacheWarming(String theUrl) {
+		myStorageSettings.setAdaptiveCacheWarmingMaxSearches(10);
+		myServer.getRestfulServer().getInterceptorService().registerInterceptor(myCacheWarmingSvc);
+
+		Patient pt1 = new Patient();
+		pt1.addName().setFamily("FAM");
+		myClient.create().resource(pt1).execute();
+
+		// A search requested only once isn't warmed
+		myClient.search().byUrl(theUrl).returnBundle(Bundle.class).execute();
+		runInTransaction(() -> assertEquals(1, mySearchEntityDao.count()));
+		myCacheWarmingSvc.performAdaptiveWarmingPass();
+		runInTransaction(() -> assertEquals(1, mySearchEntityDao.count()));
+
+		Bundle results1 = myClient.search().byUrl(theUrl).returnBundle(Bundle.class).execute();
+		assertThat(results1.getEntry()).hasSize(1);
+		assertEquals("HIT from " + myServerBase, myCapturingInterceptor.getLastResponse().getHeaders(Constants.HEADER_X_CACHE).get(0));
+
+		Patient pt2 = new Patient();
+		pt2.addName().setFamily("FAM");
+		myClient.create().resource(pt2).execute();
+
+		// The search is now frequent enough to be warmed, which replaces the cached search
+		myCacheWarmingSvc.performAdaptiveWarmingPass();
+		runInTransaction(() -> assertEquals(2, mySearchEntityDao.count()));
+
+		Bundle results2 = myClient.search().byUrl(theUrl).returnBundle(Bundle.class).execute();
+		assertThat(results2.getEntry()).hasSize(2);
+		assertEquals("HIT from " + myServerBase, myCapturingInterceptor.getLastResponse().getHeaders(Constants.HEADER_X_CACHE).get(0));
+		assertThat(results2.getId()).isNotEqualTo(results1.getId());
+
+		// Not warmed again until the cached search is close to expiring
+		myCacheWarmingSvc.performAdaptiveWarmingPass();
+		runInTransaction(() -> assertEquals(2, mySearchEntityDao.count()));
+	}
+
 	@Test
 	public void testDeletedSearchResultsNotReturnedFromCache() {
 		Patient p = new Patient();
@@ -0,0 +1,211 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.dao.JpaPid;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResourceProviderR4KeysetPagingTest extends BaseResourceProviderR4Test {
+
+	@BeforeEach
+	@Override
+	public void before() throws Exception {
+		super.before();
+		myStorageSettings.setKeysetPagingEnabled(true);
+	}
+
+	@AfterEach
+	@Override
+	public void after() throws Exception {
+		super.after();
+		myStorageSettings.setKeysetPagingEnabled(new JpaStorageSettings().isKeysetPagingEnabled());
+	}
+
+	@Test
+	public void testPageThroughLastUpdatedSort() {
+		List<String> ids = createPatients(25);
+
+		// Give some resources the same timestamp so that ties need to be broken by PID
+		Date sameTimestamp = new Date();
+		runInTransaction(() -> {
+			for (String id : ids.subList(5, 15)) {
+				myResourceTableDao.updateLastUpdated(JpaPid.fromId(new IdType(id).getIdPartAsLong()), sameTimestamp);
+			}
+		});
+
+		List<String> expected = new ArrayList<>(ids.subList(0, 5));
+		expected.addAll(ids.subList(15, 25));
+		expected.addAll(ids.subList(5, 15));
+
+		IQuery<Bundle> query = myClient
+			.search()
+			.forResource(Patient.class)
+			.sort()
+			.ascending(Constants.PARAM_LASTUPDATED)
+			.offset(0)
+			.count(10)
+			.returnBundle(Bundle.class);
+		assertThat(pageThrough(query, true)).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	public void testPageThroughIdSortDescending() {
+		List<String> ids = createPatients(12);
+		List<String> expected = new ArrayList<>(ids);
+		expected.sort((o1, o2) -> o2.compareTo(o1));
+
+		IQuery<Bundle> query = myClient
+			.search()
+			.forResource(Patient.class)
+			.sort()
+			.descending("_id")
+			.offset(0)
+			.count(5)
+			.returnBundle(Bundle.class);
+		assertThat(pageThrough(query, true)).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	public void testPageThroughWithDuplicateIndexRows() {
+		// Each patient matches the search three times, so results must be deduplicated on every page
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("urn:sys").setValue("A" + i);
+			patient.addIdentifier().setSystem("urn:sys").setValue("B" + i);
+			patient.addIdentifier().setSystem("urn:sys").setValue("C" + i);
+			ids.add(myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless().getValue());
+		}
+
+		Bundle page = myClient
+			.search()
+			.forResource(Patient.class)
+			.where(Patient.IDENTIFIER.exactly().systemAndIdentifier("urn:sys", null))
+			.sort()
+			.ascending(Constants.PARAM_LASTUPDATED)
+			.offset(0)
+			.count(5)
+			.returnBundle(Bundle.class)
+			.execute();
+		List<String> actual = new ArrayList<>(toUnqualifiedVersionlessIdValues(page));
+		assertThat(actual).hasSize(5);
+		page = myClient.loadPage().next(page).execute();
+		assertThat(page.getEntry()).hasSize(5);
+		actual.addAll(toUnqualifiedVersionlessIdValues(page));
+		page = myClient.loadPage().next(page).execute();
+		actual.addAll(toUnqualifiedVersionlessIdValues(page));
+
+		assertThat(actual).containsExactlyElementsOf(ids);
+	}
+
+	@Test
+	public void testTokenWithDifferentOffset() {
+		createPatients(7);
+
+		Bundle page = myClient
+			.search()
+			.forResource(Patient.class)
+			.sort()
+			.ascending(Constants.PARAM_LASTUPDATED)
+			.offset(0)
+			.count(5)
+			.returnBundle(Bundle.class)
+			.execute();
+		String nextUrl = page.getLink(Constants.LINK_NEXT).getUrl();
+		assertThat(nextUrl).contains(Constants.PARAM_OFFSET + "=5");
+
+		String url = nextUrl.replace(Constants.PARAM_OFFSET + "=5", Constants.PARAM_OFFSET + "=2");
+		InvalidRequestException e = assertThrows(
+			InvalidRequestException.class,
+			() -> myClient.search().byUrl(url).returnBundle(Bundle.class).execute());
+		assertThat(e.getMessage()).contains("The _offset value 2 does not match the page the _pageToken was created for");
+	}
+
+	@Test
+	public void testUnsupportedSortUsesOffset() {
+		List<String> ids = createPatients(7);
+
+		IQuery<Bundle> query = myClient
+			.search()
+			.forResource(Patient.class)
+			.sort()
+			.ascending(Patient.FAMILY)
+			.offset(0)
+			.count(5)
+			.returnBundle(Bundle.class);
+		assertThat(pageThrough(query, false)).containsExactlyElementsOf(ids);
+	}
+
+	@Test
+	public void testInvalidToken() {
+		String url = myServerBase + "/Patient?_sort=_lastUpdated&_offset=10&_count=10&" + Constants.PARAM_PAGE_TOKEN + "=foo";
+		InvalidRequestException e = assertThrows(
+			InvalidRequestException.class,
+			() -> myClient.search().byUrl(url).returnBundle(Bundle.class).execute());
+		assertThat(e.getMessage()).contains("Invalid _pageToken value: foo");
+	}
+
+	/**
+	 * Follows the next links of a search and returns the IDs of all results,
+	 * verifying whether each next link carries a page token
+	 */
+	private List<String> pageThrough(IQuery<Bundle> theQuery, boolean theExpectPageToken) {
+		List<String> retVal = new ArrayList<>();
+		Bundle page = theQuery.execute();
+		while (true) {
+			page.getEntry().forEach(t -> retVal.add(t.getResource().getIdElement().toUnqualifiedVersionless().getValue()));
+			if (page.getLink(Constants.LINK_NEXT) == null) {
+				break;
+			}
+
+			String nextUrl = page.getLink(Constants.LINK_NEXT).getUrl();
+			assertThat(nextUrl.contains(Constants.PARAM_PAGE_TOKEN)).isEqualTo(theExpectPageToken);
+
+			myCaptureQueriesListener.clear();
+			page = myClient.loadPage().next(page).execute();
+
+			if (theExpectPageToken) {
+				// The query seeks past the previous page instead of skipping rows
+				String sql = myCaptureQueriesListener.getSelectQueries().stream()
+					.map(t -> t.getSql(true, false))
+					.filter(t -> t.contains("HFJ_RESOURCE"))
+					.findFirst()
+					.orElseThrow()
+					.toLowerCase(Locale.ROOT);
+				assertThat(sql).doesNotContain(" offset ");
+			}
+
+			// Previous links never carry the page token for the current page
+			assertThat(page.getLink(Constants.LINK_PREVIOUS).getUrl()).doesNotContain(Constants.PARAM_PAGE_TOKEN);
+		}
+		return retVal;
+	}
+
+	private List<String> createPatients(int theCount) {
+		List<String> retVal = new ArrayList<>();
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("Family" + (char) ('A' + i));
+			IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+			retVal.add(id.getValue());
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,215 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.dao.JpaPidFk;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.narrative.DefaultThymeleafNarrativeGenerator;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.interceptor.CorsInterceptor;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResourceProviderR4PreEncodedReadTest extends BaseResourceProviderR4Test {
+
+	private List<Object> myCorsInterceptors;
+
+	@BeforeEach
+	@Override
+	public void before() throws Exception {
+		super.before();
+		myStorageSettings.setPreEncodedReadResponsesEnabled(true);
+		// The stored text is not used if a narrative would be generated, or if any
+		// interceptor could modify the response (CorsInterceptor has no-op hooks for this)
+		myFhirContext.setNarrativeGenerator(null);
+		myCorsInterceptors = myServer.getInterceptorService().getAllRegisteredInterceptors().stream()
+			.filter(t -> t instanceof CorsInterceptor)
+			.toList();
+		myCorsInterceptors.forEach(t -> myServer.getInterceptorService().unregisterInterceptor(t));
+	}
+
+	@AfterEach
+	@Override
+	public void after() throws Exception {
+		super.after();
+		myCorsInterceptors.forEach(t -> myServer.getInterceptorService().registerInterceptor(t));
+		myStorageSettings.setPreEncodedReadResponsesEnabled(new JpaStorageSettings().isPreEncodedReadResponsesEnabled());
+		myFhirContext.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
+	}
+
+	@Test
+	public void testReadUsesStoredJson() throws IOException {
+		IIdType id = createPatientWithRecognizableStoredText();
+
+		String body = get("/Patient/" + id.getIdPart());
+		assertThat(body).startsWith("{\"resourceType\":\"Patient\",\"id\":\"" + id.getIdPart() + "\",\"meta\":{\"versionId\":\"1\"");
+		assertThat(body).contains("\"active\": true");
+		assertThat(body).contains("\"tag\":[{\"system\":\"http://tags\",\"code\":\"tag0\"}]");
+
+		Patient actual = myFhirContext.newJsonParser().parseResource(Patient.class, body);
+		Patient expected = myPatientDao.read(id, mySrd);
+		assertTrue(expected.equalsDeep(actual), body);
+
+		// VRead
+		body = get("/Patient/" + id.getIdPart() + "/_history/1");
+		assertThat(body).contains("\"active\": true");
+	}
+
+	@Test
+	public void testFallBackToEncoding() throws IOException {
+		IIdType id = createPatientWithRecognizableStoredText();
+
+		// Filtered or pretty printed output
+		assertThat(get("/Patient/" + id.getIdPart() + "?_elements=name")).doesNotContain("\"active\"");
+		assertThat(get("/Patient/" + id.getIdPart() + "?_summary=data")).contains("\"active\":true");
+		assertThat(get("/Patient/" + id.getIdPart() + "?_pretty=true")).contains("\n  \"active\": true,");
+
+		// XML
+		assertThat(get("/Patient/" + id.getIdPart() + "?_format=xml")).contains("<active value=\"true\"/>");
+
+		// Interceptors which may modify the resource
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_PRESHOW_RESOURCES)
+			public void preShow() {
+				// nothing
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			assertThat(get("/Patient/" + id.getIdPart())).contains("\"active\":true");
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+		interceptor = new Object() {
+			@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+			public void outgoingResponse() {
+				// nothing
+			}
+		};
+		myServer.getInterceptorService().registerInterceptor(interceptor);
+		try {
+			assertThat(get("/Patient/" + id.getIdPart())).contains("\"active\":true");
+		} finally {
+			myServer.getInterceptorService().unregisterInterceptor(interceptor);
+		}
+
+		// Narrative generation
+		myFhirContext.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
+		try {
+			assertThat(get("/Patient/" + id.getIdPart())).contains("\"active\":true");
+		} finally {
+			myFhirContext.setNarrativeGenerator(null);
+		}
+
+		// Disabled
+		myStorageSettings.setPreEncodedReadResponsesEnabled(false);
+		assertThat(get("/Patient/" + id.getIdPart())).contains("\"active\":true");
+	}
+
+	@Test
+	public void testReadWithVersionedReference() throws IOException {
+		IIdType id = createPatientWithRecognizableStoredText();
+		runInTransaction(() -> {
+			ResourceHistoryTable version = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id.getIdPartAsLong()), 1);
+			version.setResourceTextVc("{\"resourceType\":\"Patient\",\"active\": true,\"managingOrganization\":{\"reference\":\"Organization/A/_history/2\"}}");
+			myResourceHistoryTableDao.save(version);
+		});
+
+		// The parser strips the version from the reference, so the stored text can't be used
+		String body = get("/Patient/" + id.getIdPart());
+		assertThat(body).contains("\"active\":true");
+		assertThat(body).contains("\"reference\":\"Organization/A\"");
+	}
+
+	@Test
+	public void testReadWithServerBaseUrlReference() throws IOException {
+		IIdType id = createPatientWithRecognizableStoredText();
+		runInTransaction(() -> {
+			ResourceHistoryTable version = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id.getIdPartAsLong()), 1);
+			version.setResourceTextVc("{\"resourceType\":\"Patient\",\"active\": true,\"managingOrganization\":{\"reference\":\"" + myServerBase + "/Organization/A\"}}");
+			myResourceHistoryTableDao.save(version);
+		});
+
+		// The parser removes the server base URL from references, so the stored text can't be used
+		String body = get("/Patient/" + id.getIdPart());
+		assertThat(body).contains("\"active\":true");
+		assertThat(body).contains("\"reference\":\"Organization/A\"");
+	}
+
+	@Test
+	public void testReadWithPrettyPrint() throws IOException {
+		IIdType id = createPatientWithRecognizableStoredText();
+
+		String body = get("/Patient/" + id.getIdPart() + "?_pretty=true");
+		myStorageSettings.setPreEncodedReadResponsesEnabled(false);
+		String expected = get("/Patient/" + id.getIdPart() + "?_pretty=true");
+
+		assertEquals(expected, body);
+		assertThat(body).contains("\n  \"active\": true,");
+	}
+
+	@Test
+	public void testReadWithMetaExtension() throws IOException {
+		Practitioner practitioner = new Practitioner();
+		practitioner.getMeta().addExtension("http://foo", new StringType("bar"));
+		practitioner.addName().setFamily("Smith");
+		IIdType id = myPractitionerDao.create(practitioner, mySrd).getId().toUnqualifiedVersionless();
+
+		// Resource.meta is stored in the body, so the stored text can't be used
+		String body = get("/Practitioner/" + id.getIdPart());
+		Practitioner actual = myFhirContext.newJsonParser().parseResource(Practitioner.class, body);
+		assertEquals("bar", actual.getMeta().getExtensionByUrl("http://foo").getValueAsPrimitive().getValueAsString());
+		assertEquals("Smith", actual.getNameFirstRep().getFamily());
+	}
+
+	/**
+	 * Replaces the stored text with equivalent JSON containing a space, so
+	 * that responses written from the stored text can be recognized
+	 */
+	private IIdType createPatientWithRecognizableStoredText() {
+		Patient patient = new Patient();
+		patient.getMeta().addTag().setSystem("http://tags").setCode("tag0");
+		patient.setActive(true);
+		patient.addName().setFamily("Simpson");
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		runInTransaction(() -> {
+			ResourceHistoryTable version = myResourceHistoryTableDao.findForIdAndVersion(JpaPidFk.fromId(id.getIdPartAsLong()), 1);
+			version.setEncoding(ResourceEncodingEnum.JSON);
+			version.setResource(null);
+			version.setResourceTextVc("{\"resourceType\":\"Patient\",\"active\": true,\"name\":[{\"family\":\"Simpson\"}]}");
+			myResourceHistoryTableDao.save(version);
+		});
+		return id;
+	}
+
+	private String get(String thePath) throws IOException {
+		HttpGet get = new HttpGet(myServerBase + thePath);
+		if (!thePath.contains("_format")) {
+			get.addHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+		}
+		try (CloseableHttpResponse resp = ourHttpClient.execute(get)) {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			return IOUtils.toString(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.jpa.provider.BaseResourceProviderR4Test;
+import ca.uhn.fhir.jpa.search.SearchPagePrefetchSvc;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResourceProviderR4SearchPagePrefetchTest extends BaseResourceProviderR4Test {
+
+	@Autowired
+	private SearchPagePrefetchSvc mySearchPagePrefetchSvc;
+
+	@BeforeEach
+	@Override
+	public void before() throws Exception {
+		super.before();
+		myStorageSettings.setSearchPagePrefetchMaxPages(10);
+		myStorageSettings.setSearchPreFetchThresholds(List.of(-1));
+		mySearchPagePrefetchSvc.invalidateAll();
+	}
+
+	@AfterEach
+	@Override
+	public void after() throws Exception {
+		super.after();
+		JpaStorageSettings defaults = new JpaStorageSettings();
+		myStorageSettings.setSearchPagePrefetchMaxPages(defaults.getSearchPagePrefetchMaxPages());
+		myStorageSettings.setSearchPagePrefetchMaxConcurrent(defaults.getSearchPagePrefetchMaxConcurrent());
+		myStorageSettings.setSearchPreFetchThresholds(defaults.getSearchPreFetchThresholds());
+	}
+
+	@Test
+	public void testPageThroughSearch() {
+		List<String> ids = createPatients(23);
+
+		// Pre-show interceptors are still invoked for prefetched pages
+		AtomicInteger shownCount = new AtomicInteger();
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_PRESHOW_RESOURCES)
+			public void preShow(IPreResourceShowDetails theDetails) {
+				shownCount.addAndGet(theDetails.size());
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			long hits = mySearchPagePrefetchSvc.getHitCount();
+
+			// Pages 3, 4 and 5 are prefetched while the previous page is being fetched
+			assertThat(pageThrough()).containsExactlyElementsOf(ids);
+			assertEquals(hits + 3, mySearchPagePrefetchSvc.getHitCount());
+			assertEquals(ids.size(), shownCount.get());
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+	}
+
+	@Test
+	public void testNoPrefetchWithPreAccessInterceptor() {
+		List<String> ids = createPatients(16);
+
+		Object interceptor = new Object() {
+			@Hook(Pointcut.STORAGE_PREACCESS_RESOURCES)
+			public void preAccess() {
+				// nothing
+			}
+		};
+		myInterceptorRegistry.registerInterceptor(interceptor);
+		try {
+			long hits = mySearchPagePrefetchSvc.getHitCount();
+			assertThat(pageThrough()).containsExactlyElementsOf(ids);
+			assertEquals(hits, mySearchPagePrefetchSvc.getHitCount());
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+	}
+
+	@Test
+	public void testDisabled() {
+		myStorageSettings.setSearchPagePrefetchMaxPages(0);
+		List<String> ids = createPatients(16);
+
+		long hits = mySearchPagePrefetchSvc.getHitCount();
+		assertThat(pageThrough()).containsExactlyElementsOf(ids);
+		assertEquals(hits, mySearchPagePrefetchSvc.getHitCount());
+	}
+
+	/**
+	 * Pages through a search for all patients in pages of 5, once the search has
+	 * finished loading, and returns the IDs of the results
+	 */
+	private List<String> pageThrough() {
+		Bundle page = myClient
+				.search()
+				.forResource(Patient.class)
+				.sort()
+				.ascending(Patient.FAMILY)
+				.count(5)
+				.returnBundle(Bundle.class)
+				.execute();
+
+		String nextUrl = page.getLink(Constants.LINK_NEXT).getUrl();
+		String uuid = UrlUtil.parseQueryString(nextUrl.substring(nextUrl.indexOf('?')))
+				.get(Constants.PARAM_PAGINGACTION)[0];
+		await().until(() -> runInTransaction(() -> mySearchEntityDao
+				.findByUuidAndFetchIncludes(uuid)
+				.orElseThrow()
+				.getStatus()) == SearchStatusEnum.FINISHED);
+
+		List<String> retVal = new ArrayList<>();
+		while (true) {
+			page.getEntry().forEach(t -> retVal.add(t.getResource().getIdElement().toUnqualifiedVersionless().getValue()));
+			if (page.getLink(Constants.LINK_NEXT) == null) {
+				break;
+			}
+			page = myClient.loadPage().next(page).execute();
+		}
+		return retVal;
+	}
+
+	private List<String> createPatients(int theCount) {
+		List<String> retVal = new ArrayList<>();
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("Family" + (char) ('A' + i));
+			IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+			retVal.add(id.getValue());
+		}
+		return retVal;
+	}
+}
@@ -48,6 +48,7 @@ import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static ca.uhn.fhir.batch2.jobs.reindex.ReindexUtils.JOB_REINDEX;
 import static org.apache.commons.lang3.StringUtils.countMatches;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
@@ -83,6 +84,7 @@ public class UpliftedRefchainsAndChainedSortingR5Test extends BaseJpaR5Test {
 	public void afterCleanupDao() {
 		super.afterCleanupDao();
 		myStorageSettings.setIndexOnUpliftedRefchains(new StorageSettings().isIndexOnUpliftedRefchains());
+		myStorageSettings.setReindexOnUpliftedRefchainTargetChange(new StorageSettings().isReindexOnUpliftedRefchainTargetChange());
 		myStorageSettings.setIndexMissingFields(new JpaStorageSettings().getIndexMissingFields());
 	}
 
@@ -509,6 +511,62 @@ public class UpliftedRefchainsAndChainedSortingR5Test extends BaseJpaR5Test {
 		assertThat(countMatches(querySql, "HASH_IDENTITY")).as(querySql).isEqualTo(0);
 	}
 
+	@Test
+	public void testUpdateTarget_ReindexesSources() {
+		// Setup
+		myStorageSettings.setReindexOnUpliftedRefchainTargetChange(true);
+
+		createSearchParam_EncounterSubject_WithUpliftOnName();
+
+		createPatientP1_HomerSimpson();
+		createPatientP2_MargeSimpson();
+		createEncounter(ENCOUNTER_E1, PATIENT_P1);
+		createEncounter(ENCOUNTER_E2, PATIENT_P2);
+		myBatch2JobHelper.awaitAllJobsOfJobDefinitionIdToComplete(JOB_REINDEX);
+		int initialJobCount = myBatch2JobHelper.findJobsByDefinition(JOB_REINDEX).size();
+
+		// Test
+		Patient p1 = newPatientP1_HomerSimpson(null);
+		p1.getNameFirstRep().getGiven().clear();
+		p1.getNameFirstRep().addGiven("Bart");
+		myPatientDao.update(p1, mySrd);
+
+		// Verify
+		assertThat(myBatch2JobHelper.findJobsByDefinition(JOB_REINDEX)).hasSize(initialJobCount + 1);
+		myBatch2JobHelper.awaitAllJobsOfJobDefinitionIdToComplete(JOB_REINDEX);
+
+		logAllStringIndexes();
+		List<String> stringsSpParams = getIndexedSearchParameters(myResourceIndexedSearchParamStringDao);
+		assertThat(stringsSpParams).as(stringsSpParams.toString())
+			.containsExactlyInAnyOrder("subject.name Bart", "subject.name Simpson", "subject.name Marge", "subject.name Simpson");
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous("subject", new ReferenceParam("name", "bart"));
+		assertThat(toUnqualifiedVersionlessIdValues(myEncounterDao.search(map, mySrd))).containsExactly(ENCOUNTER_E1);
+		map = SearchParameterMap.newSynchronous("subject", new ReferenceParam("name", "homer"));
+		assertThat(toUnqualifiedVersionlessIdValues(myEncounterDao.search(map, mySrd))).isEmpty();
+	}
+
+	@Test
+	public void testUpdateTarget_UpliftedValuesUnchanged_NoReindex() {
+		// Setup
+		myStorageSettings.setReindexOnUpliftedRefchainTargetChange(true);
+
+		createSearchParam_EncounterSubject_WithUpliftOnName();
+
+		createPatientP1_HomerSimpson();
+		createEncounter(ENCOUNTER_E1, PATIENT_P1);
+		myBatch2JobHelper.awaitAllJobsOfJobDefinitionIdToComplete(JOB_REINDEX);
+		int initialJobCount = myBatch2JobHelper.findJobsByDefinition(JOB_REINDEX).size();
+
+		// Test
+		Patient p1 = newPatientP1_HomerSimpson(null);
+		p1.setBirthDateElement(new DateType("1956-05-12"));
+		myPatientDao.update(p1, mySrd);
+
+		// Verify
+		assertThat(myBatch2JobHelper.findJobsByDefinition(JOB_REINDEX)).hasSize(initialJobCount);
+	}
+
 	/**
 	 * Only single chains are supported. Should fall back to a normal
 	 * search otherwise.
@@ -429,7 +429,33 @@ public class SearchQueryBuilderTest {
 		assertThat(generated.getBindVariables()).as(generated.getBindVariables().toString()).containsExactly("Patient", 500L, 501L, 10, 5);
 
 	}
-	
+
+	@Test
+	public void testBindVariablesSubstitutedForEachSearch() {
+		HibernatePropertiesProvider dialectProvider = new HibernatePropertiesProvider();
+		dialectProvider.setDialectForUnitTest(new PostgreSQLDialect());
+
+		SearchQueryBuilder builder = new SearchQueryBuilder(myFhirContext, myStorageSettings, myPartitionSettings, myRequestPartitionId, "Patient", mySqlBuilderFactory, dialectProvider, false);
+		builder.addResourceIdsPredicate(Lists.newArrayList(JpaPid.fromId(500L), JpaPid.fromId(501L)));
+		GeneratedSql generated1 = builder.generate(10, 5);
+
+		builder = new SearchQueryBuilder(myFhirContext, myStorageSettings, myPartitionSettings, myRequestPartitionId, "Patient", mySqlBuilderFactory, dialectProvider, false);
+		builder.addResourceIdsPredicate(Lists.newArrayList(JpaPid.fromId(600L), JpaPid.fromId(601L)));
+		GeneratedSql generated2 = builder.generate(20, 7);
+
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?) )) offset ? rows fetch next ? rows only", generated2.getSql());
+		assertEquals(generated1.getSql(), generated2.getSql());
+		assertThat(generated1.getBindVariables()).containsExactly("Patient", 500L, 501L, 10, 5);
+		assertThat(generated2.getBindVariables()).containsExactly("Patient", 600L, 601L, 20, 7);
+
+		// A different number of values
+		builder = new SearchQueryBuilder(myFhirContext, myStorageSettings, myPartitionSettings, myRequestPartitionId, "Patient", mySqlBuilderFactory, dialectProvider, false);
+		builder.addResourceIdsPredicate(Lists.newArrayList(JpaPid.fromId(600L), JpaPid.fromId(601L), JpaPid.fromId(602L)));
+		GeneratedSql generated3 = builder.generate(null, 7);
+		assertEquals("SELECT t0.RES_ID FROM HFJ_RESOURCE t0 WHERE (((t0.RES_TYPE = ?) AND (t0.RES_DELETED_AT IS NULL)) AND (t0.RES_ID IN (?,?,?) )) fetch first ? rows only", generated3.getSql());
+		assertThat(generated3.getBindVariables()).containsExactly("Patient", 600L, 601L, 602L, 7);
+	}
+
 	@Configuration
 	public static class MyConfig {
 
@@ -107,6 +107,19 @@ public interface IBundleProvider {
 		return null;
 	}
 
+	/**
+	 * If {@link #getCurrentPageOffset()} returns a non-null value, this method may return an
+	 * opaque token which allows the next page to be fetched more efficiently than by skipping
+	 * rows (e.g. by encoding the sort key of the last result on this page). If present, the
+	 * server adds it to the <code>next</code> link as the <code>_pageToken</code> parameter,
+	 * alongside the usual <code>_offset</code>.
+	 *
+	 * @since 8.4.0
+	 */
+	default String getNextPageToken() {
+		return null;
+	}
+
 	/**
 	 * Returns the instant as of which this result was created. The
 	 * result of this value is used to populate the <code>lastUpdated</code>
@@ -224,6 +237,20 @@ public interface IBundleProvider {
 	@Nullable
 	Integer size();
 
+	/**
+	 * Returns an estimate of the total number of results which match the given query, for use
+	 * when {@link #size()} returns {@literal null} (e.g. because the client requested
+	 * <code>_total=estimated</code>). If present, the server populates <code>Bundle.total</code>
+	 * with this value and marks it as an estimate using the
+	 * {@link ca.uhn.fhir.util.HapiExtensions#EXT_SEARCH_TOTAL_ESTIMATED} extension.
+	 *
+	 * @since 8.4.0
+	 */
+	@Nullable
+	default Integer getEstimatedSize() {
+		return null;
+	}
+
 	/**
 	 * This method returns <code>false</code> if the bundle provider knows that at least
 	 * one result exists.
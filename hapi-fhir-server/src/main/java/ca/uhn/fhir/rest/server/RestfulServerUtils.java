@@ -23,6 +23,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
@@ -47,9 +48,12 @@ import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.method.ElementsParameter;
 import ca.uhn.fhir.rest.server.method.SummaryEnumParameter;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.rest.server.util.CompositeInterceptorBroadcaster;
 import ca.uhn.fhir.util.BinaryUtil;
 import ca.uhn.fhir.util.DateUtils;
 import ca.uhn.fhir.util.UrlUtil;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import jakarta.annotation.Nonnull;
@@ -59,6 +63,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseMetaType;
 import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IDomainResource;
@@ -67,6 +72,7 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collections;
@@ -96,6 +102,8 @@ public class RestfulServerUtils {
 			Pattern.compile("\\s*([a-zA-Z0-9+.*/-]+)\\s*(;\\s*([a-zA-Z]+)\\s*=\\s*([a-zA-Z0-9.]+)\\s*)?(,?)");
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulServerUtils.class);
+	private static final JsonFactory ourJsonFactory =
+			new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
 
 	private static final HashSet<String> TEXT_ENCODE_ELEMENTS =
 			new HashSet<>(Arrays.asList("*.text", "*.id", "*.meta", "*.(mandatory)"));
@@ -1058,12 +1066,118 @@ public class RestfulServerUtils {
 		} else {
 			FhirVersionEnum forVersion = theResource.getStructureFhirVersionEnum();
 			IParser parser = getNewParser(theServer.getFhirContext(), forVersion, theRequestDetails);
-			parser.encodeResourceToWriter(theResource, writer);
+			String preEncodedJson = getPreEncodedJsonOrNull(
+					theServer, theResource, theSummaryMode, responseEncoding, parser, theRequestDetails);
+			if (preEncodedJson != null) {
+				writer.append(preEncodedJson);
+			} else {
+				parser.encodeResourceToWriter(theResource, writer);
+			}
 		}
 
 		return response.commitResponse(writer);
 	}
 
+	/**
+	 * If the resource carries its stored JSON body (see {@link Constants#RESOURCE_PRE_ENCODED_JSON})
+	 * and the response is a plain JSON read response, returns the response body built from the
+	 * stored body, the resource ID and the resource metadata. Otherwise returns <code>null</code>
+	 * and the resource should be encoded normally.
+	 * <p>
+	 * The stored body is only used if encoding the resource would produce the same output, so this
+	 * is skipped if the parser is not using its default options, if the body contains the server base
+	 * URL (which the parser removes from references), and if any interceptor which may modify the
+	 * response is registered. The ID and metadata are written using a JSON generator.
+	 * </p>
+	 */
+	@Nullable
+	private static String getPreEncodedJsonOrNull(
+			IRestfulServerDefaults theServer,
+			IBaseResource theResource,
+			Set<SummaryEnum> theSummaryMode,
+			ResponseEncoding theResponseEncoding,
+			IParser theParser,
+			RequestDetails theRequestDetails) {
+		Object storedJson = theResource.getUserData(Constants.RESOURCE_PRE_ENCODED_JSON);
+		if (!(storedJson instanceof String)) {
+			return null;
+		}
+		if (theResponseEncoding.getEncoding() != EncodingEnum.JSON
+				|| (theRequestDetails.getRestOperationType() != RestOperationTypeEnum.READ
+						&& theRequestDetails.getRestOperationType() != RestOperationTypeEnum.VREAD)
+				|| !theSummaryMode.equals(Collections.singleton(SummaryEnum.FALSE))
+				|| prettyPrintResponse(theServer, theRequestDetails)
+				|| ElementsParameter.getElementsValueOrNull(theRequestDetails, false) != null
+				|| ElementsParameter.getElementsValueOrNull(theRequestDetails, true) != null) {
+			return null;
+		}
+		FhirContext context =
+				getContextForVersion(theServer.getFhirContext(), theResource.getStructureFhirVersionEnum());
+		if (!isDefaultParserConfiguration(context, theParser)) {
+			return null;
+		}
+		String body = (String) storedJson;
+		String serverBaseUrl = theRequestDetails.getFhirServerBase();
+		if (isNotBlank(serverBaseUrl) && body.contains(serverBaseUrl)) {
+			return null;
+		}
+		if (theServer.getInterceptorService() != null) {
+			IInterceptorBroadcaster compositeBroadcaster = CompositeInterceptorBroadcaster.newCompositeBroadcaster(
+					theServer.getInterceptorService(), theRequestDetails);
+			if (compositeBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES)
+					|| compositeBroadcaster.hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+				return null;
+			}
+		}
+
+		String resourceType = theServer.getFhirContext().getResourceType(theResource);
+		String idPart = theResource.getIdElement().getIdPart();
+		String prefix = "{\"resourceType\":\"" + resourceType + "\"";
+		if (isBlank(idPart) || !body.startsWith(prefix)) {
+			return null;
+		}
+
+		// The parser may strip versions from references, so bodies which may contain them aren't used
+		if (body.contains("/_history/")) {
+			return null;
+		}
+		String remainder = body.substring(prefix.length());
+		if (remainder.startsWith(",\"id\"") || remainder.startsWith(",\"meta\"")) {
+			return null;
+		}
+
+		StringWriter writer = new StringWriter(body.length() + 200);
+		try (JsonGenerator generator = ourJsonFactory.createGenerator(writer)) {
+			generator.writeStartObject();
+			generator.writeStringField("resourceType", resourceType);
+			generator.writeStringField("id", idPart);
+			IBaseMetaType meta = theResource.getMeta();
+			if (meta != null && !meta.isEmpty()) {
+				generator.writeFieldName("meta");
+				generator.writeRawValue(theParser.encodeToString(meta));
+			}
+			// The object is completed by the remainder of the stored body
+			generator.flush();
+		} catch (IOException e) {
+			throw new InternalErrorException(Msg.code(2789) + e);
+		}
+		writer.append(remainder);
+		return writer.toString();
+	}
+
+	/**
+	 * Returns <code>false</code> if the parser would add to or remove from the stored body. Options
+	 * which control stripping versions from references are not checked, since bodies containing
+	 * versioned references are never used.
+	 */
+	private static boolean isDefaultParserConfiguration(FhirContext theContext, IParser theParser) {
+		return theContext.getNarrativeGenerator() == null
+				&& !theParser.isOmitResourceId()
+				&& !theParser.isSummaryMode()
+				&& !theParser.isEncodeElementsAppliesToChildResourcesOnly()
+				&& theParser.getEncodeForceResourceId() == null;
+	}
+
 	private static String getBinaryContentTypeOrDefault(IBaseBinary theBinary) {
 		String contentType;
 		if (isNotBlank(theBinary.getContentType())) {
@@ -41,6 +41,8 @@ public class SimpleBundleProvider implements IBundleProvider {
 	private IPrimitiveType<Date> myPublished = InstantDt.withCurrentTime();
 	private Integer myCurrentPageOffset;
 	private Integer myCurrentPageSize;
+	private String myNextPageToken;
+	private Integer myEstimatedSize;
 	private ResponsePage.ResponsePageBuilder myPageBuilder;
 
 	/**
@@ -127,6 +129,21 @@ public class SimpleBundleProvider implements IBundleProvider {
 		myCurrentPageSize = theCurrentPageSize;
 	}
 
+	/**
+	 * @since 8.4.0
+	 */
+	@Override
+	public String getNextPageToken() {
+		return myNextPageToken;
+	}
+
+	/**
+	 * @since 8.4.0
+	 */
+	public void setNextPageToken(String theNextPageToken) {
+		myNextPageToken = theNextPageToken;
+	}
+
 	/**
 	 * Returns the results stored in this provider
 	 */
@@ -197,6 +214,25 @@ public class SimpleBundleProvider implements IBundleProvider {
 		return mySize;
 	}
 
+	/**
+	 * @since 8.4.0
+	 */
+	@Override
+	public Integer getEstimatedSize() {
+		return myEstimatedSize;
+	}
+
+	/**
+	 * Sets an estimate of the total number of results, which is used if the exact
+	 * {@link #setSize(Integer) size} is not known
+	 *
+	 * @since 8.4.0
+	 */
+	public SimpleBundleProvider setEstimatedSize(Integer theEstimatedSize) {
+		myEstimatedSize = theEstimatedSize;
+		return this;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this).append("mySize", mySize).toString();
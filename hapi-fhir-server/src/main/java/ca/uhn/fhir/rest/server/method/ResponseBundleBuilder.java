@@ -19,6 +19,8 @@
  */
 package ca.uhn.fhir.rest.server.method;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.i18n.Msg;
 import ca.uhn.fhir.rest.api.BundleLinks;
 import ca.uhn.fhir.rest.api.IVersionSpecificBundleFactory;
@@ -29,8 +31,11 @@ import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.ExtensionUtil;
+import ca.uhn.fhir.util.HapiExtensions;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -71,8 +76,14 @@ public class ResponseBundleBuilder {
 				server.getFhirContext().newBundleFactory();
 		final IBundleProvider bundleProvider = theResponseBundleRequest.bundleProvider;
 
-		bundleFactory.addRootPropertiesToBundle(
-				bundleProvider.getUuid(), links, bundleProvider.size(), bundleProvider.getPublished());
+		Integer total = bundleProvider.size();
+		boolean totalIsEstimated = false;
+		if (total == null) {
+			total = bundleProvider.getEstimatedSize();
+			totalIsEstimated = total != null;
+		}
+
+		bundleFactory.addRootPropertiesToBundle(bundleProvider.getUuid(), links, total, bundleProvider.getPublished());
 		bundleFactory.addResourcesToBundle(
 				new ArrayList<>(pageResponse.getResourceList()),
 				theResponseBundleRequest.bundleType,
@@ -80,7 +91,25 @@ public class ResponseBundleBuilder {
 				server.getBundleInclusionRule(),
 				theResponseBundleRequest.includes);
 
-		return (IBaseBundle) bundleFactory.getResourceBundle();
+		IBaseBundle bundle = (IBaseBundle) bundleFactory.getResourceBundle();
+		if (totalIsEstimated) {
+			markTotalAsEstimated(server.getFhirContext(), bundle);
+		}
+		return bundle;
+	}
+
+	/**
+	 * Flags <code>Bundle.total</code> as an estimate rather than an exact count
+	 */
+	private static void markTotalAsEstimated(FhirContext theContext, IBaseBundle theBundle) {
+		BaseRuntimeChildDefinition totalChild =
+				theContext.getResourceDefinition(theBundle).getChildByName("total");
+		totalChild
+				.getAccessor()
+				.getFirstValueOrNull(theBundle)
+				.filter(t -> t instanceof IBaseHasExtensions)
+				.ifPresent(t -> ExtensionUtil.setExtension(
+						theContext, t, HapiExtensions.EXT_SEARCH_TOTAL_ESTIMATED, "boolean", true));
 	}
 
 	private ResponsePage buildResponsePage(ResponseBundleRequest theResponseBundleRequest) {
@@ -20,6 +20,7 @@
 package ca.uhn.fhir.rest.server.method;
 
 import ca.uhn.fhir.rest.api.BundleLinks;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import org.apache.commons.lang3.ObjectUtils;
@@ -28,7 +29,9 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is an intermediate record object that holds all the fields required to make the final bundle that will be returned to the client.
@@ -282,7 +285,7 @@ public class ResponsePage {
 							myResponseBundleRequest.requestDetails.getTenantId(),
 							myRequestedPage.offset + myRequestedPage.limit,
 							myRequestedPage.limit,
-							myResponseBundleRequest.getRequestParameters());
+							getOffsetPagingParameters(myBundleProvider.getNextPageToken()));
 					break;
 				case NONCACHED_OFFSET:
 					next = RestfulServerUtils.createOffsetPagingLink(
@@ -291,7 +294,7 @@ public class ResponsePage {
 							myResponseBundleRequest.requestDetails.getTenantId(),
 							ObjectUtils.defaultIfNull(myRequestedPage.offset, 0) + myNumToReturn,
 							myNumToReturn,
-							myResponseBundleRequest.getRequestParameters());
+							getOffsetPagingParameters(myBundleProvider.getNextPageToken()));
 					break;
 				case BUNDLE_PROVIDER_PAGE_IDS:
 					next = RestfulServerUtils.createPagingLink(
@@ -351,7 +354,7 @@ public class ResponsePage {
 							myResponseBundleRequest.requestDetails.getTenantId(),
 							Math.max(ObjectUtils.defaultIfNull(myRequestedPage.offset, 0) - myRequestedPage.limit, 0),
 							myRequestedPage.limit,
-							myResponseBundleRequest.getRequestParameters());
+							getOffsetPagingParameters(null));
 					break;
 				case NONCACHED_OFFSET:
 					{
@@ -362,7 +365,7 @@ public class ResponsePage {
 								myResponseBundleRequest.requestDetails.getTenantId(),
 								start,
 								myPageSize,
-								myResponseBundleRequest.getRequestParameters());
+								getOffsetPagingParameters(null));
 					}
 					break;
 				case BUNDLE_PROVIDER_PAGE_IDS:
@@ -395,6 +398,20 @@ public class ResponsePage {
 		}
 	}
 
+	/**
+	 * Returns the request parameters to use for an offset paging link. Any keyset page
+	 * token from the current request only applies to the current page, so it is replaced
+	 * with the given token (or removed if the given token is blank).
+	 */
+	private Map<String, String[]> getOffsetPagingParameters(String thePageToken) {
+		Map<String, String[]> retVal = new LinkedHashMap<>(myResponseBundleRequest.getRequestParameters());
+		retVal.remove(Constants.PARAM_PAGE_TOKEN);
+		if (StringUtils.isNotBlank(thePageToken)) {
+			retVal.put(Constants.PARAM_PAGE_TOKEN, new String[] {thePageToken});
+		}
+		return retVal;
+	}
+
 	/**
 	 * A builder for constructing ResponsePage objects.
 	 */
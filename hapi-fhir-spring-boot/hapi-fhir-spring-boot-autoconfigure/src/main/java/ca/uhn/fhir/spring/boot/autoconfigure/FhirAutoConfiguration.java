@@ -20,12 +20,15 @@
 package ca.uhn.fhir.spring.boot.autoconfigure;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
 import ca.uhn.fhir.jaxrs.server.AbstractJaxRsProvider;
 import ca.uhn.fhir.jpa.api.config.JpaStorageSettings;
 import ca.uhn.fhir.jpa.config.HapiJpaConfig;
 import ca.uhn.fhir.jpa.config.JpaDstu2Config;
 import ca.uhn.fhir.jpa.config.dstu3.JpaDstu3Config;
 import ca.uhn.fhir.jpa.config.r4.JpaR4Config;
+import ca.uhn.fhir.jpa.interceptor.PerformanceMetricsInterceptor;
+import ca.uhn.fhir.jpa.interceptor.PerformanceMetricsRegistry;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.provider.BaseJpaProvider;
 import ca.uhn.fhir.jpa.provider.BaseJpaSystemProvider;
@@ -47,10 +50,16 @@ import ca.uhn.fhir.rest.server.interceptor.RequestValidatingInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.ResponseValidatingInterceptor;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.servlet.ServletException;
+import net.ttddyy.dsproxy.listener.ChainListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
 import okhttp3.OkHttpClient;
 import org.apache.http.client.HttpClient;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -207,6 +216,75 @@ public class FhirAutoConfiguration {
 			}
 		}
 
+		@Configuration
+		@ConditionalOnBean(IInterceptorService.class)
+		@ConditionalOnProperty(name = "hapi.fhir.jpa.metrics.enabled", havingValue = "true")
+		static class FhirJpaMetricsConfiguration {
+
+			@Bean
+			@ConditionalOnMissingBean
+			public PerformanceMetricsRegistry performanceMetricsRegistry() {
+				return new PerformanceMetricsRegistry();
+			}
+
+			@Bean
+			@ConditionalOnMissingBean
+			public PerformanceMetricsInterceptor performanceMetricsInterceptor(
+					PerformanceMetricsRegistry registry, IInterceptorService interceptorService) {
+				PerformanceMetricsInterceptor interceptor = new PerformanceMetricsInterceptor(registry);
+				interceptorService.registerInterceptor(interceptor);
+				return interceptor;
+			}
+
+			/**
+			 * The per-request SQL query counts are recorded by the server request hooks
+			 */
+			@Bean
+			public FhirRestfulServerCustomizer performanceMetricsServerCustomizer(
+					PerformanceMetricsInterceptor interceptor) {
+				return server -> server.registerInterceptor(interceptor);
+			}
+
+			@Bean
+			public static BeanPostProcessor performanceMetricsDataSourcePostProcessor(
+					ObjectProvider<PerformanceMetricsInterceptor> interceptor) {
+				return new SqlQueryCountingDataSourcePostProcessor(interceptor);
+			}
+
+			/**
+			 * Adds the SQL query counting listener of the {@link PerformanceMetricsInterceptor}
+			 * to each {@link DataSource}, wrapping it in a datasource-proxy if it isn't one already
+			 */
+			static class SqlQueryCountingDataSourcePostProcessor implements BeanPostProcessor {
+
+				private final ObjectFactory<PerformanceMetricsInterceptor> interceptor;
+
+				SqlQueryCountingDataSourcePostProcessor(ObjectFactory<PerformanceMetricsInterceptor> interceptor) {
+					this.interceptor = interceptor;
+				}
+
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof DataSource)) {
+						return bean;
+					}
+					QueryExecutionListener listener =
+							this.interceptor.getObject().getSqlQueryCountingListener();
+					if (bean instanceof ProxyDataSource) {
+						ChainListener chainListener =
+								((ProxyDataSource) bean).getProxyConfig().getQueryListener();
+						if (!chainListener.getListeners().contains(listener)) {
+							chainListener.addListener(listener);
+						}
+						return bean;
+					}
+					return ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+							.listener(listener)
+							.build();
+				}
+			}
+		}
+
 		@Configuration
 		@ConditionalOnBean({JpaStorageSettings.class, RestfulServer.class})
 		@SuppressWarnings("rawtypes")
@@ -1,19 +1,31 @@
 package ca.uhn.fhir.spring.boot.autoconfigure;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.interceptor.PerformanceMetricsInterceptor;
+import ca.uhn.fhir.jpa.interceptor.PerformanceMetricsRegistry;
 import ca.uhn.fhir.okhttp.client.OkHttpRestfulClientFactory;
 import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.RequestValidatingInterceptor;
+import ca.uhn.fhir.spring.boot.autoconfigure.FhirAutoConfiguration.FhirJpaServerConfiguration.FhirJpaMetricsConfiguration.SqlQueryCountingDataSourcePostProcessor;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.h2.jdbcx.JdbcDataSource;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.mock.env.MockEnvironment;
 
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -91,6 +103,37 @@ public class FhirAutoConfigurationTest {
 		assertThat(this.context.getBeansOfType(ApacheRestfulClientFactory.class)).hasSize(0);
 	}
 
+	@Test
+	public void withMetricsSqlQueryCounting() throws SQLException {
+		PerformanceMetricsRegistry registry = new PerformanceMetricsRegistry();
+		PerformanceMetricsInterceptor interceptor = new PerformanceMetricsInterceptor(registry);
+		JdbcDataSource h2DataSource = new JdbcDataSource();
+		h2DataSource.setURL("jdbc:h2:mem:metrics");
+		BeanPostProcessor postProcessor = new SqlQueryCountingDataSourcePostProcessor(() -> interceptor);
+
+		DataSource dataSource = (DataSource) postProcessor.postProcessAfterInitialization(h2DataSource, "dataSource");
+		assertThat(dataSource).isInstanceOf(ProxyDataSource.class);
+		assertThat(postProcessor.postProcessAfterInitialization(dataSource, "dataSource")).isSameAs(dataSource);
+
+		SystemRequestDetails requestDetails = new SystemRequestDetails();
+		requestDetails.setResourceName("Patient");
+		requestDetails.setRestOperationType(RestOperationTypeEnum.SEARCH_TYPE);
+		interceptor.incomingRequestPreHandled(requestDetails);
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("SELECT 1");
+			statement.execute("SELECT 2");
+		}
+		interceptor.processingCompleted(requestDetails);
+
+		PerformanceMetricsRegistry.Histogram histogram = registry.histogram(
+			PerformanceMetricsInterceptor.REQUEST_SQL_QUERIES,
+			PerformanceMetricsInterceptor.TAG_RESOURCE_TYPE, "Patient",
+			PerformanceMetricsInterceptor.TAG_OPERATION, "search-type");
+		assertThat(histogram.getCount()).isEqualTo(1);
+		assertThat(histogram.getTotal()).isEqualTo(2);
+	}
+
 	private void load(String... environment) {
 		load(new Class<?>[]{FhirAutoConfiguration.class}, null, environment);
 	}
@@ -43,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -137,6 +138,30 @@ public class JpaStorageSettings extends StorageSettings {
 	public static final int DEFAULT_TRANSACTION_ENTRIES_FOR_WRITE =
 			Integer.parseInt(DEFAULT_TRANSACTION_ENTRIES_FOR_WRITE_STRING);
 
+	/**
+	 * @see #setBulkIndexWriteBatchSize(int)
+	 * @since 8.4.0
+	 */
+	public static final int DEFAULT_BULK_INDEX_WRITE_BATCH_SIZE = 500;
+
+	/**
+	 * @see #setSearchPagePrefetchMaxConcurrent(int)
+	 * @since 8.4.0
+	 */
+	public static final int DEFAULT_SEARCH_PAGE_PREFETCH_MAX_CONCURRENT = 4;
+
+	/**
+	 * @see #setSearchPagePrefetchMaxResources(int)
+	 * @since 8.4.0
+	 */
+	public static final int DEFAULT_SEARCH_PAGE_PREFETCH_MAX_RESOURCES = 5000;
+
+	/**
+	 * @see #setEstimatedTotalExactCountThreshold(int)
+	 * @since 8.4.0
+	 */
+	public static final int DEFAULT_ESTIMATED_TOTAL_EXACT_COUNT_THRESHOLD = 1000;
+
 	public static final List<Integer> DEFAULT_SEARCH_PRE_FETCH_THRESHOLDS = Arrays.asList(13, 503, 2003, 1000003, -1);
 
 	/**
@@ -438,6 +463,86 @@ public class JpaStorageSettings extends StorageSettings {
 	 */
 	private boolean myWriteToSearchParamIdentityTable = true;
 
+	/**
+	 * @since 8.4.0
+	 */
+	private boolean myBulkIndexWritesEnabled = false;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int myBulkIndexWriteBatchSize = DEFAULT_BULK_INDEX_WRITE_BATCH_SIZE;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int myParsedResourceCacheSize = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private Set<String> myParsedResourceCacheResourceTypes = new HashSet<>();
+
+	/**
+	 * @since 8.4.0
+	 */
+	private boolean myPreEncodedReadResponsesEnabled = false;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private boolean myKeysetPagingEnabled = false;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int mySearchPagePrefetchMaxPages = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int mySearchPagePrefetchMaxConcurrent = DEFAULT_SEARCH_PAGE_PREFETCH_MAX_CONCURRENT;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int mySearchPagePrefetchMaxResources = DEFAULT_SEARCH_PAGE_PREFETCH_MAX_RESOURCES;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int mySearchSqlShapeCacheSize = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private long mySearchResultOffHeapCacheMaxBytes = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int mySearchResultParseThreadCount = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private boolean myCombinedIncludeQueriesEnabled = false;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int myEstimatedTotalExactCountThreshold = DEFAULT_ESTIMATED_TOTAL_EXACT_COUNT_THRESHOLD;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private int myAdaptiveCacheWarmingMaxSearches = 0;
+
+	/**
+	 * @since 8.4.0
+	 */
+	private boolean myResourceIdExistenceFilterEnabled = false;
+
 	/**
 	 * Constructor
 	 */
@@ -1092,10 +1197,30 @@ public class JpaStorageSettings extends StorageSettings {
 		myExpungeThreadCount = Math.max(myExpungeThreadCount, 1); // Minimum of 1
 	}
 
+	/**
+	 * Returns the encoding used to store resource bodies in the <code>HFJ_RES_VER</code> table.
+	 *
+	 * @see #setResourceEncoding(ResourceEncodingEnum)
+	 */
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
 
+	/**
+	 * Sets the encoding used to store resource bodies in the <code>HFJ_RES_VER</code> table.
+	 * The default is {@link ResourceEncodingEnum#JSONC}.
+	 * <p>
+	 * Note that {@link ResourceEncodingEnum#JSON} and {@link ResourceEncodingEnum#JSONC} are only
+	 * used on platforms where the resource body is stored as a binary (i.e. Oracle). On all other
+	 * platforms the body is stored as inline JSON text. {@link ResourceEncodingEnum#SMILE} is
+	 * always stored as a binary, and avoids JSON text parsing when resources are read back.
+	 * {@link ResourceEncodingEnum#ZSTD} is also always stored as a binary, and compresses each
+	 * resource body using a dictionary which is periodically trained for its resource type (see
+	 * <code>ZstdResourceCompressionSvc</code>). Changing
+	 * this setting only affects newly written resource versions, previously stored versions remain
+	 * readable in their original encoding.
+	 * </p>
+	 */
 	public void setResourceEncoding(ResourceEncodingEnum theResourceEncoding) {
 		myResourceEncoding = theResourceEncoding;
 	}
@@ -2756,6 +2881,573 @@ public class JpaStorageSettings extends StorageSettings {
 		myWriteToSearchParamIdentityTable = theWriteToSearchParamIdentityTable;
 	}
 
+	/**
+	 * If enabled (default is {@literal false}), search parameter index rows created while processing a FHIR
+	 * transaction bundle are not persisted one entity at a time. Instead they are collected for the duration
+	 * of the bundle, grouped by index table, and written using large JDBC batches when the transaction
+	 * processor flushes its writes to the database. These rows are never added to the Hibernate persistence
+	 * context, which avoids the per-entity bookkeeping and dirty checking that otherwise dominates the cost
+	 * of indexing very large bundles.
+	 * <p>
+	 * Because the index rows are only written when the bundle is flushed, searches performed while the
+	 * bundle is being processed will not see index rows for resources created earlier in the same bundle.
+	 * The transaction processor already defers all writes until this point, so this does not change
+	 * the behaviour of standard transaction processing.
+	 * </p>
+	 *
+	 * @see #setBulkIndexWriteBatchSize(int)
+	 * @since 8.4.0
+	 */
+	public boolean isBulkIndexWritesEnabled() {
+		return myBulkIndexWritesEnabled;
+	}
+
+	/**
+	 * If enabled (default is {@literal false}), search parameter index rows created while processing a FHIR
+	 * transaction bundle are not persisted one entity at a time. Instead they are collected for the duration
+	 * of the bundle, grouped by index table, and written using large JDBC batches when the transaction
+	 * processor flushes its writes to the database. These rows are never added to the Hibernate persistence
+	 * context, which avoids the per-entity bookkeeping and dirty checking that otherwise dominates the cost
+	 * of indexing very large bundles.
+	 * <p>
+	 * Because the index rows are only written when the bundle is flushed, searches performed while the
+	 * bundle is being processed will not see index rows for resources created earlier in the same bundle.
+	 * The transaction processor already defers all writes until this point, so this does not change
+	 * the behaviour of standard transaction processing.
+	 * </p>
+	 *
+	 * @see #setBulkIndexWriteBatchSize(int)
+	 * @since 8.4.0
+	 */
+	public void setBulkIndexWritesEnabled(boolean theBulkIndexWritesEnabled) {
+		myBulkIndexWritesEnabled = theBulkIndexWritesEnabled;
+	}
+
+	/**
+	 * When {@link #isBulkIndexWritesEnabled() bulk index writes} are enabled, this is the JDBC
+	 * batch size used when writing the collected index rows. Default is {@value #DEFAULT_BULK_INDEX_WRITE_BATCH_SIZE}.
+	 * On PostgreSQL, enabling the <code>reWriteBatchedInserts</code> JDBC driver property causes these
+	 * batches to be sent as multi-row <code>INSERT</code> statements.
+	 *
+	 * @since 8.4.0
+	 */
+	public int getBulkIndexWriteBatchSize() {
+		return myBulkIndexWriteBatchSize;
+	}
+
+	/**
+	 * When {@link #isBulkIndexWritesEnabled() bulk index writes} are enabled, this is the JDBC
+	 * batch size used when writing the collected index rows. Default is {@value #DEFAULT_BULK_INDEX_WRITE_BATCH_SIZE}.
+	 * On PostgreSQL, enabling the <code>reWriteBatchedInserts</code> JDBC driver property causes these
+	 * batches to be sent as multi-row <code>INSERT</code> statements.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setBulkIndexWriteBatchSize(int theBulkIndexWriteBatchSize) {
+		Validate.isTrue(theBulkIndexWriteBatchSize > 0, "theBulkIndexWriteBatchSize must be greater than 0");
+		myBulkIndexWriteBatchSize = theBulkIndexWriteBatchSize;
+	}
+
+	/**
+	 * If set to a value greater than 0 (default is 0), the server keeps a cache of up to this many parsed
+	 * resource bodies, keyed by resource PID and version. Reads, vreads and search result loading for
+	 * cached versions skip decoding and parsing the stored resource text, and instead copy the cached
+	 * resource. Because a given resource version is never modified, the cache does not need to be
+	 * invalidated when resources are updated or deleted, and is safe to use on clustered servers.
+	 * Resource metadata (tags, security labels, source and partition) is always populated from the
+	 * database.
+	 * <p>
+	 * Cache statistics are available from {@link ca.uhn.fhir.jpa.dao.ParsedResourceCache}.
+	 * </p>
+	 *
+	 * @see #setParsedResourceCacheResourceTypes(Set)
+	 * @since 8.4.0
+	 */
+	public int getParsedResourceCacheSize() {
+		return myParsedResourceCacheSize;
+	}
+
+	/**
+	 * If set to a value greater than 0 (default is 0), the server keeps a cache of up to this many parsed
+	 * resource bodies, keyed by resource PID and version. Reads, vreads and search result loading for
+	 * cached versions skip decoding and parsing the stored resource text, and instead copy the cached
+	 * resource. Because a given resource version is never modified, the cache does not need to be
+	 * invalidated when resources are updated or deleted, and is safe to use on clustered servers.
+	 * Resource metadata (tags, security labels, source and partition) is always populated from the
+	 * database.
+	 * <p>
+	 * Cache statistics are available from {@link ca.uhn.fhir.jpa.dao.ParsedResourceCache}.
+	 * </p>
+	 *
+	 * @see #setParsedResourceCacheResourceTypes(Set)
+	 * @since 8.4.0
+	 */
+	public void setParsedResourceCacheSize(int theParsedResourceCacheSize) {
+		Validate.isTrue(theParsedResourceCacheSize >= 0, "theParsedResourceCacheSize must not be negative");
+		myParsedResourceCacheSize = theParsedResourceCacheSize;
+	}
+
+	/**
+	 * If the {@link #setParsedResourceCacheSize(int) parsed resource cache} is enabled, only resources of
+	 * the given types will be cached. If empty (which is the default), resources of all types are cached.
+	 * This is useful for restricting the cache to frequently read and rarely changed resource types such
+	 * as <code>Practitioner</code>, <code>Organization</code> and <code>Location</code>.
+	 *
+	 * @since 8.4.0
+	 */
+	public Set<String> getParsedResourceCacheResourceTypes() {
+		return myParsedResourceCacheResourceTypes;
+	}
+
+	/**
+	 * If the {@link #setParsedResourceCacheSize(int) parsed resource cache} is enabled, only resources of
+	 * the given types will be cached. If empty (which is the default), resources of all types are cached.
+	 * This is useful for restricting the cache to frequently read and rarely changed resource types such
+	 * as <code>Practitioner</code>, <code>Organization</code> and <code>Location</code>.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setParsedResourceCacheResourceTypes(Set<String> theParsedResourceCacheResourceTypes) {
+		Validate.notNull(theParsedResourceCacheResourceTypes, "theParsedResourceCacheResourceTypes must not be null");
+		myParsedResourceCacheResourceTypes = theParsedResourceCacheResourceTypes;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), resources returned by a FHIR <code>read</code> or
+	 * <code>vread</code> operation carry their stored JSON body, and the REST server writes
+	 * plain JSON responses by adding the resource ID and metadata to that body instead of encoding
+	 * the parsed resource again. The server falls back to normal encoding whenever the response is
+	 * pretty printed, uses <code>_summary</code> or <code>_elements</code>, or when any interceptor
+	 * is registered against {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES}
+	 * or {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}, since those
+	 * interceptors (e.g. the consent interceptor) may modify the resource. It also falls back to
+	 * normal encoding if a narrative generator is configured, if the parser is configured to omit
+	 * or replace the resource ID, or if the stored body contains versioned references.
+	 * <p>
+	 * This setting should not be enabled if custom resource providers modify resources returned
+	 * by a DAO read before returning them.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isPreEncodedReadResponsesEnabled() {
+		return myPreEncodedReadResponsesEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), resources returned by a FHIR <code>read</code> or
+	 * <code>vread</code> operation carry their stored JSON body, and the REST server writes
+	 * plain JSON responses by adding the resource ID and metadata to that body instead of encoding
+	 * the parsed resource again. The server falls back to normal encoding whenever the response is
+	 * pretty printed, uses <code>_summary</code> or <code>_elements</code>, or when any interceptor
+	 * is registered against {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES}
+	 * or {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}, since those
+	 * interceptors (e.g. the consent interceptor) may modify the resource. It also falls back to
+	 * normal encoding if a narrative generator is configured, if the parser is configured to omit
+	 * or replace the resource ID, or if the stored body contains versioned references.
+	 * <p>
+	 * This setting should not be enabled if custom resource providers modify resources returned
+	 * by a DAO read before returning them.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setPreEncodedReadResponsesEnabled(boolean thePreEncodedReadResponsesEnabled) {
+		myPreEncodedReadResponsesEnabled = thePreEncodedReadResponsesEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), synchronous <code>_offset</code> searches which are
+	 * sorted by <code>_lastUpdated</code>, <code>_id</code> or <code>_pid</code> use keyset (seek)
+	 * pagination. The <code>next</code> link for such a search carries an opaque <code>_pageToken</code>
+	 * parameter encoding the sort value and resource PID of the last result on the page, and the
+	 * query for the next page starts directly after that result instead of skipping all
+	 * previous rows. This keeps the cost of fetching deep pages constant.
+	 * <p>
+	 * The links still carry <code>_offset</code>, and searches with other sort orders (or with a
+	 * page token that does not match the sort order) use regular offset paging.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isKeysetPagingEnabled() {
+		return myKeysetPagingEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), synchronous <code>_offset</code> searches which are
+	 * sorted by <code>_lastUpdated</code>, <code>_id</code> or <code>_pid</code> use keyset (seek)
+	 * pagination. The <code>next</code> link for such a search carries an opaque <code>_pageToken</code>
+	 * parameter encoding the sort value and resource PID of the last result on the page, and the
+	 * query for the next page starts directly after that result instead of skipping all
+	 * previous rows. This keeps the cost of fetching deep pages constant.
+	 * <p>
+	 * The links still carry <code>_offset</code>, and searches with other sort orders (or with a
+	 * page token that does not match the sort order) use regular offset paging.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setKeysetPagingEnabled(boolean theKeysetPagingEnabled) {
+		myKeysetPagingEnabled = theKeysetPagingEnabled;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), when a page of
+	 * a persisted search is loaded (e.g. using a <code>_getpages</code> link), the following page
+	 * is speculatively loaded in the background so that it is ready when the client requests it.
+	 * This value is the maximum number of prefetched pages held in memory at any time. Prefetched
+	 * pages which are not requested are discarded after a short time.
+	 * <p>
+	 * A page is only prefetched if the search has already found the results on it, and only if no
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES} interceptors are
+	 * registered, since these must be invoked in the context of the request which actually
+	 * returns the resources. {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES}
+	 * interceptors are invoked when the prefetched page is returned.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public int getSearchPagePrefetchMaxPages() {
+		return mySearchPagePrefetchMaxPages;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), when a page of
+	 * a persisted search is loaded (e.g. using a <code>_getpages</code> link), the following page
+	 * is speculatively loaded in the background so that it is ready when the client requests it.
+	 * This value is the maximum number of prefetched pages held in memory at any time. Prefetched
+	 * pages which are not requested are discarded after a short time.
+	 * <p>
+	 * A page is only prefetched if the search has already found the results on it, and only if no
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES} interceptors are
+	 * registered, since these must be invoked in the context of the request which actually
+	 * returns the resources. {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES}
+	 * interceptors are invoked when the prefetched page is returned.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchPagePrefetchMaxPages(int theSearchPagePrefetchMaxPages) {
+		mySearchPagePrefetchMaxPages = theSearchPagePrefetchMaxPages;
+	}
+
+	/**
+	 * When {@link #getSearchPagePrefetchMaxPages() search page prefetching} is enabled, this is the
+	 * maximum number of pages which may be prefetched concurrently. If this many prefetches are
+	 * already running, no further pages are prefetched until one completes.
+	 * Default is {@value #DEFAULT_SEARCH_PAGE_PREFETCH_MAX_CONCURRENT}.
+	 *
+	 * @since 8.4.0
+	 */
+	public int getSearchPagePrefetchMaxConcurrent() {
+		return mySearchPagePrefetchMaxConcurrent;
+	}
+
+	/**
+	 * When {@link #getSearchPagePrefetchMaxPages() search page prefetching} is enabled, this is the
+	 * maximum number of pages which may be prefetched concurrently. If this many prefetches are
+	 * already running, no further pages are prefetched until one completes.
+	 * Default is {@value #DEFAULT_SEARCH_PAGE_PREFETCH_MAX_CONCURRENT}.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchPagePrefetchMaxConcurrent(int theSearchPagePrefetchMaxConcurrent) {
+		mySearchPagePrefetchMaxConcurrent = theSearchPagePrefetchMaxConcurrent;
+	}
+
+	/**
+	 * When {@link #getSearchPagePrefetchMaxPages() search page prefetching} is enabled, this is the
+	 * maximum total number of resources (including <code>_include</code>d resources) which may be
+	 * held in prefetched pages at any time. Pages which would exceed this limit are not prefetched.
+	 * Default is {@value #DEFAULT_SEARCH_PAGE_PREFETCH_MAX_RESOURCES}.
+	 *
+	 * @since 8.4.0
+	 */
+	public int getSearchPagePrefetchMaxResources() {
+		return mySearchPagePrefetchMaxResources;
+	}
+
+	/**
+	 * When {@link #getSearchPagePrefetchMaxPages() search page prefetching} is enabled, this is the
+	 * maximum total number of resources (including <code>_include</code>d resources) which may be
+	 * held in prefetched pages at any time. Pages which would exceed this limit are not prefetched.
+	 * Default is {@value #DEFAULT_SEARCH_PAGE_PREFETCH_MAX_RESOURCES}.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchPagePrefetchMaxResources(int theSearchPagePrefetchMaxResources) {
+		mySearchPagePrefetchMaxResources = theSearchPagePrefetchMaxResources;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), the SQL generated
+	 * for searches is cached by search "shape", so that searches which only differ in the values
+	 * being searched for reuse the same SQL instead of rendering it again. This value is the
+	 * maximum number of shapes held in the cache. Only searches using plain token and string
+	 * parameters are cached.
+	 *
+	 * @since 8.4.0
+	 */
+	public int getSearchSqlShapeCacheSize() {
+		return mySearchSqlShapeCacheSize;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), the SQL generated
+	 * for searches is cached by search "shape", so that searches which only differ in the values
+	 * being searched for reuse the same SQL instead of rendering it again. This value is the
+	 * maximum number of shapes held in the cache. Only searches using plain token and string
+	 * parameters are cached.
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchSqlShapeCacheSize(int theSearchSqlShapeCacheSize) {
+		mySearchSqlShapeCacheSize = theSearchSqlShapeCacheSize;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), the result PIDs of
+	 * persisted searches are stored in compact off-heap buffers on the server which performed the
+	 * search instead of in the <code>HFJ_SEARCH_RESULT</code> table, and this value is the maximum
+	 * number of bytes used to store them. When the limit is reached, the results of the least
+	 * recently used searches are discarded, and any later requests for further pages of those
+	 * searches fail as though the search had expired.
+	 * <p>
+	 * Because search results are only available on the server which performed the search, this
+	 * should only be used with a single server, or with a load balancer which always routes requests
+	 * for a given search to the same server (e.g. using sticky sessions). Whether off-heap storage
+	 * is used at all is determined when the server starts.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public long getSearchResultOffHeapCacheMaxBytes() {
+		return mySearchResultOffHeapCacheMaxBytes;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (default is <code>0</code>), the result PIDs of
+	 * persisted searches are stored in compact off-heap buffers on the server which performed the
+	 * search instead of in the <code>HFJ_SEARCH_RESULT</code> table, and this value is the maximum
+	 * number of bytes used to store them. When the limit is reached, the results of the least
+	 * recently used searches are discarded, and any later requests for further pages of those
+	 * searches fail as though the search had expired.
+	 * <p>
+	 * Because search results are only available on the server which performed the search, this
+	 * should only be used with a single server, or with a load balancer which always routes requests
+	 * for a given search to the same server (e.g. using sticky sessions). Whether off-heap storage
+	 * is used at all is determined when the server starts.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchResultOffHeapCacheMaxBytes(long theSearchResultOffHeapCacheMaxBytes) {
+		mySearchResultOffHeapCacheMaxBytes = theSearchResultOffHeapCacheMaxBytes;
+	}
+
+	/**
+	 * If set to a value greater than <code>1</code> (default is <code>0</code>), the bodies of the
+	 * resources being loaded for a page of search results are decoded and parsed concurrently using
+	 * up to this many threads. The resources are still fetched from the database by the thread
+	 * handling the request, and the page is returned in the same order as it would be otherwise.
+	 * Small pages are always parsed by the thread handling the request.
+	 * <p>
+	 * This is mostly useful for searches which return pages of large resources (e.g. Bundle or
+	 * DiagnosticReport) on servers with many processors.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public int getSearchResultParseThreadCount() {
+		return mySearchResultParseThreadCount;
+	}
+
+	/**
+	 * If set to a value greater than <code>1</code> (default is <code>0</code>), the bodies of the
+	 * resources being loaded for a page of search results are decoded and parsed concurrently using
+	 * up to this many threads. The resources are still fetched from the database by the thread
+	 * handling the request, and the page is returned in the same order as it would be otherwise.
+	 * Small pages are always parsed by the thread handling the request.
+	 * <p>
+	 * This is mostly useful for searches which return pages of large resources (e.g. Bundle or
+	 * DiagnosticReport) on servers with many processors.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchResultParseThreadCount(int theSearchResultParseThreadCount) {
+		mySearchResultParseThreadCount = theSearchResultParseThreadCount;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), all of the <code>_include</code> or
+	 * <code>_revinclude</code> parameters of a search which name a specific search parameter
+	 * (i.e. not <code>*</code>) are resolved using a single SQL statement for each level of
+	 * iteration, instead of one statement for each parameter and path. Duplicate targets are
+	 * removed by the database. This reduces the number of database round trips for searches with
+	 * many includes, particularly when <code>:iterate</code> is used.
+	 * <p>
+	 * To stay within the limits that databases place on the number of bind parameters, the PIDs
+	 * being searched are split into smaller chunks when many includes are combined.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isCombinedIncludeQueriesEnabled() {
+		return myCombinedIncludeQueriesEnabled;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), all of the <code>_include</code> or
+	 * <code>_revinclude</code> parameters of a search which name a specific search parameter
+	 * (i.e. not <code>*</code>) are resolved using a single SQL statement for each level of
+	 * iteration, instead of one statement for each parameter and path. Duplicate targets are
+	 * removed by the database. This reduces the number of database round trips for searches with
+	 * many includes, particularly when <code>:iterate</code> is used.
+	 * <p>
+	 * To stay within the limits that databases place on the number of bind parameters, the PIDs
+	 * being searched are split into smaller chunks when many includes are combined.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setCombinedIncludeQueriesEnabled(boolean theCombinedIncludeQueriesEnabled) {
+		myCombinedIncludeQueriesEnabled = theCombinedIncludeQueriesEnabled;
+	}
+
+	/**
+	 * When a search requests an estimated total (<code>_total=estimated</code>), the server
+	 * first counts the matching resources exactly, stopping once this many have been found.
+	 * Searches with no more matches than this get an exact total. For searches with more
+	 * matches, the total is estimated from the row estimate of the database query planner
+	 * where the database supports this (currently PostgreSQL), and the total in the
+	 * response Bundle is marked as an estimate. On other databases no total is returned
+	 * for these searches.
+	 * <p>
+	 * Default is {@value #DEFAULT_ESTIMATED_TOTAL_EXACT_COUNT_THRESHOLD}.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public int getEstimatedTotalExactCountThreshold() {
+		return myEstimatedTotalExactCountThreshold;
+	}
+
+	/**
+	 * When a search requests an estimated total (<code>_total=estimated</code>), the server
+	 * first counts the matching resources exactly, stopping once this many have been found.
+	 * Searches with no more matches than this get an exact total. For searches with more
+	 * matches, the total is estimated from the row estimate of the database query planner
+	 * where the database supports this (currently PostgreSQL), and the total in the
+	 * response Bundle is marked as an estimate. On other databases no total is returned
+	 * for these searches.
+	 * <p>
+	 * Default is {@value #DEFAULT_ESTIMATED_TOTAL_EXACT_COUNT_THRESHOLD}.
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setEstimatedTotalExactCountThreshold(int theEstimatedTotalExactCountThreshold) {
+		Validate.isTrue(theEstimatedTotalExactCountThreshold >= 0, "theEstimatedTotalExactCountThreshold must be >= 0");
+		myEstimatedTotalExactCountThreshold = theEstimatedTotalExactCountThreshold;
+	}
+
+	/**
+	 * If set to a value greater than zero, the server tracks how often each search URL is
+	 * requested, and keeps up to this many of the most frequently requested searches warm
+	 * in the search cache. These searches are re-run in the background shortly before their
+	 * cached results would stop being reused (see {@link #getReuseCachedSearchResultsForMillis()}),
+	 * so clients repeatedly issuing the same searches don't see a slow response each time the
+	 * cached results expire.
+	 * <p>
+	 * Only searches requested on average at least once per cache reuse period are warmed.
+	 * Search frequencies are tracked in a fixed amount of memory, and older requests count
+	 * for less over time, so the warmed searches follow changes in traffic. This is independent
+	 * of any searches listed in {@link #getWarmCacheEntries()}.
+	 * </p>
+	 * <p>
+	 * Default is {@literal 0} (disabled).
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public int getAdaptiveCacheWarmingMaxSearches() {
+		return myAdaptiveCacheWarmingMaxSearches;
+	}
+
+	/**
+	 * If set to a value greater than zero, the server tracks how often each search URL is
+	 * requested, and keeps up to this many of the most frequently requested searches warm
+	 * in the search cache. These searches are re-run in the background shortly before their
+	 * cached results would stop being reused (see {@link #getReuseCachedSearchResultsForMillis()}),
+	 * so clients repeatedly issuing the same searches don't see a slow response each time the
+	 * cached results expire.
+	 * <p>
+	 * Only searches requested on average at least once per cache reuse period are warmed.
+	 * Search frequencies are tracked in a fixed amount of memory, and older requests count
+	 * for less over time, so the warmed searches follow changes in traffic. This is independent
+	 * of any searches listed in {@link #getWarmCacheEntries()}.
+	 * </p>
+	 * <p>
+	 * Default is {@literal 0} (disabled).
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setAdaptiveCacheWarmingMaxSearches(int theAdaptiveCacheWarmingMaxSearches) {
+		Validate.isTrue(theAdaptiveCacheWarmingMaxSearches >= 0, "theAdaptiveCacheWarmingMaxSearches must be >= 0");
+		myAdaptiveCacheWarmingMaxSearches = theAdaptiveCacheWarmingMaxSearches;
+	}
+
+	/**
+	 * If enabled, the server keeps a Bloom filter in memory containing the type and ID of every
+	 * resource in the database. When resolving resource IDs (e.g. for an update with a
+	 * client-assigned ID, or a reference to another resource), any ID which the filter shows
+	 * definitely does not exist is treated as not found without querying the database. This
+	 * greatly reduces the cost of loading resources with new client-assigned IDs.
+	 * <p>
+	 * The filter is built in the background by reading the ID of every resource in the database,
+	 * and is only used once this has finished. New resources are added to the filter as they are
+	 * created. Because of this, <b>this setting must only be enabled if this server is the only
+	 * process creating resources in the database</b>, since resources created by other processes
+	 * would incorrectly be treated as not found. This setting should also be enabled before the
+	 * server starts handling requests.
+	 * </p>
+	 * <p>
+	 * Default is {@literal false}
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public boolean isResourceIdExistenceFilterEnabled() {
+		return myResourceIdExistenceFilterEnabled;
+	}
+
+	/**
+	 * If enabled, the server keeps a Bloom filter in memory containing the type and ID of every
+	 * resource in the database. When resolving resource IDs (e.g. for an update with a
+	 * client-assigned ID, or a reference to another resource), any ID which the filter shows
+	 * definitely does not exist is treated as not found without querying the database. This
+	 * greatly reduces the cost of loading resources with new client-assigned IDs.
+	 * <p>
+	 * The filter is built in the background by reading the ID of every resource in the database,
+	 * and is only used once this has finished. New resources are added to the filter as they are
+	 * created. Because of this, <b>this setting must only be enabled if this server is the only
+	 * process creating resources in the database</b>, since resources created by other processes
+	 * would incorrectly be treated as not found. This setting should also be enabled before the
+	 * server starts handling requests.
+	 * </p>
+	 * <p>
+	 * Default is {@literal false}
+	 * </p>
+	 *
+	 * @since 8.4.0
+	 */
+	public void setResourceIdExistenceFilterEnabled(boolean theResourceIdExistenceFilterEnabled) {
+		myResourceIdExistenceFilterEnabled = theResourceIdExistenceFilterEnabled;
+	}
+
 	public enum StoreMetaSourceInformationEnum {
 		NONE(false, false),
 		SOURCE_URI(true, false),
@@ -413,6 +413,23 @@ public interface IFhirResourceDao<T extends IBaseResource> extends IDao {
 		return (List<T>) provider.getAllResources();
 	}
 
+	/**
+	 * Stream all search results matching theParams.
+	 * Unlike {@link #searchForResources(SearchParameterMap, RequestDetails)}, implementations
+	 * may fetch and parse the matching resources lazily in chunks as the Stream is consumed,
+	 * so that only a bounded number of resources is held in memory at any given time.
+	 * This call invokes both preaccess and preshow interceptors.
+	 * The Stream MUST be closed to avoid leaking resources.
+	 * If called within a transaction, the Stream will fail if passed outside the tx boundary.
+	 * @param theParams the search
+	 * @param theRequest for partition target info
+	 * @return a Stream that MUST only be used within the calling transaction.
+	 * @since 8.4.0
+	 */
+	default Stream<T> searchForResourceStream(SearchParameterMap theParams, RequestDetails theRequest) {
+		return searchForResources(theParams, theRequest).stream();
+	}
+
 	/**
 	 * Return the FHIR Ids matching theParams.
 	 * This call does not currently invoke any interceptors, so should only be used for infrastructure that
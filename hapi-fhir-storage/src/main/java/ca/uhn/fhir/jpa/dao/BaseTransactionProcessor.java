@@ -221,7 +221,7 @@ public abstract class BaseTransactionProcessor {
 		myVersionAdapter = theVersionAdapter;
 	}
 
-	private TaskExecutor getTaskExecutor() {
+	protected TaskExecutor getTaskExecutor() {
 		if (myExecutor == null) {
 			myExecutor = myThreadPoolFactory.newThreadPool(
 					myStorageSettings.getBundleBatchPoolSize(),
@@ -1614,7 +1614,7 @@ public abstract class BaseTransactionProcessor {
 			theTransactionStopWatch.startTask("Flush writes to database");
 
 			// flush the changes
-			flushSession(theIdToPersistedOutcome);
+			flushSession(theTransactionDetails, theIdToPersistedOutcome);
 
 			theTransactionStopWatch.endCurrentTask();
 
@@ -1865,6 +1865,18 @@ public abstract class BaseTransactionProcessor {
 		FhirTerser terser = myContext.newTerser();
 		theTransactionStopWatch.startTask("Index " + theIdToPersistedOutcome.size() + " resources");
 		IdentityHashMap<DaoMethodOutcome, Set<IBaseReference>> deferredIndexesForAutoVersioning = null;
+
+		/*
+		 * If parallel preparation is enabled, we resolve the references for all
+		 * resources first, then run the CPU-bound preparation work (e.g. search
+		 * parameter extraction) for all of them across the worker pool, and then
+		 * save them one at a time in the original order.
+		 */
+		List<DaoMethodOutcome> preparedOutcomes = null;
+		if (myStorageSettings.getTransactionPreparationThreadCount() > 1) {
+			preparedOutcomes = new ArrayList<>(theIdToPersistedOutcome.size());
+		}
+
 		int i = 0;
 		for (DaoMethodOutcome nextOutcome : theIdToPersistedOutcome.values()) {
 
@@ -1891,25 +1903,64 @@ public abstract class BaseTransactionProcessor {
 
 			if (referencesToAutoVersion.isEmpty()) {
 				// no references to autoversion - we can do the resolve and save now
-				resolveReferencesThenSaveAndIndexResource(
+				if (preparedOutcomes != null) {
+					resolveReferences(
+							theTransactionDetails,
+							theIdSubstitutions,
+							theIdToPersistedOutcome,
+							terser,
+							nextResource,
+							referencesToAutoVersion, // this is empty
+							referencesToKeepClientSuppliedVersion);
+					preparedOutcomes.add(nextOutcome);
+				} else {
+					resolveReferencesThenSaveAndIndexResource(
+							theRequest,
+							theTransactionDetails,
+							theIdSubstitutions,
+							theIdToPersistedOutcome,
+							theEntriesToProcess,
+							theNonUpdatedEntities,
+							theUpdatedEntities,
+							terser,
+							nextOutcome,
+							nextResource,
+							referencesToAutoVersion, // this is empty
+							referencesToKeepClientSuppliedVersion);
+				}
+			} else {
+				// we have autoversioned things to defer until later
+				if (deferredIndexesForAutoVersioning == null) {
+					deferredIndexesForAutoVersioning = new IdentityHashMap<>();
+				}
+				deferredIndexesForAutoVersioning.put(nextOutcome, referencesToAutoVersion);
+			}
+		}
+
+		if (preparedOutcomes != null && !preparedOutcomes.isEmpty()) {
+			List<IBaseResource> resourcesToPrepare = new ArrayList<>(preparedOutcomes.size());
+			for (DaoMethodOutcome nextOutcome : preparedOutcomes) {
+				if (isNewEntityToIndex(nextOutcome, theNonUpdatedEntities, theUpdatedEntities)) {
+					resourcesToPrepare.add(nextOutcome.getResource());
+				}
+			}
+			if (!resourcesToPrepare.isEmpty() && !hasPreStorageHooks(theRequest)) {
+				theTransactionStopWatch.startTask("Prepare " + resourcesToPrepare.size() + " resources for indexing");
+				prepareResourcesForIndexing(theRequest, theTransactionDetails, resourcesToPrepare);
+				theTransactionStopWatch.startTask("Index " + preparedOutcomes.size() + " resources");
+			}
+
+			for (DaoMethodOutcome nextOutcome : preparedOutcomes) {
+				saveAndIndexResource(
 						theRequest,
 						theTransactionDetails,
 						theIdSubstitutions,
-						theIdToPersistedOutcome,
 						theEntriesToProcess,
 						theNonUpdatedEntities,
 						theUpdatedEntities,
-						terser,
 						nextOutcome,
-						nextResource,
-						referencesToAutoVersion, // this is empty
-						referencesToKeepClientSuppliedVersion);
-			} else {
-				// we have autoversioned things to defer until later
-				if (deferredIndexesForAutoVersioning == null) {
-					deferredIndexesForAutoVersioning = new IdentityHashMap<>();
-				}
-				deferredIndexesForAutoVersioning.put(nextOutcome, referencesToAutoVersion);
+						nextOutcome.getResource(),
+						Collections.emptySet());
 			}
 		}
 
@@ -1953,6 +2004,35 @@ public abstract class BaseTransactionProcessor {
 			IBaseResource theResource,
 			Set<IBaseReference> theReferencesToAutoVersion,
 			Set<IBaseReference> theReferencesToKeepClientSuppliedVersion) {
+		resolveReferences(
+				theTransactionDetails,
+				theIdSubstitutions,
+				theIdToPersistedOutcome,
+				theTerser,
+				theResource,
+				theReferencesToAutoVersion,
+				theReferencesToKeepClientSuppliedVersion);
+
+		saveAndIndexResource(
+				theRequest,
+				theTransactionDetails,
+				theIdSubstitutions,
+				theEntriesToProcess,
+				theNonUpdatedEntities,
+				theUpdatedEntities,
+				theDaoMethodOutcome,
+				theResource,
+				theReferencesToAutoVersion);
+	}
+
+	private void resolveReferences(
+			TransactionDetails theTransactionDetails,
+			IdSubstitutionMap theIdSubstitutions,
+			Map<IIdType, DaoMethodOutcome> theIdToPersistedOutcome,
+			FhirTerser theTerser,
+			IBaseResource theResource,
+			Set<IBaseReference> theReferencesToAutoVersion,
+			Set<IBaseReference> theReferencesToKeepClientSuppliedVersion) {
 		// References
 		List<ResourceReferenceInfo> allRefs = theTerser.getAllResourceReferences(theResource);
 		for (ResourceReferenceInfo nextRef : allRefs) {
@@ -2065,7 +2145,18 @@ public abstract class BaseTransactionProcessor {
 				}
 			}
 		}
+	}
 
+	private void saveAndIndexResource(
+			RequestDetails theRequest,
+			TransactionDetails theTransactionDetails,
+			IdSubstitutionMap theIdSubstitutions,
+			EntriesToProcessMap theEntriesToProcess,
+			Set<IIdType> theNonUpdatedEntities,
+			Set<IBasePersistedResource> theUpdatedEntities,
+			DaoMethodOutcome theDaoMethodOutcome,
+			IBaseResource theResource,
+			Set<IBaseReference> theReferencesToAutoVersion) {
 		IPrimitiveType<Date> deletedInstantOrNull = ResourceMetadataKeyEnum.DELETED_AT.get(theResource);
 		Date deletedTimestampOrNull = deletedInstantOrNull != null ? deletedInstantOrNull.getValue() : null;
 
@@ -2240,7 +2331,53 @@ public abstract class BaseTransactionProcessor {
 		}
 	}
 
-	protected abstract void flushSession(Map<IIdType, DaoMethodOutcome> theIdToPersistedOutcome);
+	protected abstract void flushSession(
+			TransactionDetails theTransactionDetails, Map<IIdType, DaoMethodOutcome> theIdToPersistedOutcome);
+
+	/**
+	 * Returns <code>true</code> if the given outcome will be saved by creating or
+	 * overwriting an entity directly, with no interceptor invocations between
+	 * reference resolution and indexing. Only these resources are passed to
+	 * {@link #prepareResourcesForIndexing(RequestDetails, TransactionDetails, List)}.
+	 */
+	private static boolean isNewEntityToIndex(
+			DaoMethodOutcome theOutcome,
+			Set<IIdType> theNonUpdatedEntities,
+			Set<IBasePersistedResource> theUpdatedEntities) {
+		if (theUpdatedEntities.contains(theOutcome.getEntity())) {
+			return false;
+		}
+		if (theNonUpdatedEntities.contains(theOutcome.getId())) {
+			return false;
+		}
+		return ResourceMetadataKeyEnum.DELETED_AT.get(theOutcome.getResource()) == null;
+	}
+
+	/**
+	 * Pre-storage hooks may modify a resource after it has been prepared for indexing, in which case
+	 * indexes prepared in advance would be stale. Resources are therefore only prepared in advance
+	 * if no such hooks are registered.
+	 */
+	private boolean hasPreStorageHooks(RequestDetails theRequest) {
+		IInterceptorBroadcaster compositeBroadcaster =
+				CompositeInterceptorBroadcaster.newCompositeBroadcaster(myInterceptorBroadcaster, theRequest);
+		return compositeBroadcaster.hasHooks(Pointcut.STORAGE_PRESTORAGE_RESOURCE_CREATED)
+				|| compositeBroadcaster.hasHooks(Pointcut.STORAGE_PRESTORAGE_RESOURCE_UPDATED);
+	}
+
+	/**
+	 * If {@link StorageSettings#getTransactionPreparationThreadCount()} is greater than 1 and no
+	 * pre-storage hooks are registered, this method is
+	 * called once per transaction with the resources that are about to be indexed, after all references
+	 * in them have been resolved and before any of them is saved. Subclasses may use it to perform CPU-bound
+	 * preparation work for the whole bundle in parallel. The default implementation does nothing.
+	 *
+	 * @param theResources The resources, which must not be modified by this method
+	 */
+	protected void prepareResourcesForIndexing(
+			RequestDetails theRequest, TransactionDetails theTransactionDetails, List<IBaseResource> theResources) {
+		// nothing by default
+	}
 
 	private void validateResourcePresent(IBaseResource theResource, Integer theOrder, String theVerb) {
 		if (theResource == null) {
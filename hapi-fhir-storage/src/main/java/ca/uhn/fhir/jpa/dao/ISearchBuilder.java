@@ -40,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public interface ISearchBuilder<T extends IResourcePersistentId<?>> {
@@ -75,6 +76,23 @@ public interface ISearchBuilder<T extends IResourcePersistentId<?>> {
 			RequestDetails theRequest,
 			RequestPartitionId theRequestPartitionId);
 
+	/**
+	 * Returns a fast estimate of the number of resources matching the search, as requested
+	 * by <code>_total=estimated</code>, or <code>null</code> if no estimate is available.
+	 * Estimates which are no larger than
+	 * {@link ca.uhn.fhir.jpa.api.config.JpaStorageSettings#getEstimatedTotalExactCountThreshold()}
+	 * are exact.
+	 *
+	 * @since 8.4.0
+	 */
+	default Long createEstimatedCountQuery(
+			SearchParameterMap theParams,
+			String theSearchUuid,
+			RequestDetails theRequest,
+			RequestPartitionId theRequestPartitionId) {
+		return null;
+	}
+
 	void setMaxResultsToFetch(Integer theMaxResultsToFetch);
 
 	void setDeduplicateInDatabase(boolean theShouldDeduplicateInDB);
@@ -102,6 +120,19 @@ public interface ISearchBuilder<T extends IResourcePersistentId<?>> {
 		return result;
 	}
 
+	/**
+	 * Like {@link #loadResourcesByPid(Collection, RequestDetails)}, but also passes each persistence
+	 * entity which was loaded in order to build the resources to the given consumer, e.g. so that the
+	 * caller can detach it once the resources have been built. Implementations which don't load
+	 * entities may ignore the consumer.
+	 *
+	 * @since 8.4.0
+	 */
+	default List<IBaseResource> loadResourcesByPid(
+			Collection<T> thePids, RequestDetails theDetails, Consumer<Object> theLoadedEntityConsumer) {
+		return loadResourcesByPid(thePids, theDetails);
+	}
+
 	/**
 	 * Use the loadIncludes that takes a parameters object instead.
 	 */
@@ -19,10 +19,14 @@
  */
 package ca.uhn.fhir.jpa.model.search;
 
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.util.StopWatch;
 import jakarta.annotation.Nullable;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * This class contains a runtime in-memory description of a search operation,
  * including details on processing time and other things
@@ -36,6 +40,9 @@ public class SearchRuntimeDetails {
 	private String myQueryString;
 	private SearchStatusEnum mySearchStatus;
 	private int myFoundIndexMatchesCount;
+	private String myResourceType;
+	private SearchParameterMap mySearchParameterMap;
+	private final Map<Object, Object> myUserData = new ConcurrentHashMap<>();
 
 	public SearchRuntimeDetails(RequestDetails theRequestDetails, String theSearchUuid) {
 		myRequestDetails = theRequestDetails;
@@ -98,4 +105,54 @@ public class SearchRuntimeDetails {
 	public void setSearchStatus(SearchStatusEnum theSearchStatus) {
 		mySearchStatus = theSearchStatus;
 	}
+
+	/**
+	 * The resource type being searched for
+	 *
+	 * @since 8.4.0
+	 */
+	@Nullable
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	/**
+	 * The resource type being searched for
+	 *
+	 * @since 8.4.0
+	 */
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	/**
+	 * The search parameters for this search
+	 *
+	 * @since 8.4.0
+	 */
+	@Nullable
+	public SearchParameterMap getSearchParameterMap() {
+		return mySearchParameterMap;
+	}
+
+	/**
+	 * The search parameters for this search
+	 *
+	 * @since 8.4.0
+	 */
+	public void setSearchParameterMap(SearchParameterMap theSearchParameterMap) {
+		mySearchParameterMap = theSearchParameterMap;
+	}
+
+	/**
+	 * Returns a map which can be used to hold any user specific data about this search,
+	 * e.g. so that an interceptor can compute something once and reuse it across the
+	 * performance tracing pointcuts for the same search. Keys should be specific enough
+	 * to avoid conflicts.
+	 *
+	 * @since 8.4.0
+	 */
+	public Map<Object, Object> getUserData() {
+		return myUserData;
+	}
 }
@@ -11,9 +11,11 @@ import ca.uhn.fhir.rest.server.BundleProviderWithNamedPages;
 import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.HapiExtensions;
 import jakarta.annotation.Nonnull;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.jupiter.api.AfterEach;
@@ -304,6 +306,36 @@ class ResponseBundleBuilderTest {
 		assertNextLink(bundle, LIMIT);
 	}
 
+	@Test
+	void testEstimatedBundleSize() {
+		// setup
+		myLimit = LIMIT;
+		setCanStoreSearchResults(true);
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(buildPatientList());
+		bundleProvider.setSize(null);
+		bundleProvider.setEstimatedSize(1200000);
+		ResponseBundleRequest responseBundleRequest = buildResponseBundleRequest(bundleProvider, SEARCH_ID);
+
+		responseBundleRequest.requestDetails.setFhirServerBase(TEST_SERVER_BASE);
+		ResponseBundleBuilder svc = new ResponseBundleBuilder(true);
+
+		// run
+		Bundle bundle = (Bundle) svc.buildResponseBundle(responseBundleRequest);
+
+		// verify
+		assertEquals(1200000, bundle.getTotal());
+		Extension estimated = bundle.getTotalElement().getExtensionByUrl(HapiExtensions.EXT_SEARCH_TOTAL_ESTIMATED);
+		assertEquals("true", estimated.getValueAsPrimitive().getValueAsString());
+		assertThat(bundle.getEntry()).hasSize(LIMIT);
+		assertNextLink(bundle, LIMIT);
+
+		// An exact size takes precedence over the estimate
+		bundleProvider.setSize(DEFAULT_PAGE_SIZE);
+		bundle = (Bundle) svc.buildResponseBundle(buildResponseBundleRequest(bundleProvider, SEARCH_ID));
+		assertEquals(DEFAULT_PAGE_SIZE, bundle.getTotal());
+		assertFalse(bundle.getTotalElement().hasExtension());
+	}
+
 	@Test
 	void testCustomLinks() {
 		// setup